@@ -0,0 +1,66 @@
+package org.openrdf.spring;
+
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.memory.MemoryStore;
+import org.openrdf.sail.nativerdf.NativeStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * <p>Shared helpers for the benchmarks.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+final class Benchmarks {
+    /**
+     * The stores the benchmarks run against: an in-memory {@link MemoryStore} and a {@link NativeStore} in a
+     * temporary directory.
+     */
+    enum Store {
+        MEMORY, NATIVE
+    }
+
+    private Benchmarks() {
+    }
+
+    static SailRepository createRepository(Store store, File dataDir) {
+        Sail sail;
+
+        switch (store) {
+            case MEMORY:
+                sail = new MemoryStore();
+                break;
+            case NATIVE:
+                sail = new NativeStore(dataDir);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported store: " + store);
+        }
+
+        SailRepository repository = new SailRepository(sail);
+        repository.initialize();
+
+        return repository;
+    }
+
+    static File createTempDir() throws IOException {
+        return Files.createTempDirectory("sesame-spring-benchmark").toFile();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
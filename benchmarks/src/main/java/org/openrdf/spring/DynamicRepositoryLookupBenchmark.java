@@ -0,0 +1,107 @@
+package org.openrdf.spring;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.repository.manager.LocalRepositoryManager;
+import org.openrdf.repository.sail.config.SailRepositoryConfig;
+import org.openrdf.sail.memory.config.MemoryStoreConfig;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Measures the throughput of repository lookups in {@link DynamicRepositoryManagerConnectionFactory} under
+ * contention. Every benchmark thread is bound to one of <code>repositoryCount</code> repository-ids and repeatedly
+ * resolves its {@link RepositoryConnectionFactory}; the variants only differ in the number of threads, so comparing
+ * them shows how lookup throughput scales with the number of cores.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamicRepositoryLookupBenchmark {
+    @Param({"1", "64"})
+    private int repositoryCount;
+
+    private final ThreadLocal<String> currentRepositoryId = new ThreadLocal<>();
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private File baseDir;
+
+    private LocalRepositoryManager repositoryManager;
+
+    private DynamicRepositoryManagerConnectionFactory connectionFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        baseDir = Benchmarks.createTempDir();
+        repositoryManager = new LocalRepositoryManager(baseDir);
+        repositoryManager.initialize();
+        connectionFactory = new DynamicRepositoryManagerConnectionFactory(repositoryManager,
+                new SailRepositoryConfig(new MemoryStoreConfig()), currentRepositoryId::get);
+
+        for (int i = 0; i < repositoryCount; i++) {
+            currentRepositoryId.set(repositoryId(i));
+            connectionFactory.getLocalTransactionObject();
+        }
+
+        currentRepositoryId.remove();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connectionFactory.destroy();
+        repositoryManager.shutDown();
+        Benchmarks.deleteRecursively(baseDir);
+    }
+
+    @State(Scope.Thread)
+    public static class TenantState {
+        @Setup(Level.Trial)
+        public void setUp(DynamicRepositoryLookupBenchmark benchmark) {
+            int threadIndex = benchmark.threadCounter.getAndIncrement();
+
+            benchmark.currentRepositoryId.set(repositoryId(threadIndex % benchmark.repositoryCount));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SesameTransactionObject lookup1Thread(TenantState tenantState) {
+        return connectionFactory.getLocalTransactionObject();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SesameTransactionObject lookup4Threads(TenantState tenantState) {
+        return connectionFactory.getLocalTransactionObject();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public SesameTransactionObject lookupMaxThreads(TenantState tenantState) {
+        return connectionFactory.getLocalTransactionObject();
+    }
+
+    private static String repositoryId(int index) {
+        return "tenant-" + index;
+    }
+}
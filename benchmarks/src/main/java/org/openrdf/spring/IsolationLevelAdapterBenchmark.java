@@ -0,0 +1,79 @@
+package org.openrdf.spring;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.IsolationLevel;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.Sail;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the conversion of Spring isolation levels to OpenRDF isolation levels by
+ * {@link IsolationLevelAdapter}, which happens at the beginning of every transaction. The <code>cached</code> variant
+ * is the conversion that transactions use.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsolationLevelAdapterBenchmark {
+    @Param({"MEMORY", "NATIVE"})
+    private String store;
+
+    @Param({"" + TransactionDefinition.ISOLATION_DEFAULT,
+            "" + TransactionDefinition.ISOLATION_READ_COMMITTED,
+            "" + TransactionDefinition.ISOLATION_SERIALIZABLE})
+    private int springIsolation;
+
+    private File dataDir;
+
+    private SailRepository repository;
+
+    private Sail sail;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataDir = Benchmarks.createTempDir();
+        repository = Benchmarks.createRepository(Benchmarks.Store.valueOf(store), dataDir);
+        sail = repository.getSail();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.shutDown();
+        Benchmarks.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public IsolationLevel adaptToRdfIsolation() {
+        return IsolationLevelAdapter.adaptToRdfIsolation(sail, springIsolation);
+    }
+
+    @Benchmark
+    public IsolationLevel adaptToReadOnlyRdfIsolation() {
+        return IsolationLevelAdapter.adaptToReadOnlyRdfIsolation(sail, springIsolation);
+    }
+
+    @Benchmark
+    public IsolationLevel cachedRdfIsolation() {
+        return IsolationLevelAdapter.cachedRdfIsolation(sail, springIsolation, false);
+    }
+}
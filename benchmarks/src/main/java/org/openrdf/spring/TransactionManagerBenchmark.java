@@ -0,0 +1,157 @@
+package org.openrdf.spring;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.model.IRI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the overhead of {@link SesameTransactionManager} and {@link RepositoryConnectionFactory} for empty and
+ * small write transactions, and of repeated {@link SesameConnectionFactory#getConnection()} calls inside a single
+ * transaction.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionManagerBenchmark {
+    private static final int SMALL_TRANSACTION_SIZE = 4;
+
+    @Param({"MEMORY", "NATIVE"})
+    private String store;
+
+    private final TransactionDefinition transactionDefinition = new DefaultTransactionDefinition();
+
+    private final TransactionDefinition readOnlyTransactionDefinition = readOnly();
+
+    private final IRI[] subjects = new IRI[SMALL_TRANSACTION_SIZE];
+
+    private IRI predicate;
+
+    private IRI object;
+
+    private File dataDir;
+
+    private SailRepository repository;
+
+    private RepositoryConnectionFactory repositoryConnectionFactory;
+
+    private SesameTransactionManager transactionManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ValueFactory valueFactory = SimpleValueFactory.getInstance();
+
+        for (int i = 0; i < subjects.length; i++) {
+            subjects[i] = valueFactory.createIRI("http://example.com/s" + i);
+        }
+
+        predicate = valueFactory.createIRI("http://example.com/p");
+        object = valueFactory.createIRI("http://example.com/o");
+
+        dataDir = Benchmarks.createTempDir();
+        repository = Benchmarks.createRepository(Benchmarks.Store.valueOf(store), dataDir);
+        repositoryConnectionFactory = new RepositoryConnectionFactory(repository);
+        transactionManager = new SesameTransactionManager(repositoryConnectionFactory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repositoryConnectionFactory.destroy();
+        Benchmarks.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public void emptyTransactionCommit() {
+        TransactionStatus transactionStatus = transactionManager.getTransaction(transactionDefinition);
+        transactionManager.commit(transactionStatus);
+    }
+
+    @Benchmark
+    public void emptyTransactionRollback() {
+        TransactionStatus transactionStatus = transactionManager.getTransaction(transactionDefinition);
+        transactionManager.rollback(transactionStatus);
+    }
+
+    @Benchmark
+    public void emptyReadOnlyTransactionCommit() {
+        TransactionStatus transactionStatus = transactionManager.getTransaction(readOnlyTransactionDefinition);
+        repositoryConnectionFactory.getConnection();
+        transactionManager.commit(transactionStatus);
+    }
+
+    @Benchmark
+    public void smallWriteTransactionCommit() {
+        TransactionStatus transactionStatus = transactionManager.getTransaction(transactionDefinition);
+        addStatements(repositoryConnectionFactory.getConnection());
+        transactionManager.commit(transactionStatus);
+    }
+
+    @Benchmark
+    public void smallWriteTransactionRollback() {
+        TransactionStatus transactionStatus = transactionManager.getTransaction(transactionDefinition);
+        addStatements(repositoryConnectionFactory.getConnection());
+        transactionManager.rollback(transactionStatus);
+    }
+
+    /**
+     * <p>Keeps a single transaction open per iteration so that only {@link SesameConnectionFactory#getConnection()}
+     * is measured.</p>
+     */
+    @State(Scope.Thread)
+    public static class OpenTransaction {
+        private TransactionStatus transactionStatus;
+
+        @Setup(Level.Iteration)
+        public void begin(TransactionManagerBenchmark benchmark) {
+            transactionStatus = benchmark.transactionManager.getTransaction(benchmark.transactionDefinition);
+        }
+
+        @TearDown(Level.Iteration)
+        public void end(TransactionManagerBenchmark benchmark) {
+            benchmark.transactionManager.rollback(transactionStatus);
+        }
+    }
+
+    @Benchmark
+    public RepositoryConnection getConnectionInTransaction(OpenTransaction openTransaction) {
+        return repositoryConnectionFactory.getConnection();
+    }
+
+    private void addStatements(RepositoryConnection connection) {
+        for (IRI subject : subjects) {
+            connection.add(subject, predicate, object);
+        }
+    }
+
+    private static TransactionDefinition readOnly() {
+        DefaultTransactionDefinition transactionDefinition = new DefaultTransactionDefinition();
+        transactionDefinition.setReadOnly(true);
+
+        return transactionDefinition;
+    }
+}
@@ -0,0 +1,272 @@
+package org.openrdf.spring;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.SailConflictException;
+import org.springframework.core.Constants;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Drives {@link SesameTransactionManager} with a mixed workload of read-only transactions and read-modify-write
+ * transactions on a small set of shared counters, with 1, 4 and all available threads. The variants only differ in
+ * the number of threads, so comparing them shows where throughput stops scaling.</p>
+ * <p/>
+ * <p>Every operation is sampled, so the results contain latency percentiles. Each thread also counts</p>
+ * <ul>
+ * <li><code>commits</code>: transactions that completed,</li>
+ * <li><code>conflicts</code>: write transactions that were rolled back because of a concurrent write,</li>
+ * <li><code>rejections</code>: transactions that were not admitted by the admission policy,</li>
+ * <li><code>failures</code>: transactions that failed for any other reason,</li>
+ * <li><code>leakedConnections</code>: connections that were still open after their transaction completed.</li>
+ * </ul>
+ * <p>The conflict rate is <code>conflicts / (commits + conflicts)</code>; <code>leakedConnections</code> must be
+ * <code>0</code>.</p>
+ * <p/>
+ * <p>With <code>maxTransactions</code> set, an {@link AdmissionPolicy} caps the concurrent transactions of the
+ * repository, which shows whether throughput holds up beyond the cap.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionStressBenchmark {
+    private static final int COUNTER_COUNT = 64;
+
+    private static final Constants TRANSACTION_CONSTANTS = new Constants(TransactionDefinition.class);
+
+    @Param({"MEMORY", "NATIVE"})
+    private String store;
+
+    @Param({"DEFAULT", "READ_UNCOMMITTED", "READ_COMMITTED", "REPEATABLE_READ", "SERIALIZABLE"})
+    private String isolationLevel;
+
+    @Param({"10", "50"})
+    private int writePercent;
+
+    @Param({"0", "4"})
+    private int maxTransactions;
+
+    private final IRI[] counters = new IRI[COUNTER_COUNT];
+
+    private final ValueFactory valueFactory = SimpleValueFactory.getInstance();
+
+    private final IRI value = valueFactory.createIRI("http://example.com/value");
+
+    private File dataDir;
+
+    private SailRepository repository;
+
+    private ConnectionCountingFactory repositoryConnectionFactory;
+
+    private TransactionTemplate readTemplate;
+
+    private TransactionTemplate writeTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataDir = Benchmarks.createTempDir();
+        repository = Benchmarks.createRepository(Benchmarks.Store.valueOf(store), dataDir);
+        repositoryConnectionFactory = new ConnectionCountingFactory(repository);
+
+        if (maxTransactions > 0) {
+            AdmissionPolicy admissionPolicy = new AdmissionPolicy();
+            admissionPolicy.setMaxTransactions(maxTransactions);
+            repositoryConnectionFactory.setAdmissionPolicy(admissionPolicy);
+        }
+
+        SesameTransactionManager transactionManager = new SesameTransactionManager(repositoryConnectionFactory);
+        int isolation = TRANSACTION_CONSTANTS.asNumber("ISOLATION_" + isolationLevel).intValue();
+
+        readTemplate = new TransactionTemplate(transactionManager);
+        readTemplate.setIsolationLevel(isolation);
+        readTemplate.setReadOnly(true);
+
+        writeTemplate = new TransactionTemplate(transactionManager);
+        writeTemplate.setIsolationLevel(isolation);
+
+        writeTemplate.execute(status -> {
+            RepositoryConnection connection = repositoryConnectionFactory.getConnection();
+
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = valueFactory.createIRI("http://example.com/counter/" + i);
+                connection.add(counters[i], value, valueFactory.createLiteral(0L));
+            }
+
+            return null;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repositoryConnectionFactory.destroy();
+        Benchmarks.deleteRecursively(dataDir);
+    }
+
+    /**
+     * <p>The outcomes of the transactions of one thread, reported as secondary results of every iteration.</p>
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long commits;
+
+        public long conflicts;
+
+        public long rejections;
+
+        public long failures;
+
+        public long leakedConnections;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            commits = 0;
+            conflicts = 0;
+            rejections = 0;
+            failures = 0;
+            leakedConnections = 0;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long mixed1Thread(Outcomes outcomes) {
+        return execute(outcomes);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long mixed4Threads(Outcomes outcomes) {
+        return execute(outcomes);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long mixedMaxThreads(Outcomes outcomes) {
+        return execute(outcomes);
+    }
+
+    private long execute(Outcomes outcomes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        IRI counter = counters[random.nextInt(counters.length)];
+        boolean write = random.nextInt(100) < writePercent;
+        long result = 0;
+
+        try {
+            result = write
+                    ? writeTemplate.execute(status -> increment(counter))
+                    : readTemplate.execute(status -> read(repositoryConnectionFactory.getConnection(), counter));
+            outcomes.commits++;
+        } catch (TransactionAdmissionException e) {
+            outcomes.rejections++;
+        } catch (RuntimeException e) {
+            if (isConflict(e)) {
+                outcomes.conflicts++;
+            } else {
+                outcomes.failures++;
+            }
+        }
+
+        outcomes.leakedConnections += repositoryConnectionFactory.takeOpenConnectionCount();
+
+        return result;
+    }
+
+    private long increment(IRI counter) {
+        RepositoryConnection connection = repositoryConnectionFactory.getConnection();
+        long current = read(connection, counter);
+
+        connection.remove(counter, value, null);
+        connection.add(counter, value, valueFactory.createLiteral(current + 1));
+
+        return current + 1;
+    }
+
+    private long read(RepositoryConnection connection, IRI counter) {
+        RepositoryResult<Statement> statements = connection.getStatements(counter, value, null, false);
+
+        try {
+            return statements.hasNext() ? ((Literal) statements.next().getObject()).longValue() : 0;
+        } finally {
+            statements.close();
+        }
+    }
+
+    private static boolean isConflict(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SailConflictException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>Counts the connections that were opened, but not released, by each thread.</p>
+     */
+    private static class ConnectionCountingFactory extends RepositoryConnectionFactory {
+        private final ThreadLocal<int[]> openConnectionCount = ThreadLocal.withInitial(() -> new int[1]);
+
+        private ConnectionCountingFactory(Repository repository) {
+            super(repository);
+        }
+
+        @Override
+        protected RepositoryConnection openConnection() throws RepositoryException {
+            RepositoryConnection repositoryConnection = super.openConnection();
+            openConnectionCount.get()[0]++;
+
+            return repositoryConnection;
+        }
+
+        @Override
+        protected void releaseConnection(RepositoryConnection repositoryConnection) throws RepositoryException {
+            openConnectionCount.get()[0]--;
+            super.releaseConnection(repositoryConnection);
+        }
+
+        /**
+         * @return the number of connections the current thread has not released, counting each one only once.
+         */
+        private int takeOpenConnectionCount() {
+            int[] count = openConnectionCount.get();
+            int openConnections = count[0];
+            count[0] = 0;
+
+            return openConnections;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.openrdf.spring;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>{@link AdmissionController} enforces an {@link AdmissionPolicy} on the transactions of a single repository.</p>
+ * <p/>
+ * <p>A transaction first takes a slot of its lane (read-only or write) and then, if <code>maxTransactions</code> is
+ * set, a slot of the shared limit. Transactions that find no free slot queue up in arrival order for at most
+ * <code>queueTimeoutMillis</code>; if <code>maxQueueLength</code> transactions are already waiting, they are rejected
+ * without waiting. Keeping the number of active transactions near the point where the store performs best lets
+ * throughput stay at its peak under overload, while excess load fails fast.</p>
+ * <p/>
+ * <p>Admission counts are kept for monitoring: transactions that were admitted, rejected because the queue was full
+ * and rejected because they timed out in the queue.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see RepositoryConnectionFactory#setAdmissionPolicy(AdmissionPolicy)
+ */
+public class AdmissionController {
+    private final AdmissionPolicy admissionPolicy;
+
+    private final Semaphore transactionPermits;
+
+    private final Lane readLane;
+
+    private final Lane writeLane;
+
+    private final AtomicInteger waitingTransactions = new AtomicInteger();
+
+    private final AtomicLong admittedTransactions = new AtomicLong();
+
+    private final AtomicLong rejectedTransactions = new AtomicLong();
+
+    private final AtomicLong timedOutTransactions = new AtomicLong();
+
+    /**
+     * <p>Creates a new {@link AdmissionController} with the limits of <code>admissionPolicy</code>. Later changes to
+     * the policy do not affect the controller.</p>
+     */
+    public AdmissionController(AdmissionPolicy admissionPolicy) {
+        this.admissionPolicy = admissionPolicy;
+        this.transactionPermits = createPermits(admissionPolicy.getMaxTransactions());
+        this.readLane = new Lane("read", createPermits(admissionPolicy.getMaxReadTransactions()));
+        this.writeLane = new Lane("write", createPermits(admissionPolicy.getMaxWriteTransactions()));
+    }
+
+    private static Semaphore createPermits(int limit) {
+        return limit > 0 ? new Semaphore(limit, true) : null;
+    }
+
+    /**
+     * <p>Admits a transaction, waiting for a free slot if necessary.</p>
+     *
+     * @return the lane of the transaction, which must be {@link Lane#release() released} when the transaction ends.
+     *
+     * @throws TransactionAdmissionException if the queue is full, the transaction timed out in the queue or the
+     *                                       thread was interrupted while waiting.
+     */
+    Lane admit(boolean readOnly, String repositoryId) {
+        Lane lane = tryAdmit(readOnly);
+
+        if (lane != null) {
+            return lane;
+        }
+
+        lane = readOnly ? readLane : writeLane;
+
+        try {
+            if (waitingTransactions.incrementAndGet() > admissionPolicy.getMaxQueueLength()) {
+                rejectedTransactions.incrementAndGet();
+                throw new TransactionAdmissionException("Transaction rejected, " + lane.name +
+                        " queue is full for repository " + repositoryId);
+            }
+
+            long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                    admissionPolicy.getQueueTimeoutMillis());
+
+            if (!lane.acquire(deadlineNanos)) {
+                timedOutTransactions.incrementAndGet();
+                throw new TransactionAdmissionException("Transaction timed out after " +
+                        admissionPolicy.getQueueTimeoutMillis() + "ms in " + lane.name + " queue for repository " +
+                        repositoryId);
+            }
+
+            admittedTransactions.incrementAndGet();
+            return lane;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionAdmissionException("Interrupted while waiting for admission to repository " +
+                    repositoryId);
+        } finally {
+            waitingTransactions.decrementAndGet();
+        }
+    }
+
+    /**
+     * <p>Admits a transaction only if a slot is free and no other transaction is waiting for it.</p>
+     *
+     * @return the lane of the transaction, or <code>null</code> if the transaction would have to wait.
+     */
+    Lane tryAdmit(boolean readOnly) {
+        Lane lane = readOnly ? readLane : writeLane;
+
+        if (!lane.tryAcquire()) {
+            return null;
+        }
+
+        admittedTransactions.incrementAndGet();
+        return lane;
+    }
+
+    private static boolean tryAcquire(Semaphore permits, long deadlineNanos) throws InterruptedException {
+        return permits == null || permits.tryAcquire(Math.max(0L, deadlineNanos - System.nanoTime()),
+                TimeUnit.NANOSECONDS);
+    }
+
+    private static void release(Semaphore permits) {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    public AdmissionPolicy getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
+    /**
+     * @return the number of admitted read-only transactions that have not ended yet.
+     */
+    public int getActiveReadTransactions() {
+        return readLane.activeTransactions.get();
+    }
+
+    /**
+     * @return the number of admitted write transactions that have not ended yet.
+     */
+    public int getActiveWriteTransactions() {
+        return writeLane.activeTransactions.get();
+    }
+
+    /**
+     * @return the number of transactions that are currently waiting for admission.
+     */
+    public int getWaitingTransactions() {
+        return waitingTransactions.get();
+    }
+
+    /**
+     * @return the number of transactions that were admitted.
+     */
+    public long getAdmittedCount() {
+        return admittedTransactions.get();
+    }
+
+    /**
+     * @return the number of transactions that were rejected because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejectedTransactions.get();
+    }
+
+    /**
+     * @return the number of transactions that were rejected because they were not admitted within the queue timeout.
+     */
+    public long getTimedOutCount() {
+        return timedOutTransactions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+                "admissionPolicy=" + admissionPolicy +
+                ", activeReadTransactions=" + readLane.activeTransactions +
+                ", activeWriteTransactions=" + writeLane.activeTransactions +
+                ", waitingTransactions=" + waitingTransactions +
+                ", admittedTransactions=" + admittedTransactions +
+                ", rejectedTransactions=" + rejectedTransactions +
+                ", timedOutTransactions=" + timedOutTransactions +
+                '}';
+    }
+
+    /**
+     * <p>The slots of either read-only or write transactions.</p>
+     */
+    final class Lane {
+        private final String name;
+
+        private final Semaphore permits;
+
+        private final AtomicInteger activeTransactions = new AtomicInteger();
+
+        private Lane(String name, Semaphore permits) {
+            this.name = name;
+            this.permits = permits;
+        }
+
+        /**
+         * <p>Takes free slots without waiting. Unlike {@link Semaphore#tryAcquire()}, a zero timeout honours the
+         * fairness of the permits, so a transaction does not overtake transactions that are already queued.</p>
+         */
+        private boolean tryAcquire() {
+            try {
+                return acquire(System.nanoTime());
+            } catch (InterruptedException e) {
+                // left to the queued path, which reports the interrupt
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private boolean acquire(long deadlineNanos) throws InterruptedException {
+            if (!AdmissionController.tryAcquire(permits, deadlineNanos)) {
+                return false;
+            }
+
+            boolean acquired = false;
+
+            try {
+                acquired = AdmissionController.tryAcquire(transactionPermits, deadlineNanos);
+            } finally {
+                if (!acquired) {
+                    AdmissionController.release(permits);
+                }
+            }
+
+            if (acquired) {
+                activeTransactions.incrementAndGet();
+            }
+
+            return acquired;
+        }
+
+        /**
+         * <p>Frees the slots of a transaction admitted to this lane.</p>
+         */
+        void release() {
+            activeTransactions.decrementAndGet();
+            AdmissionController.release(transactionPermits);
+            AdmissionController.release(permits);
+        }
+
+        @Override
+        public String toString() {
+            return "Lane{" +
+                    "name='" + name + '\'' +
+                    ", activeTransactions=" + activeTransactions +
+                    '}';
+        }
+    }
+}
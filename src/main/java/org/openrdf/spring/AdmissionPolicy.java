@@ -0,0 +1,121 @@
+package org.openrdf.spring;
+
+/**
+ * <p>{@link AdmissionPolicy} limits the number of concurrent transactions on a repository. Read-only and write
+ * transactions are admitted through separate lanes, so a burst of long-running reads cannot starve writes and vice
+ * versa; <code>maxTransactions</code> additionally caps both lanes together.</p>
+ * <p/>
+ * <p>A transaction that finds its lane full waits for at most <code>queueTimeoutMillis</code>. Once
+ * <code>maxQueueLength</code> transactions are waiting, further transactions are rejected right away with a
+ * {@link TransactionAdmissionException} instead of piling up.</p>
+ * <p/>
+ * <p>Each {@link RepositoryConnectionFactory} enforces the policy with its own {@link AdmissionController}, so a
+ * policy can be shared by several repositories without sharing their limits.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public class AdmissionPolicy {
+    /**
+     * The number of transactions that may wait for admission unless configured otherwise.
+     */
+    public static final int DEFAULT_MAX_QUEUE_LENGTH = 128;
+
+    /**
+     * The time a transaction waits for admission unless configured otherwise.
+     */
+    public static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 1000;
+
+    private int maxTransactions;
+
+    private int maxReadTransactions;
+
+    private int maxWriteTransactions;
+
+    private int maxQueueLength = DEFAULT_MAX_QUEUE_LENGTH;
+
+    private long queueTimeoutMillis = DEFAULT_QUEUE_TIMEOUT_MILLIS;
+
+    public int getMaxTransactions() {
+        return maxTransactions;
+    }
+
+    /**
+     * @param maxTransactions the maximum number of concurrent transactions of both lanes. Defaults to <code>0</code>,
+     *                        which only applies the limits of the lanes.
+     */
+    public void setMaxTransactions(int maxTransactions) {
+        this.maxTransactions = requireNonNegative("maxTransactions", maxTransactions);
+    }
+
+    public int getMaxReadTransactions() {
+        return maxReadTransactions;
+    }
+
+    /**
+     * @param maxReadTransactions the maximum number of concurrent read-only transactions. Defaults to <code>0</code>,
+     *                            which does not limit read-only transactions.
+     */
+    public void setMaxReadTransactions(int maxReadTransactions) {
+        this.maxReadTransactions = requireNonNegative("maxReadTransactions", maxReadTransactions);
+    }
+
+    public int getMaxWriteTransactions() {
+        return maxWriteTransactions;
+    }
+
+    /**
+     * @param maxWriteTransactions the maximum number of concurrent write transactions. Defaults to <code>0</code>,
+     *                             which does not limit write transactions.
+     */
+    public void setMaxWriteTransactions(int maxWriteTransactions) {
+        this.maxWriteTransactions = requireNonNegative("maxWriteTransactions", maxWriteTransactions);
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueueLength;
+    }
+
+    /**
+     * @param maxQueueLength the maximum number of transactions that wait for admission. Defaults to
+     *                       {@link #DEFAULT_MAX_QUEUE_LENGTH}; <code>0</code> rejects transactions that cannot be
+     *                       admitted right away.
+     */
+    public void setMaxQueueLength(int maxQueueLength) {
+        this.maxQueueLength = requireNonNegative("maxQueueLength", maxQueueLength);
+    }
+
+    public long getQueueTimeoutMillis() {
+        return queueTimeoutMillis;
+    }
+
+    /**
+     * @param queueTimeoutMillis the maximum time a transaction waits for admission. Defaults to
+     *                           {@link #DEFAULT_QUEUE_TIMEOUT_MILLIS}.
+     */
+    public void setQueueTimeoutMillis(long queueTimeoutMillis) {
+        if (queueTimeoutMillis < 0) {
+            throw new IllegalArgumentException("queueTimeoutMillis must not be negative: " + queueTimeoutMillis);
+        }
+
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    private static int requireNonNegative(String name, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " must not be negative: " + value);
+        }
+
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionPolicy{" +
+                "maxTransactions=" + maxTransactions +
+                ", maxReadTransactions=" + maxReadTransactions +
+                ", maxWriteTransactions=" + maxWriteTransactions +
+                ", maxQueueLength=" + maxQueueLength +
+                ", queueTimeoutMillis=" + queueTimeoutMillis +
+                '}';
+    }
+}
@@ -0,0 +1,226 @@
+package org.openrdf.spring;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryReadOnlyException;
+
+/**
+ * <p>{@link BatchingStatementWriter} buffers the statements that are added to or removed from the current transaction
+ * and writes them to the transaction's {@link org.openrdf.repository.RepositoryConnection} in chunks of
+ * <code>batchSize</code> statements with a single bulk call per chunk.</p>
+ * <p/>
+ * <p>The buffer is bound to the current transaction of the associated {@link SesameConnectionFactory}. It is written
+ * to the connection</p>
+ * <ul>
+ * <li>whenever <code>batchSize</code> statements are pending,</li>
+ * <li>before any query, read or write on the connection returned by {@link SesameConnectionFactory#getConnection()}
+ * in the same transaction, so reads see the transaction's own writes,</li>
+ * <li>before the transaction is committed.</li>
+ * </ul>
+ * <p>Buffered statements are discarded when the transaction is rolled back.</p>
+ * <p/>
+ * <p>Removals with wildcards or with the <code>null</code> context cannot be buffered; they are written to the
+ * connection immediately, after the pending statements.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public class BatchingStatementWriter {
+    /**
+     * The number of buffered statements after which they are written to the connection unless configured otherwise.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final SesameConnectionFactory sesameConnectionFactory;
+
+    private final ValueFactory valueFactory = SimpleValueFactory.getInstance();
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * <p>Creates a new {@link BatchingStatementWriter} for the transactions of the provided
+     * {@link SesameConnectionFactory}.</p>
+     *
+     * @param sesameConnectionFactory The {@link SesameConnectionFactory} whose transactions are written to.
+     */
+    public BatchingStatementWriter(SesameConnectionFactory sesameConnectionFactory) {
+        this.sesameConnectionFactory = sesameConnectionFactory;
+    }
+
+    /**
+     * <p>Adds a statement to the current transaction.</p>
+     *
+     * @see org.openrdf.repository.RepositoryConnection#add(Resource, IRI, Value, Resource...)
+     */
+    public void add(Resource subject, IRI predicate, Value object, Resource... contexts) throws RepositoryException {
+        StatementBuffer statementBuffer = getStatementBuffer();
+
+        if (contexts.length == 0) {
+            statementBuffer.add(valueFactory.createStatement(subject, predicate, object));
+        } else {
+            for (Resource context : contexts) {
+                statementBuffer.add(createStatement(subject, predicate, object, context));
+            }
+        }
+
+        flushIfFull(statementBuffer);
+    }
+
+    /**
+     * <p>Adds a statement to the current transaction.</p>
+     *
+     * @see org.openrdf.repository.RepositoryConnection#add(Statement, Resource...)
+     */
+    public void add(Statement statement, Resource... contexts) throws RepositoryException {
+        if (contexts.length == 0) {
+            StatementBuffer statementBuffer = getStatementBuffer();
+
+            statementBuffer.add(statement);
+            flushIfFull(statementBuffer);
+        } else {
+            add(statement.getSubject(), statement.getPredicate(), statement.getObject(), contexts);
+        }
+    }
+
+    /**
+     * <p>Removes a statement from the current transaction.</p>
+     *
+     * @see org.openrdf.repository.RepositoryConnection#remove(Resource, IRI, Value, Resource...)
+     */
+    public void remove(Resource subject, IRI predicate, Value object, Resource... contexts)
+            throws RepositoryException {
+        StatementBuffer statementBuffer = getStatementBuffer();
+
+        if (subject == null || predicate == null || object == null || containsNullContext(contexts)) {
+            sesameConnectionFactory.getConnection().remove(subject, predicate, object, contexts);
+            return;
+        }
+
+        if (contexts.length == 0) {
+            statementBuffer.remove(valueFactory.createStatement(subject, predicate, object));
+        } else {
+            for (Resource context : contexts) {
+                statementBuffer.remove(valueFactory.createStatement(subject, predicate, object, context));
+            }
+        }
+
+        flushIfFull(statementBuffer);
+    }
+
+    /**
+     * <p>Removes a statement from the current transaction.</p>
+     *
+     * @see org.openrdf.repository.RepositoryConnection#remove(Statement, Resource...)
+     */
+    public void remove(Statement statement, Resource... contexts) throws RepositoryException {
+        if (contexts.length == 0) {
+            StatementBuffer statementBuffer = getStatementBuffer();
+
+            statementBuffer.remove(statement);
+            flushIfFull(statementBuffer);
+        } else {
+            remove(statement.getSubject(), statement.getPredicate(), statement.getObject(), contexts);
+        }
+    }
+
+    /**
+     * <p>Writes all buffered statements of the current transaction to its connection.</p>
+     *
+     * @throws RepositoryException if the statements could not be written.
+     */
+    public void flush() throws RepositoryException {
+        SesameTransactionObject sesameTransactionObject = getTransactionObject();
+
+        if (sesameTransactionObject.getStatementBuffer() != null) {
+            sesameTransactionObject.flushStatementBuffer(sesameConnectionFactory.getConnection());
+        }
+    }
+
+    /**
+     * @return the number of statements of the current transaction that have not been written yet.
+     */
+    public int getPendingStatementCount() {
+        StatementBuffer statementBuffer = getTransactionObject().getStatementBuffer();
+
+        return statementBuffer == null ? 0 : statementBuffer.size();
+    }
+
+    private void flushIfFull(StatementBuffer statementBuffer) {
+        if (statementBuffer.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private StatementBuffer getStatementBuffer() {
+        SesameTransactionObject sesameTransactionObject = getTransactionObject();
+        StatementBuffer statementBuffer = sesameTransactionObject.getStatementBuffer();
+
+        if (statementBuffer == null) {
+            if (sesameTransactionObject.isReadOnly()) {
+                throw new RepositoryReadOnlyException("Cannot modify data in a read-only transaction");
+            }
+
+            // begins the transaction on the connection, so the buffered statements are committed with it
+            sesameConnectionFactory.getConnection();
+
+            statementBuffer = sesameTransactionObject.createStatementBuffer();
+            sesameTransactionObject.setStatementBuffer(statementBuffer);
+        }
+
+        return statementBuffer;
+    }
+
+    private SesameTransactionObject getTransactionObject() {
+        SesameTransactionObject sesameTransactionObject = sesameConnectionFactory.getLocalTransactionObject();
+
+        if (sesameTransactionObject == null) {
+            throw new SesameTransactionException("No transaction active");
+        }
+
+        return sesameTransactionObject;
+    }
+
+    private Statement createStatement(Resource subject, IRI predicate, Value object, Resource context) {
+        return context == null
+                ? valueFactory.createStatement(subject, predicate, object)
+                : valueFactory.createStatement(subject, predicate, object, context);
+    }
+
+    private static boolean containsNullContext(Resource... contexts) {
+        for (Resource context : contexts) {
+            if (context == null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the number of buffered statements after which they are written to the connection. Defaults to
+     *                  {@value #DEFAULT_BATCH_SIZE}.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingStatementWriter{" +
+                "sesameConnectionFactory=" + sesameConnectionFactory +
+                ", batchSize=" + batchSize +
+                '}';
+    }
+}
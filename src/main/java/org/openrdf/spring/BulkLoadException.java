@@ -0,0 +1,28 @@
+package org.openrdf.spring;
+
+import org.springframework.transaction.TransactionException;
+
+/**
+ * <p>{@link BulkLoadException} is thrown when a {@link BulkLoader} fails. The chunk that was being loaded is rolled
+ * back; all statements up to {@link #getCheckpoint()} remain committed.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public class BulkLoadException extends TransactionException {
+    private static final long serialVersionUID = 1L;
+
+    private final long checkpoint;
+
+    public BulkLoadException(String message, Throwable cause, long checkpoint) {
+        super(message + " (checkpoint: " + checkpoint + ")", cause);
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return the number of statements of the input that have been committed and can be skipped when the load is
+     * resumed.
+     */
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+}
@@ -0,0 +1,16 @@
+package org.openrdf.spring;
+
+/**
+ * <p>{@link BulkLoadProgressListener} is notified by a {@link BulkLoader} whenever a chunk of statements has been
+ * committed.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+@FunctionalInterface
+public interface BulkLoadProgressListener {
+    /**
+     * @param checkpoint the number of statements of the input, in document order, that have been committed so far.
+     *                   A failed load can be resumed from this checkpoint.
+     */
+    void chunkCommitted(long checkpoint);
+}
@@ -0,0 +1,24 @@
+package org.openrdf.spring;
+
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * <p>{@link BulkLoadTransactionDefinition} marks a transaction that loads large amounts of data.</p>
+ * <p/>
+ * <p>Unless an explicit isolation level is set, {@link SesameTransactionManager} runs such transactions at the weakest
+ * isolation level the {@link org.openrdf.sail.Sail} supports ({@link org.openrdf.IsolationLevels#NONE} where
+ * available), which avoids the bookkeeping that isolating large transactions requires.</p>
+ * <p/>
+ * <p>The definition has to be passed to {@link SesameTransactionManager#getTransaction} itself; copies of it, e.g.
+ * in a {@link org.springframework.transaction.support.TransactionTemplate}, start regular transactions.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see BulkLoader
+ */
+public class BulkLoadTransactionDefinition extends DefaultTransactionDefinition {
+    private static final long serialVersionUID = 1L;
+
+    public BulkLoadTransactionDefinition() {
+        setName(BulkLoadTransactionDefinition.class.getSimpleName());
+    }
+}
@@ -0,0 +1,244 @@
+package org.openrdf.spring;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.rio.ParserConfig;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.AbstractRDFHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>{@link BulkLoader} streams RDF documents through a parser directly into a repository and commits every
+ * <code>chunkSize</code> statements in a separate {@link BulkLoadTransactionDefinition bulk-load transaction}, so
+ * neither the transaction nor the memory it takes up grows with the size of the input.</p>
+ * <p/>
+ * <p>After every commit, the number of statements committed so far is reported as a checkpoint to the
+ * {@link BulkLoadProgressListener}. If a load fails, the current chunk is rolled back and a {@link BulkLoadException}
+ * carrying the last checkpoint is thrown; passing the checkpoint to
+ * {@link #load(InputStream, String, RDFFormat, long, Resource...)} resumes the load by skipping the statements that
+ * were already committed.</p>
+ * <p/>
+ * <p>Checkpoints count statements in document order. When resuming documents that contain blank nodes, enable
+ * {@link org.openrdf.rio.helpers.BasicParserSettings#PRESERVE_BNODE_IDS} on the {@link ParserConfig} so blank nodes
+ * are identified consistently across attempts.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public class BulkLoader {
+    private static final Logger log = LoggerFactory.getLogger(BulkLoader.class);
+
+    /**
+     * The number of statements committed per transaction unless configured otherwise.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    private final SesameTransactionManager sesameTransactionManager;
+
+    private final SesameConnectionFactory sesameConnectionFactory;
+
+    private final TransactionDefinition transactionDefinition = new BulkLoadTransactionDefinition();
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private ParserConfig parserConfig = new ParserConfig();
+
+    private BulkLoadProgressListener progressListener;
+
+    /**
+     * <p>Creates a new {@link BulkLoader} that loads data through the provided transaction manager.</p>
+     *
+     * @param sesameTransactionManager The {@link SesameTransactionManager} that runs the chunk transactions.
+     * @param sesameConnectionFactory  The {@link SesameConnectionFactory} of <code>sesameTransactionManager</code>.
+     */
+    public BulkLoader(SesameTransactionManager sesameTransactionManager,
+                      SesameConnectionFactory sesameConnectionFactory) {
+        this.sesameTransactionManager = sesameTransactionManager;
+        this.sesameConnectionFactory = sesameConnectionFactory;
+    }
+
+    /**
+     * <p>Loads an RDF document from the beginning.</p>
+     *
+     * @see #load(InputStream, String, RDFFormat, long, Resource...)
+     */
+    public long load(InputStream in, String baseURI, RDFFormat dataFormat, Resource... contexts) {
+        return load(in, baseURI, dataFormat, 0L, contexts);
+    }
+
+    /**
+     * <p>Loads an RDF document, skipping the first <code>checkpoint</code> statements.</p>
+     *
+     * @param in         the document.
+     * @param baseURI    the base URI to resolve relative URIs against.
+     * @param dataFormat the serialization format of the document.
+     * @param checkpoint the number of statements that were committed by a previous attempt.
+     * @param contexts   the contexts to add the statements to; if empty, the contexts of the document are used.
+     * @return the checkpoint after the last chunk, i.e. the number of statements in the document.
+     * @throws BulkLoadException                if the document could not be read, parsed or stored.
+     * @throws IllegalTransactionStateException if a transaction is active on the current thread.
+     */
+    public long load(InputStream in, String baseURI, RDFFormat dataFormat, long checkpoint, Resource... contexts) {
+        if (sesameConnectionFactory.getLocalTransactionObject() != null) {
+            throw new IllegalTransactionStateException("Bulk loads cannot run inside an active transaction");
+        }
+
+        ChunkedCommitHandler chunkedCommitHandler = new ChunkedCommitHandler(checkpoint, contexts);
+        RDFParser parser = Rio.createParser(dataFormat);
+        parser.setParserConfig(parserConfig);
+        parser.setRDFHandler(chunkedCommitHandler);
+
+        try {
+            parser.parse(in, baseURI);
+        } catch (IOException | RuntimeException e) {
+            chunkedCommitHandler.rollback();
+            throw new BulkLoadException("Bulk load failed", e, chunkedCommitHandler.checkpoint);
+        }
+
+        return chunkedCommitHandler.checkpoint;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize the number of statements committed per transaction. Defaults to {@value #DEFAULT_CHUNK_SIZE}.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param parserConfig the configuration of the RDF parser.
+     */
+    public void setParserConfig(ParserConfig parserConfig) {
+        this.parserConfig = parserConfig;
+    }
+
+    /**
+     * @param progressListener the listener that is notified after every committed chunk.
+     */
+    public void setProgressListener(BulkLoadProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkLoader{" +
+                "sesameConnectionFactory=" + sesameConnectionFactory +
+                ", chunkSize=" + chunkSize +
+                '}';
+    }
+
+    /**
+     * <p>Adds parsed statements to the connection of the current chunk transaction and commits the chunk once it is
+     * full and at the end of the document.</p>
+     */
+    private class ChunkedCommitHandler extends AbstractRDFHandler {
+        private final long resumeFrom;
+
+        private final Resource[] contexts;
+
+        private long position;
+
+        private long checkpoint;
+
+        private int pendingStatements;
+
+        private TransactionStatus transactionStatus;
+
+        private RepositoryConnection repositoryConnection;
+
+        private ChunkedCommitHandler(long resumeFrom, Resource[] contexts) {
+            this.resumeFrom = resumeFrom;
+            this.contexts = contexts;
+            this.checkpoint = resumeFrom;
+        }
+
+        @Override
+        public void handleNamespace(String prefix, String uri) {
+            if (position >= resumeFrom) {
+                getConnection().setNamespace(prefix, uri);
+            }
+        }
+
+        @Override
+        public void handleStatement(Statement statement) {
+            position++;
+
+            if (position <= resumeFrom) {
+                return;
+            }
+
+            getConnection().add(statement, contexts);
+            pendingStatements++;
+
+            if (pendingStatements >= chunkSize) {
+                commit();
+            }
+        }
+
+        @Override
+        public void endRDF() {
+            commit();
+        }
+
+        private RepositoryConnection getConnection() {
+            if (transactionStatus == null) {
+                transactionStatus = sesameTransactionManager.getTransaction(transactionDefinition);
+                repositoryConnection = sesameConnectionFactory.getConnection();
+            }
+
+            return repositoryConnection;
+        }
+
+        private void commit() {
+            if (transactionStatus == null) {
+                return;
+            }
+
+            TransactionStatus committedTransactionStatus = transactionStatus;
+            transactionStatus = null;
+            repositoryConnection = null;
+
+            sesameTransactionManager.commit(committedTransactionStatus);
+
+            checkpoint = position;
+            pendingStatements = 0;
+
+            if (progressListener != null) {
+                progressListener.chunkCommitted(checkpoint);
+            }
+        }
+
+        private void rollback() {
+            if (transactionStatus == null) {
+                return;
+            }
+
+            TransactionStatus rolledBackTransactionStatus = transactionStatus;
+            transactionStatus = null;
+            repositoryConnection = null;
+
+            try {
+                sesameTransactionManager.rollback(rolledBackTransactionStatus);
+            } catch (RuntimeException e) {
+                log.error("Cannot roll back bulk load chunk", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.openrdf.spring;
+
+import org.openrdf.model.Statement;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>{@link ChangeSet} holds the statements that a single committed transaction added to and removed from a
+ * repository.</p>
+ * <p/>
+ * <p>A statement that was added and removed again within the transaction is part of neither list.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see ChangeSetPublisher
+ */
+public class ChangeSet {
+    private final String repositoryId;
+
+    private final String transactionName;
+
+    private final List<Statement> addedStatements;
+
+    private final List<Statement> removedStatements;
+
+    /**
+     * @param repositoryId      the id of the repository the transaction committed to.
+     * @param transactionName   the name of the transaction.
+     * @param addedStatements   the statements the transaction added.
+     * @param removedStatements the statements the transaction removed.
+     */
+    public ChangeSet(String repositoryId, String transactionName, List<Statement> addedStatements,
+                     List<Statement> removedStatements) {
+        this.repositoryId = repositoryId;
+        this.transactionName = transactionName;
+        this.addedStatements = Collections.unmodifiableList(addedStatements);
+        this.removedStatements = Collections.unmodifiableList(removedStatements);
+    }
+
+    public String getRepositoryId() {
+        return repositoryId;
+    }
+
+    public String getTransactionName() {
+        return transactionName;
+    }
+
+    public List<Statement> getAddedStatements() {
+        return addedStatements;
+    }
+
+    public List<Statement> getRemovedStatements() {
+        return removedStatements;
+    }
+
+    /**
+     * @return <code>true</code> if the transaction neither added nor removed any statements.
+     */
+    public boolean isEmpty() {
+        return addedStatements.isEmpty() && removedStatements.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "repositoryId='" + repositoryId + '\'' +
+                ", transactionName='" + transactionName + '\'' +
+                ", addedStatements=" + addedStatements.size() +
+                ", removedStatements=" + removedStatements.size() +
+                '}';
+    }
+}
@@ -0,0 +1,77 @@
+package org.openrdf.spring;
+
+import org.openrdf.model.Statement;
+import org.openrdf.sail.SailConnectionListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>{@link ChangeSetCollector} collects the statements a transaction adds and removes, as reported by the
+ * {@link org.openrdf.sail.NotifyingSailConnection} of the transaction, until the transaction commits.</p>
+ * <p/>
+ * <p>A removal cancels a preceding addition of the same statement and vice versa, so only the net changes of the
+ * transaction are kept. Statements are compared including their context.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class ChangeSetCollector implements SailConnectionListener {
+    private final Map<List<Object>, Statement> addedStatements = new LinkedHashMap<>();
+
+    private final Map<List<Object>, Statement> removedStatements = new LinkedHashMap<>();
+
+    @Override
+    public void statementAdded(Statement statement) {
+        List<Object> key = key(statement);
+
+        if (removedStatements.remove(key) == null) {
+            addedStatements.put(key, statement);
+        }
+    }
+
+    @Override
+    public void statementRemoved(Statement statement) {
+        List<Object> key = key(statement);
+
+        if (addedStatements.remove(key) == null) {
+            removedStatements.put(key, statement);
+        }
+    }
+
+    /**
+     * <p>{@link Statement#equals} ignores the context of a statement, so statements are identified by all four of
+     * their components.</p>
+     */
+    private static List<Object> key(Statement statement) {
+        return Arrays.asList(statement.getSubject(), statement.getPredicate(), statement.getObject(),
+                statement.getContext());
+    }
+
+    /**
+     * <p>Returns the collected changes and starts collecting anew.</p>
+     */
+    ChangeSet drain(String repositoryId, String transactionName) {
+        ChangeSet changeSet = new ChangeSet(repositoryId, transactionName, new ArrayList<>(addedStatements.values()),
+                new ArrayList<>(removedStatements.values()));
+
+        clear();
+
+        return changeSet;
+    }
+
+    void clear() {
+        addedStatements.clear();
+        removedStatements.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSetCollector{" +
+                "addedStatements=" + addedStatements.size() +
+                ", removedStatements=" + removedStatements.size() +
+                '}';
+    }
+}
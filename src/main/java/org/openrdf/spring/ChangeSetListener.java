@@ -0,0 +1,31 @@
+package org.openrdf.spring;
+
+import java.util.List;
+
+/**
+ * <p>{@link ChangeSetListener} receives the {@link ChangeSet}s of committed transactions from a
+ * {@link ChangeSetPublisher}.</p>
+ * <p/>
+ * <p>Callbacks are invoked on the delivery thread of the publisher, one at a time and in commit order. Change-sets
+ * queue up while a listener is busy, so a slow listener eventually blocks committing transactions or causes
+ * change-sets to be dropped. Exceptions thrown by a listener are logged and otherwise ignored.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public interface ChangeSetListener {
+    /**
+     * <p>Called with the change-sets of one or more transactions, in the order in which they were committed.</p>
+     *
+     * @param changeSets the change-sets.
+     */
+    void changesCommitted(List<ChangeSet> changeSets);
+
+    /**
+     * <p>Called before the next batch of change-sets is delivered if change-sets were dropped because the queue of
+     * the publisher was full. A listener that keeps a copy of the data should re-synchronize it.</p>
+     *
+     * @param droppedChangeSets the number of change-sets that were dropped since the previous batch.
+     */
+    default void changeSetsDropped(long droppedChangeSets) {
+    }
+}
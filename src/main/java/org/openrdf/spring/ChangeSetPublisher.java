@@ -0,0 +1,301 @@
+package org.openrdf.spring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * <p>{@link ChangeSetPublisher} delivers the {@link ChangeSet}s of committed transactions to
+ * {@link ChangeSetListener}s, e.g. to keep a search index in sync with a repository without re-querying it.</p>
+ * <p/>
+ * <p>Change-sets are queued when a transaction commits and delivered asynchronously, in the commit order of each
+ * {@link RepositoryConnectionFactory} and in batches of up to {@link #setMaxBatchSize(int) maxBatchSize} change-sets,
+ * by a single task on the publisher's executor. The queue holds at most <code>queueCapacity</code> change-sets. When
+ * it is full, a committing transaction waits up to {@link #setMaxBlockMillis(long) maxBlockMillis} for space, which
+ * slows down writers to the pace of the listeners; after that, the change-set is dropped, counted and reported to the
+ * listeners with {@link ChangeSetListener#changeSetsDropped(long)}.</p>
+ * <p/>
+ * <p>To capture change-sets, set the publisher on a {@link RepositoryConnectionFactory}:</p>
+ * <pre>
+ * &lt;bean id="changeSetPublisher" class="org.openrdf.spring.ChangeSetPublisher"&gt;
+ *     &lt;property name="listeners"&gt;
+ *         &lt;list&gt;
+ *             &lt;ref bean="searchIndexUpdater"/&gt;
+ *         &lt;/list&gt;
+ *     &lt;/property&gt;
+ * &lt;/bean&gt;
+ *
+ * &lt;bean id="repositoryConnectionFactory" class="org.openrdf.spring.RepositoryConnectionFactory"&gt;
+ *     &lt;constructor-arg ref="repository"/&gt;
+ *     &lt;property name="changeSetPublisher" ref="changeSetPublisher"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @author ameingast@gmail.com
+ * @see RepositoryConnectionFactory#setChangeSetPublisher(ChangeSetPublisher)
+ */
+public class ChangeSetPublisher implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(ChangeSetPublisher.class);
+
+    private static final ChangeSetListener[] NO_LISTENERS = new ChangeSetListener[0];
+
+    /**
+     * The number of change-sets that are queued for delivery unless configured otherwise.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * The maximum number of change-sets that are delivered at once unless configured otherwise.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    /**
+     * The time a committing transaction waits for space in a full queue unless configured otherwise.
+     */
+    public static final long DEFAULT_MAX_BLOCK_MILLIS = 1000;
+
+    private final BlockingQueue<ChangeSet> queue;
+
+    private final Executor executor;
+
+    private final ExecutorService ownedExecutor;
+
+    private final AtomicBoolean delivering = new AtomicBoolean();
+
+    private final AtomicLong unreportedDroppedChangeSets = new AtomicLong();
+
+    private final AtomicLong droppedChangeSets = new AtomicLong();
+
+    private final AtomicLong deliveredChangeSets = new AtomicLong();
+
+    private volatile ChangeSetListener[] listeners = NO_LISTENERS;
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private long maxBlockMillis = DEFAULT_MAX_BLOCK_MILLIS;
+
+    /**
+     * <p>Creates a new {@link ChangeSetPublisher} that queues up to {@link #DEFAULT_QUEUE_CAPACITY} change-sets and
+     * delivers them from its own thread.</p>
+     */
+    public ChangeSetPublisher() {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param queueCapacity the number of change-sets that are queued for delivery.
+     */
+    public ChangeSetPublisher(int queueCapacity) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sesame-change-set-publisher-");
+        threadFactory.setDaemon(true);
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.ownedExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        this.executor = ownedExecutor;
+    }
+
+    /**
+     * @param queueCapacity the number of change-sets that are queued for delivery.
+     * @param executor      the executor on which change-sets are delivered. Only one delivery task runs at a time.
+     */
+    public ChangeSetPublisher(int queueCapacity, Executor executor) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.ownedExecutor = null;
+        this.executor = executor;
+    }
+
+    /**
+     * <p>Queues the change-set of a committed transaction for delivery. Blocks for up to <code>maxBlockMillis</code>
+     * if the queue is full and drops the change-set afterwards.</p>
+     */
+    void publish(ChangeSet changeSet) {
+        if (changeSet.isEmpty() || listeners.length == 0) {
+            return;
+        }
+
+        boolean queued;
+
+        try {
+            queued = maxBlockMillis > 0
+                    ? queue.offer(changeSet, maxBlockMillis, TimeUnit.MILLISECONDS)
+                    : queue.offer(changeSet);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+
+        if (!queued) {
+            droppedChangeSets.incrementAndGet();
+
+            if (unreportedDroppedChangeSets.getAndIncrement() == 0) {
+                log.warn("Change-set queue is full, dropping change-sets until listeners catch up: {}", changeSet);
+            }
+        }
+
+        scheduleDelivery();
+    }
+
+    private void scheduleDelivery() {
+        if (delivering.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::deliver);
+            } catch (RejectedExecutionException e) {
+                delivering.set(false);
+                log.warn("Change-sets not delivered, publisher is shutting down", e);
+            }
+        }
+    }
+
+    private void deliver() {
+        try {
+            List<ChangeSet> batch = new ArrayList<>();
+
+            while (true) {
+                long dropped = unreportedDroppedChangeSets.getAndSet(0);
+
+                if (dropped > 0) {
+                    notifyListeners(listener -> listener.changeSetsDropped(dropped));
+                }
+
+                queue.drainTo(batch, maxBatchSize);
+
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                List<ChangeSet> changeSets = Collections.unmodifiableList(batch);
+
+                notifyListeners(listener -> listener.changesCommitted(changeSets));
+                deliveredChangeSets.addAndGet(changeSets.size());
+
+                batch = new ArrayList<>();
+            }
+        } finally {
+            delivering.set(false);
+        }
+
+        // change-sets published after the queue was found empty, but before delivery ended
+        if (!queue.isEmpty() || unreportedDroppedChangeSets.get() > 0) {
+            scheduleDelivery();
+        }
+    }
+
+    private void notifyListeners(Consumer<ChangeSetListener> callback) {
+        for (ChangeSetListener listener : listeners) {
+            try {
+                callback.accept(listener);
+            } catch (RuntimeException e) {
+                log.warn("Change-set listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * @param listeners the listeners that receive the change-sets. Replaces all previously registered listeners.
+     */
+    public synchronized void setListeners(List<ChangeSetListener> listeners) {
+        this.listeners = listeners.toArray(new ChangeSetListener[listeners.size()]);
+    }
+
+    /**
+     * @param listener a listener that receives the change-sets.
+     */
+    public synchronized void addListener(ChangeSetListener listener) {
+        ChangeSetListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[newListeners.length - 1] = listener;
+
+        this.listeners = newListeners;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of change-sets that are delivered to the listeners at once. Defaults to
+     *                     {@link #DEFAULT_MAX_BATCH_SIZE}.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive: " + maxBatchSize);
+        }
+
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxBlockMillis() {
+        return maxBlockMillis;
+    }
+
+    /**
+     * @param maxBlockMillis the time a committing transaction waits for space in a full queue before its change-set
+     *                       is dropped, or <code>0</code> to drop change-sets right away. Defaults to
+     *                       {@link #DEFAULT_MAX_BLOCK_MILLIS}.
+     */
+    public void setMaxBlockMillis(long maxBlockMillis) {
+        this.maxBlockMillis = maxBlockMillis;
+    }
+
+    /**
+     * @return the number of change-sets that are waiting for delivery.
+     */
+    public int getPendingChangeSetCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of change-sets that were dropped because the queue was full.
+     */
+    public long getDroppedChangeSetCount() {
+        return droppedChangeSets.get();
+    }
+
+    /**
+     * @return the number of change-sets that were delivered to the listeners.
+     */
+    public long getDeliveredChangeSetCount() {
+        return deliveredChangeSets.get();
+    }
+
+    /**
+     * <p>Delivers the queued change-sets and stops the delivery thread if it was created by this publisher.</p>
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+
+            if (!ownedExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("{} change-sets were not delivered", queue.size());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSetPublisher{" +
+                "listeners=" + Arrays.toString(listeners) +
+                ", executor=" + executor +
+                ", pendingChangeSets=" + queue.size() +
+                ", droppedChangeSets=" + droppedChangeSets +
+                ", maxBatchSize=" + maxBatchSize +
+                ", maxBlockMillis=" + maxBlockMillis +
+                '}';
+    }
+}
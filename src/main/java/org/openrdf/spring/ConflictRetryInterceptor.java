@@ -0,0 +1,269 @@
+package org.openrdf.spring;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openrdf.sail.SailConflictException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>{@link ConflictRetryInterceptor} re-invokes methods annotated with {@link RetryOnConflict} when they fail because
+ * of a {@link SailConflictException}, i.e. because a concurrent transaction changed data the transaction depends
+ * on.</p>
+ * <p/>
+ * <p>Retries are delayed by a jittered exponential backoff: before the n-th retry, the interceptor waits for a random
+ * time between <code>0</code> and <code>min(maxBackoffMillis, initialBackoffMillis * multiplier^(n-1))</code>, which
+ * spreads out competing writers. After <code>maxAttempts</code> attempts, the last conflict is thrown.</p>
+ * <p/>
+ * <p>The interceptor counts attempts, conflicts, retries and invocations that ran out of attempts; the conflict rate
+ * shows how contended the store is.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see ConflictRetryPostProcessor
+ */
+public class ConflictRetryInterceptor implements MethodInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(ConflictRetryInterceptor.class);
+
+    /**
+     * The maximum number of attempts per invocation unless configured otherwise.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /**
+     * The upper bound of the backoff before the first retry unless configured otherwise.
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 10;
+
+    /**
+     * The maximum backoff before a retry unless configured otherwise.
+     */
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 1000;
+
+    private final Map<Method, RetryOnConflict> annotations = new ConcurrentHashMap<>();
+
+    private final AtomicLong attempts = new AtomicLong();
+
+    private final AtomicLong conflicts = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final AtomicLong exhaustedRetries = new AtomicLong();
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+    private double multiplier = 2.0;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // a conflict fails the surrounding transaction, which is retried as a whole if at all
+            return invocation.proceed();
+        }
+
+        RetryOnConflict retryOnConflict = findAnnotation(invocation);
+        int invocationMaxAttempts = retryOnConflict != null && retryOnConflict.maxAttempts() > 0
+                ? retryOnConflict.maxAttempts() : maxAttempts;
+        long invocationInitialBackoffMillis = retryOnConflict != null && retryOnConflict.initialBackoffMillis() > 0
+                ? retryOnConflict.initialBackoffMillis() : initialBackoffMillis;
+        long invocationMaxBackoffMillis = retryOnConflict != null && retryOnConflict.maxBackoffMillis() > 0
+                ? retryOnConflict.maxBackoffMillis() : maxBackoffMillis;
+
+        for (int attempt = 1; ; attempt++) {
+            attempts.incrementAndGet();
+
+            try {
+                return invocation instanceof ProxyMethodInvocation
+                        ? ((ProxyMethodInvocation) invocation).invocableClone().proceed()
+                        : invocation.proceed();
+            } catch (Throwable t) {
+                if (!isConflict(t)) {
+                    throw t;
+                }
+
+                conflicts.incrementAndGet();
+
+                if (attempt >= invocationMaxAttempts || !(invocation instanceof ProxyMethodInvocation)) {
+                    exhaustedRetries.incrementAndGet();
+                    throw t;
+                }
+
+                long backoffMillis = backoffMillis(attempt, invocationInitialBackoffMillis,
+                        invocationMaxBackoffMillis);
+
+                log.debug("Retrying {} after a conflict in {}ms (attempt {} of {})", invocation.getMethod(),
+                        backoffMillis, attempt + 1, invocationMaxAttempts);
+
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw t;
+                }
+
+                retries.incrementAndGet();
+            }
+        }
+    }
+
+    private RetryOnConflict findAnnotation(MethodInvocation invocation) {
+        Method method = invocation.getMethod();
+        RetryOnConflict retryOnConflict = annotations.get(method);
+
+        if (retryOnConflict == null) {
+            Object target = invocation.getThis();
+            Method targetMethod = target == null ? method : AopUtils.getMostSpecificMethod(method, target.getClass());
+
+            retryOnConflict = AnnotationUtils.findAnnotation(targetMethod, RetryOnConflict.class);
+
+            if (retryOnConflict == null) {
+                retryOnConflict = AnnotationUtils.findAnnotation(targetMethod.getDeclaringClass(),
+                        RetryOnConflict.class);
+            }
+
+            if (retryOnConflict != null) {
+                annotations.put(method, retryOnConflict);
+            }
+        }
+
+        return retryOnConflict;
+    }
+
+    private long backoffMillis(int attempt, long initialBackoffMillis, long maxBackoffMillis) {
+        double bound = Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(multiplier, attempt - 1));
+
+        return (long) (ThreadLocalRandom.current().nextDouble() * bound);
+    }
+
+    /**
+     * @return <code>true</code> if <code>throwable</code> was caused by a conflicting concurrent transaction.
+     */
+    static boolean isConflict(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SailConflictException) {
+                return true;
+            }
+
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+
+        return false;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts the maximum number of attempts per invocation, including the first one. Defaults to
+     *                    {@link #DEFAULT_MAX_ATTEMPTS}.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("The number of attempts must be positive: " + maxAttempts);
+        }
+
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    /**
+     * @param initialBackoffMillis the upper bound of the backoff before the first retry. Defaults to
+     *                             {@link #DEFAULT_INITIAL_BACKOFF_MILLIS}.
+     */
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * @param maxBackoffMillis the maximum backoff before a retry. Defaults to {@link #DEFAULT_MAX_BACKOFF_MILLIS}.
+     */
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * @param multiplier the factor by which the upper bound of the backoff grows with every retry. Defaults to
+     *                   <code>2.0</code>.
+     */
+    public void setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+    }
+
+    /**
+     * @return the number of attempts, including the first attempt of every invocation.
+     */
+    public long getAttemptCount() {
+        return attempts.get();
+    }
+
+    /**
+     * @return the number of attempts that failed because of a conflict.
+     */
+    public long getConflictCount() {
+        return conflicts.get();
+    }
+
+    /**
+     * @return the number of attempts that were retried after a conflict.
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of invocations that failed because every attempt conflicted.
+     */
+    public long getExhaustedRetryCount() {
+        return exhaustedRetries.get();
+    }
+
+    /**
+     * @return the share of attempts that failed because of a conflict, or <code>0</code> if there were no attempts.
+     */
+    public double getConflictRate() {
+        long attemptCount = attempts.get();
+
+        return attemptCount == 0 ? 0.0 : (double) conflicts.get() / attemptCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ConflictRetryInterceptor{" +
+                "maxAttempts=" + maxAttempts +
+                ", initialBackoffMillis=" + initialBackoffMillis +
+                ", maxBackoffMillis=" + maxBackoffMillis +
+                ", multiplier=" + multiplier +
+                ", attempts=" + attempts +
+                ", conflicts=" + conflicts +
+                ", retries=" + retries +
+                ", exhaustedRetries=" + exhaustedRetries +
+                '}';
+    }
+}
@@ -0,0 +1,42 @@
+package org.openrdf.spring;
+
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.framework.AbstractAdvisingBeanPostProcessor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+
+/**
+ * <p>{@link ConflictRetryPostProcessor} applies a {@link ConflictRetryInterceptor} to all beans with methods or
+ * classes annotated with {@link RetryOnConflict}.</p>
+ * <p/>
+ * <p>The retry advice is placed in front of existing advice, in particular in front of the transaction interceptor
+ * of beans that are already proxied for {@link org.springframework.transaction.annotation.Transactional}, so that
+ * every attempt runs in its own transaction.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public class ConflictRetryPostProcessor extends AbstractAdvisingBeanPostProcessor {
+    private final ConflictRetryInterceptor conflictRetryInterceptor;
+
+    public ConflictRetryPostProcessor(ConflictRetryInterceptor conflictRetryInterceptor) {
+        this.conflictRetryInterceptor = conflictRetryInterceptor;
+
+        Pointcut pointcut = new ComposablePointcut(new AnnotationMatchingPointcut(RetryOnConflict.class, true))
+                .union(AnnotationMatchingPointcut.forMethodAnnotation(RetryOnConflict.class));
+
+        this.advisor = new DefaultPointcutAdvisor(pointcut, conflictRetryInterceptor);
+        setBeforeExistingAdvisors(true);
+    }
+
+    public ConflictRetryInterceptor getConflictRetryInterceptor() {
+        return conflictRetryInterceptor;
+    }
+
+    @Override
+    public String toString() {
+        return "ConflictRetryPostProcessor{" +
+                "conflictRetryInterceptor=" + conflictRetryInterceptor +
+                '}';
+    }
+}
@@ -0,0 +1,405 @@
+package org.openrdf.spring;
+
+import info.aduna.iteration.Iteration;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Namespace;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.BooleanQuery;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.GraphQuery;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.Operation;
+import org.openrdf.query.Query;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.TupleQueryResultHandler;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.Update;
+import org.openrdf.query.UpdateExecutionException;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.repository.base.RepositoryConnectionWrapper;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+
+/**
+ * <p>{@link DeadlineRepositoryConnection} enforces the timeout of a transaction on its {@link RepositoryConnection}.</p>
+ * <p/>
+ * <p>Every query and update prepared through the connection gets a maximum execution time that ends with the
+ * transaction deadline. The time is computed when the query is evaluated or the update is executed, so a prepared
+ * operation that is run later, or repeatedly, never outlives the deadline. Every operation on the connection fails with a
+ * {@link org.springframework.transaction.TransactionTimedOutException} once the deadline has passed, which also marks
+ * the transaction rollback-only.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see SesameTransactionObject#checkTransactionTimeout()
+ */
+class DeadlineRepositoryConnection extends RepositoryConnectionWrapper {
+    private final SesameTransactionObject sesameTransactionObject;
+
+    DeadlineRepositoryConnection(SesameTransactionObject sesameTransactionObject, RepositoryConnection delegate) {
+        super(delegate.getRepository(), delegate);
+        this.sesameTransactionObject = sesameTransactionObject;
+    }
+
+    @Override
+    public Query prepareQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        sesameTransactionObject.checkTransactionTimeout();
+        Query preparedQuery = super.prepareQuery(ql, query, baseURI);
+
+        if (preparedQuery instanceof TupleQuery) {
+            return new DeadlineTupleQuery((TupleQuery) preparedQuery);
+        } else if (preparedQuery instanceof GraphQuery) {
+            return new DeadlineGraphQuery((GraphQuery) preparedQuery);
+        } else if (preparedQuery instanceof BooleanQuery) {
+            return new DeadlineBooleanQuery((BooleanQuery) preparedQuery);
+        }
+
+        return preparedQuery;
+    }
+
+    @Override
+    public TupleQuery prepareTupleQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        sesameTransactionObject.checkTransactionTimeout();
+        return new DeadlineTupleQuery(super.prepareTupleQuery(ql, query, baseURI));
+    }
+
+    @Override
+    public GraphQuery prepareGraphQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        sesameTransactionObject.checkTransactionTimeout();
+        return new DeadlineGraphQuery(super.prepareGraphQuery(ql, query, baseURI));
+    }
+
+    @Override
+    public BooleanQuery prepareBooleanQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        sesameTransactionObject.checkTransactionTimeout();
+        return new DeadlineBooleanQuery(super.prepareBooleanQuery(ql, query, baseURI));
+    }
+
+    @Override
+    public Update prepareUpdate(QueryLanguage ql, String update, String baseURI) throws MalformedQueryException {
+        sesameTransactionObject.checkTransactionTimeout();
+        return new DeadlineUpdate(super.prepareUpdate(ql, update, baseURI));
+    }
+
+    @Override
+    public RepositoryResult<Statement> getStatements(Resource subj, IRI pred, Value obj, boolean includeInferred,
+                                                     Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        return super.getStatements(subj, pred, obj, includeInferred, contexts);
+    }
+
+    @Override
+    public boolean hasStatement(Resource subj, IRI pred, Value obj, boolean includeInferred, Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        return super.hasStatement(subj, pred, obj, includeInferred, contexts);
+    }
+
+    @Override
+    public boolean hasStatement(Statement st, boolean includeInferred, Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        return super.hasStatement(st, includeInferred, contexts);
+    }
+
+    @Override
+    public void exportStatements(Resource subj, IRI pred, Value obj, boolean includeInferred, RDFHandler handler,
+                                 Resource... contexts) throws RDFHandlerException {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.exportStatements(subj, pred, obj, includeInferred, handler, contexts);
+    }
+
+    @Override
+    public RepositoryResult<Resource> getContextIDs() {
+        sesameTransactionObject.checkTransactionTimeout();
+        return super.getContextIDs();
+    }
+
+    @Override
+    public RepositoryResult<Namespace> getNamespaces() {
+        sesameTransactionObject.checkTransactionTimeout();
+        return super.getNamespaces();
+    }
+
+    @Override
+    public long size(Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        return super.size(contexts);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        sesameTransactionObject.checkTransactionTimeout();
+        return super.isEmpty();
+    }
+
+    @Override
+    public void add(File file, String baseURI, RDFFormat dataFormat, Resource... contexts)
+            throws IOException, RDFParseException {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.add(file, baseURI, dataFormat, contexts);
+    }
+
+    @Override
+    public void add(InputStream in, String baseURI, RDFFormat dataFormat, Resource... contexts)
+            throws IOException, RDFParseException {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.add(in, baseURI, dataFormat, contexts);
+    }
+
+    @Override
+    public void add(Reader reader, String baseURI, RDFFormat dataFormat, Resource... contexts)
+            throws IOException, RDFParseException {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.add(reader, baseURI, dataFormat, contexts);
+    }
+
+    @Override
+    public void add(URL url, String baseURI, RDFFormat dataFormat, Resource... contexts)
+            throws IOException, RDFParseException {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.add(url, baseURI, dataFormat, contexts);
+    }
+
+    @Override
+    public void add(Iterable<? extends Statement> statements, Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.add(statements, contexts);
+    }
+
+    @Override
+    public <E extends Exception> void add(Iteration<? extends Statement, E> statements, Resource... contexts)
+            throws E {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.add(statements, contexts);
+    }
+
+    @Override
+    public void add(Resource subject, IRI predicate, Value object, Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.add(subject, predicate, object, contexts);
+    }
+
+    @Override
+    public void add(Statement st, Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.add(st, contexts);
+    }
+
+    @Override
+    public void remove(Iterable<? extends Statement> statements, Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.remove(statements, contexts);
+    }
+
+    @Override
+    public <E extends Exception> void remove(Iteration<? extends Statement, E> statements, Resource... contexts)
+            throws E {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.remove(statements, contexts);
+    }
+
+    @Override
+    public void remove(Resource subject, IRI predicate, Value object, Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.remove(subject, predicate, object, contexts);
+    }
+
+    @Override
+    public void remove(Statement st, Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.remove(st, contexts);
+    }
+
+    @Override
+    public void clear(Resource... contexts) {
+        sesameTransactionObject.checkTransactionTimeout();
+        super.clear(contexts);
+    }
+
+    @Override
+    public String toString() {
+        return "DeadlineRepositoryConnection{" +
+                "delegate=" + getDelegate() +
+                ", sesameTransactionObject=" + sesameTransactionObject +
+                '}';
+    }
+
+    /**
+     * <p>Limits the execution time of an operation to the time left until the transaction deadline, or to the
+     * execution time set on the operation if that ends earlier.</p>
+     */
+    private abstract class DeadlineOperation<O extends Operation> implements Operation {
+        protected final O delegate;
+
+        private int maxExecutionTime;
+
+        private DeadlineOperation(O delegate) {
+            this.delegate = delegate;
+            this.maxExecutionTime = delegate.getMaxExecutionTime();
+        }
+
+        /**
+         * <p>Sets the remaining time on the delegate right before it runs.</p>
+         *
+         * @throws org.springframework.transaction.TransactionTimedOutException if the deadline has passed.
+         */
+        protected void applyDeadline() {
+            delegate.setMaxExecutionTime(getMaxExecutionTime());
+        }
+
+        @Override
+        public void setBinding(String name, Value value) {
+            delegate.setBinding(name, value);
+        }
+
+        @Override
+        public void removeBinding(String name) {
+            delegate.removeBinding(name);
+        }
+
+        @Override
+        public void clearBindings() {
+            delegate.clearBindings();
+        }
+
+        @Override
+        public BindingSet getBindings() {
+            return delegate.getBindings();
+        }
+
+        @Override
+        public void setDataset(Dataset dataset) {
+            delegate.setDataset(dataset);
+        }
+
+        @Override
+        public Dataset getDataset() {
+            return delegate.getDataset();
+        }
+
+        @Override
+        public void setIncludeInferred(boolean includeInferred) {
+            delegate.setIncludeInferred(includeInferred);
+        }
+
+        @Override
+        public boolean getIncludeInferred() {
+            return delegate.getIncludeInferred();
+        }
+
+        @Override
+        public void setMaxExecutionTime(int maxExecutionTime) {
+            this.maxExecutionTime = maxExecutionTime;
+        }
+
+        /**
+         * @return the seconds left until the transaction deadline, or the execution time set on the operation if
+         * that is shorter.
+         * @throws org.springframework.transaction.TransactionTimedOutException if the deadline has passed.
+         */
+        @Override
+        public int getMaxExecutionTime() {
+            int timeToLive = sesameTransactionObject.getTimeToLiveInSeconds();
+
+            return maxExecutionTime > 0 ? Math.min(maxExecutionTime, timeToLive) : timeToLive;
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+
+    private abstract class DeadlineQuery<Q extends Query> extends DeadlineOperation<Q> implements Query {
+        private DeadlineQuery(Q delegate) {
+            super(delegate);
+        }
+
+        @Override
+        @Deprecated
+        public void setMaxQueryTime(int maxQueryTime) {
+            setMaxExecutionTime(maxQueryTime);
+        }
+
+        @Override
+        @Deprecated
+        public int getMaxQueryTime() {
+            return getMaxExecutionTime();
+        }
+    }
+
+    private class DeadlineTupleQuery extends DeadlineQuery<TupleQuery> implements TupleQuery {
+        private DeadlineTupleQuery(TupleQuery delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public TupleQueryResult evaluate() throws QueryEvaluationException {
+            applyDeadline();
+            return delegate.evaluate();
+        }
+
+        @Override
+        public void evaluate(TupleQueryResultHandler handler)
+                throws QueryEvaluationException, TupleQueryResultHandlerException {
+            applyDeadline();
+            delegate.evaluate(handler);
+        }
+    }
+
+    private class DeadlineGraphQuery extends DeadlineQuery<GraphQuery> implements GraphQuery {
+        private DeadlineGraphQuery(GraphQuery delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public GraphQueryResult evaluate() throws QueryEvaluationException {
+            applyDeadline();
+            return delegate.evaluate();
+        }
+
+        @Override
+        public void evaluate(RDFHandler handler) throws QueryEvaluationException, RDFHandlerException {
+            applyDeadline();
+            delegate.evaluate(handler);
+        }
+    }
+
+    private class DeadlineBooleanQuery extends DeadlineQuery<BooleanQuery> implements BooleanQuery {
+        private DeadlineBooleanQuery(BooleanQuery delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public boolean evaluate() throws QueryEvaluationException {
+            applyDeadline();
+            return delegate.evaluate();
+        }
+    }
+
+    private class DeadlineUpdate extends DeadlineOperation<Update> implements Update {
+        private DeadlineUpdate(Update delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void execute() throws UpdateExecutionException {
+            applyDeadline();
+            delegate.execute();
+        }
+    }
+}
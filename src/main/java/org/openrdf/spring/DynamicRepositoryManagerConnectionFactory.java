@@ -7,26 +7,87 @@ import org.openrdf.repository.config.RepositoryConfig;
 import org.openrdf.repository.config.RepositoryConfigException;
 import org.openrdf.repository.config.RepositoryImplConfig;
 import org.openrdf.repository.manager.RepositoryManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * <p>{@link RepositoryManagerConnectionFactory} handles connections to a multiple corresponding
  * {@link org.openrdf.repository.Repository}s managed by a {@link org.openrdf.repository.manager.RepositoryManager}
  * and manages the transaction state (represented by {@link SesameTransactionObject}).</p>
+ * <p/>
+ * <p>Repositories are initialized on first access. Optionally, repositories that were not used for
+ * <code>idleTimeoutMillis</code>, or the least recently used repositories beyond <code>maxRepositories</code>, are
+ * shut down and transparently re-opened on their next access. A repository with an active transaction is never shut
+ * down.</p>
  *
  * @author ameingast@gmail.com
  */
-public class DynamicRepositoryManagerConnectionFactory implements SesameConnectionFactory, DisposableBean {
+public class DynamicRepositoryManagerConnectionFactory implements SesameConnectionFactory, InitializingBean, DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(DynamicRepositoryManagerConnectionFactory.class);
+
     private final RepositoryManager repositoryManager;
 
     private final RepositoryIdProvider repositoryIdProvider;
 
     private final RepositoryImplConfig repositoryImplConfig;
 
-    private final Map<String, RepositoryConnectionFactory> repositoryConnectionFactoryMap;
+    private final ConcurrentMap<String, RepositoryConnectionFactoryHolder> repositoryConnectionFactoryMap;
+
+    private final ConcurrentMap<String, Object> repositoryLocks;
+
+    private int maxRepositories = 0;
+
+    private long idleTimeoutMillis = 0;
+
+    private long evictionIntervalMillis = TimeUnit.MINUTES.toMillis(1);
+
+    private ParsedQueryCache parsedQueryCache;
+
+    private QueryResultCache queryResultCache;
+
+    private boolean lazyConnections;
+
+    private boolean groupCommitEnabled;
+
+    private long groupCommitMaxDelayMillis;
+
+    private int groupCommitMaxSize = RepositoryConnectionFactory.DEFAULT_GROUP_COMMIT_MAX_SIZE;
+
+    private SlowTransactionLog slowTransactionLog;
+
+    private ChangeSetPublisher changeSetPublisher;
+
+    private boolean stagingEnabled;
+
+    private File stagingDirectory;
+
+    private int stagingMemoryBytes = RepositoryConnectionFactory.DEFAULT_STAGING_MEMORY_BYTES;
+
+    private int stagingHeapStatements = RepositoryConnectionFactory.DEFAULT_STAGING_HEAP_STATEMENTS;
+
+    private AdmissionPolicy admissionPolicy;
+
+    private Map<String, AdmissionPolicy> admissionPolicies = new HashMap<>();
+
+    private ScheduledExecutorService evictionExecutor;
 
     /**
      * <p>Creates a new {@link DynamicRepositoryManagerConnectionFactory} for the {@link org.openrdf.repository.Repository}
@@ -53,7 +114,8 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
         this.repositoryManager = repositoryManager;
         this.repositoryImplConfig = repositoryImplConfig;
         this.repositoryIdProvider = repositoryIdProvider;
-        this.repositoryConnectionFactoryMap = new HashMap<>(128);
+        this.repositoryConnectionFactoryMap = new ConcurrentHashMap<>(128);
+        this.repositoryLocks = new ConcurrentHashMap<>();
     }
 
     /**
@@ -61,7 +123,7 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
      */
     @Override
     public RepositoryConnection getConnection() {
-        return getRepositoryConnectionFactory().getConnection();
+        return getRepositoryConnectionFactoryHolder().repositoryConnectionFactory.getConnection();
     }
 
     /**
@@ -69,7 +131,16 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
      */
     @Override
     public void closeConnection() {
-        getRepositoryConnectionFactory().closeConnection();
+        RepositoryConnectionFactoryHolder holder = getRepositoryConnectionFactoryHolder();
+        boolean active = holder.repositoryConnectionFactory.getLocalTransactionObject() != null;
+
+        try {
+            holder.repositoryConnectionFactory.closeConnection();
+        } finally {
+            if (active) {
+                holder.release();
+            }
+        }
     }
 
     /**
@@ -77,7 +148,23 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
      */
     @Override
     public SesameTransactionObject createTransaction() throws RepositoryException {
-        return getRepositoryConnectionFactory().createTransaction();
+        RepositoryConnectionFactoryHolder holder =
+                acquireRepositoryConnectionFactoryHolder(repositoryIdProvider.getRepositoryId());
+
+        try {
+            return holder.repositoryConnectionFactory.createTransaction();
+        } catch (RuntimeException e) {
+            holder.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void admitTransaction(SesameTransactionObject sesameTransactionObject) {
+        getRepositoryConnectionFactoryHolder().repositoryConnectionFactory.admitTransaction(sesameTransactionObject);
     }
 
     /**
@@ -85,7 +172,7 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
      */
     @Override
     public void endTransaction(boolean rollback) throws RepositoryException {
-        getRepositoryConnectionFactory().endTransaction(rollback);
+        getRepositoryConnectionFactoryHolder().repositoryConnectionFactory.endTransaction(rollback);
     }
 
     /**
@@ -93,19 +180,122 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
      */
     @Override
     public SesameTransactionObject getLocalTransactionObject() {
-        return getRepositoryConnectionFactory().getLocalTransactionObject();
+        return getRepositoryConnectionFactoryHolder().repositoryConnectionFactory.getLocalTransactionObject();
+    }
+
+    /**
+     * @return the {@link RepositoryManager} holding the repositories of this factory.
+     */
+    RepositoryManager getRepositoryManager() {
+        return repositoryManager;
+    }
+
+    /**
+     * @return the {@link RepositoryConnectionFactory} for the current repository-id.
+     */
+    RepositoryConnectionFactory getRepositoryConnectionFactory() {
+        return getRepositoryConnectionFactoryHolder().repositoryConnectionFactory;
+    }
+
+    /**
+     * <p>Acquires the {@link RepositoryConnectionFactory} for <code>repositoryId</code> independently of the current
+     * repository-id. The repository is not evicted until the factory is released with
+     * {@link #releaseRepositoryConnectionFactory(String)}.</p>
+     */
+    RepositoryConnectionFactory acquireRepositoryConnectionFactory(String repositoryId) {
+        return acquireRepositoryConnectionFactoryHolder(repositoryId).repositoryConnectionFactory;
+    }
+
+    /**
+     * <p>Releases a factory acquired with {@link #acquireRepositoryConnectionFactory(String)}.</p>
+     */
+    void releaseRepositoryConnectionFactory(String repositoryId) {
+        repositoryConnectionFactoryMap.get(repositoryId).release();
+    }
+
+    private RepositoryConnectionFactoryHolder acquireRepositoryConnectionFactoryHolder(String repositoryId) {
+        while (true) {
+            RepositoryConnectionFactoryHolder holder = getRepositoryConnectionFactoryHolder(repositoryId);
+
+            if (holder.acquire()) {
+                return holder;
+            }
+
+            // The repository is being evicted concurrently; wait for the eviction to finish and re-open it.
+            holder = initializeRepositoryConnectionFactoryOnce(repositoryId);
+
+            if (holder.acquire()) {
+                return holder;
+            }
+        }
     }
 
-    private synchronized RepositoryConnectionFactory getRepositoryConnectionFactory() {
-        String repositoryId = repositoryIdProvider.getRepositoryId();
-        RepositoryConnectionFactory repositoryConnectionFactory = repositoryConnectionFactoryMap.get(repositoryId);
+    private RepositoryConnectionFactoryHolder getRepositoryConnectionFactoryHolder() {
+        return getRepositoryConnectionFactoryHolder(repositoryIdProvider.getRepositoryId());
+    }
 
-        if (repositoryConnectionFactory == null) {
-            repositoryConnectionFactory = initializeRepositoryConnectionFactory(repositoryId);
-            repositoryConnectionFactoryMap.put(repositoryId, repositoryConnectionFactory);
+    /**
+     * <p>Looks up the {@link RepositoryConnectionFactory} for <code>repositoryId</code>. Lookups of already
+     * initialized repositories never block; only the first access to a repository-id initializes it, and
+     * initialization of one repository-id does not block lookups of any other repository-id.</p>
+     */
+    private RepositoryConnectionFactoryHolder getRepositoryConnectionFactoryHolder(String repositoryId) {
+        RepositoryConnectionFactoryHolder holder = repositoryConnectionFactoryMap.get(repositoryId);
+
+        if (holder == null) {
+            holder = initializeRepositoryConnectionFactoryOnce(repositoryId);
         }
 
-        return repositoryConnectionFactory;
+        return holder;
+    }
+
+    private RepositoryConnectionFactoryHolder initializeRepositoryConnectionFactoryOnce(String repositoryId) {
+        return withRepositoryLock(repositoryId, () -> {
+            RepositoryConnectionFactoryHolder holder = repositoryConnectionFactoryMap.get(repositoryId);
+
+            if (holder == null) {
+                holder = new RepositoryConnectionFactoryHolder(repositoryId,
+                        initializeRepositoryConnectionFactory(repositoryId));
+
+                RepositoryConnectionFactoryHolder concurrentHolder =
+                        repositoryConnectionFactoryMap.putIfAbsent(repositoryId, holder);
+
+                if (concurrentHolder != null) {
+                    return concurrentHolder;
+                }
+
+                scheduleEvictionIfFull();
+            }
+
+            return holder;
+        });
+    }
+
+    /**
+     * <p>Runs <code>callback</code> while holding the lock of <code>repositoryId</code>, which serializes the
+     * initialization and eviction of a repository without affecting other repositories.</p>
+     * <p/>
+     * <p>The lock is removed as soon as the repository-id has no open repository, so that the locks do not outlive
+     * evicted repositories. Threads that were waiting for a removed lock retry with the current one.</p>
+     */
+    private <T> T withRepositoryLock(String repositoryId, Supplier<T> callback) {
+        while (true) {
+            Object repositoryLock = repositoryLocks.computeIfAbsent(repositoryId, id -> new Object());
+
+            synchronized (repositoryLock) {
+                if (repositoryLocks.get(repositoryId) != repositoryLock) {
+                    continue;
+                }
+
+                try {
+                    return callback.get();
+                } finally {
+                    if (!repositoryConnectionFactoryMap.containsKey(repositoryId)) {
+                        repositoryLocks.remove(repositoryId, repositoryLock);
+                    }
+                }
+            }
+        }
     }
 
     private RepositoryConnectionFactory initializeRepositoryConnectionFactory(String repositoryId) {
@@ -123,12 +313,118 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
                 }
             }
 
-            return new RepositoryConnectionFactory(repository);
+            RepositoryConnectionFactory repositoryConnectionFactory = new RepositoryConnectionFactory(repository);
+            repositoryConnectionFactory.setRepositoryId(repositoryId);
+            repositoryConnectionFactory.setParsedQueryCache(parsedQueryCache);
+            repositoryConnectionFactory.setQueryResultCache(queryResultCache);
+            repositoryConnectionFactory.setLazyConnections(lazyConnections);
+            repositoryConnectionFactory.setGroupCommitEnabled(groupCommitEnabled);
+            repositoryConnectionFactory.setGroupCommitMaxDelayMillis(groupCommitMaxDelayMillis);
+            repositoryConnectionFactory.setGroupCommitMaxSize(groupCommitMaxSize);
+            repositoryConnectionFactory.setSlowTransactionLog(slowTransactionLog);
+            repositoryConnectionFactory.setChangeSetPublisher(changeSetPublisher);
+            repositoryConnectionFactory.setStagingEnabled(stagingEnabled);
+            repositoryConnectionFactory.setStagingDirectory(stagingDirectory);
+            repositoryConnectionFactory.setStagingMemoryBytes(stagingMemoryBytes);
+            repositoryConnectionFactory.setStagingHeapStatements(stagingHeapStatements);
+            repositoryConnectionFactory.setAdmissionPolicy(admissionPolicies.getOrDefault(repositoryId,
+                    admissionPolicy));
+
+            return repositoryConnectionFactory;
         } catch (RepositoryException | RepositoryConfigException e) {
             throw new SesameTransactionException(e);
         }
     }
 
+    private void scheduleEvictionIfFull() {
+        if (evictionExecutor != null && maxRepositories > 0 && repositoryConnectionFactoryMap.size() > maxRepositories) {
+            try {
+                evictionExecutor.execute(this::evictRepositories);
+            } catch (RejectedExecutionException e) {
+                log.debug("Eviction skipped, factory is shutting down", e);
+            }
+        }
+    }
+
+    /**
+     * <p>Shuts down repositories that were idle for longer than <code>idleTimeoutMillis</code> and, if more than
+     * <code>maxRepositories</code> repositories remain open, the least recently used idle repositories.</p>
+     */
+    void evictRepositories() {
+        long now = System.currentTimeMillis();
+        List<RepositoryConnectionFactoryHolder> idleHolders = new ArrayList<>();
+
+        for (RepositoryConnectionFactoryHolder holder : repositoryConnectionFactoryMap.values()) {
+            if (holder.isIdle()) {
+                if (idleTimeoutMillis > 0 && now - holder.lastUsed > idleTimeoutMillis) {
+                    evict(holder);
+                } else {
+                    idleHolders.add(holder);
+                }
+            }
+        }
+
+        if (maxRepositories > 0 && repositoryConnectionFactoryMap.size() > maxRepositories) {
+            idleHolders.sort(Comparator.comparingLong(holder -> holder.lastUsed));
+
+            for (RepositoryConnectionFactoryHolder holder : idleHolders) {
+                if (repositoryConnectionFactoryMap.size() <= maxRepositories) {
+                    break;
+                }
+
+                evict(holder);
+            }
+        }
+    }
+
+    private void evict(RepositoryConnectionFactoryHolder holder) {
+        withRepositoryLock(holder.repositoryId, () -> {
+            if (holder.evict()) {
+                try {
+                    holder.repositoryConnectionFactory.destroy();
+                    log.debug("Shut down idle repository {}", holder.repositoryId);
+
+                    if (queryResultCache != null) {
+                        queryResultCache.invalidate(holder.repositoryId);
+                    }
+                } catch (Exception e) {
+                    log.error(e.getMessage(), e);
+                } finally {
+                    repositoryConnectionFactoryMap.remove(holder.repositoryId, holder);
+                }
+            }
+
+            return null;
+        });
+    }
+
+    int getRepositoryCount() {
+        return repositoryConnectionFactoryMap.size();
+    }
+
+    int getRepositoryLockCount() {
+        return repositoryLocks.size();
+    }
+
+    /**
+     * <p>Starts the background eviction of repositories if <code>idleTimeoutMillis</code> or
+     * <code>maxRepositories</code> are set.</p>
+     */
+    @Override
+    public synchronized void afterPropertiesSet() {
+        if (evictionExecutor == null && (idleTimeoutMillis > 0 || maxRepositories > 0)) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sesame-repository-eviction-");
+            threadFactory.setDaemon(true);
+
+            evictionExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+            if (evictionIntervalMillis > 0) {
+                evictionExecutor.scheduleWithFixedDelay(this::evictRepositories, evictionIntervalMillis,
+                        evictionIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
     /**
      * <p>Shuts down the associated {@link Repository}s if they were initialized before and resets the
      * state of the object.</p>
@@ -137,13 +433,182 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
      */
     @Override
     public void destroy() throws Exception {
-        for (RepositoryConnectionFactory repositoryConnectionFactory : repositoryConnectionFactoryMap.values()) {
-            repositoryConnectionFactory.destroy();
+        synchronized (this) {
+            if (evictionExecutor != null) {
+                evictionExecutor.shutdownNow();
+                evictionExecutor = null;
+            }
+        }
+
+        for (RepositoryConnectionFactoryHolder holder : repositoryConnectionFactoryMap.values()) {
+            holder.repositoryConnectionFactory.destroy();
         }
 
         repositoryConnectionFactoryMap.clear();
     }
 
+    /**
+     * @param maxRepositories the number of repositories that are kept open. Once more repositories are open, the
+     *                        least recently used repositories without an active transaction are shut down. Defaults to
+     *                        <code>0</code>, which keeps all repositories open.
+     */
+    public void setMaxRepositories(int maxRepositories) {
+        this.maxRepositories = maxRepositories;
+    }
+
+    /**
+     * @param idleTimeoutMillis the time after which a repository without transactions is shut down. Defaults to
+     *                          <code>0</code>, which keeps idle repositories open.
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * @param evictionIntervalMillis the interval in which idle repositories are shut down. Defaults to 1 minute.
+     */
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    /**
+     * @param parsedQueryCache the cache from which queries on connections to all repositories are prepared. Disabled
+     *                         (<code>null</code>) by default.
+     * @see RepositoryConnectionFactory#setParsedQueryCache(ParsedQueryCache)
+     */
+    public void setParsedQueryCache(ParsedQueryCache parsedQueryCache) {
+        this.parsedQueryCache = parsedQueryCache;
+    }
+
+    /**
+     * <p>Cached results are scoped by repository-id, so a commit to one repository only invalidates the results of
+     * that repository. The results of a repository are dropped when it is evicted.</p>
+     *
+     * @param queryResultCache the cache that answers queries of read-only transactions on all repositories. Disabled
+     *                         (<code>null</code>) by default.
+     * @see RepositoryConnectionFactory#setQueryResultCache(QueryResultCache)
+     */
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    /**
+     * @param lazyConnections whether transactions open their connection on first use. Defaults to
+     *                        <code>false</code>.
+     * @see RepositoryConnectionFactory#setLazyConnections(boolean)
+     */
+    public void setLazyConnections(boolean lazyConnections) {
+        this.lazyConnections = lazyConnections;
+    }
+
+    /**
+     * <p>Every repository commits its groups on its own writer thread.</p>
+     *
+     * @param groupCommitEnabled whether concurrent write transactions are committed in groups. Defaults to
+     *                           <code>false</code>.
+     * @see RepositoryConnectionFactory#setGroupCommitEnabled(boolean)
+     */
+    public void setGroupCommitEnabled(boolean groupCommitEnabled) {
+        this.groupCommitEnabled = groupCommitEnabled;
+    }
+
+    /**
+     * @see RepositoryConnectionFactory#setGroupCommitMaxDelayMillis(long)
+     */
+    public void setGroupCommitMaxDelayMillis(long groupCommitMaxDelayMillis) {
+        this.groupCommitMaxDelayMillis = groupCommitMaxDelayMillis;
+    }
+
+    /**
+     * @see RepositoryConnectionFactory#setGroupCommitMaxSize(int)
+     */
+    public void setGroupCommitMaxSize(int groupCommitMaxSize) {
+        this.groupCommitMaxSize = groupCommitMaxSize;
+    }
+
+    /**
+     * @param slowTransactionLog the log of slow transactions and queries that is shared by all repositories. Disabled
+     *                           (<code>null</code>) by default.
+     * @see RepositoryConnectionFactory#setSlowTransactionLog(SlowTransactionLog)
+     */
+    public void setSlowTransactionLog(SlowTransactionLog slowTransactionLog) {
+        this.slowTransactionLog = slowTransactionLog;
+    }
+
+    /**
+     * @param changeSetPublisher the publisher that receives the changes of all repositories; every
+     *                           {@link ChangeSet} carries the id of its repository. Disabled (<code>null</code>) by
+     *                           default.
+     * @see RepositoryConnectionFactory#setChangeSetPublisher(ChangeSetPublisher)
+     */
+    public void setChangeSetPublisher(ChangeSetPublisher changeSetPublisher) {
+        this.changeSetPublisher = changeSetPublisher;
+    }
+
+    /**
+     * @param stagingEnabled whether the buffered statements of write transactions are staged off the heap in all
+     *                       repositories. Defaults to <code>false</code>.
+     * @see RepositoryConnectionFactory#setStagingEnabled(boolean)
+     */
+    public void setStagingEnabled(boolean stagingEnabled) {
+        this.stagingEnabled = stagingEnabled;
+    }
+
+    /**
+     * @param stagingDirectory the directory of the temporary files that staged statements spill to.
+     * @see RepositoryConnectionFactory#setStagingDirectory(File)
+     */
+    public void setStagingDirectory(File stagingDirectory) {
+        this.stagingDirectory = stagingDirectory;
+    }
+
+    /**
+     * @param stagingMemoryBytes the size of the direct buffer of a staging transaction. Every repository pools its
+     *                           buffers separately.
+     * @see RepositoryConnectionFactory#setStagingMemoryBytes(int)
+     */
+    public void setStagingMemoryBytes(int stagingMemoryBytes) {
+        this.stagingMemoryBytes = stagingMemoryBytes;
+    }
+
+    /**
+     * @see RepositoryConnectionFactory#setStagingHeapStatements(int)
+     */
+    public void setStagingHeapStatements(int stagingHeapStatements) {
+        this.stagingHeapStatements = stagingHeapStatements;
+    }
+
+    /**
+     * @param admissionPolicy the limits of concurrent transactions of every repository without a policy of its own.
+     *                        Every repository enforces the limits separately. Disabled (<code>null</code>) by
+     *                        default.
+     * @see RepositoryConnectionFactory#setAdmissionPolicy(AdmissionPolicy)
+     */
+    public void setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+        this.admissionPolicy = admissionPolicy;
+    }
+
+    /**
+     * <p>Policies apply to repositories that are opened after they are set.</p>
+     *
+     * @param admissionPolicies the limits of concurrent transactions by repository-id, which take precedence over
+     *                          the default admission policy.
+     * @see #setAdmissionPolicy(AdmissionPolicy)
+     */
+    public void setAdmissionPolicies(Map<String, AdmissionPolicy> admissionPolicies) {
+        this.admissionPolicies = new HashMap<>(admissionPolicies);
+    }
+
+    /**
+     * @return the admission controller of the repository with <code>repositoryId</code>, or <code>null</code> if the
+     * repository is not open or has no admission policy.
+     */
+    public AdmissionController getAdmissionController(String repositoryId) {
+        RepositoryConnectionFactoryHolder holder = repositoryConnectionFactoryMap.get(repositoryId);
+
+        return holder != null ? holder.repositoryConnectionFactory.getAdmissionController() : null;
+    }
+
     @Override
     public String toString() {
         return "DynamicRepositoryManagerConnectionFactory{" +
@@ -151,6 +616,17 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
                 ", repositoryIdProvider=" + repositoryIdProvider +
                 ", repositoryImplConfig=" + repositoryImplConfig +
                 ", repositoryConnectionFactoryMap=" + repositoryConnectionFactoryMap +
+                ", maxRepositories=" + maxRepositories +
+                ", idleTimeoutMillis=" + idleTimeoutMillis +
+                ", parsedQueryCache=" + parsedQueryCache +
+                ", queryResultCache=" + queryResultCache +
+                ", lazyConnections=" + lazyConnections +
+                ", groupCommitEnabled=" + groupCommitEnabled +
+                ", slowTransactionLog=" + slowTransactionLog +
+                ", changeSetPublisher=" + changeSetPublisher +
+                ", stagingEnabled=" + stagingEnabled +
+                ", admissionPolicy=" + admissionPolicy +
+                ", admissionPolicies=" + admissionPolicies +
                 '}';
     }
 
@@ -161,4 +637,62 @@ public class DynamicRepositoryManagerConnectionFactory implements SesameConnecti
     public interface RepositoryIdProvider {
         String getRepositoryId();
     }
+
+    /**
+     * <p>Holds the {@link RepositoryConnectionFactory} of a single repository together with the number of its active
+     * transactions and the time it was last used. Once evicted, a holder accepts no further transactions.</p>
+     */
+    private static class RepositoryConnectionFactoryHolder {
+        private static final int EVICTED = -1;
+
+        private final String repositoryId;
+
+        private final RepositoryConnectionFactory repositoryConnectionFactory;
+
+        private final AtomicInteger activeTransactions = new AtomicInteger();
+
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        RepositoryConnectionFactoryHolder(String repositoryId, RepositoryConnectionFactory repositoryConnectionFactory) {
+            this.repositoryId = repositoryId;
+            this.repositoryConnectionFactory = repositoryConnectionFactory;
+        }
+
+        boolean acquire() {
+            while (true) {
+                int current = activeTransactions.get();
+
+                if (current == EVICTED) {
+                    return false;
+                }
+
+                if (activeTransactions.compareAndSet(current, current + 1)) {
+                    lastUsed = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            lastUsed = System.currentTimeMillis();
+            activeTransactions.decrementAndGet();
+        }
+
+        boolean isIdle() {
+            return activeTransactions.get() == 0;
+        }
+
+        boolean evict() {
+            return activeTransactions.compareAndSet(0, EVICTED);
+        }
+
+        @Override
+        public String toString() {
+            return "RepositoryConnectionFactoryHolder{" +
+                    "repositoryConnectionFactory=" + repositoryConnectionFactory +
+                    ", activeTransactions=" + activeTransactions +
+                    ", lastUsed=" + lastUsed +
+                    '}';
+        }
+    }
 }
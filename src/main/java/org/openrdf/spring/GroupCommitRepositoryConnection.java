@@ -0,0 +1,160 @@
+package org.openrdf.spring;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>{@link GroupCommitRepositoryConnection} keeps the writes of a transaction that takes part in group commits in the
+ * transaction's {@link StatementBuffer} instead of writing them to its {@link RepositoryConnection}, so they can be
+ * committed together with the writes of other transactions by the {@link GroupCommitWriter}.</p>
+ * <p/>
+ * <p>Only additions and removals of single statements are buffered. The first other call that touches the store, e.g.
+ * a query, a bulk write or a removal with wildcards, begins the transaction on the connection, writes the buffered
+ * statements to it and passes all further calls through; such a transaction is committed on its own.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+final class GroupCommitRepositoryConnection implements InvocationHandler {
+    private static final ValueFactory valueFactory = SimpleValueFactory.getInstance();
+
+    /**
+     * Methods that do not touch the store and may be called without beginning the transaction.
+     */
+    private static final Set<String> PASS_THROUGH_METHODS = new HashSet<>(Arrays.asList("isOpen", "isActive",
+            "isAutoCommit", "getRepository", "getValueFactory", "getIsolationLevel", "setIsolationLevel",
+            "getParserConfig", "setParserConfig"));
+
+    private final SesameTransactionObject sesameTransactionObject;
+
+    private final RepositoryConnection delegate;
+
+    private GroupCommitRepositoryConnection(SesameTransactionObject sesameTransactionObject,
+                                            RepositoryConnection delegate) {
+        this.sesameTransactionObject = sesameTransactionObject;
+        this.delegate = delegate;
+    }
+
+    static RepositoryConnection create(SesameTransactionObject sesameTransactionObject,
+                                       RepositoryConnection delegate) {
+        return (RepositoryConnection) Proxy.newProxyInstance(RepositoryConnection.class.getClassLoader(),
+                new Class<?>[]{RepositoryConnection.class},
+                new GroupCommitRepositoryConnection(sesameTransactionObject, delegate));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return args != null && args.length == 1 && proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "GroupCommitRepositoryConnection{delegate=" + delegate + '}';
+            default:
+                break;
+        }
+
+        if (!PASS_THROUGH_METHODS.contains(method.getName())) {
+            RepositoryConnection repositoryConnection = sesameTransactionObject.getRepositoryConnection();
+
+            if (!repositoryConnection.isActive()) {
+                if (buffer(method, args)) {
+                    return null;
+                }
+
+                repositoryConnection.begin();
+            }
+        }
+
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the call is a single-statement write that has been buffered.
+     */
+    private boolean buffer(Method method, Object[] args) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        boolean add = method.getName().equals("add");
+
+        if (!add && !method.getName().equals("remove")) {
+            return false;
+        }
+
+        if (parameterTypes.length == 2 && parameterTypes[0] == Statement.class) {
+            Statement statement = (Statement) args[0];
+            return buffer(add, statement.getSubject(), statement.getPredicate(), statement.getObject(),
+                    statement.getContext(), (Resource[]) args[1]);
+        }
+
+        if (parameterTypes.length == 4 && parameterTypes[0] == Resource.class && parameterTypes[1] == IRI.class) {
+            return buffer(add, (Resource) args[0], (IRI) args[1], (Value) args[2], null, (Resource[]) args[3]);
+        }
+
+        return false;
+    }
+
+    private boolean buffer(boolean add, Resource subject, IRI predicate, Value object, Resource statementContext,
+                           Resource[] contexts) {
+        if (subject == null || predicate == null || object == null || !add && containsNullContext(contexts)) {
+            return false;
+        }
+
+        StatementBuffer statementBuffer = sesameTransactionObject.getStatementBuffer();
+
+        if (statementBuffer == null) {
+            statementBuffer = sesameTransactionObject.createStatementBuffer();
+            sesameTransactionObject.setStatementBuffer(statementBuffer);
+        }
+
+        if (contexts.length == 0) {
+            append(statementBuffer, add, createStatement(subject, predicate, object, statementContext));
+        } else {
+            for (Resource context : contexts) {
+                append(statementBuffer, add, createStatement(subject, predicate, object, context));
+            }
+        }
+
+        return true;
+    }
+
+    private static void append(StatementBuffer statementBuffer, boolean add, Statement statement) {
+        if (add) {
+            statementBuffer.add(statement);
+        } else {
+            statementBuffer.remove(statement);
+        }
+    }
+
+    private static Statement createStatement(Resource subject, IRI predicate, Value object, Resource context) {
+        return context == null
+                ? valueFactory.createStatement(subject, predicate, object)
+                : valueFactory.createStatement(subject, predicate, object, context);
+    }
+
+    private static boolean containsNullContext(Resource... contexts) {
+        for (Resource context : contexts) {
+            if (context == null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,318 @@
+package org.openrdf.spring;
+
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>{@link GroupCommitWriter} commits the buffered writes of many transactions of a single repository with one commit
+ * on the store, on a dedicated writer thread.</p>
+ * <p/>
+ * <p>Committing threads enqueue their {@link StatementBuffer} and wait for the outcome. The writer takes all
+ * transactions that queued up while the previous group was committed, optionally waits up to
+ * <code>maxDelayMillis</code> for more, and writes them in queue order in a single store transaction. If the group
+ * fails, every transaction of the group is retried in its own store transaction, so each caller sees only the outcome
+ * of its own writes.</p>
+ * <p/>
+ * <p>Only transactions that never read from the store are committed this way, which makes the group equivalent to
+ * committing its transactions one after another.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see RepositoryConnectionFactory#setGroupCommitEnabled(boolean)
+ */
+class GroupCommitWriter {
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    private static final Request SHUTDOWN = new Request(null, null);
+
+    private final RepositoryConnectionFactory repositoryConnectionFactory;
+
+    private final long maxDelayMillis;
+
+    private final int maxBatchSize;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+    private final AtomicLong transactionCount = new AtomicLong();
+
+    private final AtomicLong storeCommitCount = new AtomicLong();
+
+    private final Thread writerThread;
+
+    private boolean shutdown;
+
+    GroupCommitWriter(RepositoryConnectionFactory repositoryConnectionFactory, long maxDelayMillis,
+                      int maxBatchSize) {
+        this.repositoryConnectionFactory = repositoryConnectionFactory;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxBatchSize = maxBatchSize;
+
+        writerThread = new Thread(this::run, "sesame-group-commit-" + repositoryConnectionFactory.getRepositoryId());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * <p>Commits <code>statementBuffer</code> with the next group and waits for the outcome. Waiting is not
+     * interruptible, since the outcome of the commit would be unknown otherwise; the interrupt status is restored
+     * afterwards.</p>
+     *
+     * @param committed runs on the writer thread once the writes are committed, in the order of the commits.
+     * @throws RepositoryException if the writes could not be committed.
+     */
+    void commit(StatementBuffer statementBuffer, Runnable committed) throws RepositoryException {
+        Request request = new Request(statementBuffer, committed);
+
+        synchronized (queue) {
+            if (shutdown) {
+                throw new SesameTransactionException("Group commit writer has been shut down");
+            }
+
+            queue.add(request);
+        }
+
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    request.outcome.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+
+                    throw new RepositoryException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        List<Request> group = new ArrayList<>();
+        boolean running = true;
+
+        while (running) {
+            try {
+                Request request = queue.take();
+
+                if (request == SHUTDOWN) {
+                    break;
+                }
+
+                group.add(request);
+                running = collect(group);
+                commit(group);
+            } catch (InterruptedException e) {
+                fail(group, new SesameTransactionException("Group commit writer has been interrupted"));
+                break;
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+                fail(group, e);
+            } finally {
+                group.clear();
+            }
+        }
+
+        failPending();
+    }
+
+    /**
+     * <p>Adds queued transactions to <code>group</code>, waiting up to <code>maxDelayMillis</code> for more.</p>
+     *
+     * @return <code>false</code> if the writer was shut down.
+     */
+    private boolean collect(List<Request> group) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+
+        while (group.size() < maxBatchSize) {
+            Request request = queue.poll();
+
+            if (request == null && maxDelayMillis > 0) {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining > 0) {
+                    request = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                }
+            }
+
+            if (request == null) {
+                return true;
+            }
+
+            if (request == SHUTDOWN) {
+                return false;
+            }
+
+            group.add(request);
+        }
+
+        return true;
+    }
+
+    private void commit(List<Request> group) {
+        RepositoryConnection repositoryConnection;
+
+        try {
+            repositoryConnection = repositoryConnectionFactory.openGroupCommitConnection();
+        } catch (RuntimeException e) {
+            fail(group, e);
+            return;
+        }
+
+        // counted before the transactions are released, so they observe their own commit
+        transactionCount.addAndGet(group.size());
+
+        try {
+            try {
+                commit(repositoryConnection, group);
+                group.forEach(request -> request.outcome.complete(null));
+            } catch (RuntimeException e) {
+                if (group.size() == 1) {
+                    group.get(0).outcome.completeExceptionally(e);
+                    return;
+                }
+
+                log.debug("Group commit of {} transactions failed, committing them one by one", group.size(), e);
+
+                for (Request request : group) {
+                    try {
+                        commit(repositoryConnection, Collections.singletonList(request));
+                        request.outcome.complete(null);
+                    } catch (RuntimeException individualFailure) {
+                        request.outcome.completeExceptionally(individualFailure);
+                    }
+                }
+            }
+        } finally {
+            try {
+                repositoryConnectionFactory.releaseGroupCommitConnection(repositoryConnection);
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void commit(RepositoryConnection repositoryConnection, Iterable<Request> requests) {
+        repositoryConnection.begin();
+
+        try {
+            for (Request request : requests) {
+                request.statementBuffer.writeTo(repositoryConnection);
+            }
+
+            repositoryConnectionFactory.commitInOrder(() -> {
+                repositoryConnection.commit();
+                storeCommitCount.incrementAndGet();
+
+                for (Request request : requests) {
+                    try {
+                        request.committed.run();
+                    } catch (RuntimeException e) {
+                        log.error(e.getMessage(), e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            try {
+                if (repositoryConnection.isActive()) {
+                    repositoryConnection.rollback();
+                }
+            } catch (RuntimeException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+
+            throw e;
+        }
+    }
+
+    private void failPending() {
+        List<Request> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        pending.remove(SHUTDOWN);
+
+        fail(pending, new SesameTransactionException("Group commit writer has been shut down"));
+    }
+
+    /**
+     * <p>Fails all requests of <code>requests</code> that have not completed yet.</p>
+     */
+    private static void fail(List<Request> requests, RuntimeException e) {
+        for (Request request : requests) {
+            request.outcome.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * <p>Commits all transactions that are already queued and stops the writer thread. Later commits fail.</p>
+     */
+    void shutdown() throws InterruptedException {
+        synchronized (queue) {
+            if (shutdown) {
+                return;
+            }
+
+            shutdown = true;
+            queue.add(SHUTDOWN);
+        }
+
+        writerThread.join();
+    }
+
+    /**
+     * @return the number of transactions committed by the writer, successfully or not.
+     */
+    long getTransactionCount() {
+        return transactionCount.get();
+    }
+
+    /**
+     * @return the number of successful commits on the store.
+     */
+    long getStoreCommitCount() {
+        return storeCommitCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitWriter{" +
+                "maxDelayMillis=" + maxDelayMillis +
+                ", maxBatchSize=" + maxBatchSize +
+                ", transactionCount=" + transactionCount +
+                ", storeCommitCount=" + storeCommitCount +
+                '}';
+    }
+
+    private static class Request {
+        private final StatementBuffer statementBuffer;
+
+        private final Runnable committed;
+
+        private final CompletableFuture<Void> outcome = new CompletableFuture<>();
+
+        private Request(StatementBuffer statementBuffer, Runnable committed) {
+            this.statementBuffer = statementBuffer;
+            this.committed = committed;
+        }
+    }
+}
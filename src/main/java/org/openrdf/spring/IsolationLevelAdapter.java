@@ -2,9 +2,15 @@ package org.openrdf.spring;
 
 import org.openrdf.IsolationLevel;
 import org.openrdf.IsolationLevels;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
 import org.openrdf.sail.Sail;
 import org.springframework.transaction.InvalidIsolationLevelException;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import java.util.Map;
 
 /**
  * <p>Adapter to convert spring {@link TransactionDefinition} isolation levels to corresponding OpenRDF
@@ -13,10 +19,96 @@ import org.springframework.transaction.TransactionDefinition;
  * <p>The conversion depends on the provided {@link org.openrdf.sail.Sail} and its transaction capabilities.
  * If the {@link org.openrdf.sail.Sail} is not compatible with the provided isolation level, an
  * {@link org.springframework.transaction.InvalidIsolationLevelException} is thrown.<p/>
+ * <p/>
+ * <p>The isolation levels a {@link org.openrdf.sail.Sail} supports do not change once it is initialized, so the
+ * conversions applied at the beginning of every transaction are resolved once per {@link org.openrdf.sail.Sail} and
+ * cached.</p>
  *
  * @author ameingast@gmail.com
  */
 class IsolationLevelAdapter {
+    private static final int[] SPRING_ISOLATION_LEVELS = {TransactionDefinition.ISOLATION_DEFAULT,
+            TransactionDefinition.ISOLATION_READ_UNCOMMITTED, TransactionDefinition.ISOLATION_READ_COMMITTED,
+            TransactionDefinition.ISOLATION_REPEATABLE_READ, TransactionDefinition.ISOLATION_SERIALIZABLE};
+
+    /**
+     * The converted isolation levels of every {@link Sail}, first for write and then for read-only transactions, in
+     * the order of {@link #SPRING_ISOLATION_LEVELS}; <code>null</code> if the {@link Sail} does not support one.
+     * Sails are only weakly referenced, so the entries of discarded repositories are dropped.
+     */
+    private static final Map<Sail, IsolationLevel[]> cachedIsolationLevels =
+            new ConcurrentReferenceHashMap<>(16, ConcurrentReferenceHashMap.ReferenceType.WEAK);
+
+    /**
+     * <p>Sets the isolation level of a transaction on its connection. Connections to repositories other than a
+     * {@link SailRepository} keep their isolation level.</p>
+     */
+    static void applyIsolationLevel(RepositoryConnection repositoryConnection,
+                                    TransactionDefinition transactionDefinition) {
+        Repository repository = repositoryConnection.getRepository();
+
+        if (repository instanceof SailRepository) {
+            Sail sail = ((SailRepository) repository).getSail();
+            // bulk loads are converted like read-only transactions
+            boolean readOnly = transactionDefinition instanceof BulkLoadTransactionDefinition
+                    || transactionDefinition.isReadOnly();
+
+            repositoryConnection.setIsolationLevel(
+                    cachedRdfIsolation(sail, transactionDefinition.getIsolationLevel(), readOnly));
+        }
+    }
+
+    /**
+     * <p>Converts an isolation level like {@link #adaptToRdfIsolation} or, for read-only transactions,
+     * {@link #adaptToReadOnlyRdfIsolation}, from the conversions cached for <code>sail</code>.</p>
+     */
+    static IsolationLevel cachedRdfIsolation(Sail sail, int springIsolation, boolean readOnly) {
+        IsolationLevel[] isolationLevels = cachedIsolationLevels.get(sail);
+
+        if (isolationLevels == null) {
+            isolationLevels = resolveIsolationLevels(sail);
+            cachedIsolationLevels.put(sail, isolationLevels);
+        }
+
+        for (int i = 0; i < SPRING_ISOLATION_LEVELS.length; i++) {
+            if (SPRING_ISOLATION_LEVELS[i] == springIsolation) {
+                IsolationLevel isolationLevel = isolationLevels[readOnly ? SPRING_ISOLATION_LEVELS.length + i : i];
+
+                if (isolationLevel != null) {
+                    return isolationLevel;
+                }
+
+                break;
+            }
+        }
+
+        // fails with the reason why the isolation level is not supported
+        return readOnly
+                ? adaptToReadOnlyRdfIsolation(sail, springIsolation)
+                : adaptToRdfIsolation(sail, springIsolation);
+    }
+
+    private static IsolationLevel[] resolveIsolationLevels(Sail sail) {
+        IsolationLevel[] isolationLevels = new IsolationLevel[SPRING_ISOLATION_LEVELS.length * 2];
+
+        for (int i = 0; i < SPRING_ISOLATION_LEVELS.length; i++) {
+            try {
+                isolationLevels[i] = adaptToRdfIsolation(sail, SPRING_ISOLATION_LEVELS[i]);
+            } catch (InvalidIsolationLevelException e) {
+                isolationLevels[i] = null;
+            }
+
+            try {
+                isolationLevels[SPRING_ISOLATION_LEVELS.length + i] =
+                        adaptToReadOnlyRdfIsolation(sail, SPRING_ISOLATION_LEVELS[i]);
+            } catch (InvalidIsolationLevelException e) {
+                isolationLevels[SPRING_ISOLATION_LEVELS.length + i] = null;
+            }
+        }
+
+        return isolationLevels;
+    }
+
     static IsolationLevel adaptToRdfIsolation(Sail sail, int springIsolation) {
         switch (springIsolation) {
             case TransactionDefinition.ISOLATION_DEFAULT:
@@ -34,6 +126,29 @@ class IsolationLevelAdapter {
         }
     }
 
+    /**
+     * <p>Converts the isolation level of a read-only transaction. If no explicit isolation level is requested, the
+     * weakest isolation level the {@link Sail} supports is used, since a read-only transaction has no changes that
+     * need to be isolated.</p>
+     */
+    static IsolationLevel adaptToReadOnlyRdfIsolation(Sail sail, int springIsolation) {
+        if (springIsolation != TransactionDefinition.ISOLATION_DEFAULT) {
+            return adaptToRdfIsolation(sail, springIsolation);
+        }
+
+        return weakestRdfIsolation(sail);
+    }
+
+    private static IsolationLevel weakestRdfIsolation(Sail sail) {
+        for (IsolationLevels isolationLevel : IsolationLevels.values()) {
+            if (sail.getSupportedIsolationLevels().contains(isolationLevel)) {
+                return isolationLevel;
+            }
+        }
+
+        return sail.getDefaultIsolationLevel();
+    }
+
     private static IsolationLevel determineIsolationLevel(Sail sail, IsolationLevel isolationLevel) {
         if (sail.getSupportedIsolationLevels().contains(isolationLevel)) {
             return isolationLevel;
@@ -0,0 +1,160 @@
+package org.openrdf.spring;
+
+import info.aduna.iteration.CloseableIteration;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>{@link IterationPublisher} streams the elements of a {@link CloseableIteration} to a {@link Subscriber}, reading
+ * only as many elements from the iteration as the subscriber requested.</p>
+ * <p/>
+ * <p>The iteration is opened when the subscriber first requests elements and closed when it is exhausted, fails or the
+ * subscription is cancelled. The end of the iteration is signalled without further demand, which reads at most one
+ * element ahead. All calls to the iteration run on the {@link SerialExecutor} of the transaction; at most
+ * {@link #BATCH_SIZE} elements are emitted per task, so long results do not monopolize a pooled thread. Every
+ * subscription opens its own iteration.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class IterationPublisher<T> implements Publisher<T> {
+    private static final Logger log = LoggerFactory.getLogger(IterationPublisher.class);
+
+    static final int BATCH_SIZE = 256;
+
+    private final SerialExecutor executor;
+
+    private final ReactiveSesameTransaction.IterationCallback<T> iterationCallback;
+
+    IterationPublisher(SerialExecutor executor, ReactiveSesameTransaction.IterationCallback<T> iterationCallback) {
+        this.executor = executor;
+        this.iterationCallback = iterationCallback;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+
+        IterationSubscription subscription = new IterationSubscription(subscriber);
+        executor.execute(() -> subscriber.onSubscribe(subscription));
+    }
+
+    private class IterationSubscription implements Subscription {
+        private final Subscriber<? super T> subscriber;
+
+        private final AtomicLong requested = new AtomicLong();
+
+        private volatile boolean cancelled;
+
+        private CloseableIteration<? extends T, ? extends Exception> iteration;
+
+        private boolean done;
+
+        private IterationSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                executor.execute(() -> fail(new IllegalArgumentException("Requested " + n + " elements, " +
+                        "the number of requested elements must be positive")));
+                return;
+            }
+
+            long previous;
+
+            do {
+                previous = requested.get();
+            } while (!requested.compareAndSet(previous, addCapped(previous, n)));
+
+            if (previous == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            executor.execute(this::close);
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+
+            try {
+                if (iteration == null && !cancelled) {
+                    iteration = iterationCallback.doWithConnection();
+                }
+
+                long remaining = requested.get();
+
+                for (int emitted = 0; emitted < BATCH_SIZE; emitted++) {
+                    if (cancelled) {
+                        close();
+                        return;
+                    }
+
+                    if (!iteration.hasNext()) {
+                        close();
+                        subscriber.onComplete();
+                        return;
+                    }
+
+                    subscriber.onNext(iteration.next());
+
+                    if (remaining != Long.MAX_VALUE) {
+                        remaining = requested.decrementAndGet();
+
+                        if (remaining == 0) {
+                            if (!cancelled && !iteration.hasNext()) {
+                                close();
+                                subscriber.onComplete();
+                            }
+
+                            return;
+                        }
+                    }
+                }
+
+                executor.execute(this::drain);
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private void fail(Exception e) {
+            if (!done) {
+                close();
+                subscriber.onError(e);
+            }
+        }
+
+        private void close() {
+            done = true;
+
+            if (iteration != null) {
+                try {
+                    iteration.close();
+                } catch (Exception e) {
+                    log.error(e.getMessage(), e);
+                }
+
+                iteration = null;
+            }
+        }
+
+        private long addCapped(long a, long b) {
+            long sum = a + b;
+            return sum < 0 ? Long.MAX_VALUE : sum;
+        }
+    }
+}
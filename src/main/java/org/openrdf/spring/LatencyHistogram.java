@@ -0,0 +1,115 @@
+package org.openrdf.spring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>{@link LatencyHistogram} records latencies in microseconds into log-linear buckets: every power of two is split
+ * into {@value #SUB_BUCKETS} buckets, so percentiles are accurate to within 12.5% of the recorded value while the
+ * histogram has a fixed size.</p>
+ * <p/>
+ * <p>Recording is lock-free and does not allocate. Snapshots are taken without stopping writers and may therefore be
+ * slightly inconsistent while latencies are being recorded.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+    /**
+     * @param durationNanos the latency to record; negative values are recorded as <code>0</code>.
+     */
+    void record(long durationNanos) {
+        long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0L;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        long maxMicros = max.get();
+
+        return new LatencySnapshot(total,
+                total == 0L ? 0L : sum.sum() / total,
+                percentile(counts, total, 0.50, maxMicros),
+                percentile(counts, total, 0.95, maxMicros),
+                percentile(counts, total, 0.99, maxMicros),
+                maxMicros);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    private static long percentile(long[] counts, long total, double percentile, long maxMicros) {
+        if (total == 0L) {
+            return 0L;
+        }
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0L;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxMicros);
+            }
+        }
+
+        return maxMicros;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "snapshot=" + snapshot() +
+                '}';
+    }
+}
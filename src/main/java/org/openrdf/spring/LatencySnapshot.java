@@ -0,0 +1,71 @@
+package org.openrdf.spring;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * <p>{@link LatencySnapshot} is an immutable view on the latencies recorded for one operation. All values are in
+ * microseconds.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see RepositoryTransactionMetricsMXBean
+ */
+public class LatencySnapshot {
+    private final long count;
+
+    private final long meanMicros;
+
+    private final long p50Micros;
+
+    private final long p95Micros;
+
+    private final long p99Micros;
+
+    private final long maxMicros;
+
+    @ConstructorProperties({"count", "meanMicros", "p50Micros", "p95Micros", "p99Micros", "maxMicros"})
+    public LatencySnapshot(long count, long meanMicros, long p50Micros, long p95Micros, long p99Micros,
+                           long maxMicros) {
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p95Micros = p95Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP95Micros() {
+        return p95Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot{" +
+                "count=" + count +
+                ", meanMicros=" + meanMicros +
+                ", p50Micros=" + p50Micros +
+                ", p95Micros=" + p95Micros +
+                ", p99Micros=" + p99Micros +
+                ", maxMicros=" + maxMicros +
+                '}';
+    }
+}
@@ -0,0 +1,228 @@
+package org.openrdf.spring;
+
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.parser.ParsedBooleanQuery;
+import org.openrdf.query.parser.ParsedGraphQuery;
+import org.openrdf.query.parser.ParsedQuery;
+import org.openrdf.query.parser.ParsedTupleQuery;
+import org.openrdf.query.parser.QueryParserUtil;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>{@link ParsedQueryCache} is a size-bounded cache of parsed queries, keyed by query language, query string and
+ * base URI.</p>
+ * <p/>
+ * <p>Every lookup returns a private copy of the cached query algebra, so callers may bind values and the query engine
+ * may optimize the algebra without affecting other users of the cache. When the cache is full, the least recently
+ * used query is evicted. Since the parsed form of a query does not depend on a repository, one cache can be shared by
+ * several connection factories.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see RepositoryConnectionFactory#setParsedQueryCache(ParsedQueryCache)
+ */
+public class ParsedQueryCache {
+    /**
+     * The number of cached queries unless configured otherwise.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final int maxSize;
+
+    public ParsedQueryCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the maximum number of cached queries.
+     */
+    public ParsedQueryCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * <p>Returns a copy of the parsed query and parses and caches it if it has not been cached before.</p>
+     *
+     * @param queryLanguage the language of the query.
+     * @param query         the query string.
+     * @param baseURI       the base URI to resolve relative URIs against, may be <code>null</code>.
+     * @return the parsed query.
+     * @throws MalformedQueryException if the query could not be parsed.
+     */
+    public ParsedQuery getParsedQuery(QueryLanguage queryLanguage, String query, String baseURI)
+            throws MalformedQueryException {
+        Key key = new Key(queryLanguage, query, baseURI);
+        Entry entry = entries.get(key);
+
+        if (entry != null) {
+            hits.increment();
+            entry.lastAccessNanos = System.nanoTime();
+
+            return copy(entry.parsedQuery);
+        }
+
+        misses.increment();
+
+        ParsedQuery parsedQuery = QueryParserUtil.parseQuery(queryLanguage, query, baseURI);
+
+        if (!isCacheable(parsedQuery)) {
+            return parsedQuery;
+        }
+
+        entries.putIfAbsent(key, new Entry(parsedQuery));
+
+        if (entries.size() > maxSize) {
+            evictLeastRecentlyUsed();
+        }
+
+        return copy(parsedQuery);
+    }
+
+    private synchronized void evictLeastRecentlyUsed() {
+        while (entries.size() > maxSize) {
+            Map.Entry<Key, Entry> eldest = null;
+
+            for (Map.Entry<Key, Entry> candidate : entries.entrySet()) {
+                if (eldest == null || candidate.getValue().lastAccessNanos < eldest.getValue().lastAccessNanos) {
+                    eldest = candidate;
+                }
+            }
+
+            if (eldest == null) {
+                return;
+            }
+
+            entries.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private static boolean isCacheable(ParsedQuery parsedQuery) {
+        Class<?> type = parsedQuery.getClass();
+
+        return type == ParsedTupleQuery.class || type == ParsedGraphQuery.class || type == ParsedBooleanQuery.class;
+    }
+
+    private static ParsedQuery copy(ParsedQuery parsedQuery) {
+        String sourceString = parsedQuery.getSourceString();
+        TupleExpr tupleExpr = parsedQuery.getTupleExpr().clone();
+        ParsedQuery copy;
+
+        if (parsedQuery instanceof ParsedTupleQuery) {
+            copy = new ParsedTupleQuery(sourceString, tupleExpr);
+        } else if (parsedQuery instanceof ParsedGraphQuery) {
+            copy = new ParsedGraphQuery(sourceString, tupleExpr,
+                    ((ParsedGraphQuery) parsedQuery).getQueryNamespaces());
+        } else {
+            copy = new ParsedBooleanQuery(sourceString, tupleExpr);
+        }
+
+        copy.setDataset(parsedQuery.getDataset());
+
+        return copy;
+    }
+
+    /**
+     * @return the number of lookups that were answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that required the query to be parsed.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of cached queries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ParsedQueryCache{" +
+                "size=" + entries.size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                '}';
+    }
+
+    private static class Key {
+        private final QueryLanguage queryLanguage;
+
+        private final String query;
+
+        private final String baseURI;
+
+        private final int hashCode;
+
+        private Key(QueryLanguage queryLanguage, String query, String baseURI) {
+            this.queryLanguage = queryLanguage;
+            this.query = query;
+            this.baseURI = baseURI;
+            this.hashCode = Objects.hash(queryLanguage, query, baseURI);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+
+            return hashCode == key.hashCode
+                    && query.equals(key.query)
+                    && queryLanguage.equals(key.queryLanguage)
+                    && Objects.equals(baseURI, key.baseURI);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static class Entry {
+        private final ParsedQuery parsedQuery;
+
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        private Entry(ParsedQuery parsedQuery) {
+            this.parsedQuery = parsedQuery;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.openrdf.spring;
+
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * <p>{@link PooledRepositoryConnectionFactory} is a {@link RepositoryConnectionFactory} that borrows the connections
+ * for its transactions from a {@link RepositoryConnectionPool} instead of opening a new connection for every
+ * transaction.</p>
+ * <p/>
+ * <p>Once a transaction has been committed or rolled back, its connection is returned to the pool rather than being
+ * closed. This avoids the connection setup and teardown costs of remote (e.g. HTTP) or native repositories.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see RepositoryConnectionPool
+ */
+public class PooledRepositoryConnectionFactory extends RepositoryConnectionFactory implements InitializingBean {
+    private final RepositoryConnectionPool repositoryConnectionPool;
+
+    /**
+     * <p>Creates a new {@link PooledRepositoryConnectionFactory} for the provided {@link Repository}.</p>
+     *
+     * @param repository The repository to which pooled connections are opened.
+     */
+    public PooledRepositoryConnectionFactory(Repository repository) {
+        super(repository);
+        repositoryConnectionPool = new RepositoryConnectionPool(repository);
+    }
+
+    /**
+     * <p>Opens the initial idle connections and starts the eviction of idle connections.</p>
+     *
+     * @throws Exception {@see Repository#getConnection}
+     */
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        repositoryConnectionPool.start();
+    }
+
+    @Override
+    protected RepositoryConnection openConnection() throws RepositoryException {
+        return repositoryConnectionPool.borrow();
+    }
+
+    @Override
+    protected void releaseConnection(RepositoryConnection repositoryConnection) throws RepositoryException {
+        repositoryConnectionPool.release(repositoryConnection);
+    }
+
+    /**
+     * <p>Group commits use a connection outside of the pool: the transactions of a group keep their pooled connections
+     * until the group is committed, so a full pool would otherwise block the group until the borrow times out.</p>
+     */
+    @Override
+    protected RepositoryConnection openGroupCommitConnection() throws RepositoryException {
+        return getRepository().getConnection();
+    }
+
+    @Override
+    protected void releaseGroupCommitConnection(RepositoryConnection repositoryConnection) throws RepositoryException {
+        repositoryConnection.close();
+    }
+
+    /**
+     * <p>Commits pending group commits, closes all pooled connections and shuts down the associated
+     * {@link Repository} if it was initialized before.</p>
+     *
+     * @throws Exception {@see Repository#shutDown}
+     */
+    @Override
+    public void destroy() throws Exception {
+        shutDownGroupCommitWriter();
+        repositoryConnectionPool.close();
+        super.destroy();
+    }
+
+    /**
+     * @param minIdle the number of idle connections the pool keeps open. Defaults to <code>0</code>.
+     */
+    public void setMinIdle(int minIdle) {
+        repositoryConnectionPool.setMinIdle(minIdle);
+    }
+
+    /**
+     * @param maxTotal the maximum number of connections that are handed out at the same time. Defaults to
+     *                 <code>8</code>.
+     */
+    public void setMaxTotal(int maxTotal) {
+        repositoryConnectionPool.setMaxTotal(maxTotal);
+    }
+
+    /**
+     * @param validateOnBorrow whether idle connections are checked to be open and without an active transaction
+     *                         before they are handed out. Defaults to <code>true</code>.
+     */
+    public void setValidateOnBorrow(boolean validateOnBorrow) {
+        repositoryConnectionPool.setValidateOnBorrow(validateOnBorrow);
+    }
+
+    /**
+     * @param idleTimeoutMillis the time after which an unused connection is closed, as long as <code>minIdle</code>
+     *                          connections remain. Defaults to 10 minutes; <code>0</code> disables idle eviction.
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        repositoryConnectionPool.setIdleTimeoutMillis(idleTimeoutMillis);
+    }
+
+    /**
+     * @param maxLifetimeMillis the time after which a connection is closed instead of being re-used. Defaults to 30
+     *                          minutes; <code>0</code> disables the limit.
+     */
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        repositoryConnectionPool.setMaxLifetimeMillis(maxLifetimeMillis);
+    }
+
+    /**
+     * @param borrowTimeoutMillis the time a new transaction waits for a connection when <code>maxTotal</code>
+     *                            connections are in use. Defaults to 30 seconds.
+     */
+    public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        repositoryConnectionPool.setBorrowTimeoutMillis(borrowTimeoutMillis);
+    }
+
+    /**
+     * @param evictionIntervalMillis the interval in which idle connections are evicted. Defaults to 30 seconds;
+     *                               <code>0</code> disables background eviction.
+     */
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        repositoryConnectionPool.setEvictionIntervalMillis(evictionIntervalMillis);
+    }
+
+    RepositoryConnectionPool getRepositoryConnectionPool() {
+        return repositoryConnectionPool;
+    }
+
+    @Override
+    public String toString() {
+        return "PooledRepositoryConnectionFactory{" +
+                "repositoryConnectionPool=" + repositoryConnectionPool +
+                '}';
+    }
+}
@@ -0,0 +1,109 @@
+package org.openrdf.spring;
+
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.parser.ParsedBooleanQuery;
+import org.openrdf.query.parser.ParsedGraphQuery;
+import org.openrdf.query.parser.ParsedQuery;
+import org.openrdf.query.parser.ParsedTupleQuery;
+import org.openrdf.repository.base.RepositoryConnectionWrapper;
+import org.openrdf.repository.sail.SailBooleanQuery;
+import org.openrdf.repository.sail.SailGraphQuery;
+import org.openrdf.repository.sail.SailQuery;
+import org.openrdf.repository.sail.SailRepositoryConnection;
+import org.openrdf.repository.sail.SailTupleQuery;
+
+/**
+ * <p>{@link QueryCachingRepositoryConnection} prepares the queries of a {@link SailRepositoryConnection} from a
+ * {@link ParsedQueryCache} instead of parsing the query string every time.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class QueryCachingRepositoryConnection extends RepositoryConnectionWrapper {
+    private final SailRepositoryConnection sailRepositoryConnection;
+
+    private final ParsedQueryCache parsedQueryCache;
+
+    QueryCachingRepositoryConnection(ParsedQueryCache parsedQueryCache, SailRepositoryConnection delegate) {
+        super(delegate.getRepository(), delegate);
+        this.sailRepositoryConnection = delegate;
+        this.parsedQueryCache = parsedQueryCache;
+    }
+
+    @Override
+    public SailQuery prepareQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        ParsedQuery parsedQuery = parsedQueryCache.getParsedQuery(ql, query, baseURI);
+
+        if (parsedQuery instanceof ParsedTupleQuery) {
+            return new CachedTupleQuery((ParsedTupleQuery) parsedQuery, sailRepositoryConnection);
+        } else if (parsedQuery instanceof ParsedGraphQuery) {
+            return new CachedGraphQuery((ParsedGraphQuery) parsedQuery, sailRepositoryConnection);
+        } else if (parsedQuery instanceof ParsedBooleanQuery) {
+            return new CachedBooleanQuery((ParsedBooleanQuery) parsedQuery, sailRepositoryConnection);
+        } else {
+            throw new MalformedQueryException("Unexpected query type: " + parsedQuery.getClass());
+        }
+    }
+
+    @Override
+    public SailTupleQuery prepareTupleQuery(QueryLanguage ql, String query, String baseURI)
+            throws MalformedQueryException {
+        ParsedQuery parsedQuery = parsedQueryCache.getParsedQuery(ql, query, baseURI);
+
+        if (!(parsedQuery instanceof ParsedTupleQuery)) {
+            throw new MalformedQueryException("Not a tuple query");
+        }
+
+        return new CachedTupleQuery((ParsedTupleQuery) parsedQuery, sailRepositoryConnection);
+    }
+
+    @Override
+    public SailGraphQuery prepareGraphQuery(QueryLanguage ql, String query, String baseURI)
+            throws MalformedQueryException {
+        ParsedQuery parsedQuery = parsedQueryCache.getParsedQuery(ql, query, baseURI);
+
+        if (!(parsedQuery instanceof ParsedGraphQuery)) {
+            throw new MalformedQueryException("Not a graph query");
+        }
+
+        return new CachedGraphQuery((ParsedGraphQuery) parsedQuery, sailRepositoryConnection);
+    }
+
+    @Override
+    public SailBooleanQuery prepareBooleanQuery(QueryLanguage ql, String query, String baseURI)
+            throws MalformedQueryException {
+        ParsedQuery parsedQuery = parsedQueryCache.getParsedQuery(ql, query, baseURI);
+
+        if (!(parsedQuery instanceof ParsedBooleanQuery)) {
+            throw new MalformedQueryException("Not a boolean query");
+        }
+
+        return new CachedBooleanQuery((ParsedBooleanQuery) parsedQuery, sailRepositoryConnection);
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCachingRepositoryConnection{" +
+                "delegate=" + getDelegate() +
+                ", parsedQueryCache=" + parsedQueryCache +
+                '}';
+    }
+
+    private static class CachedTupleQuery extends SailTupleQuery {
+        private CachedTupleQuery(ParsedTupleQuery parsedQuery, SailRepositoryConnection connection) {
+            super(parsedQuery, connection);
+        }
+    }
+
+    private static class CachedGraphQuery extends SailGraphQuery {
+        private CachedGraphQuery(ParsedGraphQuery parsedQuery, SailRepositoryConnection connection) {
+            super(parsedQuery, connection);
+        }
+    }
+
+    private static class CachedBooleanQuery extends SailBooleanQuery {
+        private CachedBooleanQuery(ParsedBooleanQuery parsedQuery, SailRepositoryConnection connection) {
+            super(parsedQuery, connection);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package org.openrdf.spring;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryLanguage;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>{@link QueryResultCache} keeps the materialized results of tuple and graph queries that were evaluated in
+ * read-only transactions, keyed by repository-id, query language, query string, base URI, bindings and the
+ * include-inferred flag.</p>
+ * <p/>
+ * <p>Every commit of a write transaction invalidates the cached results of its repository. Results are only cached if
+ * they were read completely and no write transaction committed to the repository while they were evaluated. The cache
+ * is bounded by the estimated memory footprint of its results: when it grows beyond <code>maxBytes</code>, the least
+ * recently used results are evicted, and results larger than <code>maxEntryBytes</code> are never cached.</p>
+ * <p/>
+ * <p>Results are scoped by the repository-id of the {@link RepositoryConnectionFactory}, so one cache can be shared by
+ * several factories as long as their repository-ids differ, e.g. by all repositories of a
+ * {@link DynamicRepositoryManagerConnectionFactory}.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see RepositoryConnectionFactory#setQueryResultCache(QueryResultCache)
+ */
+public class QueryResultCache {
+    /**
+     * The estimated memory footprint of all cached results unless configured otherwise.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
+    private static final long BINDING_SET_OVERHEAD_BYTES = 48;
+
+    private static final long VALUE_OVERHEAD_BYTES = 40;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final long maxBytes;
+
+    private long maxEntryBytes;
+
+    public QueryResultCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes the maximum estimated memory footprint of all cached results.
+     */
+    public QueryResultCache(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxBytes / 8;
+    }
+
+    /**
+     * <p>Drops the cached results of a repository, e.g. after data was modified outside of the transaction
+     * manager.</p>
+     *
+     * @param repositoryId the id of the repository.
+     */
+    public void invalidate(String repositoryId) {
+        generation(repositoryId).incrementAndGet();
+
+        for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Entry> entry = it.next();
+
+            if (entry.getKey().repositoryId.equals(repositoryId) && entries.remove(entry.getKey(), entry.getValue())) {
+                bytes.addAndGet(-entry.getValue().bytes);
+            }
+        }
+    }
+
+    /**
+     * <p>Drops all cached results.</p>
+     */
+    public void clear() {
+        for (String repositoryId : generations.keySet()) {
+            invalidate(repositoryId);
+        }
+    }
+
+    Entry get(Key key) {
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        entry.lastAccessNanos = System.nanoTime();
+
+        return entry;
+    }
+
+    long getGeneration(String repositoryId) {
+        return generation(repositoryId).get();
+    }
+
+    /**
+     * <p>Caches a result unless the repository was modified since <code>generation</code>.</p>
+     */
+    void put(Key key, long generation, Entry entry) {
+        AtomicLong currentGeneration = generation(key.repositoryId);
+
+        if (entry.bytes > maxEntryBytes || currentGeneration.get() != generation) {
+            return;
+        }
+
+        Entry previous = entries.put(key, entry);
+        bytes.addAndGet(entry.bytes - (previous == null ? 0 : previous.bytes));
+
+        if (currentGeneration.get() != generation && entries.remove(key, entry)) {
+            bytes.addAndGet(-entry.bytes);
+        }
+
+        if (bytes.get() > maxBytes) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    private synchronized void evictLeastRecentlyUsed() {
+        while (bytes.get() > maxBytes) {
+            Map.Entry<Key, Entry> eldest = null;
+
+            for (Map.Entry<Key, Entry> candidate : entries.entrySet()) {
+                if (eldest == null || candidate.getValue().lastAccessNanos < eldest.getValue().lastAccessNanos) {
+                    eldest = candidate;
+                }
+            }
+
+            if (eldest == null) {
+                return;
+            }
+
+            if (entries.remove(eldest.getKey(), eldest.getValue())) {
+                bytes.addAndGet(-eldest.getValue().bytes);
+                evictions.increment();
+            }
+        }
+    }
+
+    private AtomicLong generation(String repositoryId) {
+        return generations.computeIfAbsent(repositoryId, id -> new AtomicLong());
+    }
+
+    static long estimateBytes(BindingSet bindingSet) {
+        long estimate = BINDING_SET_OVERHEAD_BYTES;
+
+        for (Binding binding : bindingSet) {
+            estimate += estimateBytes(binding.getName()) + estimateBytes(binding.getValue());
+        }
+
+        return estimate;
+    }
+
+    static long estimateBytes(Statement statement) {
+        return BINDING_SET_OVERHEAD_BYTES
+                + estimateBytes(statement.getSubject())
+                + estimateBytes(statement.getPredicate())
+                + estimateBytes(statement.getObject())
+                + estimateBytes(statement.getContext());
+    }
+
+    private static long estimateBytes(Value value) {
+        if (value == null) {
+            return 0;
+        }
+
+        long estimate = VALUE_OVERHEAD_BYTES + estimateBytes(value.stringValue());
+
+        if (value instanceof Literal) {
+            estimate += ((Literal) value).getLanguage().map(QueryResultCache::estimateBytes).orElse(0L);
+        }
+
+        return estimate;
+    }
+
+    private static long estimateBytes(String string) {
+        return VALUE_OVERHEAD_BYTES + 2L * string.length();
+    }
+
+    /**
+     * @return the number of evaluations that were answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of evaluations that were not answered from the cache.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of results that were evicted to stay within <code>maxBytes</code>.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the estimated memory footprint of all cached results.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the number of cached results.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * @param maxEntryBytes the maximum estimated memory footprint of a single cached result. Defaults to an eighth of
+     *                      <code>maxBytes</code>.
+     */
+    public void setMaxEntryBytes(long maxEntryBytes) {
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResultCache{" +
+                "size=" + entries.size() +
+                ", bytes=" + bytes +
+                ", maxBytes=" + maxBytes +
+                ", maxEntryBytes=" + maxEntryBytes +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    static class Key {
+        private final String repositoryId;
+
+        private final QueryLanguage queryLanguage;
+
+        private final String query;
+
+        private final String baseURI;
+
+        private final Map<String, Value> bindings;
+
+        private final boolean includeInferred;
+
+        private final int hashCode;
+
+        Key(String repositoryId, QueryLanguage queryLanguage, String query, String baseURI, BindingSet bindings,
+            boolean includeInferred) {
+            this.repositoryId = repositoryId;
+            this.queryLanguage = queryLanguage;
+            this.query = query;
+            this.baseURI = baseURI;
+            this.bindings = toMap(bindings);
+            this.includeInferred = includeInferred;
+            this.hashCode = Objects.hash(repositoryId, queryLanguage, query, baseURI, this.bindings, includeInferred);
+        }
+
+        private static Map<String, Value> toMap(BindingSet bindingSet) {
+            if (bindingSet.size() == 0) {
+                return Collections.emptyMap();
+            }
+
+            Map<String, Value> map = new HashMap<>();
+
+            for (Binding binding : bindingSet) {
+                map.put(binding.getName(), binding.getValue());
+            }
+
+            return map;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+
+            return hashCode == key.hashCode
+                    && includeInferred == key.includeInferred
+                    && query.equals(key.query)
+                    && repositoryId.equals(key.repositoryId)
+                    && queryLanguage.equals(key.queryLanguage)
+                    && Objects.equals(baseURI, key.baseURI)
+                    && bindings.equals(key.bindings);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * <p>A materialized result: the binding names and binding sets of a tuple query or the namespaces and statements
+     * of a graph query.</p>
+     */
+    static class Entry {
+        private final List<String> bindingNames;
+
+        private final Map<String, String> namespaces;
+
+        private final List<?> results;
+
+        private final long bytes;
+
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        Entry(List<String> bindingNames, Map<String, String> namespaces, List<?> results, long bytes) {
+            this.bindingNames = bindingNames;
+            this.namespaces = namespaces;
+            this.results = Collections.unmodifiableList(results);
+            this.bytes = ENTRY_OVERHEAD_BYTES + bytes;
+        }
+
+        List<String> getBindingNames() {
+            return bindingNames;
+        }
+
+        Map<String, String> getNamespaces() {
+            return namespaces;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> List<T> getResults() {
+            return (List<T>) results;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package org.openrdf.spring;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.IterationWrapper;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.BooleanQuery;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.GraphQuery;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.Operation;
+import org.openrdf.query.Query;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.QueryResults;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.TupleQueryResultHandler;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.Update;
+import org.openrdf.query.UpdateExecutionException;
+import org.openrdf.query.impl.IteratingGraphQueryResult;
+import org.openrdf.query.impl.IteratingTupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.base.RepositoryConnectionWrapper;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * <p>{@link QueryTimingRepositoryConnection} reports the duration of every query and update prepared through the
+ * connection of a transaction to a {@link SlowTransactionLog}.</p>
+ * <p/>
+ * <p>Tuple and graph queries are timed until their result is exhausted or closed, so the time it takes to read the
+ * result is included.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class QueryTimingRepositoryConnection extends RepositoryConnectionWrapper {
+    private final SlowTransactionLog slowTransactionLog;
+
+    private final SesameTransactionObject sesameTransactionObject;
+
+    QueryTimingRepositoryConnection(SlowTransactionLog slowTransactionLog,
+                                    SesameTransactionObject sesameTransactionObject, RepositoryConnection delegate) {
+        super(delegate.getRepository(), delegate);
+        this.slowTransactionLog = slowTransactionLog;
+        this.sesameTransactionObject = sesameTransactionObject;
+    }
+
+    @Override
+    public Query prepareQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        Query preparedQuery = super.prepareQuery(ql, query, baseURI);
+
+        if (preparedQuery instanceof TupleQuery) {
+            return new TimedTupleQuery((TupleQuery) preparedQuery, query);
+        } else if (preparedQuery instanceof GraphQuery) {
+            return new TimedGraphQuery((GraphQuery) preparedQuery, query);
+        } else if (preparedQuery instanceof BooleanQuery) {
+            return new TimedBooleanQuery((BooleanQuery) preparedQuery, query);
+        } else {
+            return preparedQuery;
+        }
+    }
+
+    @Override
+    public TupleQuery prepareTupleQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        return new TimedTupleQuery(super.prepareTupleQuery(ql, query, baseURI), query);
+    }
+
+    @Override
+    public GraphQuery prepareGraphQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        return new TimedGraphQuery(super.prepareGraphQuery(ql, query, baseURI), query);
+    }
+
+    @Override
+    public BooleanQuery prepareBooleanQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        return new TimedBooleanQuery(super.prepareBooleanQuery(ql, query, baseURI), query);
+    }
+
+    @Override
+    public Update prepareUpdate(QueryLanguage ql, String update, String baseURI) throws MalformedQueryException {
+        return new TimedUpdate(super.prepareUpdate(ql, update, baseURI), update);
+    }
+
+    @Override
+    public String toString() {
+        return "QueryTimingRepositoryConnection{" +
+                "delegate=" + getDelegate() +
+                ", slowTransactionLog=" + slowTransactionLog +
+                '}';
+    }
+
+    private void completed(String query, long startNanos) {
+        slowTransactionLog.queryCompleted(sesameTransactionObject, query, System.nanoTime() - startNanos);
+    }
+
+    private abstract static class TimedOperation<O extends Operation> implements Operation {
+        protected final O delegate;
+
+        protected final String query;
+
+        private TimedOperation(O delegate, String query) {
+            this.delegate = delegate;
+            this.query = query;
+        }
+
+        @Override
+        public void setBinding(String name, Value value) {
+            delegate.setBinding(name, value);
+        }
+
+        @Override
+        public void removeBinding(String name) {
+            delegate.removeBinding(name);
+        }
+
+        @Override
+        public void clearBindings() {
+            delegate.clearBindings();
+        }
+
+        @Override
+        public BindingSet getBindings() {
+            return delegate.getBindings();
+        }
+
+        @Override
+        public void setDataset(Dataset dataset) {
+            delegate.setDataset(dataset);
+        }
+
+        @Override
+        public Dataset getDataset() {
+            return delegate.getDataset();
+        }
+
+        @Override
+        public void setIncludeInferred(boolean includeInferred) {
+            delegate.setIncludeInferred(includeInferred);
+        }
+
+        @Override
+        public boolean getIncludeInferred() {
+            return delegate.getIncludeInferred();
+        }
+
+        @Override
+        public void setMaxExecutionTime(int maxExecutionTime) {
+            delegate.setMaxExecutionTime(maxExecutionTime);
+        }
+
+        @Override
+        public int getMaxExecutionTime() {
+            return delegate.getMaxExecutionTime();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+
+    private abstract static class TimedQuery<Q extends Query> extends TimedOperation<Q> implements Query {
+        private TimedQuery(Q delegate, String query) {
+            super(delegate, query);
+        }
+
+        @Override
+        @Deprecated
+        @SuppressWarnings("deprecation")
+        public void setMaxQueryTime(int maxQueryTime) {
+            delegate.setMaxQueryTime(maxQueryTime);
+        }
+
+        @Override
+        @Deprecated
+        @SuppressWarnings("deprecation")
+        public int getMaxQueryTime() {
+            return delegate.getMaxQueryTime();
+        }
+    }
+
+    private class TimedTupleQuery extends TimedQuery<TupleQuery> implements TupleQuery {
+        private TimedTupleQuery(TupleQuery delegate, String query) {
+            super(delegate, query);
+        }
+
+        @Override
+        public TupleQueryResult evaluate() throws QueryEvaluationException {
+            long startNanos = System.nanoTime();
+            TupleQueryResult tupleQueryResult;
+
+            try {
+                tupleQueryResult = delegate.evaluate();
+            } catch (RuntimeException e) {
+                completed(query, startNanos);
+                throw e;
+            }
+
+            return new IteratingTupleQueryResult(tupleQueryResult.getBindingNames(),
+                    new TimedIteration<>(tupleQueryResult, query, startNanos));
+        }
+
+        @Override
+        public void evaluate(TupleQueryResultHandler handler)
+                throws QueryEvaluationException, TupleQueryResultHandlerException {
+            QueryResults.report(evaluate(), handler);
+        }
+    }
+
+    private class TimedGraphQuery extends TimedQuery<GraphQuery> implements GraphQuery {
+        private TimedGraphQuery(GraphQuery delegate, String query) {
+            super(delegate, query);
+        }
+
+        @Override
+        public GraphQueryResult evaluate() throws QueryEvaluationException {
+            long startNanos = System.nanoTime();
+            GraphQueryResult graphQueryResult;
+
+            try {
+                graphQueryResult = delegate.evaluate();
+            } catch (RuntimeException e) {
+                completed(query, startNanos);
+                throw e;
+            }
+
+            return new IteratingGraphQueryResult(graphQueryResult.getNamespaces(),
+                    new TimedIteration<>(graphQueryResult, query, startNanos));
+        }
+
+        @Override
+        public void evaluate(RDFHandler handler) throws QueryEvaluationException, RDFHandlerException {
+            QueryResults.report(evaluate(), handler);
+        }
+    }
+
+    private class TimedBooleanQuery extends TimedQuery<BooleanQuery> implements BooleanQuery {
+        private TimedBooleanQuery(BooleanQuery delegate, String query) {
+            super(delegate, query);
+        }
+
+        @Override
+        public boolean evaluate() throws QueryEvaluationException {
+            long startNanos = System.nanoTime();
+
+            try {
+                return delegate.evaluate();
+            } finally {
+                completed(query, startNanos);
+            }
+        }
+    }
+
+    private class TimedUpdate extends TimedOperation<Update> implements Update {
+        private TimedUpdate(Update delegate, String update) {
+            super(delegate, update);
+        }
+
+        @Override
+        public void execute() throws UpdateExecutionException {
+            long startNanos = System.nanoTime();
+
+            try {
+                delegate.execute();
+            } finally {
+                completed(query, startNanos);
+            }
+        }
+    }
+
+    /**
+     * <p>Reports the duration of a query once its result is closed, which happens at the latest when it is
+     * exhausted.</p>
+     */
+    private class TimedIteration<E> extends IterationWrapper<E, QueryEvaluationException> {
+        private final String query;
+
+        private final long startNanos;
+
+        private TimedIteration(CloseableIteration<? extends E, QueryEvaluationException> delegate, String query,
+                               long startNanos) {
+            super(delegate);
+            this.query = query;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (isClosed()) {
+                return false;
+            }
+
+            if (wrappedIter.hasNext()) {
+                return true;
+            }
+
+            close();
+
+            return false;
+        }
+
+        @Override
+        protected void handleClose() throws QueryEvaluationException {
+            try {
+                super.handleClose();
+            } finally {
+                completed(query, startNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.openrdf.spring;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.EmptyIteration;
+import info.aduna.iteration.SingletonIteration;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.GraphQuery;
+import org.openrdf.query.Operation;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.repository.RepositoryConnection;
+import org.reactivestreams.Publisher;
+
+/**
+ * <p>{@link ReactiveSesameTransaction} is the handle of a transaction started by a
+ * {@link SesameReactiveTransactionManager}. It holds the transaction state instead of a thread-local and exposes the
+ * transaction's connection through {@link Publisher}s.</p>
+ * <p/>
+ * <p>The publishers are cold: every subscription runs its query anew on the transaction's connection and reads only as
+ * many results from the store as were requested. All connection calls of a transaction run one after another on the
+ * bounded thread pool of the transaction manager, never on the subscriber's thread.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see SesameReactiveTransactionManager
+ */
+public class ReactiveSesameTransaction {
+    private final RepositoryConnectionFactory repositoryConnectionFactory;
+
+    private final SesameTransactionObject sesameTransactionObject;
+
+    private final SerialExecutor executor;
+
+    ReactiveSesameTransaction(RepositoryConnectionFactory repositoryConnectionFactory,
+                              SesameTransactionObject sesameTransactionObject, SerialExecutor executor) {
+        this.repositoryConnectionFactory = repositoryConnectionFactory;
+        this.sesameTransactionObject = sesameTransactionObject;
+        this.executor = executor;
+    }
+
+    /**
+     * @param query a SPARQL select query.
+     * @return the solutions of the query.
+     */
+    public Publisher<BindingSet> tupleQuery(String query) {
+        return tupleQuery(query, EmptyBindingSet.getInstance());
+    }
+
+    /**
+     * @param query    a SPARQL select query.
+     * @param bindings the values that are bound in the query.
+     * @return the solutions of the query.
+     */
+    public Publisher<BindingSet> tupleQuery(String query, BindingSet bindings) {
+        return stream(connection -> {
+            TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
+            bind(tupleQuery, bindings);
+
+            return tupleQuery.evaluate();
+        });
+    }
+
+    /**
+     * @param query a SPARQL construct or describe query.
+     * @return the statements of the query result.
+     */
+    public Publisher<Statement> graphQuery(String query) {
+        return graphQuery(query, EmptyBindingSet.getInstance());
+    }
+
+    /**
+     * @param query    a SPARQL construct or describe query.
+     * @param bindings the values that are bound in the query.
+     * @return the statements of the query result.
+     */
+    public Publisher<Statement> graphQuery(String query, BindingSet bindings) {
+        return stream(connection -> {
+            GraphQuery graphQuery = connection.prepareGraphQuery(QueryLanguage.SPARQL, query);
+            bind(graphQuery, bindings);
+
+            return graphQuery.evaluate();
+        });
+    }
+
+    /**
+     * @return the statements that match the pattern, see {@link RepositoryConnection#getStatements}.
+     */
+    public Publisher<Statement> statements(Resource subject, IRI predicate, Value object, Resource... contexts) {
+        return stream(connection -> connection.getStatements(subject, predicate, object, true, contexts));
+    }
+
+    /**
+     * @param callback opens the iteration whose elements are published. The iteration is closed once it is exhausted
+     *                 or the subscription is cancelled.
+     * @return the elements of the iteration.
+     */
+    public <T> Publisher<T> stream(ConnectionCallback<CloseableIteration<? extends T, ? extends Exception>> callback) {
+        return new IterationPublisher<>(executor, () -> callback.doWithConnection(getConnection()));
+    }
+
+    /**
+     * <p>Runs a blocking operation, e.g. an update, on the transaction's connection.</p>
+     *
+     * @param callback the operation.
+     * @return the result of the operation, or no element if it returned <code>null</code>.
+     */
+    public <T> Publisher<T> execute(ConnectionCallback<T> callback) {
+        return new IterationPublisher<>(executor, () -> {
+            T result = callback.doWithConnection(getConnection());
+
+            return result == null ? new EmptyIteration<T, Exception>() : new SingletonIteration<T, Exception>(result);
+        });
+    }
+
+    /**
+     * <p>Marks the transaction to be rolled back instead of committed when its publisher completes.</p>
+     */
+    public void setRollbackOnly() {
+        sesameTransactionObject.setRollbackOnly(true);
+    }
+
+    public boolean isRollbackOnly() {
+        return sesameTransactionObject.isRollbackOnly();
+    }
+
+    public boolean isReadOnly() {
+        return sesameTransactionObject.isReadOnly();
+    }
+
+    public String getRepositoryId() {
+        return sesameTransactionObject.getRepositoryId();
+    }
+
+    private RepositoryConnection getConnection() {
+        return repositoryConnectionFactory.getConnection(sesameTransactionObject);
+    }
+
+    private static void bind(Operation operation, BindingSet bindings) {
+        for (Binding binding : bindings) {
+            operation.setBinding(binding.getName(), binding.getValue());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReactiveSesameTransaction{" +
+                "sesameTransactionObject=" + sesameTransactionObject +
+                '}';
+    }
+
+    /**
+     * Call-back for blocking work on the connection of a {@link ReactiveSesameTransaction}. It runs on a thread of
+     * the transaction manager's pool.
+     */
+    @FunctionalInterface
+    public interface ConnectionCallback<T> {
+        T doWithConnection(RepositoryConnection connection) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface IterationCallback<T> {
+        CloseableIteration<? extends T, ? extends Exception> doWithConnection() throws Exception;
+    }
+}
@@ -0,0 +1,132 @@
+package org.openrdf.spring;
+
+import info.aduna.iteration.Iteration;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.Update;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryReadOnlyException;
+import org.openrdf.repository.base.RepositoryConnectionWrapper;
+import org.openrdf.rio.RDFFormat;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+
+/**
+ * <p>{@link ReadOnlyRepositoryConnection} exposes the {@link RepositoryConnection} of a read-only transaction and
+ * rejects every modification with a {@link RepositoryReadOnlyException} before it reaches the
+ * {@link org.openrdf.repository.Repository}.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class ReadOnlyRepositoryConnection extends RepositoryConnectionWrapper {
+    ReadOnlyRepositoryConnection(RepositoryConnection delegate) {
+        super(delegate.getRepository(), delegate);
+    }
+
+    @Override
+    public void add(File file, String baseURI, RDFFormat dataFormat, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(InputStream in, String baseURI, RDFFormat dataFormat, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(Iterable<? extends Statement> statements, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public <E extends Exception> void add(Iteration<? extends Statement, E> statements, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(Reader reader, String baseURI, RDFFormat dataFormat, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(Resource subject, IRI predicate, Value object, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(Statement st, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(URL url, String baseURI, RDFFormat dataFormat, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void remove(Iterable<? extends Statement> statements, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public <E extends Exception> void remove(Iteration<? extends Statement, E> statements, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void remove(Resource subject, IRI predicate, Value object, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void remove(Statement st, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear(Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setNamespace(String prefix, String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeNamespace(String prefix) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clearNamespaces() {
+        throw readOnly();
+    }
+
+    @Override
+    public Update prepareUpdate(QueryLanguage ql, String update, String baseURI) throws MalformedQueryException {
+        throw readOnly();
+    }
+
+    @Override
+    protected void addWithoutCommit(Resource subject, IRI predicate, Value object, Resource... contexts) {
+        throw readOnly();
+    }
+
+    @Override
+    protected void removeWithoutCommit(Resource subject, IRI predicate, Value object, Resource... contexts) {
+        throw readOnly();
+    }
+
+    private static RepositoryException readOnly() {
+        return new RepositoryReadOnlyException("Cannot modify data in a read-only transaction");
+    }
+}
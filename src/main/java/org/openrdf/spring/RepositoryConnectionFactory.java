@@ -3,17 +3,31 @@ package org.openrdf.spring;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.repository.sail.SailRepositoryConnection;
+import org.openrdf.sail.NotifyingSailConnection;
+import org.openrdf.sail.SailConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionSystemException;
 
+import java.io.File;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
 /**
  * <p>{@link RepositoryConnectionFactory} handles connections to a single corresponding {@link Repository} and manages
  * the transaction state (represented by {@link SesameTransactionObject}).</p>
  * <p/>
  * <p>This class provides methods to access <i>transactional</i> connections from the outside and is typically the
  * only class that library users interact with.</p>
+ * <p/>
+ * <p>The state of a completed transaction is re-used for the next transaction of the same thread, so it must not be
+ * accessed after the transaction has ended.</p>
  *
  * @author ameingast@gmail.com
  * @see SesameConnectionFactory
@@ -21,10 +35,71 @@ import org.springframework.transaction.TransactionSystemException;
 public class RepositoryConnectionFactory implements DisposableBean, SesameConnectionFactory {
     private static final Logger log = LoggerFactory.getLogger(RepositoryConnectionFactory.class);
 
+    /**
+     * The repository-id that transactions are tagged with unless another one is set.
+     */
+    public static final String DEFAULT_REPOSITORY_ID = "default";
+
+    /**
+     * The maximum number of transactions that are committed in one group unless configured otherwise.
+     */
+    public static final int DEFAULT_GROUP_COMMIT_MAX_SIZE = 1000;
+
+    /**
+     * The size of the direct buffer that holds the staged statements of a transaction before they are written to a
+     * temporary file unless configured otherwise.
+     */
+    public static final int DEFAULT_STAGING_MEMORY_BYTES = 1024 * 1024;
+
+    /**
+     * The number of buffered statements that a transaction holds on the heap before it stages them unless configured
+     * otherwise.
+     */
+    public static final int DEFAULT_STAGING_HEAP_STATEMENTS = 1000;
+
     private final ThreadLocal<SesameTransactionObject> localTransactionObject;
 
+    private final ThreadLocal<SesameTransactionObject> recycledTransactionObject = new ThreadLocal<>();
+
+    private final Function<SesameTransactionObject, RepositoryConnection> transactionConnectionOpener =
+            this::openTracedTransactionConnection;
+
     private final Repository repository;
 
+    private String repositoryId = DEFAULT_REPOSITORY_ID;
+
+    private ParsedQueryCache parsedQueryCache;
+
+    private QueryResultCache queryResultCache;
+
+    private boolean lazyConnections;
+
+    private boolean groupCommitEnabled;
+
+    private long groupCommitMaxDelayMillis;
+
+    private int groupCommitMaxSize = DEFAULT_GROUP_COMMIT_MAX_SIZE;
+
+    private GroupCommitWriter groupCommitWriter;
+
+    private SlowTransactionLog slowTransactionLog;
+
+    private ChangeSetPublisher changeSetPublisher;
+
+    private volatile boolean changeSetCaptureUnsupported;
+
+    private final Object commitOrderLock = new Object();
+
+    private boolean stagingEnabled;
+
+    private File stagingDirectory;
+
+    private volatile StagingMemoryPool stagingMemoryPool = new StagingMemoryPool(DEFAULT_STAGING_MEMORY_BYTES);
+
+    private int stagingHeapStatements = DEFAULT_STAGING_HEAP_STATEMENTS;
+
+    private AdmissionController admissionController;
+
     /**
      * <p>Creates a new {@link RepositoryConnectionFactory} for the provided {@link Repository}.</p>
      *
@@ -46,6 +121,35 @@ public class RepositoryConnectionFactory implements DisposableBean, SesameConnec
             throw new SesameTransactionException("No transaction active");
         }
 
+        return getConnection(sesameTransactionObject);
+    }
+
+    /**
+     * <p>Returns the transactional connection of a transaction that is not necessarily bound to the current thread,
+     * and begins the transaction on the connection when it is first accessed.</p>
+     */
+    RepositoryConnection getConnection(SesameTransactionObject sesameTransactionObject) {
+        Lock connectionLock = sesameTransactionObject.getConnectionLock();
+
+        if (connectionLock == null) {
+            return prepareConnection(sesameTransactionObject);
+        }
+
+        connectionLock.lock();
+
+        try {
+            if (sesameTransactionObject.isCompleted()) {
+                throw new IllegalTransactionStateException("Transaction already completed: " +
+                        sesameTransactionObject.getName());
+            }
+
+            return prepareConnection(sesameTransactionObject);
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    private RepositoryConnection prepareConnection(SesameTransactionObject sesameTransactionObject) {
         RepositoryConnection repositoryConnection = sesameTransactionObject.getRepositoryConnection();
 
         try {
@@ -53,14 +157,99 @@ public class RepositoryConnectionFactory implements DisposableBean, SesameConnec
                 throw new SesameTransactionException("Cannot get connection. Connection closed during transaction.");
             }
 
-            if (!repositoryConnection.isActive()) {
+            if (!repositoryConnection.isActive() && beginsTransaction(sesameTransactionObject)
+                    && !groupCommits(sesameTransactionObject)) {
                 repositoryConnection.begin();
             }
         } catch (RepositoryException e) {
             throw new SesameTransactionException(e);
         }
 
-        return repositoryConnection;
+        if (changeSetPublisher != null && !sesameTransactionObject.isReadOnly()
+                && sesameTransactionObject.getChangeSetCollector() == null) {
+            attachChangeSetCollector(sesameTransactionObject, repositoryConnection);
+        }
+
+        RepositoryConnection transactionalConnection = sesameTransactionObject.getTransactionalConnection();
+
+        if (transactionalConnection == null) {
+            transactionalConnection = decorateConnection(sesameTransactionObject, repositoryConnection);
+            sesameTransactionObject.setTransactionalConnection(transactionalConnection);
+        }
+
+        return transactionalConnection;
+    }
+
+    /**
+     * <p>Collects the changes of a write transaction from the notifications of its {@link NotifyingSailConnection}.
+     * Statements written through a group commit are collected from the transaction's {@link StatementBuffer}
+     * instead.</p>
+     */
+    private void attachChangeSetCollector(SesameTransactionObject sesameTransactionObject,
+                                          RepositoryConnection repositoryConnection) {
+        ChangeSetCollector changeSetCollector = new ChangeSetCollector();
+        sesameTransactionObject.setChangeSetCollector(changeSetCollector);
+
+        SailConnection sailConnection = repositoryConnection instanceof SailRepositoryConnection
+                ? ((SailRepositoryConnection) repositoryConnection).getSailConnection()
+                : null;
+
+        if (sailConnection instanceof NotifyingSailConnection) {
+            ((NotifyingSailConnection) sailConnection).addConnectionListener(changeSetCollector);
+        } else if (!changeSetCaptureUnsupported) {
+            changeSetCaptureUnsupported = true;
+            log.warn("Cannot capture the change-sets of repository {}: connections do not report their changes",
+                    repositoryId);
+        }
+    }
+
+    private static void detachChangeSetCollector(SesameTransactionObject sesameTransactionObject) {
+        ChangeSetCollector changeSetCollector = sesameTransactionObject.getChangeSetCollector();
+
+        if (changeSetCollector == null) {
+            return;
+        }
+
+        RepositoryConnection repositoryConnection = sesameTransactionObject.getRepositoryConnection();
+
+        if (repositoryConnection instanceof SailRepositoryConnection) {
+            SailConnection sailConnection = ((SailRepositoryConnection) repositoryConnection).getSailConnection();
+
+            if (sailConnection instanceof NotifyingSailConnection) {
+                ((NotifyingSailConnection) sailConnection).removeConnectionListener(changeSetCollector);
+            }
+        }
+
+        changeSetCollector.clear();
+        sesameTransactionObject.setChangeSetCollector(null);
+    }
+
+    private void publishChangeSet(SesameTransactionObject sesameTransactionObject) {
+        ChangeSetCollector changeSetCollector = sesameTransactionObject.getChangeSetCollector();
+
+        if (changeSetCollector != null) {
+            changeSetPublisher.publish(changeSetCollector.drain(sesameTransactionObject.getRepositoryId(),
+                    sesameTransactionObject.getName()));
+        }
+    }
+
+    /**
+     * <p>Read-only transactions without an explicit isolation level do not begin a transaction on the connection:
+     * their reads run in auto-commit mode at the isolation level chosen by {@link SesameTransactionManager}, which
+     * saves the begin and commit round trips.</p>
+     */
+    private static boolean beginsTransaction(SesameTransactionObject sesameTransactionObject) {
+        return !sesameTransactionObject.isReadOnly()
+                || sesameTransactionObject.getIsolationLevel() != TransactionDefinition.ISOLATION_DEFAULT;
+    }
+
+    /**
+     * <p>Write transactions without an explicit isolation level take part in group commits if enabled: their
+     * transaction on the connection only begins once they do more than write single statements.</p>
+     */
+    private boolean groupCommits(SesameTransactionObject sesameTransactionObject) {
+        return groupCommitEnabled && !sesameTransactionObject.isReadOnly()
+                && sesameTransactionObject.getIsolationLevel() == TransactionDefinition.ISOLATION_DEFAULT;
     }
 
     /**
@@ -68,35 +257,108 @@ public class RepositoryConnectionFactory implements DisposableBean, SesameConnec
      */
     @Override
     public void closeConnection() {
-        SesameTransactionObject sesameTransactionObject = null;
-        RepositoryConnection repositoryConnection = null;
+        SesameTransactionObject sesameTransactionObject = localTransactionObject.get();
+
+        if (sesameTransactionObject == null) {
+            throw new SesameTransactionException("No transaction active");
+        }
 
         try {
-            sesameTransactionObject = localTransactionObject.get();
+            closeTransaction(sesameTransactionObject);
+        } finally {
+            localTransactionObject.remove();
+            recycleTransaction(sesameTransactionObject);
+        }
+    }
 
-            if (sesameTransactionObject == null) {
-                throw new SesameTransactionException("No transaction active");
-            }
+    /**
+     * <p>Releases the connection and the admission slot of a transaction that has ended, and reports it to the
+     * {@link SlowTransactionLog}. The transaction does not have to be bound to the current thread.</p>
+     */
+    void closeTransaction(SesameTransactionObject sesameTransactionObject) {
+        if (!sesameTransactionObject.hasRepositoryConnection()) {
+            releaseAdmission(sesameTransactionObject);
+            return;
+        }
+
+        RepositoryConnection repositoryConnection = sesameTransactionObject.getRepositoryConnection();
 
-            repositoryConnection = sesameTransactionObject.getRepositoryConnection();
+        try {
+            if (!repositoryConnection.isOpen()) {
+                throw new SesameTransactionException("Connection closed during transaction");
+            }
 
+            if (slowTransactionLog != null) {
+                slowTransactionLog.transactionCompleted(sesameTransactionObject,
+                        repositoryConnection.getIsolationLevel());
+            }
+        } catch (RepositoryException e) {
+            throw new SesameTransactionException(e);
+        } finally {
             try {
-                if (!repositoryConnection.isOpen()) {
-                    throw new SesameTransactionException("Connection closed during transaction");
-                }
+                sesameTransactionObject.clearStatementBuffer();
+                detachChangeSetCollector(sesameTransactionObject);
+                releaseConnection(repositoryConnection);
             } catch (RepositoryException e) {
-                throw new SesameTransactionException(e);
+                log.error(e.getMessage(), e);
             }
-        } finally {
-            if (sesameTransactionObject != null && repositoryConnection != null) {
-                try {
-                    repositoryConnection.close();
-                } catch (RepositoryException e) {
-                    log.error(e.getMessage(), e);
-                }
 
-                localTransactionObject.remove();
-            }
+            releaseAdmission(sesameTransactionObject);
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void admitTransaction(SesameTransactionObject sesameTransactionObject) {
+        AdmissionController controller = admissionController;
+
+        if (controller != null && sesameTransactionObject.getAdmissionLane() == null) {
+            sesameTransactionObject.setAdmissionLane(controller.admit(sesameTransactionObject.isReadOnly(),
+                    repositoryId));
+        }
+    }
+
+    /**
+     * <p>Admits a transaction like {@link #admitTransaction(SesameTransactionObject)}, but never waits for a free
+     * slot.</p>
+     *
+     * @return <code>false</code> if the transaction has not been admitted since it would have to wait.
+     */
+    boolean tryAdmitTransaction(SesameTransactionObject sesameTransactionObject) {
+        AdmissionController controller = admissionController;
+
+        if (controller == null || sesameTransactionObject.getAdmissionLane() != null) {
+            return true;
+        }
+
+        AdmissionController.Lane admissionLane = controller.tryAdmit(sesameTransactionObject.isReadOnly());
+        sesameTransactionObject.setAdmissionLane(admissionLane);
+
+        return admissionLane != null;
+    }
+
+    /**
+     * <p>Frees the admission slot of a transaction that has ended.</p>
+     */
+    void releaseAdmission(SesameTransactionObject sesameTransactionObject) {
+        AdmissionController.Lane admissionLane = sesameTransactionObject.getAdmissionLane();
+
+        if (admissionLane != null) {
+            sesameTransactionObject.setAdmissionLane(null);
+            admissionLane.release();
+        }
+    }
+
+    /**
+     * <p>Keeps the state of a completed transaction for the next transaction of the current thread. Transactions that
+     * were shared with other threads are not re-used, since tasks may still hold on to them.</p>
+     */
+    private void recycleTransaction(SesameTransactionObject sesameTransactionObject) {
+        if (sesameTransactionObject.getConnectionLock() == null) {
+            sesameTransactionObject.reset();
+            recycledTransactionObject.set(sesameTransactionObject);
         }
     }
 
@@ -105,14 +367,72 @@ public class RepositoryConnectionFactory implements DisposableBean, SesameConnec
      */
     @Override
     public SesameTransactionObject createTransaction() throws RepositoryException {
-        RepositoryConnection repositoryConnection = repository.getConnection();
+        SesameTransactionObject sesameTransactionObject = recycledTransactionObject.get();
+
+        if (sesameTransactionObject == null) {
+            sesameTransactionObject = openTransaction();
+        } else {
+            if (opensConnectionsLazily()) {
+                sesameTransactionObject.reuse(transactionConnectionOpener);
+            } else {
+                sesameTransactionObject.reuse(openConnection());
+            }
+
+            recycledTransactionObject.set(null);
+            initializeTransaction(sesameTransactionObject);
+        }
 
-        SesameTransactionObject sesameTransactionObject = new SesameTransactionObject(repositoryConnection);
         localTransactionObject.set(sesameTransactionObject);
 
         return sesameTransactionObject;
     }
 
+    /**
+     * <p>Creates the state of a new transaction without binding it to the current thread.</p>
+     */
+    SesameTransactionObject openTransaction() throws RepositoryException {
+        return initializeTransaction(opensConnectionsLazily()
+                ? new SesameTransactionObject(transactionConnectionOpener)
+                : new SesameTransactionObject(openConnection()));
+    }
+
+    /**
+     * <p>Transactions that wait for admission must not hold a connection, so connections are always opened lazily
+     * while an admission policy is set.</p>
+     */
+    private boolean opensConnectionsLazily() {
+        return lazyConnections || admissionController != null;
+    }
+
+    private SesameTransactionObject initializeTransaction(SesameTransactionObject sesameTransactionObject) {
+        sesameTransactionObject.setRepositoryId(repositoryId);
+
+        if (stagingEnabled) {
+            File directory = stagingDirectory;
+            StagingMemoryPool memoryPool = stagingMemoryPool;
+            int heapStatements = stagingHeapStatements;
+
+            sesameTransactionObject.setStatementBufferFactory(() ->
+                    new StagedStatementBuffer(directory, memoryPool, heapStatements));
+        }
+
+        if (!opensConnectionsLazily() && slowTransactionLog != null) {
+            sesameTransactionObject.setTrace(slowTransactionLog.startTrace());
+        }
+
+        return sesameTransactionObject;
+    }
+
+    private RepositoryConnection openTracedTransactionConnection(SesameTransactionObject sesameTransactionObject) {
+        RepositoryConnection repositoryConnection = openTransactionConnection(sesameTransactionObject);
+
+        if (slowTransactionLog != null) {
+            sesameTransactionObject.setTrace(slowTransactionLog.startTrace());
+        }
+
+        return repositoryConnection;
+    }
+
     /**
      * @inheritDoc
      */
@@ -124,21 +444,213 @@ public class RepositoryConnectionFactory implements DisposableBean, SesameConnec
             throw new TransactionSystemException("No transaction active");
         }
 
+        endTransaction(sesameTransactionObject, rollback);
+    }
+
+    /**
+     * <p>Commits or rolls back a transaction that is not necessarily bound to the current thread.</p>
+     */
+    void endTransaction(SesameTransactionObject sesameTransactionObject, boolean rollback) throws RepositoryException {
+        Lock connectionLock = sesameTransactionObject.getConnectionLock();
+
+        if (connectionLock == null) {
+            completeTransaction(sesameTransactionObject, rollback);
+            return;
+        }
+
+        connectionLock.lock();
+
+        try {
+            if (!rollback && !awaitBoundTasks(sesameTransactionObject)) {
+                completeTransaction(sesameTransactionObject, true);
+
+                throw new IllegalTransactionStateException("Transaction rolled back: interrupted while " +
+                        sesameTransactionObject.getBoundTaskCount() + " tasks still run inside the transaction");
+            }
+
+            completeTransaction(sesameTransactionObject, rollback);
+        } finally {
+            sesameTransactionObject.setCompleted(true);
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * <p>Waits for the tasks of a shared transaction to finish. A task may hand over its result before it is unbound
+     * from its thread, e.g. when the task completes a {@link java.util.concurrent.Future} itself, so a commit cannot
+     * tell a task that is about to finish from one that still works. Must be called while holding the connection
+     * lock, which is released while waiting.</p>
+     *
+     * @return <code>false</code> if the thread was interrupted before the tasks finished.
+     */
+    private static boolean awaitBoundTasks(SesameTransactionObject sesameTransactionObject) {
+        try {
+            while (sesameTransactionObject.getBoundTaskCount() > 0) {
+                sesameTransactionObject.getTasksUnbound().await();
+            }
+
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void completeTransaction(SesameTransactionObject sesameTransactionObject, boolean rollback)
+            throws RepositoryException {
+        if (!sesameTransactionObject.hasRepositoryConnection()) {
+            // the transaction never touched the store
+            return;
+        }
+
+        try {
+            commitOrRollback(sesameTransactionObject, rollback);
+        } finally {
+            detachChangeSetCollector(sesameTransactionObject);
+        }
+    }
+
+    private void commitOrRollback(SesameTransactionObject sesameTransactionObject, boolean rollback)
+            throws RepositoryException {
         RepositoryConnection repositoryConnection = sesameTransactionObject.getRepositoryConnection();
 
         if (!repositoryConnection.isOpen()) {
             throw new SesameTransactionException("Cannot end transaction: Connection closed during transaction");
         }
 
+        StatementBuffer statementBuffer = sesameTransactionObject.getStatementBuffer();
+
+        if (!rollback && !repositoryConnection.isActive() && statementBuffer != null && !statementBuffer.isEmpty()
+                && groupCommits(sesameTransactionObject)) {
+            try {
+                sesameTransactionObject.checkTransactionTimeout();
+
+                if (sesameTransactionObject.getChangeSetCollector() != null) {
+                    statementBuffer.report(sesameTransactionObject.getChangeSetCollector());
+                }
+
+                // runs on the writer thread, right after the store commit that contains the transaction
+                getGroupCommitWriter().commit(statementBuffer, () -> committed(sesameTransactionObject));
+            } finally {
+                statementBuffer.clear();
+            }
+
+            return;
+        }
+
+        if (!rollback && repositoryConnection.isActive()) {
+            try {
+                sesameTransactionObject.flushStatementBuffer(repositoryConnection);
+                sesameTransactionObject.checkTransactionTimeout();
+            } catch (RuntimeException e) {
+                repositoryConnection.rollback();
+                throw e;
+            }
+        }
+
+        sesameTransactionObject.clearStatementBuffer();
+
         if (repositoryConnection.isActive()) {
-            if (rollback) {
+            if (rollback || sesameTransactionObject.isReadOnly()) {
                 repositoryConnection.rollback();
             } else {
-                repositoryConnection.commit();
+                commitInOrder(() -> {
+                    repositoryConnection.commit();
+                    committed(sesameTransactionObject);
+                });
             }
         }
     }
 
+    /**
+     * <p>Runs a store commit together with the publication of its change-sets. While a {@link ChangeSetPublisher} is
+     * set, commits through this factory do not interleave, so change-sets are published in commit order: a
+     * transaction that commits after another one never has its change-set delivered first.</p>
+     */
+    void commitInOrder(Runnable commit) {
+        if (changeSetPublisher == null) {
+            commit.run();
+            return;
+        }
+
+        synchronized (commitOrderLock) {
+            commit.run();
+        }
+    }
+
+    private void committed(SesameTransactionObject sesameTransactionObject) {
+        if (queryResultCache != null) {
+            queryResultCache.invalidate(repositoryId);
+        }
+
+        publishChangeSet(sesameTransactionObject);
+    }
+
+    /**
+     * <p>Makes a transaction accessible from other threads. From now on, every call to its connection is guarded by
+     * the transaction's connection lock.</p>
+     */
+    void shareTransaction(SesameTransactionObject sesameTransactionObject) {
+        if (sesameTransactionObject.getConnectionLock() != null) {
+            return;
+        }
+
+        RepositoryConnection transactionalConnection = getConnection(sesameTransactionObject);
+
+        sesameTransactionObject.setTransactionalConnection(
+                SynchronizedRepositoryConnection.create(sesameTransactionObject, transactionalConnection));
+        sesameTransactionObject.setConnectionLock(new ReentrantLock());
+    }
+
+    /**
+     * <p>Binds a shared transaction to the current thread for the duration of a task.</p>
+     *
+     * @return the transaction that was bound to the current thread before, to be restored by
+     * {@link #unbindTransaction}.
+     */
+    SesameTransactionObject bindTransaction(SesameTransactionObject sesameTransactionObject) {
+        Lock connectionLock = sesameTransactionObject.getConnectionLock();
+        connectionLock.lock();
+
+        try {
+            if (sesameTransactionObject.isCompleted()) {
+                throw new IllegalTransactionStateException("Transaction already completed: " +
+                        sesameTransactionObject.getName());
+            }
+
+            sesameTransactionObject.setBoundTaskCount(sesameTransactionObject.getBoundTaskCount() + 1);
+        } finally {
+            connectionLock.unlock();
+        }
+
+        SesameTransactionObject previousTransactionObject = localTransactionObject.get();
+        localTransactionObject.set(sesameTransactionObject);
+
+        return previousTransactionObject;
+    }
+
+    void unbindTransaction(SesameTransactionObject sesameTransactionObject,
+                           SesameTransactionObject previousTransactionObject) {
+        if (previousTransactionObject == null) {
+            localTransactionObject.remove();
+        } else {
+            localTransactionObject.set(previousTransactionObject);
+        }
+
+        Lock connectionLock = sesameTransactionObject.getConnectionLock();
+        connectionLock.lock();
+
+        try {
+            sesameTransactionObject.setBoundTaskCount(sesameTransactionObject.getBoundTaskCount() - 1);
+
+            if (sesameTransactionObject.getBoundTaskCount() == 0) {
+                sesameTransactionObject.getTasksUnbound().signalAll();
+            }
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
     /**
      * @inheritDoc
      */
@@ -148,21 +660,407 @@ public class RepositoryConnectionFactory implements DisposableBean, SesameConnec
     }
 
     /**
-     * <p>Shuts down the associated {@link Repository} if it was initialized before.</p>
+     * <p>Opens the connection of a transaction whose connection is opened lazily, after the transaction has begun, so
+     * that its read-only flag and isolation level are known.</p>
+     */
+    RepositoryConnection openTransactionConnection(SesameTransactionObject sesameTransactionObject)
+            throws RepositoryException {
+        return openConnection();
+    }
+
+    /**
+     * <p>Opens the {@link RepositoryConnection} that backs a new transaction.</p>
+     *
+     * @return a new connection to the associated {@link Repository}.
+     *
+     * @throws RepositoryException if the connection could not be opened.
+     */
+    protected RepositoryConnection openConnection() throws RepositoryException {
+        return repository.getConnection();
+    }
+
+    /**
+     * <p>Releases the {@link RepositoryConnection} of a finished transaction.</p>
+     *
+     * @param repositoryConnection the connection previously returned by {@link #openConnection()}.
+     *
+     * @throws RepositoryException if the connection could not be released.
+     */
+    protected void releaseConnection(RepositoryConnection repositoryConnection) throws RepositoryException {
+        repositoryConnection.close();
+    }
+
+    /**
+     * <p>Opens the connection on which a group of transactions is committed. The transactions of the group still hold
+     * their own connections while they wait for the group, so this connection must not compete with them.</p>
+     *
+     * @return a new connection to the associated {@link Repository}.
+     *
+     * @throws RepositoryException if the connection could not be opened.
+     */
+    protected RepositoryConnection openGroupCommitConnection() throws RepositoryException {
+        return openConnection();
+    }
+
+    /**
+     * <p>Releases a connection returned by {@link #openGroupCommitConnection()}.</p>
+     *
+     * @throws RepositoryException if the connection could not be released.
+     */
+    protected void releaseGroupCommitConnection(RepositoryConnection repositoryConnection) throws RepositoryException {
+        releaseConnection(repositoryConnection);
+    }
+
+    /**
+     * <p>Wraps the {@link RepositoryConnection} of a transaction before it is handed out by {@link #getConnection()}.
+     * The wrapped connection is created once per transaction.</p>
+     *
+     * @param sesameTransactionObject the current transaction.
+     * @param repositoryConnection    the connection returned by {@link #openConnection()}.
+     *
+     * @return the connection that is exposed to the transaction.
+     */
+    protected RepositoryConnection decorateConnection(SesameTransactionObject sesameTransactionObject,
+                                                      RepositoryConnection repositoryConnection) {
+        RepositoryConnection transactionalConnection = repositoryConnection;
+
+        if (parsedQueryCache != null && repositoryConnection instanceof SailRepositoryConnection) {
+            transactionalConnection = new QueryCachingRepositoryConnection(parsedQueryCache,
+                    (SailRepositoryConnection) repositoryConnection);
+        }
+
+        if (sesameTransactionObject.hasDeadline()) {
+            transactionalConnection = new DeadlineRepositoryConnection(sesameTransactionObject, transactionalConnection);
+        }
+
+        if (cachesResults(sesameTransactionObject, repositoryConnection)) {
+            transactionalConnection = new ResultCachingRepositoryConnection(queryResultCache,
+                    sesameTransactionObject.getRepositoryId(), transactionalConnection);
+        }
+
+        if (slowTransactionLog != null) {
+            transactionalConnection = new QueryTimingRepositoryConnection(slowTransactionLog, sesameTransactionObject,
+                    transactionalConnection);
+        }
+
+        if (sesameTransactionObject.isReadOnly()) {
+            transactionalConnection = new ReadOnlyRepositoryConnection(transactionalConnection);
+        } else {
+            transactionalConnection = new StatementBufferRepositoryConnection(sesameTransactionObject,
+                    transactionalConnection);
+        }
+
+        if (groupCommits(sesameTransactionObject)) {
+            transactionalConnection = GroupCommitRepositoryConnection.create(sesameTransactionObject,
+                    transactionalConnection);
+        }
+
+        return transactionalConnection;
+    }
+
+    /**
+     * <p>Decides whether the queries of a transaction are answered from the {@link QueryResultCache}. Cached results
+     * are invalidated by the commits through this factory, so only connections that see these commits may use the
+     * cache.</p>
+     */
+    boolean cachesResults(SesameTransactionObject sesameTransactionObject, RepositoryConnection repositoryConnection) {
+        return queryResultCache != null && !beginsTransaction(sesameTransactionObject);
+    }
+
+    protected Repository getRepository() {
+        return repository;
+    }
+
+    public String getRepositoryId() {
+        return repositoryId;
+    }
+
+    /**
+     * @param repositoryId the id that identifies the associated {@link Repository} in transaction metrics and
+     *                     listeners. Defaults to {@link #DEFAULT_REPOSITORY_ID}.
+     * @see SesameTransactionListener
+     */
+    public void setRepositoryId(String repositoryId) {
+        this.repositoryId = repositoryId;
+    }
+
+    public ParsedQueryCache getParsedQueryCache() {
+        return parsedQueryCache;
+    }
+
+    /**
+     * @param parsedQueryCache the cache from which queries on connections to a {@link SailRepository} are prepared.
+     *                         Disabled (<code>null</code>) by default.
+     */
+    public void setParsedQueryCache(ParsedQueryCache parsedQueryCache) {
+        this.parsedQueryCache = parsedQueryCache;
+    }
+
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * <p>Results are cached for read-only transactions without an explicit isolation level, whose queries always read
+     * the latest committed state. Transactions that request an isolation level, e.g. to read from a snapshot, bypass
+     * the cache.</p>
+     *
+     * @param queryResultCache the cache that answers queries of read-only transactions and is invalidated by every
+     *                         commit of a write transaction. Disabled (<code>null</code>) by default.
+     */
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    public boolean isLazyConnections() {
+        return lazyConnections;
+    }
+
+    /**
+     * <p>With lazy connections, a transaction opens its connection when {@link #getConnection()} is first called
+     * instead of when it begins, so transactions that never access the store neither open a connection nor commit or
+     * roll back anything. An unsupported isolation level is then only reported by the first call to
+     * {@link #getConnection()}, and {@link SesameTransactionListener#connectionOpened} no longer includes the time it
+     * takes to open the connection.</p>
+     *
+     * @param lazyConnections whether connections are opened on first use. Defaults to <code>false</code>.
+     */
+    public void setLazyConnections(boolean lazyConnections) {
+        this.lazyConnections = lazyConnections;
+    }
+
+    public boolean isGroupCommitEnabled() {
+        return groupCommitEnabled;
+    }
+
+    /**
+     * <p>With group commits, concurrent write transactions that only add or remove single statements are committed
+     * together with a single commit on the store, which saves a commit (and, for native stores, a sync to disk) per
+     * transaction. Every transaction still commits or fails on its own. Transactions that query the store or request
+     * an isolation level are committed as usual.</p>
+     *
+     * @param groupCommitEnabled whether concurrent write transactions are committed in groups. Defaults to
+     *                           <code>false</code>.
+     * @see #setGroupCommitMaxDelayMillis(long)
+     */
+    public void setGroupCommitEnabled(boolean groupCommitEnabled) {
+        this.groupCommitEnabled = groupCommitEnabled;
+    }
+
+    public long getGroupCommitMaxDelayMillis() {
+        return groupCommitMaxDelayMillis;
+    }
+
+    /**
+     * @param groupCommitMaxDelayMillis the time a group waits for more transactions before it is committed. Groups
+     *                                  without delay consist of the transactions that queued up while the previous
+     *                                  group was committed. Defaults to <code>0</code>.
+     */
+    public void setGroupCommitMaxDelayMillis(long groupCommitMaxDelayMillis) {
+        this.groupCommitMaxDelayMillis = groupCommitMaxDelayMillis;
+    }
+
+    public int getGroupCommitMaxSize() {
+        return groupCommitMaxSize;
+    }
+
+    /**
+     * @param groupCommitMaxSize the maximum number of transactions that are committed in one group. Defaults to
+     *                           {@link #DEFAULT_GROUP_COMMIT_MAX_SIZE}.
+     */
+    public void setGroupCommitMaxSize(int groupCommitMaxSize) {
+        this.groupCommitMaxSize = groupCommitMaxSize;
+    }
+
+    public SlowTransactionLog getSlowTransactionLog() {
+        return slowTransactionLog;
+    }
+
+    /**
+     * @param slowTransactionLog the log of transactions and queries that exceed its thresholds. Disabled
+     *                           (<code>null</code>) by default.
+     */
+    public void setSlowTransactionLog(SlowTransactionLog slowTransactionLog) {
+        this.slowTransactionLog = slowTransactionLog;
+    }
+
+    public ChangeSetPublisher getChangeSetPublisher() {
+        return changeSetPublisher;
+    }
+
+    /**
+     * <p>Changes are captured from the notifications of the {@link org.openrdf.sail.NotifyingSail} of a
+     * {@link SailRepository}, so they include the effects of SPARQL updates and removals by pattern and exclude
+     * additions of statements that already existed. Transactions that take part in a group commit report the
+     * statements they wrote instead.</p>
+     * <p/>
+     * <p>Change-sets are published in commit order, so commits through this factory are serialized while a
+     * publisher is set.</p>
+     *
+     * @param changeSetPublisher the publisher that receives the changes of every committed write transaction.
+     *                           Disabled (<code>null</code>) by default.
+     */
+    public void setChangeSetPublisher(ChangeSetPublisher changeSetPublisher) {
+        this.changeSetPublisher = changeSetPublisher;
+    }
+
+    public boolean isStagingEnabled() {
+        return stagingEnabled;
+    }
+
+    /**
+     * <p>With staging, the statements that a write transaction buffers, i.e. the writes of a
+     * {@link BatchingStatementWriter} and of transactions that take part in group commits, are dictionary-encoded into
+     * a direct buffer and spill to a temporary file once it is full, instead of being held on the heap. They are
+     * streamed to the store in chunks when the transaction flushes or commits, so large transactions do not grow the
+     * heap. Statements written directly to the connection are held by the store as usual.</p>
+     *
+     * @param stagingEnabled whether buffered statements are staged off the heap. Defaults to <code>false</code>.
+     * @see #setStagingMemoryBytes(int)
+     */
+    public void setStagingEnabled(boolean stagingEnabled) {
+        this.stagingEnabled = stagingEnabled;
+    }
+
+    public File getStagingDirectory() {
+        return stagingDirectory;
+    }
+
+    /**
+     * @param stagingDirectory the directory of the temporary files that staged statements spill to. Defaults to the
+     *                         directory of <code>java.io.tmpdir</code>.
+     */
+    public void setStagingDirectory(File stagingDirectory) {
+        this.stagingDirectory = stagingDirectory;
+    }
+
+    public int getStagingMemoryBytes() {
+        return stagingMemoryPool.getBufferBytes();
+    }
+
+    /**
+     * <p>Direct buffers are pooled by the factory and re-used by later transactions, so direct memory is only
+     * allocated for transactions that stage statements concurrently.</p>
+     *
+     * @param stagingMemoryBytes the size of the direct buffer that a staging transaction uses before its statements
+     *                           spill to a temporary file. Defaults to {@link #DEFAULT_STAGING_MEMORY_BYTES}.
+     */
+    public void setStagingMemoryBytes(int stagingMemoryBytes) {
+        if (stagingMemoryBytes < 1) {
+            throw new IllegalArgumentException("The staging memory must be positive: " + stagingMemoryBytes);
+        }
+
+        this.stagingMemoryPool = new StagingMemoryPool(stagingMemoryBytes);
+    }
+
+    StagingMemoryPool getStagingMemoryPool() {
+        return stagingMemoryPool;
+    }
+
+    public int getStagingHeapStatements() {
+        return stagingHeapStatements;
+    }
+
+    /**
+     * @param stagingHeapStatements the number of buffered statements that a transaction holds on the heap before it
+     *                              stages them, so small transactions do not use direct memory. Defaults to
+     *                              {@link #DEFAULT_STAGING_HEAP_STATEMENTS}.
+     */
+    public void setStagingHeapStatements(int stagingHeapStatements) {
+        if (stagingHeapStatements < 0) {
+            throw new IllegalArgumentException("The staging heap statements must not be negative: " +
+                    stagingHeapStatements);
+        }
+
+        this.stagingHeapStatements = stagingHeapStatements;
+    }
+
+    public AdmissionPolicy getAdmissionPolicy() {
+        AdmissionController controller = admissionController;
+
+        return controller != null ? controller.getAdmissionPolicy() : null;
+    }
+
+    /**
+     * <p>Limits the number of concurrent transactions on the repository. Transactions are admitted when they begin,
+     * once it is known whether they are read-only, and leave when their connection is closed. Transactions that are
+     * not admitted fail with a {@link TransactionAdmissionException}.</p>
+     * <p/>
+     * <p>While an admission policy is set, connections are opened lazily (see {@link #setLazyConnections(boolean)}),
+     * so transactions that wait for admission do not hold a connection to the store.</p>
+     *
+     * @param admissionPolicy the limits of concurrent transactions, enforced by a new {@link AdmissionController}.
+     *                        Disabled (<code>null</code>) by default.
+     */
+    public void setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+        this.admissionController = admissionPolicy != null ? new AdmissionController(admissionPolicy) : null;
+    }
+
+    /**
+     * @return the controller that enforces the admission policy and counts admitted and rejected transactions, or
+     * <code>null</code> if no admission policy is set.
+     */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * <p>Starts the writer of group commits when it is first needed.</p>
+     */
+    GroupCommitWriter getGroupCommitWriter() {
+        synchronized (this) {
+            if (groupCommitWriter == null) {
+                groupCommitWriter = new GroupCommitWriter(this, groupCommitMaxDelayMillis, groupCommitMaxSize);
+            }
+
+            return groupCommitWriter;
+        }
+    }
+
+    /**
+     * <p>Commits pending group commits and shuts down the associated {@link Repository} if it was initialized
+     * before.</p>
      *
      * @throws Exception {@see Repository#shutDown}
      */
     @Override
     public void destroy() throws Exception {
+        shutDownGroupCommitWriter();
+        stagingMemoryPool.clear();
+
         if (repository != null && repository.isInitialized()) {
             repository.shutDown();
         }
     }
 
+    /**
+     * <p>Commits pending group commits and stops the writer thread.</p>
+     */
+    protected void shutDownGroupCommitWriter() throws InterruptedException {
+        GroupCommitWriter writer;
+
+        synchronized (this) {
+            writer = groupCommitWriter;
+        }
+
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
     @Override
     public String toString() {
         return "RepositoryConnectionFactory{" +
                 "repository=" + repository +
+                ", repositoryId='" + repositoryId + '\'' +
+                ", parsedQueryCache=" + parsedQueryCache +
+                ", queryResultCache=" + queryResultCache +
+                ", lazyConnections=" + lazyConnections +
+                ", groupCommitEnabled=" + groupCommitEnabled +
+                ", slowTransactionLog=" + slowTransactionLog +
+                ", changeSetPublisher=" + changeSetPublisher +
+                ", stagingEnabled=" + stagingEnabled +
+                ", admissionController=" + admissionController +
                 ", localTransactionObject=" + localTransactionObject +
                 '}';
     }
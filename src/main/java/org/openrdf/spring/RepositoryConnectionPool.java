@@ -0,0 +1,337 @@
+package org.openrdf.spring;
+
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link RepositoryConnectionPool} keeps open {@link RepositoryConnection}s to a single {@link Repository} so that
+ * they can be re-used by subsequent transactions.</p>
+ * <p/>
+ * <p>The pool hands out at most <code>maxTotal</code> connections at a time and waits at most
+ * <code>borrowTimeoutMillis</code> for a connection to become available. Idle connections are validated when they are
+ * borrowed, closed once they exceed <code>maxLifetimeMillis</code>, and evicted in the background when they were idle
+ * for longer than <code>idleTimeoutMillis</code>, as long as at least <code>minIdle</code> connections remain.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see PooledRepositoryConnectionFactory
+ */
+class RepositoryConnectionPool {
+    private static final Logger log = LoggerFactory.getLogger(RepositoryConnectionPool.class);
+
+    private final Repository repository;
+
+    private final LinkedBlockingDeque<PooledConnection> idleConnections;
+
+    private final ConcurrentMap<RepositoryConnection, PooledConnection> borrowedConnections;
+
+    private int minIdle = 0;
+
+    private int maxTotal = 8;
+
+    private boolean validateOnBorrow = true;
+
+    private long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+
+    private long maxLifetimeMillis = TimeUnit.MINUTES.toMillis(30);
+
+    private long borrowTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+
+    private long evictionIntervalMillis = TimeUnit.SECONDS.toMillis(30);
+
+    private volatile Semaphore permits;
+
+    private ScheduledExecutorService evictionExecutor;
+
+    private volatile boolean closed = false;
+
+    RepositoryConnectionPool(Repository repository) {
+        this.repository = repository;
+        this.idleConnections = new LinkedBlockingDeque<>();
+        this.borrowedConnections = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * <p>Opens <code>minIdle</code> connections and schedules the eviction of idle connections.</p>
+     *
+     * @throws RepositoryException if the initial connections could not be opened.
+     */
+    synchronized void start() throws RepositoryException {
+        getPermits();
+        ensureMinIdle();
+
+        if (evictionExecutor == null && evictionIntervalMillis > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sesame-connection-pool-");
+            threadFactory.setDaemon(true);
+
+            evictionExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            evictionExecutor.scheduleWithFixedDelay(this::evict, evictionIntervalMillis, evictionIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * <p>Borrows a connection from the pool, opening a new one if no valid idle connection is available.</p>
+     *
+     * @return an open connection without an active transaction.
+     *
+     * @throws RepositoryException if
+     *                             <ul>
+     *                             <li>The pool is closed</li>
+     *                             <li>No connection became available within <code>borrowTimeoutMillis</code></li>
+     *                             <li>A new connection could not be opened</li>
+     *                             </ul>
+     */
+    RepositoryConnection borrow() throws RepositoryException {
+        if (closed) {
+            throw new RepositoryException("Connection pool is closed");
+        }
+
+        acquirePermit();
+
+        try {
+            PooledConnection pooledConnection;
+
+            while ((pooledConnection = idleConnections.pollFirst()) != null) {
+                if (isExpired(pooledConnection, System.currentTimeMillis())
+                        || (validateOnBorrow && !isValid(pooledConnection))) {
+                    destroy(pooledConnection);
+                } else {
+                    break;
+                }
+            }
+
+            if (pooledConnection == null) {
+                pooledConnection = new PooledConnection(repository.getConnection());
+            }
+
+            borrowedConnections.put(pooledConnection.repositoryConnection, pooledConnection);
+
+            return pooledConnection.repositoryConnection;
+        } catch (RuntimeException e) {
+            getPermits().release();
+            throw e;
+        }
+    }
+
+    /**
+     * <p>Returns a borrowed connection to the pool. Pending changes are rolled back; closed or expired connections
+     * are discarded.</p>
+     *
+     * @param repositoryConnection a connection previously returned by {@link #borrow()}.
+     */
+    void release(RepositoryConnection repositoryConnection) throws RepositoryException {
+        PooledConnection pooledConnection = borrowedConnections.remove(repositoryConnection);
+
+        if (pooledConnection == null) {
+            repositoryConnection.close();
+            return;
+        }
+
+        try {
+            if (!repositoryConnection.isOpen()) {
+                return;
+            }
+
+            if (repositoryConnection.isActive()) {
+                repositoryConnection.rollback();
+            }
+
+            long now = System.currentTimeMillis();
+
+            if (closed || isExpired(pooledConnection, now)) {
+                destroy(pooledConnection);
+            } else {
+                pooledConnection.lastReturned = now;
+                idleConnections.offerFirst(pooledConnection);
+            }
+        } catch (RepositoryException e) {
+            destroy(pooledConnection);
+            throw e;
+        } finally {
+            getPermits().release();
+        }
+    }
+
+    /**
+     * <p>Closes idle connections that exceeded their maximum lifetime or were idle for longer than
+     * <code>idleTimeoutMillis</code> and tops the pool up to <code>minIdle</code> connections.</p>
+     */
+    void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+
+        while (iterator.hasNext()) {
+            PooledConnection pooledConnection = iterator.next();
+            boolean idleTimedOut = idleTimeoutMillis > 0 && now - pooledConnection.lastReturned > idleTimeoutMillis
+                    && idleConnections.size() > minIdle;
+
+            if ((idleTimedOut || isExpired(pooledConnection, now)) && idleConnections.remove(pooledConnection)) {
+                destroy(pooledConnection);
+            }
+        }
+
+        try {
+            ensureMinIdle();
+        } catch (RepositoryException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * <p>Closes all idle connections and stops the eviction. Borrowed connections are closed when they are
+     * released.</p>
+     */
+    synchronized void close() {
+        closed = true;
+
+        if (evictionExecutor != null) {
+            evictionExecutor.shutdownNow();
+            evictionExecutor = null;
+        }
+
+        PooledConnection pooledConnection;
+
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            destroy(pooledConnection);
+        }
+    }
+
+    int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    int getBorrowedCount() {
+        return borrowedConnections.size();
+    }
+
+    private void ensureMinIdle() throws RepositoryException {
+        while (!closed && idleConnections.size() + borrowedConnections.size() < minIdle) {
+            PooledConnection pooledConnection = new PooledConnection(repository.getConnection());
+            pooledConnection.lastReturned = System.currentTimeMillis();
+            idleConnections.offerLast(pooledConnection);
+        }
+    }
+
+    private void acquirePermit() throws RepositoryException {
+        try {
+            if (!getPermits().tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new RepositoryException("Timed out after " + borrowTimeoutMillis +
+                        "ms waiting for a connection to " + repository);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException(e);
+        }
+    }
+
+    private Semaphore getPermits() {
+        Semaphore currentPermits = permits;
+
+        if (currentPermits == null) {
+            synchronized (this) {
+                if (permits == null) {
+                    permits = new Semaphore(maxTotal);
+                }
+
+                currentPermits = permits;
+            }
+        }
+
+        return currentPermits;
+    }
+
+    private boolean isExpired(PooledConnection pooledConnection, long now) {
+        return maxLifetimeMillis > 0 && now - pooledConnection.created > maxLifetimeMillis;
+    }
+
+    private boolean isValid(PooledConnection pooledConnection) {
+        try {
+            return pooledConnection.repositoryConnection.isOpen() && !pooledConnection.repositoryConnection.isActive();
+        } catch (RepositoryException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pooledConnection) {
+        try {
+            pooledConnection.repositoryConnection.close();
+        } catch (RepositoryException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    void setMaxTotal(int maxTotal) {
+        if (permits != null) {
+            throw new IllegalStateException("Cannot change maxTotal after the pool was started");
+        }
+
+        this.maxTotal = maxTotal;
+    }
+
+    void setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+    }
+
+    void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RepositoryConnectionPool{" +
+                "repository=" + repository +
+                ", idle=" + idleConnections.size() +
+                ", borrowed=" + borrowedConnections.size() +
+                ", minIdle=" + minIdle +
+                ", maxTotal=" + maxTotal +
+                ", validateOnBorrow=" + validateOnBorrow +
+                ", idleTimeoutMillis=" + idleTimeoutMillis +
+                ", maxLifetimeMillis=" + maxLifetimeMillis +
+                ", borrowTimeoutMillis=" + borrowTimeoutMillis +
+                ", evictionIntervalMillis=" + evictionIntervalMillis +
+                '}';
+    }
+
+    private static class PooledConnection {
+        private final RepositoryConnection repositoryConnection;
+
+        private final long created;
+
+        private volatile long lastReturned;
+
+        PooledConnection(RepositoryConnection repositoryConnection) {
+            this.repositoryConnection = repositoryConnection;
+            this.created = System.currentTimeMillis();
+            this.lastReturned = created;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.openrdf.spring;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>{@link RepositoryTransactionMetrics} holds the counters, gauges and latency histograms of the transactions
+ * against a single {@link org.openrdf.repository.Repository}.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see SesameTransactionMetrics
+ */
+public class RepositoryTransactionMetrics implements RepositoryTransactionMetricsMXBean {
+    private final String repositoryId;
+
+    private final LongAdder transactions = new LongAdder();
+
+    private final LongAdder readOnlyTransactions = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder activeTransactions = new LongAdder();
+
+    private final LongAdder openConnections = new LongAdder();
+
+    private final LatencyHistogram connectionOpenLatency = new LatencyHistogram();
+
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+
+    private final LatencyHistogram rollbackLatency = new LatencyHistogram();
+
+    private final LatencyHistogram transactionDuration = new LatencyHistogram();
+
+    RepositoryTransactionMetrics(String repositoryId) {
+        this.repositoryId = repositoryId;
+    }
+
+    void connectionOpened(long durationNanos) {
+        openConnections.increment();
+        connectionOpenLatency.record(durationNanos);
+    }
+
+    void transactionBegun(boolean readOnly) {
+        transactions.increment();
+        activeTransactions.increment();
+
+        if (readOnly) {
+            readOnlyTransactions.increment();
+        }
+    }
+
+    void transactionBeginFailed() {
+        failures.increment();
+        openConnections.decrement();
+    }
+
+    void transactionCommitted(long durationNanos) {
+        commitLatency.record(durationNanos);
+    }
+
+    void transactionRolledBack(long durationNanos) {
+        rollbackLatency.record(durationNanos);
+    }
+
+    void transactionFailed() {
+        failures.increment();
+    }
+
+    void transactionCompleted(long durationNanos) {
+        activeTransactions.decrement();
+        openConnections.decrement();
+        transactionDuration.record(durationNanos);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public String getRepositoryId() {
+        return repositoryId;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getTransactionCount() {
+        return transactions.sum();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getReadOnlyTransactionCount() {
+        return readOnlyTransactions.sum();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getCommitCount() {
+        return commitLatency.getCount();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getRollbackCount() {
+        return rollbackLatency.getCount();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getActiveTransactions() {
+        return activeTransactions.sum();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getOpenConnections() {
+        return openConnections.sum();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public LatencySnapshot getConnectionOpenLatency() {
+        return connectionOpenLatency.snapshot();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public LatencySnapshot getCommitLatency() {
+        return commitLatency.snapshot();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public LatencySnapshot getRollbackLatency() {
+        return rollbackLatency.snapshot();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public LatencySnapshot getTransactionDuration() {
+        return transactionDuration.snapshot();
+    }
+
+    @Override
+    public String toString() {
+        return "RepositoryTransactionMetrics{" +
+                "repositoryId='" + repositoryId + '\'' +
+                ", transactions=" + transactions +
+                ", activeTransactions=" + activeTransactions +
+                ", openConnections=" + openConnections +
+                '}';
+    }
+}
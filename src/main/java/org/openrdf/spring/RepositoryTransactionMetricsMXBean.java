@@ -0,0 +1,54 @@
+package org.openrdf.spring;
+
+/**
+ * <p>{@link RepositoryTransactionMetricsMXBean} exposes the transaction metrics of a single
+ * {@link org.openrdf.repository.Repository} via JMX.</p>
+ * <p/>
+ * <p>Instances are registered by {@link SesameTransactionMetrics} under the name
+ * <code>org.openrdf.spring:type=TransactionMetrics,repository=&lt;repository-id&gt;</code>.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public interface RepositoryTransactionMetricsMXBean {
+    String getRepositoryId();
+
+    /**
+     * @return the number of transactions that have begun.
+     */
+    long getTransactionCount();
+
+    /**
+     * @return the number of read-only transactions that have begun.
+     */
+    long getReadOnlyTransactionCount();
+
+    long getCommitCount();
+
+    long getRollbackCount();
+
+    /**
+     * @return the number of transactions that could not begin, commit or roll back.
+     */
+    long getFailureCount();
+
+    /**
+     * @return the number of transactions that have begun but not yet completed.
+     */
+    long getActiveTransactions();
+
+    /**
+     * @return the number of connections that are currently held by transactions.
+     */
+    long getOpenConnections();
+
+    LatencySnapshot getConnectionOpenLatency();
+
+    LatencySnapshot getCommitLatency();
+
+    LatencySnapshot getRollbackLatency();
+
+    /**
+     * @return the latencies from the beginning of transactions until their connections were released.
+     */
+    LatencySnapshot getTransactionDuration();
+}
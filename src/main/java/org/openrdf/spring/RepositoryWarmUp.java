@@ -0,0 +1,382 @@
+package org.openrdf.spring;
+
+import org.openrdf.query.BooleanQuery;
+import org.openrdf.query.GraphQuery;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.Query;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.manager.SystemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link RepositoryWarmUp} opens the repositories of a {@link DynamicRepositoryManagerConnectionFactory} in
+ * parallel when the application context starts, so that the first transactions on them do not pay for initializing
+ * the repository.</p>
+ * <p/>
+ * <p>The repositories are either configured with {@link #setRepositoryIds(List)} or, with
+ * {@link #setDiscoverRepositories(boolean)}, all repositories known to the repository manager. Up to
+ * {@link #setParallelism(int) parallelism} repositories are warmed up at the same time. Optional warm-up queries are
+ * evaluated in a read-only transaction on every repository and their results are read completely to prime the caches
+ * of the store.</p>
+ * <p/>
+ * <p>Warm-up runs in the background unless {@link #setWaitForCompletion(boolean) waitForCompletion} is set.
+ * {@link #isReady()} reports readiness only once all repositories are warmed up; a repository that fails to warm up is
+ * logged, reported by {@link #getFailedRepositoryIds()} and does not prevent readiness. {@link #stop()} cancels the
+ * repositories that are not warmed up yet and also reports readiness; a later {@link #start()} warms up all
+ * repositories again.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public class RepositoryWarmUp implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(RepositoryWarmUp.class);
+
+    private final DynamicRepositoryManagerConnectionFactory connectionFactory;
+
+    private final Set<String> failedRepositoryIds = ConcurrentHashMap.newKeySet();
+
+    private volatile CountDownLatch ready = new CountDownLatch(1);
+
+    private List<String> repositoryIds = Collections.emptyList();
+
+    private boolean discoverRepositories;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private List<String> warmUpQueries = Collections.emptyList();
+
+    private QueryLanguage queryLanguage = QueryLanguage.SPARQL;
+
+    private boolean waitForCompletion;
+
+    private int phase;
+
+    private ExecutorService executorService;
+
+    private List<CompletableFuture<Void>> futures = Collections.emptyList();
+
+    private boolean running;
+
+    /**
+     * @param connectionFactory The factory providing the repositories to warm up.
+     */
+    public RepositoryWarmUp(DynamicRepositoryManagerConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * <p>Starts warming up all repositories.</p>
+     */
+    @Override
+    public void start() {
+        CompletableFuture<Void> warmUp;
+
+        synchronized (this) {
+            if (running) {
+                return;
+            }
+
+            List<String> repositoryIds = getWarmUpRepositoryIds();
+
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sesame-repository-warm-up-");
+            threadFactory.setDaemon(true);
+
+            ExecutorService executorService = Executors.newFixedThreadPool(parallelism, threadFactory);
+            CountDownLatch ready = new CountDownLatch(1);
+            List<CompletableFuture<Void>> futures = new ArrayList<>(repositoryIds.size());
+            long start = System.currentTimeMillis();
+
+            failedRepositoryIds.clear();
+            this.executorService = executorService;
+            this.ready = ready;
+            this.futures = futures;
+            running = true;
+
+            for (String repositoryId : repositoryIds) {
+                futures.add(CompletableFuture.runAsync(() -> warmUp(repositoryId), executorService));
+            }
+
+            // completes normally even if stop() cancelled some repositories, so waiting in start() never throws
+            warmUp = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .handle((result, e) -> {
+                        if (e == null) {
+                            log.info("Warmed up {} repositories in {}ms, {} failed", repositoryIds.size(),
+                                    System.currentTimeMillis() - start, failedRepositoryIds.size());
+                        } else {
+                            log.info("Stopped warming up {} repositories after {}ms", repositoryIds.size(),
+                                    System.currentTimeMillis() - start);
+                        }
+
+                        executorService.shutdown();
+                        ready.countDown();
+                        return null;
+                    });
+        }
+
+        if (waitForCompletion) {
+            warmUp.join();
+        }
+    }
+
+    private List<String> getWarmUpRepositoryIds() {
+        Set<String> warmUpRepositoryIds = new LinkedHashSet<>(repositoryIds);
+
+        if (discoverRepositories) {
+            for (String repositoryId : connectionFactory.getRepositoryManager().getRepositoryIDs()) {
+                if (!SystemRepository.ID.equals(repositoryId)) {
+                    warmUpRepositoryIds.add(repositoryId);
+                }
+            }
+        }
+
+        return new ArrayList<>(warmUpRepositoryIds);
+    }
+
+    private void warmUp(String repositoryId) {
+        try {
+            RepositoryConnectionFactory repositoryConnectionFactory =
+                    connectionFactory.acquireRepositoryConnectionFactory(repositoryId);
+
+            try {
+                if (!warmUpQueries.isEmpty()) {
+                    runWarmUpQueries(repositoryConnectionFactory);
+                }
+            } finally {
+                connectionFactory.releaseRepositoryConnectionFactory(repositoryId);
+            }
+
+            log.debug("Warmed up repository {}", repositoryId);
+        } catch (RuntimeException e) {
+            log.error("Failed to warm up repository " + repositoryId, e);
+            failedRepositoryIds.add(repositoryId);
+        }
+    }
+
+    private void runWarmUpQueries(RepositoryConnectionFactory repositoryConnectionFactory) {
+        SesameTransactionObject sesameTransactionObject = repositoryConnectionFactory.openTransaction();
+        sesameTransactionObject.setReadOnly(true);
+
+        try {
+            RepositoryConnection repositoryConnection = repositoryConnectionFactory.getConnection(sesameTransactionObject);
+
+            for (String warmUpQuery : warmUpQueries) {
+                consume(repositoryConnection.prepareQuery(queryLanguage, warmUpQuery));
+            }
+        } finally {
+            try {
+                repositoryConnectionFactory.endTransaction(sesameTransactionObject, true);
+            } finally {
+                // a lazy connection that failed to open is not opened again just to be released
+                if (sesameTransactionObject.hasRepositoryConnection()) {
+                    repositoryConnectionFactory.releaseConnection(sesameTransactionObject.getRepositoryConnection());
+                }
+            }
+        }
+    }
+
+    private static void consume(Query query) {
+        if (query instanceof TupleQuery) {
+            try (TupleQueryResult result = ((TupleQuery) query).evaluate()) {
+                while (result.hasNext()) {
+                    result.next();
+                }
+            }
+        } else if (query instanceof GraphQuery) {
+            try (GraphQueryResult result = ((GraphQuery) query).evaluate()) {
+                while (result.hasNext()) {
+                    result.next();
+                }
+            }
+        } else if (query instanceof BooleanQuery) {
+            ((BooleanQuery) query).evaluate();
+        }
+    }
+
+    /**
+     * @return <code>true</code> once all repositories are warmed up, whether or not they failed, or warm-up was
+     * stopped.
+     */
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * <p>Waits until all repositories are warmed up or warm-up is stopped.</p>
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    the unit of <code>timeout</code>.
+     * @return <code>true</code> if warm-up completed or was stopped, <code>false</code> if the timeout expired before.
+     * @throws InterruptedException if the current thread is interrupted while waiting.
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /**
+     * @return the ids of the repositories that failed to warm up.
+     */
+    public Set<String> getFailedRepositoryIds() {
+        return Collections.unmodifiableSet(failedRepositoryIds);
+    }
+
+    /**
+     * <p>Stops warming up repositories and cancels the ones that have not been warmed up yet.</p>
+     */
+    @Override
+    public synchronized void stop() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+
+        // tasks dropped by shutdownNow() never complete their futures, so readiness would never be reported
+        for (CompletableFuture<Void> future : futures) {
+            future.cancel(true);
+        }
+
+        futures = Collections.emptyList();
+        running = false;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int getPhase() {
+        return phase;
+    }
+
+    /**
+     * @param phase the lifecycle phase in which warm-up starts. Defaults to <code>0</code>.
+     */
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    public List<String> getRepositoryIds() {
+        return repositoryIds;
+    }
+
+    /**
+     * @param repositoryIds the ids of the repositories to warm up.
+     */
+    public void setRepositoryIds(List<String> repositoryIds) {
+        this.repositoryIds = repositoryIds;
+    }
+
+    public boolean isDiscoverRepositories() {
+        return discoverRepositories;
+    }
+
+    /**
+     * @param discoverRepositories whether all repositories of the repository manager are warmed up in addition to
+     *                             the configured ones. Defaults to <code>false</code>.
+     */
+    public void setDiscoverRepositories(boolean discoverRepositories) {
+        this.discoverRepositories = discoverRepositories;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of repositories that are warmed up at the same time. Defaults to the number of
+     *                    available processors.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive: " + parallelism);
+        }
+
+        this.parallelism = parallelism;
+    }
+
+    public List<String> getWarmUpQueries() {
+        return warmUpQueries;
+    }
+
+    /**
+     * @param warmUpQueries queries that are evaluated on every repository after it is opened.
+     */
+    public void setWarmUpQueries(List<String> warmUpQueries) {
+        this.warmUpQueries = warmUpQueries;
+    }
+
+    public QueryLanguage getQueryLanguage() {
+        return queryLanguage;
+    }
+
+    /**
+     * @param queryLanguage the language of the warm-up queries. Defaults to {@link QueryLanguage#SPARQL}.
+     */
+    public void setQueryLanguage(QueryLanguage queryLanguage) {
+        this.queryLanguage = queryLanguage;
+    }
+
+    public boolean isWaitForCompletion() {
+        return waitForCompletion;
+    }
+
+    /**
+     * @param waitForCompletion whether {@link #start()} blocks until all repositories are warmed up. Defaults to
+     *                          <code>false</code>.
+     */
+    public void setWaitForCompletion(boolean waitForCompletion) {
+        this.waitForCompletion = waitForCompletion;
+    }
+
+    @Override
+    public String toString() {
+        return "RepositoryWarmUp{" +
+                "connectionFactory=" + connectionFactory +
+                ", repositoryIds=" + repositoryIds +
+                ", discoverRepositories=" + discoverRepositories +
+                ", parallelism=" + parallelism +
+                ", warmUpQueries=" + warmUpQueries +
+                ", queryLanguage=" + queryLanguage +
+                ", waitForCompletion=" + waitForCompletion +
+                '}';
+    }
+}
@@ -0,0 +1,318 @@
+package org.openrdf.spring;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.IterationWrapper;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.GraphQuery;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.Query;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.QueryResults;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.TupleQueryResultHandler;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.impl.IteratingGraphQueryResult;
+import org.openrdf.query.impl.IteratingTupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.base.RepositoryConnectionWrapper;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>{@link ResultCachingRepositoryConnection} answers tuple and graph queries of a read-only transaction from a
+ * {@link QueryResultCache} and caches the results of queries that are read completely.</p>
+ * <p/>
+ * <p>Queries with an explicit {@link Dataset} bypass the cache.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class ResultCachingRepositoryConnection extends RepositoryConnectionWrapper {
+    private final QueryResultCache queryResultCache;
+
+    private final String repositoryId;
+
+    ResultCachingRepositoryConnection(QueryResultCache queryResultCache, String repositoryId,
+                                      RepositoryConnection delegate) {
+        super(delegate.getRepository(), delegate);
+        this.queryResultCache = queryResultCache;
+        this.repositoryId = repositoryId;
+    }
+
+    @Override
+    public Query prepareQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        Query preparedQuery = super.prepareQuery(ql, query, baseURI);
+
+        if (preparedQuery instanceof TupleQuery) {
+            return new CachingTupleQuery((TupleQuery) preparedQuery, ql, query, baseURI);
+        } else if (preparedQuery instanceof GraphQuery) {
+            return new CachingGraphQuery((GraphQuery) preparedQuery, ql, query, baseURI);
+        } else {
+            return preparedQuery;
+        }
+    }
+
+    @Override
+    public TupleQuery prepareTupleQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        return new CachingTupleQuery(super.prepareTupleQuery(ql, query, baseURI), ql, query, baseURI);
+    }
+
+    @Override
+    public GraphQuery prepareGraphQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        return new CachingGraphQuery(super.prepareGraphQuery(ql, query, baseURI), ql, query, baseURI);
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCachingRepositoryConnection{" +
+                "delegate=" + getDelegate() +
+                ", repositoryId='" + repositoryId + '\'' +
+                ", queryResultCache=" + queryResultCache +
+                '}';
+    }
+
+    private abstract class CachingQuery<Q extends Query> implements Query {
+        protected final Q delegate;
+
+        private final QueryLanguage queryLanguage;
+
+        private final String query;
+
+        private final String baseURI;
+
+        private CachingQuery(Q delegate, QueryLanguage queryLanguage, String query, String baseURI) {
+            this.delegate = delegate;
+            this.queryLanguage = queryLanguage;
+            this.query = query;
+            this.baseURI = baseURI;
+        }
+
+        /**
+         * @return the cache key of the current bindings, or <code>null</code> if the query bypasses the cache.
+         */
+        protected QueryResultCache.Key cacheKey() {
+            if (delegate.getDataset() != null) {
+                return null;
+            }
+
+            return new QueryResultCache.Key(repositoryId, queryLanguage, query, baseURI, delegate.getBindings(),
+                    delegate.getIncludeInferred());
+        }
+
+        @Override
+        public void setBinding(String name, Value value) {
+            delegate.setBinding(name, value);
+        }
+
+        @Override
+        public void removeBinding(String name) {
+            delegate.removeBinding(name);
+        }
+
+        @Override
+        public void clearBindings() {
+            delegate.clearBindings();
+        }
+
+        @Override
+        public BindingSet getBindings() {
+            return delegate.getBindings();
+        }
+
+        @Override
+        public void setDataset(Dataset dataset) {
+            delegate.setDataset(dataset);
+        }
+
+        @Override
+        public Dataset getDataset() {
+            return delegate.getDataset();
+        }
+
+        @Override
+        public void setIncludeInferred(boolean includeInferred) {
+            delegate.setIncludeInferred(includeInferred);
+        }
+
+        @Override
+        public boolean getIncludeInferred() {
+            return delegate.getIncludeInferred();
+        }
+
+        @Override
+        public void setMaxExecutionTime(int maxExecutionTime) {
+            delegate.setMaxExecutionTime(maxExecutionTime);
+        }
+
+        @Override
+        public int getMaxExecutionTime() {
+            return delegate.getMaxExecutionTime();
+        }
+
+        @Override
+        @Deprecated
+        @SuppressWarnings("deprecation")
+        public void setMaxQueryTime(int maxQueryTime) {
+            delegate.setMaxQueryTime(maxQueryTime);
+        }
+
+        @Override
+        @Deprecated
+        @SuppressWarnings("deprecation")
+        public int getMaxQueryTime() {
+            return delegate.getMaxQueryTime();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+
+    private class CachingTupleQuery extends CachingQuery<TupleQuery> implements TupleQuery {
+        private CachingTupleQuery(TupleQuery delegate, QueryLanguage queryLanguage, String query, String baseURI) {
+            super(delegate, queryLanguage, query, baseURI);
+        }
+
+        @Override
+        public TupleQueryResult evaluate() throws QueryEvaluationException {
+            QueryResultCache.Key key = cacheKey();
+
+            if (key == null) {
+                return delegate.evaluate();
+            }
+
+            QueryResultCache.Entry entry = queryResultCache.get(key);
+
+            if (entry != null) {
+                return new IteratingTupleQueryResult(entry.getBindingNames(), entry.<BindingSet>getResults());
+            }
+
+            long generation = queryResultCache.getGeneration(repositoryId);
+            TupleQueryResult tupleQueryResult = delegate.evaluate();
+            List<String> bindingNames = tupleQueryResult.getBindingNames();
+
+            return new IteratingTupleQueryResult(bindingNames, new RecordingIteration<>(tupleQueryResult,
+                    QueryResultCache::estimateBytes, (results, bytes) -> queryResultCache.put(key, generation,
+                    new QueryResultCache.Entry(bindingNames, null, results, bytes))));
+        }
+
+        @Override
+        public void evaluate(TupleQueryResultHandler handler)
+                throws QueryEvaluationException, TupleQueryResultHandlerException {
+            QueryResults.report(evaluate(), handler);
+        }
+    }
+
+    private class CachingGraphQuery extends CachingQuery<GraphQuery> implements GraphQuery {
+        private CachingGraphQuery(GraphQuery delegate, QueryLanguage queryLanguage, String query, String baseURI) {
+            super(delegate, queryLanguage, query, baseURI);
+        }
+
+        @Override
+        public GraphQueryResult evaluate() throws QueryEvaluationException {
+            QueryResultCache.Key key = cacheKey();
+
+            if (key == null) {
+                return delegate.evaluate();
+            }
+
+            QueryResultCache.Entry entry = queryResultCache.get(key);
+
+            if (entry != null) {
+                return new IteratingGraphQueryResult(entry.getNamespaces(), entry.<Statement>getResults());
+            }
+
+            long generation = queryResultCache.getGeneration(repositoryId);
+            GraphQueryResult graphQueryResult = delegate.evaluate();
+            Map<String, String> namespaces = graphQueryResult.getNamespaces();
+
+            return new IteratingGraphQueryResult(namespaces, new RecordingIteration<>(graphQueryResult,
+                    QueryResultCache::estimateBytes, (results, bytes) -> queryResultCache.put(key, generation,
+                    new QueryResultCache.Entry(null, namespaces, results, bytes))));
+        }
+
+        @Override
+        public void evaluate(RDFHandler handler) throws QueryEvaluationException, RDFHandlerException {
+            QueryResults.report(evaluate(), handler);
+        }
+    }
+
+    /**
+     * <p>Records the elements of a query result while they are read and hands them to a callback once the result is
+     * exhausted. Recording stops as soon as the result outgrows the maximum size of a cache entry.</p>
+     */
+    private class RecordingIteration<E> extends IterationWrapper<E, QueryEvaluationException> {
+        private final ToLongFunction<E> sizeEstimator;
+
+        private final RecordingCallback<E> callback;
+
+        private List<E> results = new ArrayList<>();
+
+        private long bytes;
+
+        private RecordingIteration(CloseableIteration<? extends E, QueryEvaluationException> delegate,
+                                   ToLongFunction<E> sizeEstimator, RecordingCallback<E> callback) {
+            super(delegate);
+            this.sizeEstimator = sizeEstimator;
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (isClosed()) {
+                return false;
+            }
+
+            if (wrappedIter.hasNext()) {
+                return true;
+            }
+
+            if (results != null) {
+                callback.recorded(results, bytes);
+                results = null;
+            }
+
+            close();
+
+            return false;
+        }
+
+        @Override
+        public E next() throws QueryEvaluationException {
+            E element = super.next();
+
+            if (results != null) {
+                bytes += sizeEstimator.applyAsLong(element);
+
+                if (bytes > queryResultCache.getMaxEntryBytes()) {
+                    results = null;
+                } else {
+                    results.add(element);
+                }
+            }
+
+            return element;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordingCallback<E> {
+        void recorded(List<E> results, long bytes);
+    }
+}
@@ -0,0 +1,42 @@
+package org.openrdf.spring;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>{@link RetryOnConflict} marks a method, or all methods of a class, whose transaction is retried when it fails
+ * because of a conflicting concurrent transaction, e.g. at {@link org.openrdf.IsolationLevels#SERIALIZABLE}.</p>
+ * <p/>
+ * <p>The annotation is typically combined with {@link org.springframework.transaction.annotation.Transactional}; the
+ * retries wrap the transaction, so every attempt runs in a new transaction. Methods that are called inside an
+ * already running transaction are not retried, since the outer transaction has failed as well.</p>
+ * <p/>
+ * <p>Attributes that are not set fall back to the defaults of the {@link ConflictRetryInterceptor}.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see ConflictRetryPostProcessor
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface RetryOnConflict {
+    /**
+     * @return the maximum number of attempts, including the first one.
+     */
+    int maxAttempts() default 0;
+
+    /**
+     * @return the upper bound of the backoff before the first retry. The bound doubles with every further retry.
+     */
+    long initialBackoffMillis() default 0;
+
+    /**
+     * @return the maximum backoff before a retry.
+     */
+    long maxBackoffMillis() default 0;
+}
@@ -0,0 +1,316 @@
+package org.openrdf.spring;
+
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>{@link RoutingRepositoryConnectionFactory} sends read-only transactions to one of several replicas of the primary
+ * {@link Repository} and all other transactions to the primary.</p>
+ * <p/>
+ * <p>Replicas are selected round-robin or by their number of active transactions, see {@link ReplicaSelection}. A
+ * replica that fails to open a connection is taken out of rotation until a health check finds it working again;
+ * health checks run every {@link #setHealthCheckIntervalMillis(long) healthCheckIntervalMillis} once the factory is
+ * initialized. Without a healthy replica, read-only transactions run on the primary.</p>
+ * <p/>
+ * <p>A transaction's repository is chosen when its connection is first used, because only then is it known whether
+ * the transaction is read-only. Connections are therefore always opened lazily, see
+ * {@link #setLazyConnections(boolean)}. Replicas may lag behind the primary: a read-only transaction does not
+ * necessarily see the changes of a write transaction that has just committed.</p>
+ * <p/>
+ * <p>A {@link QueryResultCache} is only used by read-only transactions that run on the primary. Cached results are
+ * invalidated by commits to the primary, so a replica that has not yet caught up with a commit would otherwise cache
+ * stale results until the next commit.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public class RoutingRepositoryConnectionFactory extends RepositoryConnectionFactory implements InitializingBean {
+    private static final Logger log = LoggerFactory.getLogger(RoutingRepositoryConnectionFactory.class);
+
+    /**
+     * The interval of replica health checks unless configured otherwise.
+     */
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS = 10000;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private ReplicaSelection replicaSelection = ReplicaSelection.ROUND_ROBIN;
+
+    private long healthCheckIntervalMillis = DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS;
+
+    private ScheduledExecutorService healthCheckExecutor;
+
+    /**
+     * <p>Creates a new {@link RoutingRepositoryConnectionFactory}.</p>
+     *
+     * @param primary  The repository that handles all read-write transactions.
+     * @param replicas The repositories that handle read-only transactions.
+     */
+    public RoutingRepositoryConnectionFactory(Repository primary, List<? extends Repository> replicas) {
+        super(primary);
+        super.setLazyConnections(true);
+
+        for (Repository replica : replicas) {
+            this.replicas.add(new Replica(replica));
+        }
+    }
+
+    /**
+     * <p>Starts the periodic health checks of the replicas.</p>
+     */
+    @Override
+    public synchronized void afterPropertiesSet() {
+        if (healthCheckExecutor == null && healthCheckIntervalMillis > 0 && !replicas.isEmpty()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sesame-replica-health-check-");
+            threadFactory.setDaemon(true);
+
+            healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            healthCheckExecutor.scheduleWithFixedDelay(this::checkReplicas, healthCheckIntervalMillis,
+                    healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * <p>Checks every replica by reading from it and takes failing replicas out of rotation until they pass a later
+     * check.</p>
+     */
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try {
+                RepositoryConnection repositoryConnection = replica.repository.getConnection();
+
+                try {
+                    repositoryConnection.hasStatement(null, null, null, false);
+                } finally {
+                    repositoryConnection.close();
+                }
+
+                if (!replica.healthy) {
+                    log.info("Replica {} is healthy again", replica.repository);
+                    replica.healthy = true;
+                }
+            } catch (RuntimeException e) {
+                markUnhealthy(replica, e);
+            }
+        }
+    }
+
+    @Override
+    RepositoryConnection openTransactionConnection(SesameTransactionObject sesameTransactionObject)
+            throws RepositoryException {
+        if (!sesameTransactionObject.isReadOnly()) {
+            return openConnection();
+        }
+
+        for (Replica replica : selectReplicas()) {
+            try {
+                RepositoryConnection repositoryConnection = replica.repository.getConnection();
+                replica.activeTransactions.incrementAndGet();
+
+                return repositoryConnection;
+            } catch (RuntimeException e) {
+                markUnhealthy(replica, e);
+            }
+        }
+
+        return openConnection();
+    }
+
+    /**
+     * <p>Reads from a replica bypass the result cache, since a lagging replica would cache results that are older
+     * than the last invalidation.</p>
+     */
+    @Override
+    boolean cachesResults(SesameTransactionObject sesameTransactionObject, RepositoryConnection repositoryConnection) {
+        return findReplica(repositoryConnection.getRepository()) == null
+                && super.cachesResults(sesameTransactionObject, repositoryConnection);
+    }
+
+    /**
+     * @return the healthy replicas in the order in which they should be tried.
+     */
+    private List<Replica> selectReplicas() {
+        List<Replica> healthyReplicas = new ArrayList<>(replicas.size());
+
+        if (replicaSelection == ReplicaSelection.ROUND_ROBIN) {
+            int start = replicas.isEmpty() ? 0 : Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get((start + i) % replicas.size());
+
+                if (replica.healthy) {
+                    healthyReplicas.add(replica);
+                }
+            }
+        } else {
+            for (Replica replica : replicas) {
+                if (replica.healthy) {
+                    healthyReplicas.add(replica);
+                }
+            }
+
+            healthyReplicas.sort(Comparator.comparingInt(replica -> replica.activeTransactions.get()));
+        }
+
+        return healthyReplicas;
+    }
+
+    private void markUnhealthy(Replica replica, RuntimeException e) {
+        if (replica.healthy) {
+            log.warn("Taking replica " + replica.repository + " out of rotation", e);
+            replica.healthy = false;
+        }
+    }
+
+    @Override
+    protected void releaseConnection(RepositoryConnection repositoryConnection) throws RepositoryException {
+        Replica replica = findReplica(repositoryConnection.getRepository());
+
+        if (replica == null) {
+            super.releaseConnection(repositoryConnection);
+            return;
+        }
+
+        replica.activeTransactions.decrementAndGet();
+        repositoryConnection.close();
+    }
+
+    private Replica findReplica(Repository repository) {
+        for (Replica replica : replicas) {
+            if (replica.repository == repository) {
+                return replica;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param lazyConnections must be <code>true</code>, since transactions are routed when their connection is first
+     *                        used.
+     */
+    @Override
+    public void setLazyConnections(boolean lazyConnections) {
+        if (!lazyConnections) {
+            throw new IllegalArgumentException("Routing requires lazy connections");
+        }
+    }
+
+    public ReplicaSelection getReplicaSelection() {
+        return replicaSelection;
+    }
+
+    /**
+     * @param replicaSelection how a replica is chosen for a read-only transaction. Defaults to
+     *                         {@link ReplicaSelection#ROUND_ROBIN}.
+     */
+    public void setReplicaSelection(ReplicaSelection replicaSelection) {
+        this.replicaSelection = replicaSelection;
+    }
+
+    /**
+     * @param healthCheckIntervalMillis the interval in which replicas are checked, or <code>0</code> to disable
+     *                                  periodic checks. Defaults to {@link #DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS}.
+     */
+    public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+    }
+
+    /**
+     * @return the number of replicas that are currently in rotation.
+     */
+    public int getHealthyReplicaCount() {
+        int healthyReplicaCount = 0;
+
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthyReplicaCount++;
+            }
+        }
+
+        return healthyReplicaCount;
+    }
+
+    /**
+     * <p>Stops the health checks and shuts down the primary and all replicas that were initialized before.</p>
+     *
+     * @throws Exception {@see Repository#shutDown}
+     */
+    @Override
+    public void destroy() throws Exception {
+        synchronized (this) {
+            if (healthCheckExecutor != null) {
+                healthCheckExecutor.shutdownNow();
+                healthCheckExecutor = null;
+            }
+        }
+
+        super.destroy();
+
+        for (Replica replica : replicas) {
+            if (replica.repository.isInitialized()) {
+                replica.repository.shutDown();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingRepositoryConnectionFactory{" +
+                "primary=" + getRepository() +
+                ", replicas=" + replicas +
+                ", replicaSelection=" + replicaSelection +
+                ", healthCheckIntervalMillis=" + healthCheckIntervalMillis +
+                '}';
+    }
+
+    /**
+     * <p>Determines which replica handles a read-only transaction.</p>
+     */
+    public enum ReplicaSelection {
+        /**
+         * The replicas take turns.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * The replica with the fewest active transactions is chosen.
+         */
+        LEAST_ACTIVE
+    }
+
+    private static class Replica {
+        private final Repository repository;
+
+        private final AtomicInteger activeTransactions = new AtomicInteger();
+
+        private volatile boolean healthy = true;
+
+        private Replica(Repository repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public String toString() {
+            return "Replica{" +
+                    "repository=" + repository +
+                    ", activeTransactions=" + activeTransactions +
+                    ", healthy=" + healthy +
+                    '}';
+        }
+    }
+}
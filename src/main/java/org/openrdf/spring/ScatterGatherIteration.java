@@ -0,0 +1,395 @@
+package org.openrdf.spring;
+
+import info.aduna.iteration.LookAheadIteration;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryInterruptedException;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>{@link ScatterGatherIteration} merges the rows of a {@link ScatterGatherQuery} from all of its repositories.</p>
+ * <p/>
+ * <p>Every repository is read by a {@link Shard} whose batches are read by tasks on the executor, one task at a time
+ * per shard, while the consumer processes the previous batch. Tasks never wait for each other or for the consumer,
+ * so any number of shards can share a small pool. Unordered merges return the rows of whichever shard is ready;
+ * ordered merges always return the smallest head row of all shards and wait for the shard that holds it.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class ScatterGatherIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+    private static final Logger log = LoggerFactory.getLogger(ScatterGatherIteration.class);
+
+    private final DynamicRepositoryManagerConnectionFactory connectionFactory;
+
+    private final Executor executor;
+
+    private final ScatterGatherQuery query;
+
+    private final int batchSize;
+
+    private final long deadline;
+
+    private final List<Shard> shards = new ArrayList<>();
+
+    private final BlockingQueue<Shard> arrivals = new LinkedBlockingQueue<>();
+
+    private final Queue<Shard> ready;
+
+    private int waiting;
+
+    private long returned;
+
+    ScatterGatherIteration(DynamicRepositoryManagerConnectionFactory connectionFactory, Executor executor,
+                           ScatterGatherQuery query, int batchSize) {
+        this.connectionFactory = connectionFactory;
+        this.executor = executor;
+        this.query = query;
+        this.batchSize = batchSize;
+        this.deadline = query.getTimeoutMillis() > 0 ? System.currentTimeMillis() + query.getTimeoutMillis() : 0;
+
+        Comparator<BindingSet> order = query.getOrder();
+        this.ready = order == null ? new ArrayDeque<>() :
+                new PriorityQueue<>(Comparator.comparing(shard -> shard.buffer.peekFirst(), order));
+    }
+
+    /**
+     * <p>Evaluates the query on all repositories and waits for their first batches.</p>
+     *
+     * @return the union of the binding names of all repositories.
+     */
+    List<String> start() throws QueryEvaluationException {
+        Set<String> bindingNames = new LinkedHashSet<>();
+
+        try {
+            for (String repositoryId : query.getRepositoryIds()) {
+                Shard shard = new Shard(repositoryId);
+                shards.add(shard);
+                shard.fetch();
+            }
+
+            for (Shard shard : shards) {
+                load(shard);
+                bindingNames.addAll(shard.bindingNames);
+
+                if (!shard.buffer.isEmpty()) {
+                    ready.add(shard);
+                }
+            }
+        } catch (RuntimeException e) {
+            closeShards();
+            throw e;
+        }
+
+        return new ArrayList<>(bindingNames);
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        if (query.getLimit() >= 0 && returned >= query.getLimit()) {
+            return null;
+        }
+
+        try {
+            while (true) {
+                Shard shard = ready.poll();
+
+                if (shard != null) {
+                    BindingSet row = shard.buffer.pollFirst();
+
+                    if (shard.buffer.isEmpty() && !shard.exhausted) {
+                        if (query.getOrder() != null) {
+                            load(shard);
+                        } else {
+                            waiting++;
+                            shard.pending.whenComplete((batch, e) -> arrivals.add(shard));
+                        }
+                    }
+
+                    if (!shard.buffer.isEmpty()) {
+                        ready.add(shard);
+                    }
+
+                    returned++;
+                    return row;
+                }
+
+                if (waiting == 0) {
+                    return null;
+                }
+
+                Shard arrived = arrivals.poll(remainingMillis(), TimeUnit.MILLISECONDS);
+
+                if (arrived == null) {
+                    throw timeout();
+                }
+
+                waiting--;
+                load(arrived);
+
+                if (!arrived.buffer.isEmpty()) {
+                    ready.add(arrived);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeShards();
+            throw new QueryInterruptedException(e);
+        } catch (RuntimeException e) {
+            closeShards();
+            throw e;
+        }
+    }
+
+    /**
+     * <p>Waits for the pending batch of <code>shard</code>, buffers its rows and starts reading the next batch.</p>
+     */
+    private void load(Shard shard) throws QueryEvaluationException {
+        Batch batch;
+
+        try {
+            batch = shard.pending.get(remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw timeout();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryInterruptedException(e);
+        } catch (ExecutionException e) {
+            throw new QueryEvaluationException("Query failed on repository " + shard.repositoryId, e.getCause());
+        }
+
+        shard.pending = null;
+        shard.buffer.addAll(batch.rows);
+
+        if (batch.last) {
+            shard.exhausted = true;
+        } else {
+            shard.fetch();
+        }
+    }
+
+    private long remainingMillis() {
+        if (deadline == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    private QueryInterruptedException timeout() {
+        return new QueryInterruptedException("Scatter-gather query exceeded its timeout of " +
+                query.getTimeoutMillis() + "ms");
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        try {
+            closeShards();
+        } finally {
+            super.handleClose();
+        }
+    }
+
+    private void closeShards() {
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * <p>Repositories whose next batch is still being read when the iteration is closed are released by that batch's
+     * task, after {@link #close()} has returned.</p>
+     *
+     * @return a future that completes once all repositories of the query are released.
+     */
+    CompletableFuture<Void> whenReleased() {
+        List<CompletableFuture<Void>> released = new ArrayList<>(shards.size());
+
+        for (Shard shard : shards) {
+            released.add(shard.released);
+        }
+
+        return CompletableFuture.allOf(released.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * <p>A batch of rows read from a single repository.</p>
+     */
+    private static class Batch {
+        private final List<BindingSet> rows;
+
+        private final boolean last;
+
+        private Batch(List<BindingSet> rows, boolean last) {
+            this.rows = rows;
+            this.last = last;
+        }
+    }
+
+    /**
+     * <p>Reads the rows of a single repository. The transaction, connection and result are only accessed by the tasks
+     * that read the batches, which run one after another; the buffer is only accessed by the consumer.</p>
+     */
+    private class Shard {
+        private final String repositoryId;
+
+        private final Deque<BindingSet> buffer = new ArrayDeque<>();
+
+        private final CompletableFuture<Void> released = new CompletableFuture<>();
+
+        private CompletableFuture<Batch> pending;
+
+        private boolean exhausted;
+
+        private volatile boolean closed;
+
+        private RepositoryConnectionFactory repositoryConnectionFactory;
+
+        private SesameTransactionObject sesameTransactionObject;
+
+        private TupleQueryResult result;
+
+        private List<String> bindingNames = Collections.emptyList();
+
+        private long fetched;
+
+        private Shard(String repositoryId) {
+            this.repositoryId = repositoryId;
+        }
+
+        private void fetch() {
+            pending = CompletableFuture.supplyAsync(this::readBatch, executor);
+        }
+
+        private Batch readBatch() {
+            if (closed) {
+                release();
+                return new Batch(Collections.emptyList(), true);
+            }
+
+            try {
+                if (result == null) {
+                    open();
+                }
+
+                long limit = query.getLimit();
+                List<BindingSet> rows = new ArrayList<>();
+
+                while (rows.size() < batchSize && (limit < 0 || fetched < limit) && !closed && result.hasNext()) {
+                    rows.add(result.next());
+                    fetched++;
+                }
+
+                boolean last = closed || (limit >= 0 && fetched >= limit) || !result.hasNext();
+
+                if (last) {
+                    release();
+                }
+
+                return new Batch(rows, last);
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            }
+        }
+
+        private void open() {
+            repositoryConnectionFactory = connectionFactory.acquireRepositoryConnectionFactory(repositoryId);
+            sesameTransactionObject = repositoryConnectionFactory.openTransaction();
+            sesameTransactionObject.setReadOnly(true);
+
+            RepositoryConnection repositoryConnection =
+                    repositoryConnectionFactory.getConnection(sesameTransactionObject);
+            TupleQuery tupleQuery = repositoryConnection.prepareTupleQuery(query.getQueryLanguage(), query.getQuery());
+
+            for (Binding binding : query.getBindings()) {
+                tupleQuery.setBinding(binding.getName(), binding.getValue());
+            }
+
+            if (deadline != 0) {
+                tupleQuery.setMaxExecutionTime((int) Math.max(1, (remainingMillis() + 999) / 1000));
+            }
+
+            result = tupleQuery.evaluate();
+            bindingNames = result.getBindingNames();
+        }
+
+        /**
+         * <p>Closes the result, ends the transaction and releases the repository. Runs at most once at a time, either
+         * in the last reading task or, once no reading task is pending, on the consumer's thread.</p>
+         */
+        private void release() {
+            if (result != null) {
+                try {
+                    result.close();
+                } catch (RuntimeException e) {
+                    log.error(e.getMessage(), e);
+                }
+
+                result = null;
+            }
+
+            if (sesameTransactionObject != null) {
+                try {
+                    repositoryConnectionFactory.endTransaction(sesameTransactionObject, true);
+                } catch (RuntimeException e) {
+                    log.error(e.getMessage(), e);
+                } finally {
+                    try {
+                        if (sesameTransactionObject.hasRepositoryConnection()) {
+                            repositoryConnectionFactory.releaseConnection(
+                                    sesameTransactionObject.getRepositoryConnection());
+                        }
+                    } catch (RuntimeException e) {
+                        log.error(e.getMessage(), e);
+                    }
+                }
+
+                sesameTransactionObject = null;
+            }
+
+            if (repositoryConnectionFactory != null) {
+                connectionFactory.releaseRepositoryConnectionFactory(repositoryId);
+                repositoryConnectionFactory = null;
+            }
+
+            released.complete(null);
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            if (pending == null) {
+                release();
+            } else {
+                pending.whenComplete((batch, e) -> release());
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.openrdf.spring;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.algebra.evaluation.util.ValueComparator;
+import org.openrdf.query.impl.MapBindingSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>{@link ScatterGatherQuery} describes a tuple query that is evaluated on several repositories by a
+ * {@link ScatterGatherQueryExecutor}.</p>
+ * <p/>
+ * <p>Without an order, the rows of all repositories are returned as they arrive. With an order, every repository's
+ * query has to return its rows in that same order (e.g. with a matching <code>ORDER BY</code>), and the rows are
+ * merged into a single ordered result. A limit is applied to the merged result and pushed down to every repository,
+ * which never returns more than <code>limit</code> rows. The timeout covers the whole fan-out, from the first
+ * evaluation to the last row.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public class ScatterGatherQuery {
+    private final String query;
+
+    private final List<String> repositoryIds;
+
+    private final MapBindingSet bindings = new MapBindingSet();
+
+    private QueryLanguage queryLanguage = QueryLanguage.SPARQL;
+
+    private Comparator<BindingSet> order;
+
+    private long limit = -1;
+
+    private long timeoutMillis;
+
+    /**
+     * @param query         the tuple query that is evaluated on every repository.
+     * @param repositoryIds the ids of the repositories the query is evaluated on.
+     */
+    public ScatterGatherQuery(String query, Collection<String> repositoryIds) {
+        if (repositoryIds.isEmpty()) {
+            throw new IllegalArgumentException("At least one repository-id is required");
+        }
+
+        this.query = query;
+        this.repositoryIds = Collections.unmodifiableList(new ArrayList<>(repositoryIds));
+    }
+
+    /**
+     * @return an order that sorts rows ascending by the value of <code>bindingName</code>, with the ordering of
+     * SPARQL's <code>ORDER BY</code>.
+     */
+    public static Comparator<BindingSet> ascending(String bindingName) {
+        ValueComparator valueComparator = new ValueComparator();
+        return (left, right) -> valueComparator.compare(valueOf(left, bindingName), valueOf(right, bindingName));
+    }
+
+    /**
+     * @return an order that sorts rows descending by the value of <code>bindingName</code>.
+     */
+    public static Comparator<BindingSet> descending(String bindingName) {
+        return ascending(bindingName).reversed();
+    }
+
+    private static Value valueOf(BindingSet bindingSet, String bindingName) {
+        return bindingSet.getValue(bindingName);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<String> getRepositoryIds() {
+        return repositoryIds;
+    }
+
+    public QueryLanguage getQueryLanguage() {
+        return queryLanguage;
+    }
+
+    public void setQueryLanguage(QueryLanguage queryLanguage) {
+        this.queryLanguage = queryLanguage;
+    }
+
+    /**
+     * <p>Binds <code>name</code> to <code>value</code> in the query on every repository.</p>
+     */
+    public void setBinding(String name, Value value) {
+        bindings.addBinding(name, value);
+    }
+
+    public BindingSet getBindings() {
+        return bindings;
+    }
+
+    public Comparator<BindingSet> getOrder() {
+        return order;
+    }
+
+    /**
+     * @param order the order every repository returns its rows in, or <code>null</code> to return rows as they
+     *              arrive.
+     */
+    public void setOrder(Comparator<BindingSet> order) {
+        this.order = order;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit the maximum number of rows of the merged result, or a negative number for no limit.
+     */
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @param timeoutMillis the time the whole fan-out may take, or <code>0</code> for no timeout.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ScatterGatherQuery{" +
+                "query='" + query + '\'' +
+                ", repositoryIds=" + repositoryIds +
+                ", bindings=" + bindings +
+                ", queryLanguage=" + queryLanguage +
+                ", order=" + order +
+                ", limit=" + limit +
+                ", timeoutMillis=" + timeoutMillis +
+                '}';
+    }
+}
@@ -0,0 +1,120 @@
+package org.openrdf.spring;
+
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.IteratingTupleQueryResult;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>{@link ScatterGatherQueryExecutor} evaluates a {@link ScatterGatherQuery} on several repositories of a
+ * {@link DynamicRepositoryManagerConnectionFactory} in parallel and merges their rows into a single
+ * {@link TupleQueryResult}.</p>
+ * <p/>
+ * <p>Every repository is queried in its own read-only transaction, independent of any transaction of the current
+ * thread, and is not evicted while the query runs. All calls to the repositories run on a bounded thread pool: rows
+ * are read in batches of {@link #getBatchSize()} rows, and the next batch of a repository is only read once the
+ * previous one is consumed, so a slow consumer never buffers whole results.</p>
+ * <p/>
+ * <p>The merged result fails as soon as one repository fails, and with a
+ * {@link org.openrdf.query.QueryInterruptedException} once the query's timeout expires. It has to be closed, which
+ * ends the transactions of all repositories that are still being read.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see ScatterGatherQuery
+ */
+public class ScatterGatherQueryExecutor implements DisposableBean {
+    /**
+     * The number of threads that query the repositories unless an {@link Executor} is provided.
+     */
+    public static final int DEFAULT_POOL_SIZE = 8;
+
+    /**
+     * The number of rows that are read from a repository at a time.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final DynamicRepositoryManagerConnectionFactory connectionFactory;
+
+    private final Executor executor;
+
+    private final ExecutorService ownedExecutor;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * <p>Creates a new {@link ScatterGatherQueryExecutor} that queries the repositories from a pool of
+     * {@link #DEFAULT_POOL_SIZE} threads.</p>
+     *
+     * @param connectionFactory The factory providing the repositories.
+     */
+    public ScatterGatherQueryExecutor(DynamicRepositoryManagerConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sesame-scatter-gather-");
+        threadFactory.setDaemon(true);
+
+        this.ownedExecutor = Executors.newFixedThreadPool(DEFAULT_POOL_SIZE, threadFactory);
+        this.executor = ownedExecutor;
+    }
+
+    /**
+     * @param connectionFactory The factory providing the repositories.
+     * @param executor          The bounded executor on which all calls to the repositories run.
+     */
+    public ScatterGatherQueryExecutor(DynamicRepositoryManagerConnectionFactory connectionFactory,
+                                      Executor executor) {
+        this.connectionFactory = connectionFactory;
+        this.executor = executor;
+        this.ownedExecutor = null;
+    }
+
+    /**
+     * <p>Evaluates <code>query</code> on all of its repositories. Returns once every repository has returned its first
+     * batch of rows; the binding names of the result are the union of the binding names of all repositories.</p>
+     *
+     * @param query the query to evaluate.
+     * @return the merged rows of all repositories.
+     * @throws QueryEvaluationException if the query fails on any repository or times out.
+     */
+    public TupleQueryResult evaluate(ScatterGatherQuery query) throws QueryEvaluationException {
+        ScatterGatherIteration iteration = new ScatterGatherIteration(connectionFactory, executor, query, batchSize);
+
+        return new IteratingTupleQueryResult(iteration.start(), iteration);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * <p>Shuts down the thread pool if it was created by this executor.</p>
+     */
+    @Override
+    public void destroy() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ScatterGatherQueryExecutor{" +
+                "connectionFactory=" + connectionFactory +
+                ", executor=" + executor +
+                ", batchSize=" + batchSize +
+                '}';
+    }
+}
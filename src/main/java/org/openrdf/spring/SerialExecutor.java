@@ -0,0 +1,63 @@
+package org.openrdf.spring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>{@link SerialExecutor} runs its tasks one after another, in submission order, on a shared {@link Executor}.</p>
+ * <p/>
+ * <p>Every reactive transaction owns one, so all calls to its connection are serialized while the transactions
+ * themselves share the bounded thread pool of the {@link SesameReactiveTransactionManager}.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class SerialExecutor implements Executor {
+    private static final Logger log = LoggerFactory.getLogger(SerialExecutor.class);
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    private final Executor executor;
+
+    private Runnable active;
+
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+        tasks.add(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+            } finally {
+                scheduleNext();
+            }
+        });
+
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+
+        if (active != null) {
+            executor.execute(active);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SerialExecutor{" +
+                "executor=" + executor +
+                ", pendingTasks=" + tasks.size() +
+                '}';
+    }
+}
@@ -53,6 +53,19 @@ public interface SesameConnectionFactory extends DisposableBean {
      */
     SesameTransactionObject createTransaction() throws RepositoryException;
 
+    /**
+     * <p>Admits the transaction that was created by {@link #createTransaction()} and configured with its definition,
+     * waiting until the repository accepts another transaction of its kind. The admission is released when the
+     * connection is closed. Does nothing unless the factory limits concurrent transactions.</p>
+     * <p/>
+     * <p>This method should <i>not</i> be called manually, but rather by the associated {@link
+     * SesameTransactionManager} which handles the current transaction.</p>
+     *
+     * @throws TransactionAdmissionException if the transaction was not admitted.
+     */
+    default void admitTransaction(SesameTransactionObject sesameTransactionObject) {
+    }
+
     /**
      * <p>Ends the active transaction by either rolling-back or committing the changes to the associated
      * {@link org.openrdf.repository.Repository} depending on the rollback-flag.</p>
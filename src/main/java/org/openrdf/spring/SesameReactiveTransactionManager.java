@@ -0,0 +1,484 @@
+package org.openrdf.spring;
+
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * <p>{@link SesameReactiveTransactionManager} is the non-blocking counterpart of {@link SesameTransactionManager} for
+ * applications built on Reactive Streams.</p>
+ * <p/>
+ * <p>A transaction is declared as a {@link Publisher}: it begins when the publisher is subscribed to, is committed
+ * when the publisher returned by the {@link TransactionCallback} completes and is rolled back when it fails or the
+ * subscription is cancelled. The transaction state lives in the {@link ReactiveSesameTransaction} handed to the
+ * callback, not in a thread-local, so a transaction may be continued on any thread.</p>
+ * <p/>
+ * <p>The store is only accessed from a bounded thread pool. Query results are streamed with backpressure: results are
+ * read from the store only as fast as the subscriber requests them. Transactions that have to wait for admission to the
+ * repository (see {@link RepositoryConnectionFactory#setAdmissionPolicy(AdmissionPolicy)}) wait on a separate thread,
+ * so they never hold the pool threads that admitted transactions need to end.</p>
+ * <p/>
+ * <p>Transactions use the connections, decorators and caches of the provided {@link RepositoryConnectionFactory}. Every
+ * subscription runs in a new transaction, so only {@link TransactionDefinition#PROPAGATION_REQUIRED} and
+ * {@link TransactionDefinition#PROPAGATION_REQUIRES_NEW} are supported.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see ReactiveSesameTransaction
+ */
+public class SesameReactiveTransactionManager implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(SesameReactiveTransactionManager.class);
+
+    /**
+     * The number of threads that access the store unless an {@link Executor} is provided.
+     */
+    public static final int DEFAULT_POOL_SIZE = 16;
+
+    private static final SesameTransactionListener[] NO_LISTENERS = new SesameTransactionListener[0];
+
+    private final RepositoryConnectionFactory repositoryConnectionFactory;
+
+    private final Executor executor;
+
+    private final ExecutorService ownedExecutor;
+
+    private final ExecutorService admissionExecutor = createAdmissionExecutor();
+
+    private volatile int defaultTimeout = TransactionDefinition.TIMEOUT_DEFAULT;
+
+    private volatile SesameTransactionListener[] transactionListeners = NO_LISTENERS;
+
+    /**
+     * <p>Creates a new {@link SesameReactiveTransactionManager} that accesses the store from a pool of
+     * {@link #DEFAULT_POOL_SIZE} threads.</p>
+     *
+     * @param repositoryConnectionFactory The factory providing connections for the repository.
+     */
+    public SesameReactiveTransactionManager(RepositoryConnectionFactory repositoryConnectionFactory) {
+        this.repositoryConnectionFactory = repositoryConnectionFactory;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sesame-reactive-");
+        threadFactory.setDaemon(true);
+
+        this.ownedExecutor = Executors.newFixedThreadPool(DEFAULT_POOL_SIZE, threadFactory);
+        this.executor = ownedExecutor;
+    }
+
+    /**
+     * @param repositoryConnectionFactory The factory providing connections for the repository.
+     * @param executor                    The bounded executor on which all blocking calls to the store run.
+     */
+    public SesameReactiveTransactionManager(RepositoryConnectionFactory repositoryConnectionFactory,
+                                            Executor executor) {
+        this.repositoryConnectionFactory = repositoryConnectionFactory;
+        this.executor = executor;
+        this.ownedExecutor = null;
+    }
+
+    private static ExecutorService createAdmissionExecutor() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sesame-reactive-admission-");
+        threadFactory.setDaemon(true);
+
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * <p>Declares a read-write transaction with the default settings.</p>
+     *
+     * @see #execute(TransactionDefinition, TransactionCallback)
+     */
+    public <T> Publisher<T> execute(TransactionCallback<T> action) {
+        return execute(new DefaultTransactionDefinition(), action);
+    }
+
+    /**
+     * <p>Declares a transaction that runs the publisher returned by <code>action</code>.</p>
+     *
+     * @param transactionDefinition the isolation level, read-only flag, timeout and propagation of the transaction.
+     * @param action                creates the publisher that runs inside the transaction.
+     * @return a publisher of the elements of the action's publisher that begins a new transaction for every
+     * subscription.
+     */
+    public <T> Publisher<T> execute(TransactionDefinition transactionDefinition, TransactionCallback<T> action) {
+        int propagationBehavior = transactionDefinition.getPropagationBehavior();
+
+        if (propagationBehavior != TransactionDefinition.PROPAGATION_REQUIRED
+                && propagationBehavior != TransactionDefinition.PROPAGATION_REQUIRES_NEW) {
+            throw new IllegalTransactionStateException("Unsupported propagation behavior for reactive transactions: "
+                    + propagationBehavior);
+        }
+
+        return subscriber -> {
+            Objects.requireNonNull(subscriber, "subscriber");
+            new TransactionSubscription<>(transactionDefinition, action, subscriber).begin();
+        };
+    }
+
+    public int getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * @param defaultTimeout the timeout in seconds of transactions whose definition does not specify one, like
+     *                       {@link SesameTransactionManager#setDefaultTimeout(int)}. No timeout
+     *                       ({@link TransactionDefinition#TIMEOUT_DEFAULT}) by default.
+     */
+    public void setDefaultTimeout(int defaultTimeout) {
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * @param transactionListeners the listeners that are notified about the lifecycle of transactions. Replaces all
+     *                             previously registered listeners.
+     * @see SesameTransactionManager#setTransactionListeners(List)
+     */
+    public synchronized void setTransactionListeners(List<SesameTransactionListener> transactionListeners) {
+        this.transactionListeners = transactionListeners.toArray(new SesameTransactionListener[transactionListeners.size()]);
+    }
+
+    /**
+     * @param transactionListener a listener that is notified about the lifecycle of transactions.
+     */
+    public synchronized void addTransactionListener(SesameTransactionListener transactionListener) {
+        SesameTransactionListener[] listeners = Arrays.copyOf(transactionListeners, transactionListeners.length + 1);
+        listeners[listeners.length - 1] = transactionListener;
+
+        this.transactionListeners = listeners;
+    }
+
+    private boolean hasTransactionListeners() {
+        return transactionListeners.length != 0;
+    }
+
+    private void notifyTransactionListeners(Consumer<SesameTransactionListener> callback) {
+        for (SesameTransactionListener transactionListener : transactionListeners) {
+            try {
+                callback.accept(transactionListener);
+            } catch (RuntimeException e) {
+                log.warn("Transaction listener " + transactionListener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * <p>Shuts down the thread pool if it was created by this transaction manager.</p>
+     */
+    @Override
+    public void destroy() {
+        admissionExecutor.shutdown();
+
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SesameReactiveTransactionManager{" +
+                "repositoryConnectionFactory=" + repositoryConnectionFactory +
+                ", executor=" + executor +
+                ", defaultTimeout=" + defaultTimeout +
+                ", transactionListeners=" + Arrays.toString(transactionListeners) +
+                '}';
+    }
+
+    /**
+     * Call-back that creates the publisher which runs inside a reactive transaction.
+     */
+    @FunctionalInterface
+    public interface TransactionCallback<T> {
+        Publisher<T> doInTransaction(ReactiveSesameTransaction transaction);
+    }
+
+    /**
+     * <p>Relays the elements of the action's publisher to the subscriber and ends the transaction when the publisher
+     * terminates or the subscriber cancels.</p>
+     */
+    private class TransactionSubscription<T> implements Subscriber<T>, Subscription {
+        private final TransactionDefinition transactionDefinition;
+
+        private final TransactionCallback<T> action;
+
+        private final Subscriber<? super T> downstream;
+
+        private final SerialExecutor serialExecutor = new SerialExecutor(executor);
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private SesameTransactionObject sesameTransactionObject;
+
+        private volatile Subscription upstream;
+
+        private TransactionSubscription(TransactionDefinition transactionDefinition, TransactionCallback<T> action,
+                                        Subscriber<? super T> downstream) {
+            this.transactionDefinition = transactionDefinition;
+            this.action = action;
+            this.downstream = downstream;
+        }
+
+        private void begin() {
+            serialExecutor.execute(() -> {
+                try {
+                    long startNanos = hasTransactionListeners() ? System.nanoTime() : 0L;
+
+                    sesameTransactionObject = repositoryConnectionFactory.openTransaction();
+
+                    if (hasTransactionListeners()) {
+                        long durationNanos = System.nanoTime() - startNanos;
+                        String repositoryId = sesameTransactionObject.getRepositoryId();
+
+                        notifyTransactionListeners(listener -> listener.connectionOpened(repositoryId, durationNanos));
+                    }
+
+                    configure(sesameTransactionObject);
+                } catch (RuntimeException e) {
+                    failBegin(e);
+                    return;
+                }
+
+                if (repositoryConnectionFactory.tryAdmitTransaction(sesameTransactionObject)) {
+                    start();
+                    return;
+                }
+
+                // waiting on the pool could park every pool thread while the admitted transactions wait to end
+                admissionExecutor.execute(() -> {
+                    try {
+                        repositoryConnectionFactory.admitTransaction(sesameTransactionObject);
+                    } catch (RuntimeException e) {
+                        serialExecutor.execute(() -> failBegin(e));
+                        return;
+                    }
+
+                    serialExecutor.execute(this::start);
+                });
+            });
+        }
+
+        private void start() {
+            if (hasTransactionListeners()) {
+                String repositoryId = sesameTransactionObject.getRepositoryId();
+                boolean readOnly = transactionDefinition.isReadOnly();
+
+                sesameTransactionObject.setBeginTimeNanos(System.nanoTime());
+                notifyTransactionListeners(listener -> listener.transactionBegun(repositoryId, readOnly));
+            }
+
+            Publisher<T> publisher;
+
+            try {
+                publisher = action.doInTransaction(new ReactiveSesameTransaction(repositoryConnectionFactory,
+                        sesameTransactionObject, serialExecutor));
+            } catch (RuntimeException e) {
+                finished.set(true);
+
+                try {
+                    endTransaction(true);
+                } catch (RuntimeException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                }
+
+                downstream.onSubscribe(EmptySubscription.INSTANCE);
+                downstream.onError(e);
+                return;
+            }
+
+            publisher.subscribe(this);
+        }
+
+        /**
+         * <p>Signals that the transaction could not begin, e.g. because it was not admitted.</p>
+         */
+        private void failBegin(RuntimeException e) {
+            finished.set(true);
+
+            if (sesameTransactionObject != null) {
+                String repositoryId = sesameTransactionObject.getRepositoryId();
+
+                try {
+                    repositoryConnectionFactory.closeTransaction(sesameTransactionObject);
+                } catch (RuntimeException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+
+                if (hasTransactionListeners()) {
+                    notifyTransactionListeners(listener -> listener.transactionBeginFailed(repositoryId, e));
+                }
+            }
+
+            downstream.onSubscribe(EmptySubscription.INSTANCE);
+            downstream.onError(e instanceof RepositoryException ? new CannotCreateTransactionException(
+                    "Could not open connection for transaction", e) : e);
+        }
+
+        private void configure(SesameTransactionObject sesameTransactionObject) {
+            int timeout = transactionDefinition.getTimeout() != TransactionDefinition.TIMEOUT_DEFAULT
+                    ? transactionDefinition.getTimeout() : defaultTimeout;
+
+            sesameTransactionObject.setTimeout(timeout);
+
+            if (timeout != TransactionDefinition.TIMEOUT_DEFAULT) {
+                sesameTransactionObject.setTimeoutInSeconds(timeout);
+            }
+
+            sesameTransactionObject.setIsolationLevel(transactionDefinition.getIsolationLevel());
+            sesameTransactionObject.setPropagationBehavior(transactionDefinition.getPropagationBehavior());
+            sesameTransactionObject.setReadOnly(transactionDefinition.isReadOnly());
+            sesameTransactionObject.setName(transactionDefinition.getName());
+
+            sesameTransactionObject.initializeRepositoryConnection(transactionDefinition);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T element) {
+            downstream.onNext(element);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish(true, throwable, true);
+        }
+
+        @Override
+        public void onComplete() {
+            finish(false, null, true);
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            upstream.cancel();
+            finish(true, null, false);
+        }
+
+        private void finish(boolean rollback, Throwable error, boolean signal) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+
+            serialExecutor.execute(() -> {
+                Throwable failure = error;
+
+                try {
+                    endTransaction(rollback || sesameTransactionObject.isRollbackOnly());
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e instanceof RepositoryException ? new SesameTransactionException(e) : e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+
+                if (signal) {
+                    if (failure != null) {
+                        downstream.onError(failure);
+                    } else {
+                        downstream.onComplete();
+                    }
+                } else if (failure != null && failure != error) {
+                    log.error(failure.getMessage(), failure);
+                }
+            });
+        }
+
+        /**
+         * <p>Commits or rolls back the transaction and closes it through the connection factory, like
+         * {@link SesameTransactionManager} does for thread-bound transactions.</p>
+         */
+        private void endTransaction(boolean rollback) {
+            String repositoryId = sesameTransactionObject.getRepositoryId();
+            long beginTimeNanos = sesameTransactionObject.getBeginTimeNanos();
+
+            try {
+                completeTransaction(rollback);
+            } finally {
+                try {
+                    repositoryConnectionFactory.closeTransaction(sesameTransactionObject);
+                } finally {
+                    if (hasTransactionListeners() && beginTimeNanos != 0L) {
+                        long durationNanos = System.nanoTime() - beginTimeNanos;
+
+                        notifyTransactionListeners(listener ->
+                                listener.transactionCompleted(repositoryId, durationNanos));
+                    }
+                }
+            }
+        }
+
+        private void completeTransaction(boolean rollback) {
+            String repositoryId = sesameTransactionObject.getRepositoryId();
+            long startNanos = System.nanoTime();
+
+            try {
+                repositoryConnectionFactory.endTransaction(sesameTransactionObject, rollback);
+            } catch (RuntimeException e) {
+                notifyTransactionListeners(listener -> listener.transactionFailed(repositoryId, e));
+
+                if (sesameTransactionObject.hasRepositoryConnection()) {
+                    RepositoryConnection repositoryConnection = sesameTransactionObject.getRepositoryConnection();
+
+                    if (repositoryConnection.isOpen() && repositoryConnection.isActive()) {
+                        repositoryConnection.rollback();
+                    }
+                }
+
+                throw e;
+            }
+
+            if (hasTransactionListeners()) {
+                long durationNanos = System.nanoTime() - startNanos;
+
+                if (rollback) {
+                    notifyTransactionListeners(listener -> listener.transactionRolledBack(repositoryId, durationNanos));
+                } else {
+                    notifyTransactionListeners(listener -> listener.transactionCommitted(repositoryId, durationNanos));
+                }
+            }
+        }
+    }
+
+    private enum EmptySubscription implements Subscription {
+        INSTANCE;
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.openrdf.spring;
+
+import org.openrdf.repository.RepositoryConnection;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>{@link SesameTransactionContext} hands the transaction of the current thread to tasks that run on other threads,
+ * e.g. on an {@link java.util.concurrent.ExecutorService}.</p>
+ * <p/>
+ * <p>A wrapped task runs with the captured transaction bound to its thread, so {@link SesameConnectionFactory#getConnection()}
+ * returns the transaction's connection there, and restores the previous state of the thread afterwards, so pooled
+ * threads do not keep a reference to the transaction. Once a transaction has been captured, all calls to its
+ * connection, from any thread, are serialized by a lock.</p>
+ * <p/>
+ * <p>A commit waits until the tasks that run inside the transaction have finished, including tasks whose
+ * {@link java.util.concurrent.Future} has already completed but that are still bound to their thread. If the
+ * committing thread is interrupted while waiting, the transaction is rolled back. Tasks that start after the
+ * transaction has completed fail with an {@link org.springframework.transaction.IllegalTransactionStateException}.</p>
+ * <p/>
+ * <p>The mechanism does not depend on the kind of thread and works with any {@link Executor}.</p>
+ *
+ * <pre>
+ * SesameTransactionContext context = SesameTransactionContext.capture(connectionFactory);
+ * List&lt;Future&lt;Summary&gt;&gt; summaries = executorService.invokeAll(Arrays.asList(
+ *         context.wrap(() -&gt; summarize(connectionFactory.getConnection(), first)),
+ *         context.wrap(() -&gt; summarize(connectionFactory.getConnection(), second))));
+ * </pre>
+ *
+ * @author ameingast@gmail.com
+ * @see SesameTransactionTaskDecorator
+ */
+public final class SesameTransactionContext {
+    private final RepositoryConnectionFactory repositoryConnectionFactory;
+
+    private final SesameTransactionObject sesameTransactionObject;
+
+    private SesameTransactionContext(RepositoryConnectionFactory repositoryConnectionFactory,
+                                     SesameTransactionObject sesameTransactionObject) {
+        this.repositoryConnectionFactory = repositoryConnectionFactory;
+        this.sesameTransactionObject = sesameTransactionObject;
+    }
+
+    /**
+     * <p>Captures the transaction that is active on the current thread.</p>
+     * <p/>
+     * <p>For a {@link DynamicRepositoryManagerConnectionFactory}, the transaction of the current repository-id is
+     * captured. Tasks that obtain their connection from the dynamic factory itself also need a
+     * {@link DynamicRepositoryManagerConnectionFactory.RepositoryIdProvider} that returns the same repository-id on
+     * their thread; {@link #getConnection()} works regardless.</p>
+     *
+     * @param sesameConnectionFactory the factory whose transaction is captured.
+     * @return the captured transaction.
+     * @throws org.springframework.transaction.TransactionException if no transaction is active.
+     */
+    public static SesameTransactionContext capture(SesameConnectionFactory sesameConnectionFactory) {
+        RepositoryConnectionFactory repositoryConnectionFactory = resolve(sesameConnectionFactory);
+        SesameTransactionObject sesameTransactionObject = repositoryConnectionFactory.getLocalTransactionObject();
+
+        if (sesameTransactionObject == null) {
+            throw new SesameTransactionException("No transaction active");
+        }
+
+        repositoryConnectionFactory.shareTransaction(sesameTransactionObject);
+
+        return new SesameTransactionContext(repositoryConnectionFactory, sesameTransactionObject);
+    }
+
+    /**
+     * @return <code>true</code> if a transaction of the factory is active on the current thread.
+     */
+    public static boolean isTransactionActive(SesameConnectionFactory sesameConnectionFactory) {
+        return resolve(sesameConnectionFactory).getLocalTransactionObject() != null;
+    }
+
+    private static RepositoryConnectionFactory resolve(SesameConnectionFactory sesameConnectionFactory) {
+        if (sesameConnectionFactory instanceof RepositoryConnectionFactory) {
+            return (RepositoryConnectionFactory) sesameConnectionFactory;
+        } else if (sesameConnectionFactory instanceof DynamicRepositoryManagerConnectionFactory) {
+            return ((DynamicRepositoryManagerConnectionFactory) sesameConnectionFactory)
+                    .getRepositoryConnectionFactory();
+        } else {
+            throw new IllegalArgumentException("Unsupported connection factory: " + sesameConnectionFactory);
+        }
+    }
+
+    /**
+     * @return the connection of the captured transaction, which may be used from any thread.
+     */
+    public RepositoryConnection getConnection() {
+        return repositoryConnectionFactory.getConnection(sesameTransactionObject);
+    }
+
+    /**
+     * @param task the task to run inside the captured transaction.
+     * @return a task that binds the captured transaction to its thread while <code>task</code> runs.
+     */
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            SesameTransactionObject previousTransactionObject =
+                    repositoryConnectionFactory.bindTransaction(sesameTransactionObject);
+
+            try {
+                task.run();
+            } finally {
+                repositoryConnectionFactory.unbindTransaction(sesameTransactionObject, previousTransactionObject);
+            }
+        };
+    }
+
+    /**
+     * @param task the task to run inside the captured transaction.
+     * @return a task that binds the captured transaction to its thread while <code>task</code> runs.
+     */
+    public <V> Callable<V> wrap(Callable<V> task) {
+        return () -> {
+            SesameTransactionObject previousTransactionObject =
+                    repositoryConnectionFactory.bindTransaction(sesameTransactionObject);
+
+            try {
+                return task.call();
+            } finally {
+                repositoryConnectionFactory.unbindTransaction(sesameTransactionObject, previousTransactionObject);
+            }
+        };
+    }
+
+    /**
+     * @param executor the executor that runs the tasks.
+     * @return an executor that runs every task inside the captured transaction.
+     */
+    public Executor wrap(Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+
+    @Override
+    public String toString() {
+        return "SesameTransactionContext{" +
+                "sesameTransactionObject=" + sesameTransactionObject +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package org.openrdf.spring;
+
+/**
+ * <p>{@link SesameTransactionListener} is notified by a {@link SesameTransactionManager} about the lifecycle of the
+ * transactions it manages.</p>
+ * <p/>
+ * <p>Every callback receives the id of the {@link org.openrdf.repository.Repository} the transaction runs against
+ * (see {@link RepositoryConnectionFactory#setRepositoryId}); transactions of a
+ * {@link DynamicRepositoryManagerConnectionFactory} are tagged with the id of the repository they were opened for.</p>
+ * <p/>
+ * <p>Callbacks are invoked synchronously on the thread that drives the transaction and must therefore be cheap and
+ * must not block. Exceptions thrown by a listener are logged and otherwise ignored.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see SesameTransactionMetrics
+ */
+public interface SesameTransactionListener {
+    /**
+     * <p>Called once the connection of a new transaction has been opened.</p>
+     *
+     * @param repositoryId  the id of the repository.
+     * @param durationNanos the time it took to open the connection.
+     */
+    default void connectionOpened(String repositoryId, long durationNanos) {
+    }
+
+    /**
+     * <p>Called when a new transaction begins.</p>
+     *
+     * @param repositoryId the id of the repository.
+     * @param readOnly     whether the transaction is read-only.
+     */
+    default void transactionBegun(String repositoryId, boolean readOnly) {
+    }
+
+    /**
+     * <p>Called when a transaction whose connection was opened fails to begin, e.g. because it was not admitted (see
+     * {@link TransactionAdmissionException}). The connection has been released and the transaction does not
+     * complete.</p>
+     *
+     * @param repositoryId the id of the repository.
+     * @param cause        the failure.
+     */
+    default void transactionBeginFailed(String repositoryId, Throwable cause) {
+    }
+
+    /**
+     * <p>Called after a transaction has been committed.</p>
+     *
+     * @param repositoryId  the id of the repository.
+     * @param durationNanos the time it took to commit the transaction.
+     */
+    default void transactionCommitted(String repositoryId, long durationNanos) {
+    }
+
+    /**
+     * <p>Called after a transaction has been rolled back.</p>
+     *
+     * @param repositoryId  the id of the repository.
+     * @param durationNanos the time it took to roll back the transaction.
+     */
+    default void transactionRolledBack(String repositoryId, long durationNanos) {
+    }
+
+    /**
+     * <p>Called when a transaction could not be committed or rolled back.</p>
+     *
+     * @param repositoryId the id of the repository.
+     * @param cause        the failure.
+     */
+    default void transactionFailed(String repositoryId, Throwable cause) {
+    }
+
+    /**
+     * <p>Called once a transaction has ended and its connection has been released.</p>
+     *
+     * @param repositoryId  the id of the repository.
+     * @param durationNanos the time from the beginning of the transaction until its connection was released.
+     */
+    default void transactionCompleted(String repositoryId, long durationNanos) {
+    }
+}
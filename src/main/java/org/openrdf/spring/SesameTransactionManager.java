@@ -1,18 +1,18 @@
 package org.openrdf.spring;
 
-import org.openrdf.IsolationLevel;
-import org.openrdf.repository.Repository;
-import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
-import org.openrdf.repository.sail.SailRepository;
 import org.openrdf.sail.Sail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.TransactionSystemException;
 import org.springframework.transaction.support.AbstractPlatformTransactionManager;
 import org.springframework.transaction.support.DefaultTransactionStatus;
 
-import static org.openrdf.spring.IsolationLevelAdapter.adaptToRdfIsolation;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * <p>{@link SesameTransactionManager} manages the transaction lifecycle of a {@link SesameTransactionObject}.</p>
@@ -22,12 +22,24 @@ import static org.openrdf.spring.IsolationLevelAdapter.adaptToRdfIsolation;
  * <p>It creates and destroys the transaction-state which is held by the {@link SesameConnectionFactory}.</p>
  * <p/>
  * <p>When the transaction finishes, the changes are either committed or rolled back by Spring.</p>
+ * <p/>
+ * <p>Transactions that are started with a {@link BulkLoadTransactionDefinition} run at the weakest isolation level
+ * the {@link Sail} supports; see {@link BulkLoader}.</p>
+ * <p/>
+ * <p>Registered {@link SesameTransactionListener}s are notified about every step of the transaction lifecycle. Without
+ * listeners no timings are taken.</p>
  *
  * @author ameingast@gmail.com
  */
 public class SesameTransactionManager extends AbstractPlatformTransactionManager {
+    private static final Logger log = LoggerFactory.getLogger(SesameTransactionManager.class);
+
+    private static final SesameTransactionListener[] NO_LISTENERS = new SesameTransactionListener[0];
+
     private final SesameConnectionFactory sesameConnectionFactory;
 
+    private volatile SesameTransactionListener[] transactionListeners = NO_LISTENERS;
+
     /**
      * <p>Creates a new {@link SesameTransactionManager} for the provided {@link SesameConnectionFactory} which
      * handles connection-management to a single {@link org.openrdf.repository.Repository}.</p>
@@ -47,7 +59,16 @@ public class SesameTransactionManager extends AbstractPlatformTransactionManager
 
         try {
             if (localTransactionObject == null) {
+                long startNanos = hasTransactionListeners() ? System.nanoTime() : 0L;
+
                 localTransactionObject = sesameConnectionFactory.createTransaction();
+
+                if (hasTransactionListeners()) {
+                    long durationNanos = System.nanoTime() - startNanos;
+                    String repositoryId = localTransactionObject.getRepositoryId();
+
+                    notifyTransactionListeners(listener -> listener.connectionOpened(repositoryId, durationNanos));
+                }
             } else {
                 localTransactionObject.setExisting(true);
             }
@@ -75,24 +96,44 @@ public class SesameTransactionManager extends AbstractPlatformTransactionManager
     protected void doBegin(Object transaction, TransactionDefinition transactionDefinition) throws TransactionException {
         SesameTransactionObject sesameTransactionObject = (SesameTransactionObject) transaction;
 
-        sesameTransactionObject.setTimeout(transactionDefinition.getTimeout());
-        sesameTransactionObject.setIsolationLevel(transactionDefinition.getIsolationLevel());
-        sesameTransactionObject.setPropagationBehavior(transactionDefinition.getPropagationBehavior());
-        sesameTransactionObject.setReadOnly(transactionDefinition.isReadOnly());
-        sesameTransactionObject.setName(Thread.currentThread().getName() + " " + transactionDefinition.getName());
+        try {
+            int timeout = determineTimeout(transactionDefinition);
 
-        setIsolationLevel(sesameTransactionObject, transactionDefinition);
-    }
+            sesameTransactionObject.setTimeout(timeout);
+
+            if (timeout != TransactionDefinition.TIMEOUT_DEFAULT) {
+                sesameTransactionObject.setTimeoutInSeconds(timeout);
+            }
 
-    private void setIsolationLevel(SesameTransactionObject sesameTransactionObject, TransactionDefinition transactionDefinition) {
-        RepositoryConnection repositoryConnection = sesameTransactionObject.getRepositoryConnection();
-        Repository repository = repositoryConnection.getRepository();
+            sesameTransactionObject.setIsolationLevel(transactionDefinition.getIsolationLevel());
+            sesameTransactionObject.setPropagationBehavior(transactionDefinition.getPropagationBehavior());
+            sesameTransactionObject.setReadOnly(transactionDefinition.isReadOnly());
+            sesameTransactionObject.setName(Thread.currentThread(), transactionDefinition.getName());
+            sesameTransactionObject.initializeRepositoryConnection(transactionDefinition);
+            sesameConnectionFactory.admitTransaction(sesameTransactionObject);
+        } catch (RuntimeException e) {
+            // the transaction never began, so it is not cleaned up after completion
+            String repositoryId = sesameTransactionObject.getRepositoryId();
 
-        if (repository instanceof SailRepository) {
-            Sail sail = ((SailRepository) repository).getSail();
-            IsolationLevel isolationLevel = adaptToRdfIsolation(sail, transactionDefinition.getIsolationLevel());
+            try {
+                sesameConnectionFactory.closeConnection();
+            } catch (RuntimeException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+
+            if (hasTransactionListeners()) {
+                notifyTransactionListeners(listener -> listener.transactionBeginFailed(repositoryId, e));
+            }
 
-            repositoryConnection.setIsolationLevel(isolationLevel);
+            throw e;
+        }
+
+        if (hasTransactionListeners()) {
+            String repositoryId = sesameTransactionObject.getRepositoryId();
+            boolean readOnly = transactionDefinition.isReadOnly();
+
+            sesameTransactionObject.setBeginTimeNanos(System.nanoTime());
+            notifyTransactionListeners(listener -> listener.transactionBegun(repositoryId, readOnly));
         }
     }
 
@@ -103,11 +144,7 @@ public class SesameTransactionManager extends AbstractPlatformTransactionManager
     protected void doCommit(DefaultTransactionStatus status) throws TransactionException {
         SesameTransactionObject sesameTransactionObject = (SesameTransactionObject) status.getTransaction();
 
-        try {
-            sesameConnectionFactory.endTransaction(sesameTransactionObject.isRollbackOnly());
-        } catch (RepositoryException e) {
-            throw new TransactionSystemException(e.getMessage(), e);
-        }
+        endTransaction(sesameTransactionObject, sesameTransactionObject.isRollbackOnly());
     }
 
     /**
@@ -115,10 +152,43 @@ public class SesameTransactionManager extends AbstractPlatformTransactionManager
      */
     @Override
     protected void doRollback(DefaultTransactionStatus status) throws TransactionException {
+        SesameTransactionObject sesameTransactionObject = (SesameTransactionObject) status.getTransaction();
+
+        endTransaction(sesameTransactionObject, true);
+    }
+
+    private void endTransaction(SesameTransactionObject sesameTransactionObject, boolean rollback) {
+        if (!hasTransactionListeners()) {
+            try {
+                sesameConnectionFactory.endTransaction(rollback);
+            } catch (RepositoryException e) {
+                throw new TransactionSystemException(e.getMessage(), e);
+            }
+
+            return;
+        }
+
+        String repositoryId = sesameTransactionObject.getRepositoryId();
+        long startNanos = System.nanoTime();
+
         try {
-            sesameConnectionFactory.endTransaction(true);
-        } catch (RepositoryException e) {
-            throw new TransactionSystemException(e.getMessage(), e);
+            sesameConnectionFactory.endTransaction(rollback);
+        } catch (RuntimeException e) {
+            notifyTransactionListeners(listener -> listener.transactionFailed(repositoryId, e));
+
+            if (e instanceof RepositoryException) {
+                throw new TransactionSystemException(e.getMessage(), e);
+            }
+
+            throw e;
+        }
+
+        long durationNanos = System.nanoTime() - startNanos;
+
+        if (rollback) {
+            notifyTransactionListeners(listener -> listener.transactionRolledBack(repositoryId, durationNanos));
+        } else {
+            notifyTransactionListeners(listener -> listener.transactionCommitted(repositoryId, durationNanos));
         }
     }
 
@@ -137,13 +207,59 @@ public class SesameTransactionManager extends AbstractPlatformTransactionManager
      */
     @Override
     public void doCleanupAfterCompletion(Object transaction) {
-        sesameConnectionFactory.closeConnection();
+        // the transaction state may be re-used once the connection is closed
+        SesameTransactionObject sesameTransactionObject = (SesameTransactionObject) transaction;
+        long beginTimeNanos = sesameTransactionObject.getBeginTimeNanos();
+        String repositoryId = sesameTransactionObject.getRepositoryId();
+
+        try {
+            sesameConnectionFactory.closeConnection();
+        } finally {
+            if (hasTransactionListeners() && beginTimeNanos != 0L) {
+                long durationNanos = System.nanoTime() - beginTimeNanos;
+
+                notifyTransactionListeners(listener -> listener.transactionCompleted(repositoryId, durationNanos));
+            }
+        }
+    }
+
+    private boolean hasTransactionListeners() {
+        return transactionListeners.length != 0;
+    }
+
+    private void notifyTransactionListeners(Consumer<SesameTransactionListener> callback) {
+        for (SesameTransactionListener transactionListener : transactionListeners) {
+            try {
+                callback.accept(transactionListener);
+            } catch (RuntimeException e) {
+                log.warn("Transaction listener " + transactionListener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * @param transactionListeners the listeners that are notified about the lifecycle of transactions. Replaces all
+     *                             previously registered listeners.
+     */
+    public synchronized void setTransactionListeners(List<SesameTransactionListener> transactionListeners) {
+        this.transactionListeners = transactionListeners.toArray(new SesameTransactionListener[transactionListeners.size()]);
+    }
+
+    /**
+     * @param transactionListener a listener that is notified about the lifecycle of transactions.
+     */
+    public synchronized void addTransactionListener(SesameTransactionListener transactionListener) {
+        SesameTransactionListener[] listeners = Arrays.copyOf(transactionListeners, transactionListeners.length + 1);
+        listeners[listeners.length - 1] = transactionListener;
+
+        this.transactionListeners = listeners;
     }
 
     @Override
     public String toString() {
         return "SesameTransactionManager{" +
                 "sesameConnectionFactory=" + sesameConnectionFactory +
+                ", transactionListeners=" + Arrays.toString(transactionListeners) +
                 '}';
     }
 }
@@ -0,0 +1,209 @@
+package org.openrdf.spring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>{@link SesameTransactionMetrics} is a {@link SesameTransactionListener} that records transaction counts,
+ * commit, rollback and connection latencies and the number of in-flight transactions and connections per
+ * repository-id.</p>
+ * <p/>
+ * <p>The metrics of every repository are published as a {@link RepositoryTransactionMetricsMXBean} in the platform
+ * {@link MBeanServer} as soon as the first transaction against the repository begins. Recording only updates
+ * striped counters and lock-free histograms and never blocks the transaction.</p>
+ * <p/>
+ * <p>To enable the metrics, register an instance with one or more {@link SesameTransactionManager}s:</p>
+ * <pre>
+ * &lt;bean id="transactionMetrics" class="org.openrdf.spring.SesameTransactionMetrics"/&gt;
+ *
+ * &lt;bean id="transactionManager" class="org.openrdf.spring.SesameTransactionManager"&gt;
+ *     &lt;constructor-arg ref="repositoryConnectionFactory"/&gt;
+ *     &lt;property name="transactionListeners" ref="transactionMetrics"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @author ameingast@gmail.com
+ */
+public class SesameTransactionMetrics implements SesameTransactionListener, DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(SesameTransactionMetrics.class);
+
+    /**
+     * The JMX domain of the registered MBeans.
+     */
+    public static final String JMX_DOMAIN = "org.openrdf.spring";
+
+    private final ConcurrentMap<String, RepositoryTransactionMetrics> repositoryMetrics = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ObjectName> registeredObjectNames = new ConcurrentHashMap<>();
+
+    private MBeanServer mBeanServer;
+
+    private boolean registerMBeans = true;
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void connectionOpened(String repositoryId, long durationNanos) {
+        getRepositoryMetrics(repositoryId).connectionOpened(durationNanos);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void transactionBegun(String repositoryId, boolean readOnly) {
+        getRepositoryMetrics(repositoryId).transactionBegun(readOnly);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void transactionBeginFailed(String repositoryId, Throwable cause) {
+        getRepositoryMetrics(repositoryId).transactionBeginFailed();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void transactionCommitted(String repositoryId, long durationNanos) {
+        getRepositoryMetrics(repositoryId).transactionCommitted(durationNanos);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void transactionRolledBack(String repositoryId, long durationNanos) {
+        getRepositoryMetrics(repositoryId).transactionRolledBack(durationNanos);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void transactionFailed(String repositoryId, Throwable cause) {
+        getRepositoryMetrics(repositoryId).transactionFailed();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void transactionCompleted(String repositoryId, long durationNanos) {
+        getRepositoryMetrics(repositoryId).transactionCompleted(durationNanos);
+    }
+
+    /**
+     * <p>Returns the metrics for <code>repositoryId</code> and creates (and registers) them if no transaction against
+     * the repository has been recorded yet.</p>
+     *
+     * @param repositoryId the id of the repository.
+     * @return the metrics of the repository.
+     */
+    public RepositoryTransactionMetrics getRepositoryMetrics(String repositoryId) {
+        RepositoryTransactionMetrics metrics = repositoryMetrics.get(repositoryId);
+
+        if (metrics == null) {
+            metrics = repositoryMetrics.computeIfAbsent(repositoryId, this::createRepositoryMetrics);
+        }
+
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of all repositories for which transactions have been recorded.
+     */
+    public Collection<RepositoryTransactionMetrics> getAllRepositoryMetrics() {
+        return Collections.unmodifiableCollection(repositoryMetrics.values());
+    }
+
+    private RepositoryTransactionMetrics createRepositoryMetrics(String repositoryId) {
+        RepositoryTransactionMetrics metrics = new RepositoryTransactionMetrics(repositoryId);
+
+        if (registerMBeans) {
+            registerMBean(repositoryId, metrics);
+        }
+
+        return metrics;
+    }
+
+    private void registerMBean(String repositoryId, RepositoryTransactionMetrics metrics) {
+        try {
+            ObjectName objectName = getObjectName(repositoryId);
+
+            getMBeanServer().registerMBean(metrics, objectName);
+            registeredObjectNames.put(repositoryId, objectName);
+        } catch (JMException e) {
+            log.warn("Cannot register transaction metrics of repository " + repositoryId, e);
+        }
+    }
+
+    /**
+     * @param repositoryId the id of the repository.
+     * @return the name under which the metrics of <code>repositoryId</code> are registered.
+     * @throws JMException if the name is invalid.
+     */
+    public static ObjectName getObjectName(String repositoryId) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=TransactionMetrics,repository=" + ObjectName.quote(repositoryId));
+    }
+
+    /**
+     * <p>Unregisters all MBeans that were registered by this instance.</p>
+     */
+    @Override
+    public void destroy() {
+        for (ObjectName objectName : registeredObjectNames.values()) {
+            try {
+                getMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.warn("Cannot unregister " + objectName, e);
+            }
+        }
+
+        registeredObjectNames.clear();
+    }
+
+    private MBeanServer getMBeanServer() {
+        if (mBeanServer == null) {
+            mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        }
+
+        return mBeanServer;
+    }
+
+    /**
+     * @param mBeanServer the server in which the metrics are registered. Defaults to the platform
+     *                    {@link MBeanServer}.
+     */
+    public void setMBeanServer(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+    }
+
+    /**
+     * @param registerMBeans whether the metrics are published via JMX. Defaults to <code>true</code>.
+     */
+    public void setRegisterMBeans(boolean registerMBeans) {
+        this.registerMBeans = registerMBeans;
+    }
+
+    @Override
+    public String toString() {
+        return "SesameTransactionMetrics{" +
+                "repositoryMetrics=" + repositoryMetrics.values() +
+                ", registerMBeans=" + registerMBeans +
+                '}';
+    }
+}
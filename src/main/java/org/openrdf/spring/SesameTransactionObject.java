@@ -1,6 +1,14 @@
 package org.openrdf.spring;
 
 import org.openrdf.repository.RepositoryConnection;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionTimedOutException;
+
+import java.util.Date;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.springframework.transaction.TransactionDefinition.*;
 
@@ -8,11 +16,18 @@ import static org.springframework.transaction.TransactionDefinition.*;
  * <p>{@link SesameTransactionObject} holds the transaction state which consists of: </p>
  * <p/>
  * <ul>
- * <li>{@link RepositoryConnection}</li>
+ * <li>{@link RepositoryConnection}, which may be opened on first use</li>
+ * <li>Connection exposed to the transaction</li>
+ * <li>Buffered statements that have not been written to the connection yet</li>
+ * <li>Changes collected for the {@link ChangeSetPublisher}</li>
+ * <li>Connection lock and running tasks of a transaction that is shared with other threads</li>
+ * <li>Id of the repository</li>
  * <li>Name</li>
+ * <li>Begin time</li>
+ * <li>Timings of the {@link SlowTransactionLog}</li>
  * <li>Transaction re-use marker</li>
  * <li>Rollback marker</li>
- * <li>Timeout marker</li>
+ * <li>Timeout marker and the resulting deadline</li>
  * <li>Isolation level marker</li>
  * <li>Propagation behavior marker</li>
  * <li>Read only marker</li>
@@ -22,16 +37,50 @@ import static org.springframework.transaction.TransactionDefinition.*;
  * @see org.springframework.transaction.TransactionDefinition
  */
 class SesameTransactionObject {
-    private final RepositoryConnection repositoryConnection;
+    private Function<SesameTransactionObject, RepositoryConnection> connectionOpener;
+
+    private TransactionDefinition connectionDefinition;
+
+    private RepositoryConnection repositoryConnection;
+
+    private RepositoryConnection transactionalConnection;
+
+    private StatementBuffer statementBuffer;
+
+    private Supplier<StatementBuffer> statementBufferFactory = StatementBuffer::new;
+
+    private ChangeSetCollector changeSetCollector;
+
+    private Lock connectionLock;
+
+    private Condition tasksUnbound;
+
+    private AdmissionController.Lane admissionLane;
+
+    private int boundTaskCount;
+
+    private volatile boolean completed;
+
+    private String repositoryId;
 
     private String name = "";
 
+    private Thread nameThread;
+
+    private String definitionName;
+
+    private long beginTimeNanos;
+
+    private SlowTransactionLog.Trace trace;
+
     private boolean existing = false;
 
     private boolean rollbackOnly = false;
 
     private int timeout = TIMEOUT_DEFAULT;
 
+    private Date deadline;
+
     private int isolationLevel = ISOLATION_DEFAULT;
 
     private int propagationBehavior = PROPAGATION_REQUIRED;
@@ -42,24 +91,222 @@ class SesameTransactionObject {
         this.repositoryConnection = repositoryConnection;
     }
 
+    /**
+     * <p>Creates the state of a transaction whose connection is opened by <code>connectionOpener</code> when it is
+     * first needed, at which point the transaction's settings are known.</p>
+     */
+    public SesameTransactionObject(Function<SesameTransactionObject, RepositoryConnection> connectionOpener) {
+        this.connectionOpener = connectionOpener;
+    }
+
     @Override
     public String toString() {
         return "SesameTransactionObject{" +
                 "repositoryConnection=" + repositoryConnection +
-                ", name='" + name + '\'' +
+                ", repositoryId='" + repositoryId + '\'' +
+                ", name='" + getName() + '\'' +
                 ", existing=" + existing +
                 ", rollbackOnly=" + rollbackOnly +
                 ", timeout=" + timeout +
+                ", deadline=" + deadline +
                 ", isolationLevel=" + isolationLevel +
                 ", propagationBehavior=" + propagationBehavior +
                 ", readOnly=" + readOnly +
                 '}';
     }
 
+    /**
+     * <p>Returns the connection of the transaction and opens it if it has not been opened yet.</p>
+     */
     public RepositoryConnection getRepositoryConnection() {
+        if (repositoryConnection == null) {
+            // the connection is kept even if its initialization fails, so it is released with the transaction
+            repositoryConnection = connectionOpener.apply(this);
+
+            if (connectionDefinition != null) {
+                IsolationLevelAdapter.applyIsolationLevel(repositoryConnection, connectionDefinition);
+            }
+        }
+
         return repositoryConnection;
     }
 
+    /**
+     * @return <code>true</code> if the connection of the transaction has been opened.
+     */
+    public boolean hasRepositoryConnection() {
+        return repositoryConnection != null;
+    }
+
+    /**
+     * <p>Sets the isolation level of <code>transactionDefinition</code> on the connection of the transaction: right
+     * away if it is already open, or once it is opened.</p>
+     */
+    public void initializeRepositoryConnection(TransactionDefinition transactionDefinition) {
+        if (repositoryConnection != null) {
+            IsolationLevelAdapter.applyIsolationLevel(repositoryConnection, transactionDefinition);
+        } else {
+            this.connectionDefinition = transactionDefinition;
+        }
+    }
+
+    /**
+     * <p>Re-uses the state of a completed transaction for a new transaction on <code>repositoryConnection</code>.</p>
+     */
+    void reuse(RepositoryConnection repositoryConnection) {
+        reset();
+        this.repositoryConnection = repositoryConnection;
+    }
+
+    /**
+     * <p>Re-uses the state of a completed transaction for a new transaction whose connection is opened by
+     * <code>connectionOpener</code> when it is first needed.</p>
+     */
+    void reuse(Function<SesameTransactionObject, RepositoryConnection> connectionOpener) {
+        reset();
+        this.connectionOpener = connectionOpener;
+    }
+
+    /**
+     * <p>Restores the state of a new transaction and drops all references to the previous transaction's connection,
+     * buffers and timings.</p>
+     */
+    void reset() {
+        connectionOpener = null;
+        connectionDefinition = null;
+        repositoryConnection = null;
+        transactionalConnection = null;
+        statementBuffer = null;
+        statementBufferFactory = StatementBuffer::new;
+        changeSetCollector = null;
+        connectionLock = null;
+        tasksUnbound = null;
+        admissionLane = null;
+        boundTaskCount = 0;
+        completed = false;
+        repositoryId = null;
+        name = "";
+        nameThread = null;
+        definitionName = null;
+        beginTimeNanos = 0L;
+        trace = null;
+        existing = false;
+        rollbackOnly = false;
+        timeout = TIMEOUT_DEFAULT;
+        deadline = null;
+        isolationLevel = ISOLATION_DEFAULT;
+        propagationBehavior = PROPAGATION_REQUIRED;
+        readOnly = false;
+    }
+
+    public RepositoryConnection getTransactionalConnection() {
+        return transactionalConnection;
+    }
+
+    public void setTransactionalConnection(RepositoryConnection transactionalConnection) {
+        this.transactionalConnection = transactionalConnection;
+    }
+
+    public StatementBuffer getStatementBuffer() {
+        return statementBuffer;
+    }
+
+    public void setStatementBuffer(StatementBuffer statementBuffer) {
+        this.statementBuffer = statementBuffer;
+    }
+
+    /**
+     * <p>Creates an empty buffer of the kind configured for the transaction. The buffer is not set as the
+     * transaction's buffer.</p>
+     */
+    public StatementBuffer createStatementBuffer() {
+        return statementBufferFactory.get();
+    }
+
+    public void setStatementBufferFactory(Supplier<StatementBuffer> statementBufferFactory) {
+        this.statementBufferFactory = statementBufferFactory;
+    }
+
+    /**
+     * <p>Discards the buffered statements of the transaction, if any, and releases the resources that hold them.</p>
+     */
+    public void clearStatementBuffer() {
+        if (statementBuffer != null) {
+            statementBuffer.clear();
+        }
+    }
+
+    /**
+     * <p>Writes the buffered statements of the transaction, if any, to <code>repositoryConnection</code>.</p>
+     *
+     * @param repositoryConnection the connection of the transaction.
+     */
+    public void flushStatementBuffer(RepositoryConnection repositoryConnection) {
+        if (statementBuffer != null) {
+            statementBuffer.flush(repositoryConnection);
+        }
+    }
+
+    public ChangeSetCollector getChangeSetCollector() {
+        return changeSetCollector;
+    }
+
+    public void setChangeSetCollector(ChangeSetCollector changeSetCollector) {
+        this.changeSetCollector = changeSetCollector;
+    }
+
+    /**
+     * @return the lock that guards the connection of a transaction shared with other threads, or <code>null</code> if
+     * the transaction is confined to its thread.
+     */
+    public Lock getConnectionLock() {
+        return connectionLock;
+    }
+
+    public void setConnectionLock(Lock connectionLock) {
+        this.connectionLock = connectionLock;
+        this.tasksUnbound = connectionLock != null ? connectionLock.newCondition() : null;
+    }
+
+    /**
+     * @return the condition of the connection lock that is signalled once no more tasks run inside the transaction.
+     */
+    Condition getTasksUnbound() {
+        return tasksUnbound;
+    }
+
+    /**
+     * @return the admission lane that holds the slot of the transaction, or <code>null</code> if the transaction was
+     * not admitted by an {@link AdmissionController}.
+     */
+    AdmissionController.Lane getAdmissionLane() {
+        return admissionLane;
+    }
+
+    void setAdmissionLane(AdmissionController.Lane admissionLane) {
+        this.admissionLane = admissionLane;
+    }
+
+    /**
+     * @return the number of tasks on other threads that currently run inside the transaction. Guarded by the
+     * connection lock.
+     */
+    public int getBoundTaskCount() {
+        return boundTaskCount;
+    }
+
+    public void setBoundTaskCount(int boundTaskCount) {
+        this.boundTaskCount = boundTaskCount;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+
     public boolean isExisting() {
         return existing;
     }
@@ -84,6 +331,63 @@ class SesameTransactionObject {
         this.timeout = timeout;
     }
 
+    public boolean hasDeadline() {
+        return deadline != null;
+    }
+
+    public Date getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * <p>Sets the deadline of the transaction to <code>timeout</code> seconds from now.</p>
+     *
+     * @param timeout the timeout in seconds.
+     */
+    public void setTimeoutInSeconds(int timeout) {
+        this.deadline = new Date(System.currentTimeMillis() + timeout * 1000L);
+    }
+
+    /**
+     * <p>Returns the time left until the deadline in seconds, rounded up.</p>
+     *
+     * @throws TransactionTimedOutException if the deadline has already passed.
+     */
+    public int getTimeToLiveInSeconds() {
+        return (int) Math.ceil(getTimeToLiveInMillis() / 1000.0);
+    }
+
+    /**
+     * <p>Returns the time left until the deadline in milliseconds.</p>
+     *
+     * @throws TransactionTimedOutException if the deadline has already passed.
+     */
+    public long getTimeToLiveInMillis() {
+        if (deadline == null) {
+            throw new IllegalStateException("No timeout specified for this transaction");
+        }
+
+        long timeToLive = deadline.getTime() - System.currentTimeMillis();
+
+        if (timeToLive <= 0) {
+            rollbackOnly = true;
+            throw new TransactionTimedOutException("Transaction timed out: deadline was " + deadline);
+        }
+
+        return timeToLive;
+    }
+
+    /**
+     * <p>Fails if the transaction has a deadline that has already passed and marks the transaction rollback-only.</p>
+     *
+     * @throws TransactionTimedOutException if the deadline has passed.
+     */
+    public void checkTransactionTimeout() {
+        if (deadline != null) {
+            getTimeToLiveInMillis();
+        }
+    }
+
     public int getIsolationLevel() {
         return isolationLevel;
     }
@@ -109,10 +413,59 @@ class SesameTransactionObject {
     }
 
     public String getName() {
+        if (nameThread != null) {
+            name = nameThread.getName() + " " + definitionName;
+            nameThread = null;
+        }
+
         return name;
     }
 
     public void setName(String name) {
         this.name = name;
+        this.nameThread = null;
+    }
+
+    /**
+     * <p>Names the transaction after the thread that began it and its definition. The name is only built when it is
+     * first requested.</p>
+     *
+     * @param thread         the thread that began the transaction.
+     * @param definitionName the name of the transaction definition.
+     */
+    public void setName(Thread thread, String definitionName) {
+        this.nameThread = thread;
+        this.definitionName = definitionName;
+    }
+
+    public String getRepositoryId() {
+        return repositoryId;
+    }
+
+    public void setRepositoryId(String repositoryId) {
+        this.repositoryId = repositoryId;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the transaction began.
+     */
+    public long getBeginTimeNanos() {
+        return beginTimeNanos;
+    }
+
+    public void setBeginTimeNanos(long beginTimeNanos) {
+        this.beginTimeNanos = beginTimeNanos;
+    }
+
+    /**
+     * @return the timings of the transaction, or <code>null</code> if no {@link SlowTransactionLog} is configured or
+     * the connection has not been opened yet.
+     */
+    public SlowTransactionLog.Trace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(SlowTransactionLog.Trace trace) {
+        this.trace = trace;
     }
 }
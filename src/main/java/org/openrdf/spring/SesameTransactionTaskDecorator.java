@@ -0,0 +1,39 @@
+package org.openrdf.spring;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * <p>{@link SesameTransactionTaskDecorator} propagates the transaction of the submitting thread to the tasks of a
+ * Spring {@link org.springframework.core.task.TaskExecutor}, e.g. a
+ * {@link org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor}. Tasks that are submitted outside of a
+ * transaction run unchanged.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see SesameTransactionContext
+ */
+public class SesameTransactionTaskDecorator implements TaskDecorator {
+    private final SesameConnectionFactory sesameConnectionFactory;
+
+    /**
+     * @param sesameConnectionFactory the factory whose transactions are propagated.
+     */
+    public SesameTransactionTaskDecorator(SesameConnectionFactory sesameConnectionFactory) {
+        this.sesameConnectionFactory = sesameConnectionFactory;
+    }
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        if (!SesameTransactionContext.isTransactionActive(sesameConnectionFactory)) {
+            return runnable;
+        }
+
+        return SesameTransactionContext.capture(sesameConnectionFactory).wrap(runnable);
+    }
+
+    @Override
+    public String toString() {
+        return "SesameTransactionTaskDecorator{" +
+                "sesameConnectionFactory=" + sesameConnectionFactory +
+                '}';
+    }
+}
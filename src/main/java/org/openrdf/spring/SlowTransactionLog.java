@@ -0,0 +1,237 @@
+package org.openrdf.spring;
+
+import org.openrdf.IsolationLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link SlowTransactionLog} logs transactions that hold their connection for longer than
+ * {@link #setTransactionThresholdMillis(long) transactionThresholdMillis} and queries that take longer than
+ * {@link #setQueryThresholdMillis(long) queryThresholdMillis}.</p>
+ * <p/>
+ * <p>A transaction is timed from the moment its connection is opened until the connection is released. A query is
+ * timed from its evaluation until its result is exhausted or closed, an update until it has been executed. Entries are
+ * logged at <code>WARN</code> level as <code>key=value</code> pairs with the transaction name, repository-id,
+ * isolation level and duration; slow transactions also list the queries they ran and how long each took.</p>
+ * <p/>
+ * <p>Tracking takes two calls to {@link System#nanoTime()} per query and keeps the text of the first
+ * {@link #setMaxRecordedQueries(int) maxRecordedQueries} queries of a transaction. Capturing the call stack that began
+ * a transaction is expensive and therefore disabled by default.</p>
+ * <p/>
+ * <p>To enable the log, set it on a {@link RepositoryConnectionFactory}:</p>
+ * <pre>
+ * &lt;bean id="repositoryConnectionFactory" class="org.openrdf.spring.RepositoryConnectionFactory"&gt;
+ *     &lt;constructor-arg ref="repository"/&gt;
+ *     &lt;property name="slowTransactionLog"&gt;
+ *         &lt;bean class="org.openrdf.spring.SlowTransactionLog"&gt;
+ *             &lt;property name="transactionThresholdMillis" value="2000"/&gt;
+ *             &lt;property name="queryThresholdMillis" value="500"/&gt;
+ *         &lt;/bean&gt;
+ *     &lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @author ameingast@gmail.com
+ */
+public class SlowTransactionLog {
+    private static final Logger log = LoggerFactory.getLogger(SlowTransactionLog.class);
+
+    /**
+     * The transaction duration above which a transaction is logged unless configured otherwise.
+     */
+    public static final long DEFAULT_TRANSACTION_THRESHOLD_MILLIS = 1000;
+
+    /**
+     * The query duration above which a query is logged unless configured otherwise.
+     */
+    public static final long DEFAULT_QUERY_THRESHOLD_MILLIS = 500;
+
+    /**
+     * The number of queries per transaction whose text is kept unless configured otherwise.
+     */
+    public static final int DEFAULT_MAX_RECORDED_QUERIES = 20;
+
+    private long transactionThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TRANSACTION_THRESHOLD_MILLIS);
+
+    private long queryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_QUERY_THRESHOLD_MILLIS);
+
+    private int maxRecordedQueries = DEFAULT_MAX_RECORDED_QUERIES;
+
+    private boolean captureCallStack;
+
+    /**
+     * <p>Starts timing a transaction whose connection has just been opened.</p>
+     */
+    Trace startTrace() {
+        return new Trace(System.nanoTime(), captureCallStack ? new Throwable("Transaction began here") : null);
+    }
+
+    /**
+     * <p>Records a finished query of a transaction and logs it if it was slow.</p>
+     */
+    void queryCompleted(SesameTransactionObject sesameTransactionObject, String query, long durationNanos) {
+        Trace trace = sesameTransactionObject.getTrace();
+
+        if (trace != null) {
+            trace.record(query, durationNanos, maxRecordedQueries);
+        }
+
+        if (durationNanos > queryThresholdNanos && log.isWarnEnabled()) {
+            log.warn("Slow query: name=\"{}\" repositoryId={} durationMillis={} query=\"{}\"",
+                    sesameTransactionObject.getName(), sesameTransactionObject.getRepositoryId(),
+                    TimeUnit.NANOSECONDS.toMillis(durationNanos), query);
+        }
+    }
+
+    /**
+     * <p>Logs a transaction whose connection is about to be released if it was held for too long.</p>
+     */
+    void transactionCompleted(SesameTransactionObject sesameTransactionObject, IsolationLevel isolationLevel) {
+        Trace trace = sesameTransactionObject.getTrace();
+
+        if (trace == null) {
+            return;
+        }
+
+        long durationNanos = System.nanoTime() - trace.startNanos;
+
+        if (durationNanos <= transactionThresholdNanos || !log.isWarnEnabled()) {
+            return;
+        }
+
+        String message = "Slow transaction: name=\"" + sesameTransactionObject.getName() + "\"" +
+                " repositoryId=" + sesameTransactionObject.getRepositoryId() +
+                " isolationLevel=" + isolationLevel +
+                " readOnly=" + sesameTransactionObject.isReadOnly() +
+                " durationMillis=" + TimeUnit.NANOSECONDS.toMillis(durationNanos) +
+                " " + trace.describeQueries();
+
+        if (trace.callStack != null) {
+            log.warn(message, trace.callStack);
+        } else {
+            log.warn(message);
+        }
+    }
+
+    public long getTransactionThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(transactionThresholdNanos);
+    }
+
+    /**
+     * @param transactionThresholdMillis the time a transaction may hold its connection before it is logged. Defaults
+     *                                   to {@link #DEFAULT_TRANSACTION_THRESHOLD_MILLIS}.
+     */
+    public void setTransactionThresholdMillis(long transactionThresholdMillis) {
+        this.transactionThresholdNanos = TimeUnit.MILLISECONDS.toNanos(transactionThresholdMillis);
+    }
+
+    public long getQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(queryThresholdNanos);
+    }
+
+    /**
+     * @param queryThresholdMillis the time a query may take before it is logged. Defaults to
+     *                             {@link #DEFAULT_QUERY_THRESHOLD_MILLIS}.
+     */
+    public void setQueryThresholdMillis(long queryThresholdMillis) {
+        this.queryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(queryThresholdMillis);
+    }
+
+    public int getMaxRecordedQueries() {
+        return maxRecordedQueries;
+    }
+
+    /**
+     * @param maxRecordedQueries the number of queries per transaction that are listed when the transaction is
+     *                           logged. Later queries are only counted. Defaults to
+     *                           {@link #DEFAULT_MAX_RECORDED_QUERIES}.
+     */
+    public void setMaxRecordedQueries(int maxRecordedQueries) {
+        this.maxRecordedQueries = maxRecordedQueries;
+    }
+
+    public boolean isCaptureCallStack() {
+        return captureCallStack;
+    }
+
+    /**
+     * @param captureCallStack whether the call stack that began a transaction is logged with it. Defaults to
+     *                         <code>false</code>.
+     */
+    public void setCaptureCallStack(boolean captureCallStack) {
+        this.captureCallStack = captureCallStack;
+    }
+
+    @Override
+    public String toString() {
+        return "SlowTransactionLog{" +
+                "transactionThresholdMillis=" + getTransactionThresholdMillis() +
+                ", queryThresholdMillis=" + getQueryThresholdMillis() +
+                ", maxRecordedQueries=" + maxRecordedQueries +
+                ", captureCallStack=" + captureCallStack +
+                '}';
+    }
+
+    /**
+     * <p>The timings of a single transaction. Queries of a transaction that is shared with other threads may finish
+     * concurrently, so recording is synchronized.</p>
+     */
+    static class Trace {
+        private final long startNanos;
+
+        private final Throwable callStack;
+
+        private final List<String> queries = new ArrayList<>();
+
+        private final List<Long> queryDurationNanos = new ArrayList<>();
+
+        private int queryCount;
+
+        private long totalQueryNanos;
+
+        private Trace(long startNanos, Throwable callStack) {
+            this.startNanos = startNanos;
+            this.callStack = callStack;
+        }
+
+        private synchronized void record(String query, long durationNanos, int maxRecordedQueries) {
+            queryCount++;
+            totalQueryNanos += durationNanos;
+
+            if (queries.size() < maxRecordedQueries) {
+                queries.add(query);
+                queryDurationNanos.add(durationNanos);
+            }
+        }
+
+        synchronized int getQueryCount() {
+            return queryCount;
+        }
+
+        private synchronized String describeQueries() {
+            StringBuilder description = new StringBuilder()
+                    .append("queryCount=").append(queryCount)
+                    .append(" queryMillis=").append(TimeUnit.NANOSECONDS.toMillis(totalQueryNanos))
+                    .append(" queries=[");
+
+            for (int i = 0; i < queries.size(); i++) {
+                if (i > 0) {
+                    description.append(", ");
+                }
+
+                description.append('{').append(TimeUnit.NANOSECONDS.toMillis(queryDurationNanos.get(i)))
+                        .append("ms \"").append(queries.get(i)).append("\"}");
+            }
+
+            if (queryCount > queries.size()) {
+                description.append(", ... ").append(queryCount - queries.size()).append(" more");
+            }
+
+            return description.append(']').toString();
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package org.openrdf.spring;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.sail.SailConnectionListener;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>{@link StagedStatementBuffer} is a {@link StatementBuffer} that keeps the pending additions and removals of a
+ * transaction off the heap, so the heap used by a transaction stays flat regardless of how many statements it
+ * writes.</p>
+ * <p/>
+ * <p>Every operation is encoded into a sequential record of a kind marker and the ids of its subject, predicate, object
+ * and context. Values are dictionary-encoded: the first occurrence of a value is written in full and assigned an id,
+ * later occurrences only write the id. The dictionary holds the {@link #DICTIONARY_SIZE} most recently defined values
+ * and re-uses the id of the oldest one for the next value, so its heap is bounded, too.</p>
+ * <p/>
+ * <p>The first <code>heapStatements</code> operations are held on the heap like in a plain {@link StatementBuffer}, so
+ * small transactions never touch direct memory. Once there are more, all operations are encoded into a direct buffer
+ * taken from a {@link StagingMemoryPool}. Once it is full, its contents are appended to a temporary file, which is
+ * deleted when the buffer is cleared. Flushing streams the records back in order and writes them to the connection in
+ * chunks of {@link #WRITE_BATCH_SIZE} statements. Clearing or flushing returns the direct buffer to the pool.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see RepositoryConnectionFactory#setStagingEnabled(boolean)
+ */
+class StagedStatementBuffer extends StatementBuffer {
+    /**
+     * The number of values that are kept in the dictionary.
+     */
+    static final int DICTIONARY_SIZE = 4096;
+
+    /**
+     * The number of statements that are written to a connection with a single bulk call.
+     */
+    static final int WRITE_BATCH_SIZE = 1000;
+
+    private static final ValueFactory valueFactory = SimpleValueFactory.getInstance();
+
+    private static final byte ADD = 1;
+
+    private static final byte REMOVE = 2;
+
+    private static final int NULL_REF = -1;
+
+    private static final int DEFINITION_REF = -2;
+
+    private static final byte IRI_VALUE = 1;
+
+    private static final byte BNODE_VALUE = 2;
+
+    private static final byte LITERAL_VALUE = 3;
+
+    private static final byte LANGUAGE_LITERAL_VALUE = 4;
+
+    private final File directory;
+
+    private final StagingMemoryPool memoryPool;
+
+    private final int heapStatements;
+
+    private Stage stage;
+
+    private IOException failure;
+
+    /**
+     * @param directory      the directory of the temporary file, or <code>null</code> for the default temporary
+     *                       directory.
+     * @param memoryPool     the pool of the direct buffers that hold records before they are written to the
+     *                       temporary file.
+     * @param heapStatements the number of operations that are held on the heap before they are staged.
+     */
+    StagedStatementBuffer(File directory, StagingMemoryPool memoryPool, int heapStatements) {
+        this.directory = directory;
+        this.memoryPool = memoryPool;
+        this.heapStatements = heapStatements;
+    }
+
+    @Override
+    void add(Statement statement) {
+        append(ADD, statement);
+    }
+
+    @Override
+    void remove(Statement statement) {
+        append(REMOVE, statement);
+    }
+
+    private void append(byte kind, Statement statement) {
+        checkFailure();
+
+        if (stage == null && super.size() < heapStatements) {
+            if (kind == ADD) {
+                super.add(statement);
+            } else {
+                super.remove(statement);
+            }
+
+            return;
+        }
+
+        try {
+            if (stage == null) {
+                openStage();
+            }
+
+            stage.append(kind, statement);
+        } catch (IOException e) {
+            // a partially written record cannot be read back, so the buffer is unusable from now on
+            failure = e;
+            checkFailure();
+        }
+    }
+
+    /**
+     * <p>Moves the operations that are held on the heap into a new stage. The stage is kept even if this fails, so its
+     * direct buffer is returned to the pool when the buffer is cleared.</p>
+     */
+    private void openStage() throws IOException {
+        Stage newStage = new Stage(directory, memoryPool);
+        stage = newStage;
+
+        try {
+            super.report(new SailConnectionListener() {
+                @Override
+                public void statementAdded(Statement statement) {
+                    appendUnchecked(ADD, statement);
+                }
+
+                @Override
+                public void statementRemoved(Statement statement) {
+                    appendUnchecked(REMOVE, statement);
+                }
+
+                private void appendUnchecked(byte kind, Statement statement) {
+                    try {
+                        newStage.append(kind, statement);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        super.clear();
+    }
+
+    @Override
+    int size() {
+        return stage == null ? super.size() : stage.size;
+    }
+
+    @Override
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of bytes of staged records that were written to the temporary file.
+     */
+    long getSpilledBytes() {
+        return stage == null ? 0 : stage.fileBytes;
+    }
+
+    /**
+     * <p>Writes all staged operations to <code>repositoryConnection</code> and empties the buffer. The buffer is
+     * emptied before anything is written, so a flush that is triggered while writing is a no-op.</p>
+     */
+    @Override
+    void flush(RepositoryConnection repositoryConnection) throws RepositoryException {
+        checkFailure();
+
+        if (stage == null) {
+            super.flush(repositoryConnection);
+            return;
+        }
+
+        Stage pendingStage = stage;
+        stage = null;
+
+        try {
+            pendingStage.replay(new ConnectionWriter(repositoryConnection));
+        } finally {
+            pendingStage.close();
+        }
+    }
+
+    /**
+     * <p>Writes all staged operations to <code>repositoryConnection</code> and keeps them in the buffer, so they may be
+     * written again if the connection's transaction is rolled back.</p>
+     */
+    @Override
+    void writeTo(RepositoryConnection repositoryConnection) throws RepositoryException {
+        checkFailure();
+
+        if (stage == null) {
+            super.writeTo(repositoryConnection);
+        } else {
+            stage.replay(new ConnectionWriter(repositoryConnection));
+        }
+    }
+
+    @Override
+    void report(SailConnectionListener listener) {
+        checkFailure();
+
+        if (stage == null) {
+            super.report(listener);
+        } else {
+            stage.replay(new StatementHandler() {
+                @Override
+                public void handle(boolean add, Statement statement) {
+                    if (add) {
+                        listener.statementAdded(statement);
+                    } else {
+                        listener.statementRemoved(statement);
+                    }
+                }
+
+                @Override
+                public void end() {
+                }
+            });
+        }
+    }
+
+    /**
+     * <p>Discards all staged operations, deletes the temporary file and returns the direct buffer to the pool.</p>
+     */
+    @Override
+    void clear() {
+        failure = null;
+        super.clear();
+
+        if (stage != null) {
+            stage.close();
+            stage = null;
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new RepositoryException("Cannot stage statements", failure);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StagedStatementBuffer{" +
+                "directory=" + directory +
+                ", memoryPool=" + memoryPool +
+                ", heapStatements=" + heapStatements +
+                ", size=" + size() +
+                ", spilledBytes=" + getSpilledBytes() +
+                '}';
+    }
+
+    private interface StatementHandler {
+        void handle(boolean add, Statement statement);
+
+        void end();
+    }
+
+    /**
+     * <p>Writes consecutive operations of the same kind with one bulk call per chunk.</p>
+     */
+    private static class ConnectionWriter implements StatementHandler {
+        private final RepositoryConnection repositoryConnection;
+
+        private final List<Statement> batch = new ArrayList<>();
+
+        private boolean add;
+
+        private ConnectionWriter(RepositoryConnection repositoryConnection) {
+            this.repositoryConnection = repositoryConnection;
+        }
+
+        @Override
+        public void handle(boolean add, Statement statement) {
+            if (add != this.add || batch.size() >= WRITE_BATCH_SIZE) {
+                end();
+                this.add = add;
+            }
+
+            batch.add(statement);
+        }
+
+        @Override
+        public void end() {
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            if (add) {
+                repositoryConnection.add(batch);
+            } else {
+                repositoryConnection.remove(batch);
+            }
+
+            batch.clear();
+        }
+    }
+
+    /**
+     * <p>The records of a buffer: a temporary file, if the direct buffer ever filled up, followed by the contents of
+     * the direct buffer.</p>
+     */
+    private static class Stage {
+        private final File directory;
+
+        private final StagingMemoryPool memoryPool;
+
+        private final ByteBuffer memory;
+
+        private final DataOutputStream output;
+
+        private final Map<Value, Integer> dictionary = new HashMap<>();
+
+        private final Value[] dictionaryValues = new Value[DICTIONARY_SIZE];
+
+        private int nextDictionaryId;
+
+        private FileChannel file;
+
+        private long fileBytes;
+
+        private int size;
+
+        private Stage(File directory, StagingMemoryPool memoryPool) {
+            this.directory = directory;
+            this.memoryPool = memoryPool;
+            this.memory = memoryPool.acquire();
+            this.output = new DataOutputStream(new StageOutputStream());
+        }
+
+        private void append(byte kind, Statement statement) throws IOException {
+            output.writeByte(kind);
+            writeValue(statement.getSubject());
+            writeValue(statement.getPredicate());
+            writeValue(statement.getObject());
+            writeValue(statement.getContext());
+            size++;
+        }
+
+        private void writeValue(Value value) throws IOException {
+            if (value == null) {
+                output.writeInt(NULL_REF);
+                return;
+            }
+
+            Integer id = dictionary.get(value);
+
+            if (id != null) {
+                output.writeInt(id);
+                return;
+            }
+
+            int newId = nextDictionaryId;
+            nextDictionaryId = (nextDictionaryId + 1) % DICTIONARY_SIZE;
+
+            if (dictionaryValues[newId] != null) {
+                dictionary.remove(dictionaryValues[newId]);
+            }
+
+            dictionaryValues[newId] = value;
+            dictionary.put(value, newId);
+
+            output.writeInt(DEFINITION_REF);
+
+            if (value instanceof IRI) {
+                output.writeByte(IRI_VALUE);
+                writeString(value.stringValue());
+            } else if (value instanceof BNode) {
+                output.writeByte(BNODE_VALUE);
+                writeString(((BNode) value).getID());
+            } else {
+                Literal literal = (Literal) value;
+
+                if (literal.getLanguage().isPresent()) {
+                    output.writeByte(LANGUAGE_LITERAL_VALUE);
+                    writeString(literal.getLabel());
+                    writeString(literal.getLanguage().get());
+                } else {
+                    output.writeByte(LITERAL_VALUE);
+                    writeString(literal.getLabel());
+                    writeString(literal.getDatatype().stringValue());
+                }
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        /**
+         * <p>Appends the contents of the direct buffer to the temporary file and empties the direct buffer.</p>
+         */
+        private void spill() throws IOException {
+            if (file == null) {
+                Path path = directory == null
+                        ? Files.createTempFile("sesame-staging-", ".tmp")
+                        : Files.createTempFile(directory.toPath(), "sesame-staging-", ".tmp");
+
+                file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+
+            memory.flip();
+
+            while (memory.hasRemaining()) {
+                fileBytes += file.write(memory, fileBytes);
+            }
+
+            memory.clear();
+        }
+
+        /**
+         * <p>Reads all records in order and passes them to <code>statementHandler</code>.</p>
+         */
+        private void replay(StatementHandler statementHandler) {
+            ByteBuffer memoryContents = memory.duplicate();
+            memoryContents.flip();
+
+            InputStream memoryInput = new ByteBufferInputStream(memoryContents);
+            InputStream input = memoryInput;
+
+            if (file != null) {
+                InputStream fileInput = new BufferedInputStream(new FileRegionInputStream(file, fileBytes));
+                input = new SequenceInputStream(fileInput, memoryInput);
+            }
+
+            StageReader reader = new StageReader(new DataInputStream(input));
+
+            try {
+                for (int i = 0; i < size; i++) {
+                    boolean add = reader.readKind() == ADD;
+                    Resource subject = (Resource) reader.readValue();
+                    IRI predicate = (IRI) reader.readValue();
+                    Value object = reader.readValue();
+                    Resource context = (Resource) reader.readValue();
+
+                    statementHandler.handle(add, context == null
+                            ? valueFactory.createStatement(subject, predicate, object)
+                            : valueFactory.createStatement(subject, predicate, object, context));
+                }
+            } catch (IOException e) {
+                throw new RepositoryException("Cannot read staged statements", e);
+            }
+
+            statementHandler.end();
+        }
+
+        private void close() {
+            dictionary.clear();
+            memoryPool.release(memory);
+
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    throw new RepositoryException("Cannot delete staged statements", e);
+                } finally {
+                    file = null;
+                }
+            }
+        }
+
+        private class StageOutputStream extends OutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                if (!memory.hasRemaining()) {
+                    spill();
+                }
+
+                memory.put((byte) b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                while (length > 0) {
+                    if (!memory.hasRemaining()) {
+                        spill();
+                    }
+
+                    int chunk = Math.min(length, memory.remaining());
+                    memory.put(bytes, offset, chunk);
+                    offset += chunk;
+                    length -= chunk;
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Decodes records with a dictionary that mirrors the one the records were written with.</p>
+     */
+    private static class StageReader {
+        private final DataInputStream input;
+
+        private final Value[] dictionaryValues = new Value[DICTIONARY_SIZE];
+
+        private int nextDictionaryId;
+
+        private StageReader(DataInputStream input) {
+            this.input = input;
+        }
+
+        private byte readKind() throws IOException {
+            return input.readByte();
+        }
+
+        private Value readValue() throws IOException {
+            int ref = input.readInt();
+
+            if (ref == NULL_REF) {
+                return null;
+            }
+
+            if (ref != DEFINITION_REF) {
+                return dictionaryValues[ref];
+            }
+
+            Value value;
+            byte type = input.readByte();
+
+            switch (type) {
+                case IRI_VALUE:
+                    value = valueFactory.createIRI(readString());
+                    break;
+                case BNODE_VALUE:
+                    value = valueFactory.createBNode(readString());
+                    break;
+                case LANGUAGE_LITERAL_VALUE:
+                    value = valueFactory.createLiteral(readString(), readString());
+                    break;
+                case LITERAL_VALUE:
+                    value = valueFactory.createLiteral(readString(), valueFactory.createIRI(readString()));
+                    break;
+                default:
+                    throw new IOException("Unknown value type: " + type);
+            }
+
+            dictionaryValues[nextDictionaryId] = value;
+            nextDictionaryId = (nextDictionaryId + 1) % DICTIONARY_SIZE;
+
+            return value;
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * <p>Reads the first <code>length</code> bytes of a file without moving the position of its channel.</p>
+     */
+    private static class FileRegionInputStream extends InputStream {
+        private final FileChannel file;
+
+        private final long length;
+
+        private long position;
+
+        private FileRegionInputStream(FileChannel file, long length) {
+            this.file = file;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] singleByte = new byte[1];
+
+            return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (position >= length) {
+                return -1;
+            }
+
+            ByteBuffer target = ByteBuffer.wrap(bytes, offset, (int) Math.min(count, length - position));
+            int read = file.read(target, position);
+
+            if (read == -1) {
+                throw new EOFException("Staging file truncated at " + position + " of " + length + " bytes");
+            }
+
+            position += read;
+
+            return read;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int chunk = Math.min(count, buffer.remaining());
+            buffer.get(bytes, offset, chunk);
+
+            return chunk;
+        }
+    }
+}
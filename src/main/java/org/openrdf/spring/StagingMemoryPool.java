@@ -0,0 +1,86 @@
+package org.openrdf.spring;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>{@link StagingMemoryPool} hands out the direct buffers of {@link StagedStatementBuffer}s and keeps released
+ * buffers for the next staging transaction.</p>
+ * <p/>
+ * <p>Direct buffers are only freed by the garbage collector, so allocating one per transaction, or per flush, quickly
+ * exhausts the direct memory of the JVM. Every {@link RepositoryConnectionFactory} owns one pool; it keeps at most
+ * one idle buffer per available processor.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+class StagingMemoryPool {
+    private final int bufferBytes;
+
+    private final int maxIdleBuffers;
+
+    private final Deque<ByteBuffer> idleBuffers = new ArrayDeque<>();
+
+    StagingMemoryPool(int bufferBytes) {
+        this(bufferBytes, Runtime.getRuntime().availableProcessors());
+    }
+
+    StagingMemoryPool(int bufferBytes, int maxIdleBuffers) {
+        this.bufferBytes = bufferBytes;
+        this.maxIdleBuffers = maxIdleBuffers;
+    }
+
+    /**
+     * @return an empty direct buffer of <code>bufferBytes</code>, either an idle one or a new one.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer;
+
+        synchronized (idleBuffers) {
+            buffer = idleBuffers.pollFirst();
+        }
+
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferBytes);
+    }
+
+    /**
+     * <p>Returns a buffer obtained from {@link #acquire()}. Its contents are discarded.</p>
+     */
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+
+        synchronized (idleBuffers) {
+            if (idleBuffers.size() < maxIdleBuffers) {
+                idleBuffers.addFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * <p>Drops all idle buffers.</p>
+     */
+    void clear() {
+        synchronized (idleBuffers) {
+            idleBuffers.clear();
+        }
+    }
+
+    int getBufferBytes() {
+        return bufferBytes;
+    }
+
+    int getIdleBufferCount() {
+        synchronized (idleBuffers) {
+            return idleBuffers.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StagingMemoryPool{" +
+                "bufferBytes=" + bufferBytes +
+                ", maxIdleBuffers=" + maxIdleBuffers +
+                ", idleBuffers=" + getIdleBufferCount() +
+                '}';
+    }
+}
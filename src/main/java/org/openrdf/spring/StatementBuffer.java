@@ -0,0 +1,136 @@
+package org.openrdf.spring;
+
+import org.openrdf.model.Statement;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.sail.SailConnectionListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * <p>{@link StatementBuffer} holds the additions and removals of a transaction that have not yet been written to its
+ * {@link RepositoryConnection}.</p>
+ * <p/>
+ * <p>Consecutive operations of the same kind are collected into a single run, so that the order of interleaved
+ * additions and removals is preserved when the buffer is flushed with one bulk call per run.</p>
+ * <p/>
+ * <p>Statements are held on the heap; {@link StagedStatementBuffer} keeps them off the heap instead.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see BatchingStatementWriter
+ */
+class StatementBuffer {
+    private final Deque<Run> runs = new ArrayDeque<>();
+
+    private int size = 0;
+
+    void add(Statement statement) {
+        append(true, statement);
+    }
+
+    void remove(Statement statement) {
+        append(false, statement);
+    }
+
+    private void append(boolean add, Statement statement) {
+        Run run = runs.peekLast();
+
+        if (run == null || run.add != add) {
+            run = new Run(add);
+            runs.addLast(run);
+        }
+
+        run.statements.add(statement);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * <p>Writes all buffered operations to <code>repositoryConnection</code> and empties the buffer. The buffer is
+     * emptied before anything is written, so a flush that is triggered while writing is a no-op.</p>
+     *
+     * @param repositoryConnection the connection of the transaction.
+     * @throws RepositoryException if the statements could not be written.
+     */
+    void flush(RepositoryConnection repositoryConnection) throws RepositoryException {
+        if (size == 0) {
+            return;
+        }
+
+        List<Run> pendingRuns = new ArrayList<>(runs);
+        clear();
+
+        write(pendingRuns, repositoryConnection);
+    }
+
+    /**
+     * <p>Writes all buffered operations to <code>repositoryConnection</code> and keeps them in the buffer, so they may
+     * be written again if the connection's transaction is rolled back.</p>
+     *
+     * @param repositoryConnection the connection the operations are written to.
+     * @throws RepositoryException if the statements could not be written.
+     */
+    void writeTo(RepositoryConnection repositoryConnection) throws RepositoryException {
+        write(runs, repositoryConnection);
+    }
+
+    /**
+     * <p>Reports all buffered operations, in order, to <code>listener</code>.</p>
+     *
+     * @param listener the listener that is notified of every buffered addition and removal.
+     */
+    void report(SailConnectionListener listener) {
+        for (Run run : runs) {
+            for (Statement statement : run.statements) {
+                if (run.add) {
+                    listener.statementAdded(statement);
+                } else {
+                    listener.statementRemoved(statement);
+                }
+            }
+        }
+    }
+
+    private static void write(Iterable<Run> runs, RepositoryConnection repositoryConnection) {
+        for (Run run : runs) {
+            if (run.add) {
+                repositoryConnection.add(run.statements);
+            } else {
+                repositoryConnection.remove(run.statements);
+            }
+        }
+    }
+
+    void clear() {
+        runs.clear();
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementBuffer{" +
+                "runs=" + runs.size() +
+                ", size=" + size +
+                '}';
+    }
+
+    private static class Run {
+        private final boolean add;
+
+        private final List<Statement> statements = new ArrayList<>();
+
+        private Run(boolean add) {
+            this.add = add;
+        }
+    }
+}
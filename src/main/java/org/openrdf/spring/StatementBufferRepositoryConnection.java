@@ -0,0 +1,216 @@
+package org.openrdf.spring;
+
+import info.aduna.iteration.Iteration;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.BooleanQuery;
+import org.openrdf.query.GraphQuery;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.Query;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.Update;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.repository.base.RepositoryConnectionWrapper;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+
+/**
+ * <p>{@link StatementBufferRepositoryConnection} writes the statements buffered by a {@link BatchingStatementWriter}
+ * to the {@link RepositoryConnection} of the transaction before every read and write on the connection, so that queries
+ * see the buffered changes and direct writes keep their order relative to them.</p>
+ * <p/>
+ * <p>Statements that are buffered after a query has been prepared are only visible to queries prepared later on.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see SesameTransactionObject#flushStatementBuffer(RepositoryConnection)
+ */
+class StatementBufferRepositoryConnection extends RepositoryConnectionWrapper {
+    private final SesameTransactionObject sesameTransactionObject;
+
+    StatementBufferRepositoryConnection(SesameTransactionObject sesameTransactionObject, RepositoryConnection delegate) {
+        super(delegate.getRepository(), delegate);
+        this.sesameTransactionObject = sesameTransactionObject;
+    }
+
+    @Override
+    public Query prepareQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        flushStatementBuffer();
+        return super.prepareQuery(ql, query, baseURI);
+    }
+
+    @Override
+    public TupleQuery prepareTupleQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        flushStatementBuffer();
+        return super.prepareTupleQuery(ql, query, baseURI);
+    }
+
+    @Override
+    public GraphQuery prepareGraphQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        flushStatementBuffer();
+        return super.prepareGraphQuery(ql, query, baseURI);
+    }
+
+    @Override
+    public BooleanQuery prepareBooleanQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException {
+        flushStatementBuffer();
+        return super.prepareBooleanQuery(ql, query, baseURI);
+    }
+
+    @Override
+    public Update prepareUpdate(QueryLanguage ql, String update, String baseURI) throws MalformedQueryException {
+        flushStatementBuffer();
+        return super.prepareUpdate(ql, update, baseURI);
+    }
+
+    @Override
+    public RepositoryResult<Statement> getStatements(Resource subj, IRI pred, Value obj, boolean includeInferred,
+                                                     Resource... contexts) {
+        flushStatementBuffer();
+        return super.getStatements(subj, pred, obj, includeInferred, contexts);
+    }
+
+    @Override
+    public boolean hasStatement(Resource subj, IRI pred, Value obj, boolean includeInferred, Resource... contexts) {
+        flushStatementBuffer();
+        return super.hasStatement(subj, pred, obj, includeInferred, contexts);
+    }
+
+    @Override
+    public boolean hasStatement(Statement st, boolean includeInferred, Resource... contexts) {
+        flushStatementBuffer();
+        return super.hasStatement(st, includeInferred, contexts);
+    }
+
+    @Override
+    public void exportStatements(Resource subj, IRI pred, Value obj, boolean includeInferred, RDFHandler handler,
+                                 Resource... contexts) throws RDFHandlerException {
+        flushStatementBuffer();
+        super.exportStatements(subj, pred, obj, includeInferred, handler, contexts);
+    }
+
+    @Override
+    public RepositoryResult<Resource> getContextIDs() {
+        flushStatementBuffer();
+        return super.getContextIDs();
+    }
+
+    @Override
+    public long size(Resource... contexts) {
+        flushStatementBuffer();
+        return super.size(contexts);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        flushStatementBuffer();
+        return super.isEmpty();
+    }
+
+    @Override
+    public void add(File file, String baseURI, RDFFormat dataFormat, Resource... contexts)
+            throws IOException, RDFParseException {
+        flushStatementBuffer();
+        super.add(file, baseURI, dataFormat, contexts);
+    }
+
+    @Override
+    public void add(InputStream in, String baseURI, RDFFormat dataFormat, Resource... contexts)
+            throws IOException, RDFParseException {
+        flushStatementBuffer();
+        super.add(in, baseURI, dataFormat, contexts);
+    }
+
+    @Override
+    public void add(Reader reader, String baseURI, RDFFormat dataFormat, Resource... contexts)
+            throws IOException, RDFParseException {
+        flushStatementBuffer();
+        super.add(reader, baseURI, dataFormat, contexts);
+    }
+
+    @Override
+    public void add(URL url, String baseURI, RDFFormat dataFormat, Resource... contexts)
+            throws IOException, RDFParseException {
+        flushStatementBuffer();
+        super.add(url, baseURI, dataFormat, contexts);
+    }
+
+    @Override
+    public void add(Iterable<? extends Statement> statements, Resource... contexts) {
+        flushStatementBuffer();
+        super.add(statements, contexts);
+    }
+
+    @Override
+    public <E extends Exception> void add(Iteration<? extends Statement, E> statements, Resource... contexts)
+            throws E {
+        flushStatementBuffer();
+        super.add(statements, contexts);
+    }
+
+    @Override
+    public void add(Resource subject, IRI predicate, Value object, Resource... contexts) {
+        flushStatementBuffer();
+        super.add(subject, predicate, object, contexts);
+    }
+
+    @Override
+    public void add(Statement st, Resource... contexts) {
+        flushStatementBuffer();
+        super.add(st, contexts);
+    }
+
+    @Override
+    public void remove(Iterable<? extends Statement> statements, Resource... contexts) {
+        flushStatementBuffer();
+        super.remove(statements, contexts);
+    }
+
+    @Override
+    public <E extends Exception> void remove(Iteration<? extends Statement, E> statements, Resource... contexts)
+            throws E {
+        flushStatementBuffer();
+        super.remove(statements, contexts);
+    }
+
+    @Override
+    public void remove(Resource subject, IRI predicate, Value object, Resource... contexts) {
+        flushStatementBuffer();
+        super.remove(subject, predicate, object, contexts);
+    }
+
+    @Override
+    public void remove(Statement st, Resource... contexts) {
+        flushStatementBuffer();
+        super.remove(st, contexts);
+    }
+
+    @Override
+    public void clear(Resource... contexts) {
+        flushStatementBuffer();
+        super.clear(contexts);
+    }
+
+    private void flushStatementBuffer() {
+        sesameTransactionObject.flushStatementBuffer(getDelegate());
+    }
+
+    @Override
+    public String toString() {
+        return "StatementBufferRepositoryConnection{" +
+                "delegate=" + getDelegate() +
+                ", sesameTransactionObject=" + sesameTransactionObject +
+                '}';
+    }
+}
@@ -0,0 +1,77 @@
+package org.openrdf.spring;
+
+import org.openrdf.repository.RepositoryConnection;
+import org.springframework.transaction.IllegalTransactionStateException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * <p>{@link SynchronizedRepositoryConnection} guards every call to the {@link RepositoryConnection} of a shared
+ * transaction with the transaction's connection lock, so tasks on several threads never use the connection
+ * concurrently.</p>
+ * <p/>
+ * <p>Once the transaction has completed, every call fails with an {@link IllegalTransactionStateException} instead of
+ * silently running outside of the transaction. Results returned by the connection are not guarded and should be
+ * consumed by the thread that obtained them.</p>
+ *
+ * @author ameingast@gmail.com
+ * @see SesameTransactionContext
+ */
+final class SynchronizedRepositoryConnection implements InvocationHandler {
+    private final SesameTransactionObject sesameTransactionObject;
+
+    private final RepositoryConnection delegate;
+
+    private SynchronizedRepositoryConnection(SesameTransactionObject sesameTransactionObject,
+                                             RepositoryConnection delegate) {
+        this.sesameTransactionObject = sesameTransactionObject;
+        this.delegate = delegate;
+    }
+
+    static RepositoryConnection create(SesameTransactionObject sesameTransactionObject,
+                                       RepositoryConnection delegate) {
+        return (RepositoryConnection) Proxy.newProxyInstance(RepositoryConnection.class.getClassLoader(),
+                new Class<?>[]{RepositoryConnection.class},
+                new SynchronizedRepositoryConnection(sesameTransactionObject, delegate));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return args != null && args.length == 1 && proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "SynchronizedRepositoryConnection{delegate=" + delegate + '}';
+            default:
+                break;
+        }
+
+        Lock connectionLock = sesameTransactionObject.getConnectionLock();
+        connectionLock.lock();
+
+        try {
+            if (sesameTransactionObject.isCompleted()) {
+                throw new IllegalTransactionStateException("Transaction already completed: " +
+                        sesameTransactionObject.getName());
+            }
+
+            return invokeDelegate(method, args);
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    private Object invokeDelegate(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.openrdf.spring;
+
+import org.springframework.transaction.CannotCreateTransactionException;
+
+/**
+ * <p>{@link TransactionAdmissionException} is thrown when a transaction is not admitted by the
+ * {@link AdmissionController} of its repository, either because the wait queue is full or because no slot became
+ * available within the queue timeout. Callers can treat it as a signal to shed load.</p>
+ *
+ * @author ameingast@gmail.com
+ */
+public class TransactionAdmissionException extends CannotCreateTransactionException {
+    private static final long serialVersionUID = 1L;
+
+    public TransactionAdmissionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,285 @@
+package org.openrdf.spring;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AdmissionControllerTest extends BaseTest {
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private final AtomicInteger openedConnections = new AtomicInteger();
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private SesameTransactionManager transactionManager;
+
+    private AdmissionPolicy admissionPolicy;
+
+    private TransactionTemplate readTemplate;
+
+    private TransactionTemplate writeTemplate;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() throws Exception {
+        connectionFactory = createConnectionFactory(repository -> new RepositoryConnectionFactory(repository) {
+            @Override
+            protected RepositoryConnection openConnection() throws RepositoryException {
+                openedConnections.incrementAndGet();
+                return super.openConnection();
+            }
+        });
+        admissionPolicy = new AdmissionPolicy();
+        admissionPolicy.setMaxReadTransactions(2);
+        admissionPolicy.setMaxWriteTransactions(1);
+        admissionPolicy.setQueueTimeoutMillis(50);
+
+        transactionManager = new SesameTransactionManager(connectionFactory);
+
+        readTemplate = new TransactionTemplate(transactionManager);
+        readTemplate.setReadOnly(true);
+        writeTemplate = new TransactionTemplate(transactionManager);
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testWriteLaneTimesOutWhileReadLaneAdmits() throws Exception {
+        connectionFactory.setAdmissionPolicy(admissionPolicy);
+        AdmissionController admissionController = connectionFactory.getAdmissionController();
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch finishWriting = new CountDownLatch(1);
+        Future<?> writer = executorService.submit(() -> writeTemplate.execute(status -> {
+            writing.countDown();
+            await(finishWriting);
+            return null;
+        }));
+
+        Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        try {
+            writeTemplate.execute(status -> null);
+            Assert.fail();
+        } catch (TransactionAdmissionException e) {
+            Assert.assertEquals(1, admissionController.getTimedOutCount());
+        }
+
+        Assert.assertNull(connectionFactory.getLocalTransactionObject());
+        Assert.assertTrue(readTemplate.execute(status ->
+                connectionFactory.getConnection().isEmpty()));
+
+        finishWriting.countDown();
+        writer.get();
+
+        writeTemplate.execute(status -> {
+            connectionFactory.getConnection().add(f.createBNode(), f.createIRI("http://example.com/p"),
+                    f.createLiteral(1));
+            return null;
+        });
+
+        Assert.assertEquals(3, admissionController.getAdmittedCount());
+        Assert.assertEquals(0, admissionController.getActiveReadTransactions());
+        Assert.assertEquals(0, admissionController.getActiveWriteTransactions());
+        Assert.assertEquals(0, admissionController.getWaitingTransactions());
+    }
+
+    @Test
+    public void testQueuedTransactionIsAdmittedOnceSlotIsFree() throws Exception {
+        admissionPolicy.setQueueTimeoutMillis(TimeUnit.SECONDS.toMillis(10));
+        connectionFactory.setAdmissionPolicy(admissionPolicy);
+        AdmissionController admissionController = connectionFactory.getAdmissionController();
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch finishWriting = new CountDownLatch(1);
+        Future<?> writer = executorService.submit(() -> writeTemplate.execute(status -> {
+            writing.countDown();
+            await(finishWriting);
+            return null;
+        }));
+
+        Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        Future<?> queuedWriter = executorService.submit(() -> writeTemplate.execute(status -> null));
+
+        while (admissionController.getWaitingTransactions() == 0) {
+            Thread.sleep(1);
+        }
+
+        finishWriting.countDown();
+        writer.get();
+        queuedWriter.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(2, admissionController.getAdmittedCount());
+        Assert.assertEquals(0, admissionController.getTimedOutCount());
+    }
+
+    @Test
+    public void testFreedSlotGoesToQueuedTransaction() throws Exception {
+        admissionPolicy.setMaxQueueLength(1);
+        admissionPolicy.setQueueTimeoutMillis(TimeUnit.SECONDS.toMillis(1));
+        AdmissionController admissionController = new AdmissionController(admissionPolicy);
+
+        AdmissionController.Lane lane = admissionController.admit(false, "repository");
+
+        BlockingQueue<AdmissionController.Lane> queuedLanes = new LinkedBlockingQueue<>();
+        Thread queued = new Thread(() -> queuedLanes.add(admissionController.admit(false, "repository")));
+        queued.start();
+
+        while (queued.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        lane.release();
+
+        try {
+            admissionController.admit(false, "repository");
+            Assert.fail();
+        } catch (TransactionAdmissionException e) {
+            // the slot was handed to the queued transaction
+        }
+
+        Assert.assertNotNull(queuedLanes.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, admissionController.getAdmittedCount());
+    }
+
+    @Test
+    public void testFullQueueRejectsWithoutWaiting() throws Exception {
+        admissionPolicy.setMaxTransactions(1);
+        admissionPolicy.setMaxQueueLength(0);
+        admissionPolicy.setQueueTimeoutMillis(TimeUnit.SECONDS.toMillis(10));
+        connectionFactory.setLazyConnections(true);
+        connectionFactory.setAdmissionPolicy(admissionPolicy);
+        AdmissionController admissionController = connectionFactory.getAdmissionController();
+
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch finishReading = new CountDownLatch(1);
+        Future<?> reader = executorService.submit(() -> readTemplate.execute(status -> {
+            reading.countDown();
+            await(finishReading);
+            return null;
+        }));
+
+        Assert.assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+        long startNanos = System.nanoTime();
+
+        try {
+            // the read lane has a free slot, but maxTransactions is reached
+            readTemplate.execute(status -> null);
+            Assert.fail();
+        } catch (TransactionAdmissionException e) {
+            Assert.assertEquals(1, admissionController.getRejectedCount());
+        }
+
+        Assert.assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(5));
+
+        finishReading.countDown();
+        reader.get();
+
+        Assert.assertEquals(1, admissionController.getAdmittedCount());
+        Assert.assertEquals(0, admissionController.getActiveReadTransactions());
+    }
+
+    @Test
+    public void testQueuedTransactionsDoNotHoldConnections() throws Exception {
+        admissionPolicy.setQueueTimeoutMillis(TimeUnit.SECONDS.toMillis(10));
+        connectionFactory.setAdmissionPolicy(admissionPolicy);
+        AdmissionController admissionController = connectionFactory.getAdmissionController();
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch finishWriting = new CountDownLatch(1);
+        Future<?> writer = executorService.submit(() -> writeTemplate.execute(status -> {
+            connectionFactory.getConnection();
+            writing.countDown();
+            await(finishWriting);
+            return null;
+        }));
+
+        Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        Future<?> queuedWriter = executorService.submit(() -> writeTemplate.execute(status ->
+                connectionFactory.getConnection().isEmpty()));
+
+        while (admissionController.getWaitingTransactions() == 0) {
+            Thread.sleep(1);
+        }
+
+        Assert.assertEquals(1, openedConnections.get());
+
+        finishWriting.countDown();
+        writer.get();
+        queuedWriter.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(2, openedConnections.get());
+    }
+
+    @Test
+    public void testRejectedTransactionsAreRecordedAsFailures() throws Exception {
+        SesameTransactionMetrics transactionMetrics = new SesameTransactionMetrics();
+        transactionMetrics.setRegisterMBeans(false);
+        transactionManager.addTransactionListener(transactionMetrics);
+
+        admissionPolicy.setMaxQueueLength(0);
+        connectionFactory.setAdmissionPolicy(admissionPolicy);
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch finishWriting = new CountDownLatch(1);
+        Future<?> writer = executorService.submit(() -> writeTemplate.execute(status -> {
+            writing.countDown();
+            await(finishWriting);
+            return null;
+        }));
+
+        Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        try {
+            writeTemplate.execute(status -> null);
+            Assert.fail();
+        } catch (TransactionAdmissionException e) {
+            RepositoryTransactionMetrics metrics = transactionMetrics.getRepositoryMetrics(
+                    RepositoryConnectionFactory.DEFAULT_REPOSITORY_ID);
+
+            Assert.assertEquals(1, metrics.getFailureCount());
+            Assert.assertEquals(1, metrics.getOpenConnections());
+            Assert.assertEquals(1, metrics.getActiveTransactions());
+        }
+
+        finishWriting.countDown();
+        writer.get();
+
+        RepositoryTransactionMetrics metrics = transactionMetrics.getRepositoryMetrics(
+                RepositoryConnectionFactory.DEFAULT_REPOSITORY_ID);
+
+        Assert.assertEquals(0, metrics.getOpenConnections());
+        Assert.assertEquals(0, metrics.getActiveTransactions());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.openrdf.spring;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.runner.RunWith;
@@ -11,14 +12,21 @@ import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
 import org.openrdf.query.TupleQuery;
 import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
 @Ignore
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations = "/repositoryTestContext.xml")
@@ -31,6 +39,64 @@ public abstract class BaseTest {
     @Autowired
     protected SesameConnectionFactory repositoryManagerConnectionFactory;
 
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private final List<Repository> memoryRepositories = new ArrayList<>();
+
+    private final List<DisposableBean> disposableBeans = new ArrayList<>();
+
+    /**
+     * @return a new, empty in-memory repository that is shut down after the test.
+     */
+    Repository createMemoryRepository() {
+        Repository repository = applicationContext.getBean("memoryRepository", Repository.class);
+        memoryRepositories.add(repository);
+
+        return repository;
+    }
+
+    /**
+     * @return a new {@link RepositoryConnectionFactory} on an empty in-memory repository that is destroyed after the
+     * test.
+     */
+    RepositoryConnectionFactory createConnectionFactory() {
+        return createConnectionFactory(RepositoryConnectionFactory::new);
+    }
+
+    /**
+     * @param constructor creates the connection factory for an empty in-memory repository.
+     * @return the connection factory, which is destroyed after the test.
+     */
+    <T extends RepositoryConnectionFactory> T createConnectionFactory(Function<Repository, T> constructor) {
+        return destroyAfterTest(constructor.apply(createMemoryRepository()));
+    }
+
+    /**
+     * <p>Destroys <code>bean</code> after the test, after all beans registered before it.</p>
+     */
+    <T extends DisposableBean> T destroyAfterTest(T bean) {
+        disposableBeans.add(bean);
+
+        return bean;
+    }
+
+    @After
+    public void destroyTestBeans() throws Exception {
+        try {
+            for (DisposableBean disposableBean : disposableBeans) {
+                disposableBean.destroy();
+            }
+
+            for (Repository repository : memoryRepositories) {
+                repository.shutDown();
+            }
+        } finally {
+            disposableBeans.clear();
+            memoryRepositories.clear();
+        }
+    }
+
     static void assertDataPresent(SesameConnectionFactory sesameConnectionFactory) {
         RepositoryConnection connection = sesameConnectionFactory.getConnection();
         final TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ?s ?o WHERE { ?s <http://example.com/b> ?o . }");
@@ -0,0 +1,136 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryReadOnlyException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class BatchingStatementWriterTest extends BaseTest {
+    private final ValueFactory valueFactory = SimpleValueFactory.getInstance();
+
+    private final IRI a = valueFactory.createIRI("http://example.com/a");
+
+    private final IRI b = valueFactory.createIRI("http://example.com/b");
+
+    private final IRI c = valueFactory.createIRI("http://example.com/c");
+
+    private final IRI d = valueFactory.createIRI("http://example.com/d");
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private TransactionTemplate transactionTemplate;
+
+    private BatchingStatementWriter batchingStatementWriter;
+
+    @Before
+    public void setUp() {
+        connectionFactory = createConnectionFactory();
+        transactionTemplate = new TransactionTemplate(new SesameTransactionManager(connectionFactory));
+        batchingStatementWriter = new BatchingStatementWriter(connectionFactory);
+        batchingStatementWriter.setBatchSize(2);
+    }
+
+    @Test
+    public void testBufferedStatementsAreVisibleToQueries() {
+        transactionTemplate.execute(status -> {
+            batchingStatementWriter.add(a, b, c);
+
+            Assert.assertEquals(1, batchingStatementWriter.getPendingStatementCount());
+
+            assertDataPresent(connectionFactory);
+
+            Assert.assertEquals(0, batchingStatementWriter.getPendingStatementCount());
+            return null;
+        });
+    }
+
+    @Test
+    public void testStatementsAreWrittenInBatches() {
+        transactionTemplate.execute(status -> {
+            batchingStatementWriter.add(a, b, c);
+            batchingStatementWriter.add(a, b, d);
+            batchingStatementWriter.add(b, b, c);
+
+            RepositoryConnection repositoryConnection =
+                    connectionFactory.getLocalTransactionObject().getRepositoryConnection();
+
+            Assert.assertEquals(2, repositoryConnection.size());
+            Assert.assertEquals(1, batchingStatementWriter.getPendingStatementCount());
+            return null;
+        });
+    }
+
+    @Test
+    public void testBufferedStatementsAreCommitted() {
+        transactionTemplate.execute(status -> {
+            batchingStatementWriter.add(a, b, c);
+            return null;
+        });
+
+        Assert.assertEquals(1, countStatements());
+    }
+
+    @Test
+    public void testBufferedStatementsAreDiscardedOnRollback() {
+        transactionTemplate.execute(status -> {
+            batchingStatementWriter.add(a, b, c);
+            status.setRollbackOnly();
+            return null;
+        });
+
+        Assert.assertEquals(0, countStatements());
+    }
+
+    @Test
+    public void testOrderOfAdditionsAndRemovalsIsPreserved() {
+        transactionTemplate.execute(status -> {
+            batchingStatementWriter.add(a, b, c, d);
+            batchingStatementWriter.remove(a, b, c, d);
+            batchingStatementWriter.add(a, b, d);
+            return null;
+        });
+
+        transactionTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+
+            Assert.assertFalse(connection.hasStatement(a, b, c, false));
+            Assert.assertTrue(connection.hasStatement(a, b, d, false));
+            return null;
+        });
+    }
+
+    @Test
+    public void testWildcardRemovalIsAppliedAfterPendingStatements() {
+        transactionTemplate.execute(status -> {
+            batchingStatementWriter.add(a, b, c);
+            batchingStatementWriter.remove(a, null, null);
+
+            Assert.assertEquals(0, batchingStatementWriter.getPendingStatementCount());
+            Assert.assertFalse(connectionFactory.getConnection().hasStatement(a, b, c, false));
+            return null;
+        });
+    }
+
+    @Test(expected = RepositoryReadOnlyException.class)
+    public void testWriteInReadOnlyTransactionFails() {
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.execute(status -> {
+            batchingStatementWriter.add(a, b, c);
+            return null;
+        });
+    }
+
+    @Test(expected = SesameTransactionException.class)
+    public void testWriteOutsideOfTransactionFails() {
+        batchingStatementWriter.add(a, b, c);
+    }
+
+    private long countStatements() {
+        return transactionTemplate.execute(status -> connectionFactory.getConnection().size());
+    }
+}
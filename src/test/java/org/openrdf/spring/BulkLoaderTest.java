@@ -0,0 +1,113 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.IsolationLevel;
+import org.openrdf.IsolationLevels;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.rio.RDFFormat;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BulkLoaderTest extends BaseTest {
+    private static final String BASE_URI = "http://example.com/";
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private SesameTransactionManager transactionManager;
+
+    private BulkLoader bulkLoader;
+
+    private final List<Long> checkpoints = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        connectionFactory = createConnectionFactory();
+        transactionManager = new SesameTransactionManager(connectionFactory);
+        bulkLoader = new BulkLoader(transactionManager, connectionFactory);
+        bulkLoader.setChunkSize(10);
+        bulkLoader.setProgressListener(checkpoints::add);
+    }
+
+    @Test
+    public void testStatementsAreCommittedInChunks() {
+        long checkpoint = bulkLoader.load(nTriples(25, false), BASE_URI, RDFFormat.NTRIPLES);
+
+        Assert.assertEquals(25, checkpoint);
+        Assert.assertEquals(Arrays.asList(10L, 20L, 25L), checkpoints);
+        Assert.assertEquals(25, countStatements());
+    }
+
+    @Test
+    public void testFailedLoadIsResumedFromCheckpoint() {
+        long checkpoint = -1;
+
+        try {
+            bulkLoader.load(nTriples(25, true), BASE_URI, RDFFormat.NTRIPLES);
+            Assert.fail("Expected the malformed document to fail");
+        } catch (BulkLoadException e) {
+            checkpoint = e.getCheckpoint();
+        }
+
+        Assert.assertEquals(20, checkpoint);
+        Assert.assertEquals(20, countStatements());
+
+        Assert.assertEquals(25, bulkLoader.load(nTriples(25, false), BASE_URI, RDFFormat.NTRIPLES, checkpoint));
+        Assert.assertEquals(25, countStatements());
+    }
+
+    @Test
+    public void testBulkLoadTransactionUsesWeakestIsolationLevel() {
+        List<IsolationLevel> supportedIsolationLevels =
+                ((SailRepository) connectionFactory.getRepository()).getSail().getSupportedIsolationLevels();
+        IsolationLevel weakestIsolationLevel = Arrays.stream(IsolationLevels.values())
+                .filter(supportedIsolationLevels::contains)
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+
+        TransactionStatus transactionStatus = transactionManager.getTransaction(new BulkLoadTransactionDefinition());
+
+        try {
+            Assert.assertEquals(weakestIsolationLevel, connectionFactory.getLocalTransactionObject()
+                    .getRepositoryConnection().getIsolationLevel());
+        } finally {
+            transactionManager.rollback(transactionStatus);
+        }
+    }
+
+    @Test(expected = IllegalTransactionStateException.class)
+    public void testBulkLoadInsideTransactionFails() {
+        new TransactionTemplate(transactionManager).execute(status ->
+                bulkLoader.load(nTriples(1, false), BASE_URI, RDFFormat.NTRIPLES));
+    }
+
+    private long countStatements() {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                connectionFactory.getConnection().size());
+    }
+
+    private static InputStream nTriples(int count, boolean malformedTail) {
+        StringBuilder document = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            document.append("<http://example.com/s").append(i).append("> ")
+                    .append("<http://example.com/p> ")
+                    .append("\"").append(i).append("\" .\n");
+        }
+
+        if (malformedTail) {
+            document.append("<http://example.com/broken\n");
+        }
+
+        return new ByteArrayInputStream(document.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,258 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.NotifyingSail;
+import org.openrdf.sail.Sail;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class ChangeSetPublisherTest extends BaseTest {
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private static final IRI PREDICATE = f.createIRI("http://example.com/p");
+
+    private final BlockingQueue<ChangeSet> changeSets = new LinkedBlockingQueue<>();
+
+    private final BlockingQueue<Long> droppedChangeSets = new LinkedBlockingQueue<>();
+
+    private ChangeSetPublisher changeSetPublisher;
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void setUp() {
+        setUp(new ChangeSetPublisher(), false);
+    }
+
+    private void setUp(ChangeSetPublisher changeSetPublisher, boolean groupCommitEnabled) {
+        this.changeSetPublisher = changeSetPublisher;
+        this.changeSetPublisher.addListener(new ChangeSetListener() {
+            @Override
+            public void changesCommitted(List<ChangeSet> committedChangeSets) {
+                changeSets.addAll(committedChangeSets);
+            }
+
+            @Override
+            public void changeSetsDropped(long droppedCount) {
+                droppedChangeSets.add(droppedCount);
+            }
+        });
+
+        connectionFactory = createConnectionFactory();
+        connectionFactory.setChangeSetPublisher(destroyAfterTest(changeSetPublisher));
+        connectionFactory.setGroupCommitEnabled(groupCommitEnabled);
+        transactionTemplate = new TransactionTemplate(new SesameTransactionManager(connectionFactory));
+    }
+
+    @Test
+    public void testCommittedChangesArePublished() throws Exception {
+        transactionTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+            connection.add(subject(1), PREDICATE, f.createLiteral(1));
+            connection.add(subject(2), PREDICATE, f.createLiteral(2));
+            return null;
+        });
+
+        ChangeSet added = changeSets.poll(5, TimeUnit.SECONDS);
+
+        Assert.assertNotNull(added);
+        Assert.assertEquals(RepositoryConnectionFactory.DEFAULT_REPOSITORY_ID, added.getRepositoryId());
+        Assert.assertEquals(2, added.getAddedStatements().size());
+        Assert.assertTrue(added.getRemovedStatements().isEmpty());
+
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().prepareUpdate(QueryLanguage.SPARQL,
+                    "DELETE WHERE { <http://example.com/s1> ?p ?o }").execute();
+            return null;
+        });
+
+        ChangeSet removed = changeSets.poll(5, TimeUnit.SECONDS);
+
+        Assert.assertNotNull(removed);
+        Assert.assertTrue(removed.getAddedStatements().isEmpty());
+        Assert.assertEquals(Collections.singletonList(subject(1)), subjects(removed.getRemovedStatements()));
+    }
+
+    @Test
+    public void testRolledBackAndCancelledChangesAreNotPublished() throws Exception {
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().add(subject(1), PREDICATE, f.createLiteral(1));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        transactionTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+            connection.add(subject(2), PREDICATE, f.createLiteral(2));
+            connection.remove(subject(2), PREDICATE, f.createLiteral(2));
+            return null;
+        });
+
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().add(subject(3), PREDICATE, f.createLiteral(3));
+            return null;
+        });
+
+        ChangeSet changeSet = changeSets.poll(5, TimeUnit.SECONDS);
+
+        Assert.assertNotNull(changeSet);
+        Assert.assertEquals(Collections.singletonList(subject(3)), subjects(changeSet.getAddedStatements()));
+        Assert.assertNull(changeSets.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testGroupCommittedChangesArePublished() throws Exception {
+        connectionFactory.destroy();
+        setUp(changeSetPublisher, true);
+
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().add(subject(1), PREDICATE, f.createLiteral(1));
+            return null;
+        });
+
+        ChangeSet changeSet = changeSets.poll(5, TimeUnit.SECONDS);
+
+        Assert.assertNotNull(changeSet);
+        Assert.assertEquals(Collections.singletonList(subject(1)), subjects(changeSet.getAddedStatements()));
+    }
+
+    @Test
+    public void testChangeSetsArePublishedInCommitOrder() throws Exception {
+        connectionFactory.destroy();
+        changeSetPublisher.destroy();
+
+        // widens the window between the store commit and the publication of its change-set
+        setUp(new ChangeSetPublisher() {
+            @Override
+            void publish(ChangeSet changeSet) {
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                super.publish(changeSet);
+            }
+        }, false);
+
+        // the sail reports each commit on the committing thread
+        ThreadLocal<Integer> committing = new ThreadLocal<>();
+        List<Object> commitOrder = Collections.synchronizedList(new ArrayList<>());
+        Sail sail = ((SailRepository) connectionFactory.getRepository()).getSail();
+        ((NotifyingSail) sail).addSailChangedListener(event -> commitOrder.add(subject(committing.get())));
+
+        int threads = 8;
+        int transactionsPerThread = 25;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int offset = t * transactionsPerThread;
+
+            futures.add(executorService.submit(() -> {
+                for (int i = offset; i < offset + transactionsPerThread; i++) {
+                    committing.set(i);
+                    addStatement(i);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+
+        executorService.shutdown();
+
+        List<Object> publishOrder = new ArrayList<>();
+
+        while (publishOrder.size() < threads * transactionsPerThread) {
+            ChangeSet changeSet = changeSets.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(changeSet);
+            publishOrder.addAll(subjects(changeSet.getAddedStatements()));
+        }
+
+        Assert.assertEquals(commitOrder, publishOrder);
+    }
+
+    @Test
+    public void testFullQueueDropsAndReportsChangeSets() throws Exception {
+        connectionFactory.destroy();
+        changeSetPublisher.destroy();
+
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ChangeSetPublisher boundedPublisher = new ChangeSetPublisher(1);
+        boundedPublisher.setMaxBlockMillis(0);
+        boundedPublisher.addListener(committedChangeSets -> {
+            delivering.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        setUp(boundedPublisher, false);
+
+        addStatement(1);
+        Assert.assertTrue(delivering.await(5, TimeUnit.SECONDS));
+
+        addStatement(2);
+        addStatement(3);
+
+        Assert.assertEquals(1, boundedPublisher.getPendingChangeSetCount());
+        Assert.assertEquals(1, boundedPublisher.getDroppedChangeSetCount());
+
+        release.countDown();
+
+        Assert.assertEquals(Long.valueOf(1), droppedChangeSets.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonList(subject(1)),
+                subjects(changeSets.poll(5, TimeUnit.SECONDS).getAddedStatements()));
+        Assert.assertEquals(Collections.singletonList(subject(2)),
+                subjects(changeSets.poll(5, TimeUnit.SECONDS).getAddedStatements()));
+    }
+
+    private void addStatement(int i) {
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().add(subject(i), PREDICATE, f.createLiteral(i));
+            return null;
+        });
+    }
+
+    private static IRI subject(int i) {
+        return f.createIRI("http://example.com/s" + i);
+    }
+
+    private static List<Object> subjects(List<Statement> statements) {
+        List<Object> subjects = new ArrayList<>();
+
+        for (Statement statement : statements) {
+            subjects.add(statement.getSubject());
+        }
+
+        return subjects;
+    }
+}
@@ -0,0 +1,163 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryResult;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConflictRetryTest extends BaseTest {
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private static final IRI COUNTER = f.createIRI("http://example.com/counter");
+
+    private static final IRI VALUE = f.createIRI("http://example.com/value");
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private SesameTransactionManager transactionManager;
+
+    private ConflictRetryInterceptor conflictRetryInterceptor;
+
+    private CounterService counterService;
+
+    public interface CounterService {
+        long increment(int concurrentUpdates);
+
+        long incrementOnce(int concurrentUpdates);
+    }
+
+    public class DefaultCounterService implements CounterService {
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        @RetryOnConflict(initialBackoffMillis = 1)
+        @Transactional(isolation = Isolation.SERIALIZABLE)
+        public long increment(int concurrentUpdates) {
+            return incrementConcurrently(concurrentUpdates);
+        }
+
+        @Override
+        @RetryOnConflict(maxAttempts = 1)
+        @Transactional(isolation = Isolation.SERIALIZABLE)
+        public long incrementOnce(int concurrentUpdates) {
+            return incrementConcurrently(concurrentUpdates);
+        }
+
+        /**
+         * <p>Increments the counter after a concurrent transaction incremented it during the first
+         * <code>concurrentUpdates</code> invocations.</p>
+         */
+        private long incrementConcurrently(int concurrentUpdates) {
+            RepositoryConnection connection = connectionFactory.getConnection();
+            long current = read(connection);
+
+            if (invocations.incrementAndGet() <= concurrentUpdates) {
+                Thread concurrentUpdate = new Thread(() ->
+                        new TransactionTemplate(transactionManager).execute(status -> {
+                            RepositoryConnection concurrentConnection = connectionFactory.getConnection();
+
+                            return write(concurrentConnection, read(concurrentConnection) + 100);
+                        }));
+
+                concurrentUpdate.start();
+
+                try {
+                    concurrentUpdate.join();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            return write(connection, current + 1);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        connectionFactory = createConnectionFactory();
+        transactionManager = new SesameTransactionManager(connectionFactory);
+
+        new TransactionTemplate(transactionManager).execute(status ->
+                write(connectionFactory.getConnection(), 0));
+
+        ProxyFactory proxyFactory = new ProxyFactory(new DefaultCounterService());
+        proxyFactory.addInterface(CounterService.class);
+        proxyFactory.addAdvice(new TransactionInterceptor(transactionManager,
+                new AnnotationTransactionAttributeSource()));
+
+        conflictRetryInterceptor = new ConflictRetryInterceptor();
+        counterService = (CounterService) new ConflictRetryPostProcessor(conflictRetryInterceptor)
+                .postProcessAfterInitialization(proxyFactory.getProxy(), "counterService");
+    }
+
+    @Test
+    public void testConflictingTransactionIsRetried() {
+        Assert.assertEquals(201, counterService.increment(2));
+        Assert.assertEquals(3, conflictRetryInterceptor.getAttemptCount());
+        Assert.assertEquals(2, conflictRetryInterceptor.getConflictCount());
+        Assert.assertEquals(2, conflictRetryInterceptor.getRetryCount());
+        Assert.assertEquals(0, conflictRetryInterceptor.getExhaustedRetryCount());
+        Assert.assertEquals(2.0 / 3.0, conflictRetryInterceptor.getConflictRate(), 0.001);
+    }
+
+    @Test
+    public void testConflictIsThrownWhenAttemptsAreExhausted() {
+        try {
+            counterService.incrementOnce(1);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(ConflictRetryInterceptor.isConflict(e));
+        }
+
+        Assert.assertEquals(1, conflictRetryInterceptor.getAttemptCount());
+        Assert.assertEquals(1, conflictRetryInterceptor.getExhaustedRetryCount());
+        Assert.assertEquals(0, conflictRetryInterceptor.getRetryCount());
+    }
+
+    @Test
+    public void testNestedTransactionIsNotRetried() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+
+        try {
+            transactionTemplate.execute(status -> counterService.increment(1));
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(ConflictRetryInterceptor.isConflict(e));
+        }
+
+        Assert.assertEquals(0, conflictRetryInterceptor.getAttemptCount());
+    }
+
+    private static long read(RepositoryConnection connection) {
+        RepositoryResult<Statement> statements = connection.getStatements(COUNTER, VALUE, null, false);
+
+        try {
+            return statements.hasNext() ? ((Literal) statements.next().getObject()).longValue() : 0;
+        } finally {
+            statements.close();
+        }
+    }
+
+    private static long write(RepositoryConnection connection, long value) {
+        connection.remove(COUNTER, VALUE, null);
+        connection.add(COUNTER, VALUE, f.createLiteral(value));
+
+        return value;
+    }
+}
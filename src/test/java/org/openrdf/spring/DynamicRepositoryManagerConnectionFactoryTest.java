@@ -0,0 +1,348 @@
+package org.openrdf.spring;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.config.RepositoryConfig;
+import org.openrdf.repository.config.RepositoryConfigException;
+import org.openrdf.repository.manager.LocalRepositoryManager;
+import org.openrdf.repository.sail.config.SailRepositoryConfig;
+import org.openrdf.sail.memory.config.MemoryStoreConfig;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DynamicRepositoryManagerConnectionFactoryTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ThreadLocal<String> currentRepositoryId = new ThreadLocal<>();
+
+    private CountingRepositoryManager repositoryManager;
+
+    private DynamicRepositoryManagerConnectionFactory connectionFactory;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryManager = new CountingRepositoryManager(temporaryFolder.newFolder());
+        repositoryManager.initialize();
+        connectionFactory = new DynamicRepositoryManagerConnectionFactory(repositoryManager,
+                new SailRepositoryConfig(new MemoryStoreConfig()), currentRepositoryId::get);
+        executorService = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+        connectionFactory.destroy();
+        repositoryManager.shutDown();
+    }
+
+    @Test
+    public void testConcurrentLookupsInitializeRepositoryOnce() throws Exception {
+        List<Callable<SesameTransactionObject>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < 32; i++) {
+            tasks.add(() -> inTransaction("tenant", connectionFactory::getLocalTransactionObject));
+        }
+
+        for (Future<SesameTransactionObject> future : executorService.invokeAll(tasks)) {
+            Assert.assertNotNull(future.get());
+        }
+
+        Assert.assertEquals(1, repositoryManager.getInitializations("tenant"));
+    }
+
+    @Test
+    public void testSlowInitializationDoesNotBlockOtherRepositories() throws Exception {
+        repositoryManager.blockInitialization("slow");
+
+        Future<SesameTransactionObject> slowTransaction =
+                executorService.submit(() -> inTransaction("slow", connectionFactory::getLocalTransactionObject));
+
+        Assert.assertTrue(repositoryManager.awaitBlockedInitialization());
+
+        Future<SesameTransactionObject> fastTransaction =
+                executorService.submit(() -> inTransaction("fast", connectionFactory::getLocalTransactionObject));
+
+        Assert.assertNotNull(fastTransaction.get(10, TimeUnit.SECONDS));
+        Assert.assertFalse(slowTransaction.isDone());
+
+        repositoryManager.unblockInitialization();
+
+        Assert.assertNotNull(slowTransaction.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testIdleRepositoryIsShutDownAndReopened() throws Exception {
+        connectionFactory.setIdleTimeoutMillis(1);
+
+        Repository repository = inTransaction("tenant", () -> connectionFactory.getConnection().getRepository());
+
+        Thread.sleep(10);
+        connectionFactory.evictRepositories();
+
+        Assert.assertEquals(0, connectionFactory.getRepositoryCount());
+        Assert.assertFalse(repository.isInitialized());
+
+        RepositoryConnection connection = inTransaction("tenant", connectionFactory::getConnection);
+
+        Assert.assertTrue(connection.getRepository().isInitialized());
+        Assert.assertEquals(1, connectionFactory.getRepositoryCount());
+        Assert.assertEquals(1, repositoryManager.getInitializations("tenant"));
+    }
+
+    @Test
+    public void testRepositoryWithActiveTransactionIsNotShutDown() throws Exception {
+        connectionFactory.setIdleTimeoutMillis(1);
+
+        Repository repository = inTransaction("tenant", () -> {
+            Thread.sleep(10);
+            connectionFactory.evictRepositories();
+
+            return connectionFactory.getConnection().getRepository();
+        });
+
+        Assert.assertTrue(repository.isInitialized());
+        Assert.assertEquals(1, connectionFactory.getRepositoryCount());
+    }
+
+    @Test
+    public void testInitializationAndEvictionOfRepositoryNeverOverlap() throws Exception {
+        connectionFactory.setIdleTimeoutMillis(1);
+        repositoryManager.slowDownInitialization();
+
+        AtomicInteger running = new AtomicInteger(8);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> {
+                try {
+                    for (int j = 0; j < 50; j++) {
+                        boolean initialized = inTransaction("tenant",
+                                () -> connectionFactory.getConnection().getRepository().isInitialized());
+
+                        if (!initialized) {
+                            return false;
+                        }
+                    }
+
+                    return true;
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        }
+
+        Thread evictionThread = new Thread(() -> {
+            while (running.get() > 0) {
+                connectionFactory.evictRepositories();
+            }
+        });
+        evictionThread.start();
+
+        for (Future<Boolean> future : executorService.invokeAll(tasks)) {
+            Assert.assertTrue(future.get());
+        }
+
+        evictionThread.join(TimeUnit.SECONDS.toMillis(10));
+
+        Assert.assertEquals(1, repositoryManager.getInitializations("tenant"));
+        Assert.assertEquals(1, repositoryManager.getMaxConcurrentLookups());
+    }
+
+    @Test
+    public void testLocksOfEvictedRepositoriesAreRemoved() throws Exception {
+        connectionFactory.setIdleTimeoutMillis(1);
+
+        for (int i = 0; i < 3; i++) {
+            inTransaction("tenant" + i, connectionFactory::getConnection);
+        }
+
+        Assert.assertEquals(3, connectionFactory.getRepositoryLockCount());
+
+        Thread.sleep(10);
+        connectionFactory.evictRepositories();
+
+        Assert.assertEquals(0, connectionFactory.getRepositoryCount());
+        Assert.assertEquals(0, connectionFactory.getRepositoryLockCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRepositoriesAreShutDownBeyondMaxRepositories() throws Exception {
+        connectionFactory.setMaxRepositories(2);
+
+        Repository first = inTransaction("first", () -> connectionFactory.getConnection().getRepository());
+        Thread.sleep(5);
+        Repository second = inTransaction("second", () -> connectionFactory.getConnection().getRepository());
+        Thread.sleep(5);
+        Repository third = inTransaction("third", () -> connectionFactory.getConnection().getRepository());
+
+        connectionFactory.evictRepositories();
+
+        Assert.assertEquals(2, connectionFactory.getRepositoryCount());
+        Assert.assertFalse(first.isInitialized());
+        Assert.assertTrue(second.isInitialized());
+        Assert.assertTrue(third.isInitialized());
+    }
+
+    @Test
+    public void testAdmissionPoliciesApplyPerRepository() throws Exception {
+        AdmissionPolicy defaultPolicy = new AdmissionPolicy();
+        defaultPolicy.setMaxWriteTransactions(4);
+
+        AdmissionPolicy smallPolicy = new AdmissionPolicy();
+        smallPolicy.setMaxWriteTransactions(1);
+        smallPolicy.setMaxQueueLength(0);
+
+        connectionFactory.setAdmissionPolicy(defaultPolicy);
+        connectionFactory.setAdmissionPolicies(Collections.singletonMap("small", smallPolicy));
+
+        inTransaction("small", () -> {
+            connectionFactory.admitTransaction(connectionFactory.getLocalTransactionObject());
+
+            Future<?> rejected = executorService.submit(() -> inTransaction("small", () -> {
+                connectionFactory.admitTransaction(connectionFactory.getLocalTransactionObject());
+                return null;
+            }));
+
+            try {
+                rejected.get();
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof TransactionAdmissionException);
+            }
+
+            // the limits of one repository do not affect other repositories
+            executorService.submit(() -> inTransaction("large", () -> {
+                connectionFactory.admitTransaction(connectionFactory.getLocalTransactionObject());
+                return null;
+            })).get();
+
+            return null;
+        });
+
+        Assert.assertSame(smallPolicy, connectionFactory.getAdmissionController("small").getAdmissionPolicy());
+        Assert.assertSame(defaultPolicy, connectionFactory.getAdmissionController("large").getAdmissionPolicy());
+        Assert.assertEquals(1, connectionFactory.getAdmissionController("small").getRejectedCount());
+        Assert.assertEquals(0, connectionFactory.getAdmissionController("small").getActiveWriteTransactions());
+    }
+
+    private <T> T inTransaction(String repositoryId, Callable<T> callable) throws Exception {
+        currentRepositoryId.set(repositoryId);
+
+        try {
+            connectionFactory.createTransaction();
+
+            try {
+                return callable.call();
+            } finally {
+                connectionFactory.endTransaction(false);
+                connectionFactory.closeConnection();
+            }
+        } finally {
+            currentRepositoryId.remove();
+        }
+    }
+
+    private static class CountingRepositoryManager extends LocalRepositoryManager {
+        private final Map<String, AtomicInteger> initializations = new ConcurrentHashMap<>();
+
+        private final CountDownLatch blockedInitialization = new CountDownLatch(1);
+
+        private final CountDownLatch unblockInitialization = new CountDownLatch(1);
+
+        private final AtomicInteger concurrentLookups = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrentLookups = new AtomicInteger();
+
+        private volatile String blockedRepositoryId;
+
+        private volatile boolean slowInitialization;
+
+        CountingRepositoryManager(File baseDir) {
+            super(baseDir);
+        }
+
+        @Override
+        public void addRepositoryConfig(RepositoryConfig config) throws RepositoryException, RepositoryConfigException {
+            initializations.computeIfAbsent(config.getID(), key -> new AtomicInteger()).incrementAndGet();
+
+            super.addRepositoryConfig(config);
+        }
+
+        @Override
+        public Repository getRepository(String id) throws RepositoryConfigException, RepositoryException {
+            if (id.equals(blockedRepositoryId)) {
+                blockedInitialization.countDown();
+
+                try {
+                    unblockInitialization.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            maxConcurrentLookups.accumulateAndGet(concurrentLookups.incrementAndGet(), Math::max);
+
+            try {
+                if (slowInitialization) {
+                    Thread.sleep(5);
+                }
+
+                return super.getRepository(id);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RepositoryException(e);
+            } finally {
+                concurrentLookups.decrementAndGet();
+            }
+        }
+
+        int getInitializations(String id) {
+            AtomicInteger counter = initializations.get(id);
+
+            return counter == null ? 0 : counter.get();
+        }
+
+        int getMaxConcurrentLookups() {
+            return maxConcurrentLookups.get();
+        }
+
+        void slowDownInitialization() {
+            slowInitialization = true;
+        }
+
+        void blockInitialization(String id) {
+            blockedRepositoryId = id;
+        }
+
+        boolean awaitBlockedInitialization() throws InterruptedException {
+            return blockedInitialization.await(10, TimeUnit.SECONDS);
+        }
+
+        void unblockInitialization() {
+            unblockInitialization.countDown();
+        }
+    }
+}
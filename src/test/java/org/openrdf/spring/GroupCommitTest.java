@@ -0,0 +1,227 @@
+package org.openrdf.spring;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.base.RepositoryConnectionWrapper;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class GroupCommitTest extends BaseTest {
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private static final IRI PREDICATE = f.createIRI("http://example.com/p");
+
+    private static final IRI POISON = f.createIRI("http://example.com/poison");
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        connectionFactory = createConnectionFactory(PoisonedRepositoryConnectionFactory::new);
+        connectionFactory.setGroupCommitEnabled(true);
+        connectionFactory.setGroupCommitMaxDelayMillis(20);
+        transactionTemplate = new TransactionTemplate(new SesameTransactionManager(connectionFactory));
+        executorService = Executors.newFixedThreadPool(16);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentTransactionsAreCommittedInGroups() throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 320; i++) {
+            IRI subject = f.createIRI("http://example.com/s" + i);
+
+            futures.add(executorService.submit(() -> transactionTemplate.execute(status -> {
+                connectionFactory.getConnection().add(subject, PREDICATE, f.createLiteral(1));
+                return null;
+            })));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        GroupCommitWriter groupCommitWriter = connectionFactory.getGroupCommitWriter();
+
+        Assert.assertEquals(320, countStatements());
+        Assert.assertEquals(320, groupCommitWriter.getTransactionCount());
+        Assert.assertTrue(groupCommitWriter.getStoreCommitCount() < 320);
+    }
+
+    @Test
+    public void testRemovalsAreGroupCommitted() {
+        IRI subject = f.createIRI("http://example.com/s");
+
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().add(subject, PREDICATE, f.createLiteral(1));
+            connectionFactory.getConnection().add(subject, PREDICATE, f.createLiteral(2));
+            return null;
+        });
+
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().remove(subject, PREDICATE, f.createLiteral(1));
+            return null;
+        });
+
+        Assert.assertEquals(1, countStatements());
+        Assert.assertEquals(2, connectionFactory.getGroupCommitWriter().getTransactionCount());
+    }
+
+    @Test
+    public void testRollbackDiscardsBufferedWrites() {
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().add(f.createIRI("http://example.com/s"), PREDICATE,
+                    f.createLiteral(1));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        Assert.assertEquals(0, countStatements());
+    }
+
+    @Test
+    public void testTransactionsThatReadAreCommittedOnTheirOwn() {
+        transactionTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+            connection.add(f.createIRI("http://example.com/s"), PREDICATE, f.createLiteral(1));
+
+            Assert.assertEquals(1, connection.size());
+            return null;
+        });
+
+        Assert.assertEquals(1, countStatements());
+        Assert.assertEquals(0, connectionFactory.getGroupCommitWriter().getTransactionCount());
+    }
+
+    @Test
+    public void testFailingTransactionDoesNotFailItsGroup() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            IRI subject = i == 3 ? POISON : f.createIRI("http://example.com/s" + i);
+
+            futures.add(executorService.submit(() -> {
+                start.await();
+
+                try {
+                    transactionTemplate.execute(status -> {
+                        connectionFactory.getConnection().add(subject, PREDICATE, f.createLiteral(1));
+                        return null;
+                    });
+                    return true;
+                } catch (TransactionException e) {
+                    return false;
+                }
+            }));
+        }
+
+        start.countDown();
+
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals(i != 3, futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+
+        Assert.assertEquals(7, countStatements());
+    }
+
+    @Test
+    public void testGroupCommitDoesNotBorrowFromExhaustedPool() throws Exception {
+        int committers = 4;
+        PooledRepositoryConnectionFactory pooledConnectionFactory =
+                createConnectionFactory(PooledRepositoryConnectionFactory::new);
+        pooledConnectionFactory.setMaxTotal(committers);
+        pooledConnectionFactory.setBorrowTimeoutMillis(1000);
+        pooledConnectionFactory.setGroupCommitEnabled(true);
+        pooledConnectionFactory.afterPropertiesSet();
+
+        TransactionTemplate pooledTemplate =
+                new TransactionTemplate(new SesameTransactionManager(pooledConnectionFactory));
+        CyclicBarrier allConnected = new CyclicBarrier(committers);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < committers; i++) {
+            IRI subject = f.createIRI("http://example.com/s" + i);
+
+            futures.add(executorService.submit(() -> pooledTemplate.execute(status -> {
+                pooledConnectionFactory.getConnection().add(subject, PREDICATE, f.createLiteral(1));
+
+                // every pooled connection is held by a committer once the group is committed
+                try {
+                    allConnected.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+
+                return null;
+            })));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals(committers, pooledConnectionFactory.getGroupCommitWriter().getTransactionCount());
+        Assert.assertEquals(committers, (long) pooledTemplate.execute(status ->
+                pooledConnectionFactory.getConnection().size()));
+    }
+
+    private long countStatements() {
+        return transactionTemplate.execute(status -> connectionFactory.getConnection().size());
+    }
+
+    /**
+     * Fails every bulk write that contains a statement about {@link #POISON}.
+     */
+    private static class PoisonedRepositoryConnectionFactory extends RepositoryConnectionFactory {
+        PoisonedRepositoryConnectionFactory(Repository repository) {
+            super(repository);
+        }
+
+        @Override
+        protected RepositoryConnection openConnection() throws RepositoryException {
+            RepositoryConnection repositoryConnection = super.openConnection();
+
+            return new RepositoryConnectionWrapper(repositoryConnection.getRepository(), repositoryConnection) {
+                @Override
+                public void add(Iterable<? extends Statement> statements, Resource... contexts) {
+                    for (Statement statement : statements) {
+                        if (POISON.equals(statement.getSubject())) {
+                            throw new RepositoryException("Poisoned statement");
+                        }
+                    }
+
+                    super.add(statements, contexts);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.IsolationLevels;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LazyConnectionTest extends BaseTest {
+    private CountingRepositoryConnectionFactory connectionFactory;
+
+    private SesameTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void setUp() {
+        connectionFactory = createConnectionFactory(CountingRepositoryConnectionFactory::new);
+        connectionFactory.setLazyConnections(true);
+        transactionManager = new SesameTransactionManager(connectionFactory);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    public void testTransactionWithoutAccessDoesNotOpenConnection() {
+        transactionTemplate.execute(status -> null);
+
+        transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return null;
+        });
+
+        Assert.assertEquals(0, connectionFactory.openedConnections.get());
+        Assert.assertEquals(0, connectionFactory.releasedConnections.get());
+        Assert.assertNull(connectionFactory.getLocalTransactionObject());
+    }
+
+    @Test
+    public void testConnectionIsOpenedOnFirstUse() {
+        transactionTemplate.execute(status -> {
+            Assert.assertEquals(0, connectionFactory.openedConnections.get());
+
+            addData(connectionFactory);
+            assertDataPresent(connectionFactory);
+
+            return null;
+        });
+
+        transactionTemplate.execute(status -> {
+            assertDataPresent(connectionFactory);
+            return null;
+        });
+
+        Assert.assertEquals(2, connectionFactory.openedConnections.get());
+        Assert.assertEquals(2, connectionFactory.releasedConnections.get());
+    }
+
+    @Test
+    public void testIsolationLevelIsAppliedOnFirstUse() {
+        TransactionTemplate serializableTemplate = new TransactionTemplate(transactionManager);
+        serializableTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+
+        serializableTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+
+            Assert.assertEquals(IsolationLevels.SERIALIZABLE, connection.getIsolationLevel());
+            Assert.assertTrue(connection.isActive());
+
+            return null;
+        });
+    }
+
+    private static class CountingRepositoryConnectionFactory extends RepositoryConnectionFactory {
+        private final AtomicInteger openedConnections = new AtomicInteger();
+
+        private final AtomicInteger releasedConnections = new AtomicInteger();
+
+        CountingRepositoryConnectionFactory(Repository repository) {
+            super(repository);
+        }
+
+        @Override
+        protected RepositoryConnection openConnection() throws RepositoryException {
+            openedConnections.incrementAndGet();
+            return super.openConnection();
+        }
+
+        @Override
+        protected void releaseConnection(RepositoryConnection repositoryConnection) throws RepositoryException {
+            releasedConnections.incrementAndGet();
+            super.releaseConnection(repositoryConnection);
+        }
+    }
+}
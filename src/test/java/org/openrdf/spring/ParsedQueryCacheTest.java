@@ -0,0 +1,111 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class ParsedQueryCacheTest extends BaseTest {
+    private static final String QUERY = "SELECT ?s ?o WHERE { ?s <http://example.com/b> ?o . }";
+
+    private ParsedQueryCache parsedQueryCache;
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void setUp() {
+        parsedQueryCache = new ParsedQueryCache(2);
+        connectionFactory = createConnectionFactory();
+        connectionFactory.setParsedQueryCache(parsedQueryCache);
+        transactionTemplate = new TransactionTemplate(new SesameTransactionManager(connectionFactory));
+
+        transactionTemplate.execute(status -> {
+            addData(connectionFactory);
+            return null;
+        });
+    }
+
+    @Test
+    public void testRepeatedQueriesAreParsedOnce() {
+        transactionTemplate.execute(status -> {
+            assertDataPresent(connectionFactory);
+            assertDataPresent(connectionFactory);
+            return null;
+        });
+
+        Assert.assertEquals(1, parsedQueryCache.getMissCount());
+        Assert.assertEquals(1, parsedQueryCache.getHitCount());
+        Assert.assertEquals(1, parsedQueryCache.size());
+    }
+
+    @Test
+    public void testBindingsDoNotLeakIntoCachedQuery() {
+        transactionTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+
+            TupleQuery boundQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
+            boundQuery.setBinding("s", SimpleValueFactory.getInstance().createIRI("http://example.com/unknown"));
+            Assert.assertEquals(0, count(boundQuery.evaluate()));
+
+            TupleQuery unboundQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
+            Assert.assertEquals(1, count(unboundQuery.evaluate()));
+            return null;
+        });
+
+        Assert.assertEquals(1, parsedQueryCache.getHitCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedQueryIsEvicted() throws Exception {
+        parsedQueryCache.getParsedQuery(QueryLanguage.SPARQL, "SELECT * WHERE { ?s ?p 1 }", null);
+        Thread.sleep(1);
+        parsedQueryCache.getParsedQuery(QueryLanguage.SPARQL, "SELECT * WHERE { ?s ?p 2 }", null);
+        Thread.sleep(1);
+        parsedQueryCache.getParsedQuery(QueryLanguage.SPARQL, "SELECT * WHERE { ?s ?p 1 }", null);
+        Thread.sleep(1);
+        parsedQueryCache.getParsedQuery(QueryLanguage.SPARQL, "SELECT * WHERE { ?s ?p 3 }", null);
+
+        Assert.assertEquals(2, parsedQueryCache.size());
+        Assert.assertEquals(3, parsedQueryCache.getMissCount());
+
+        parsedQueryCache.getParsedQuery(QueryLanguage.SPARQL, "SELECT * WHERE { ?s ?p 1 }", null);
+        Assert.assertEquals(2, parsedQueryCache.getHitCount());
+
+        parsedQueryCache.getParsedQuery(QueryLanguage.SPARQL, "SELECT * WHERE { ?s ?p 2 }", null);
+        Assert.assertEquals(4, parsedQueryCache.getMissCount());
+    }
+
+    @Test(expected = MalformedQueryException.class)
+    public void testCachedQueryOfWrongTypeIsRejected() {
+        transactionTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+
+            connection.prepareBooleanQuery(QueryLanguage.SPARQL, "ASK { ?s ?p ?o }").evaluate();
+            connection.prepareTupleQuery(QueryLanguage.SPARQL, "ASK { ?s ?p ?o }");
+            return null;
+        });
+    }
+
+    private static int count(TupleQueryResult tupleQueryResult) {
+        int count = 0;
+
+        try {
+            while (tupleQueryResult.hasNext()) {
+                tupleQueryResult.next();
+                count++;
+            }
+        } finally {
+            tupleQueryResult.close();
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,93 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+public class PooledRepositoryConnectionFactoryTest extends BaseTest {
+    @Autowired
+    private PooledRepositoryConnectionFactory pooledRepositoryConnectionFactory;
+
+    @Test(expected = SesameTransactionException.class)
+    public void testFactoryDoesNotCreateConnection() throws RepositoryException {
+        pooledRepositoryConnectionFactory.getConnection();
+    }
+
+    @Test
+    @Transactional("pooledTransactionManager")
+    public void testTransactionCreatesConnection() throws RepositoryException {
+        RepositoryConnection connection = pooledRepositoryConnectionFactory.getConnection();
+
+        Assert.assertNotNull(connection);
+        Assert.assertTrue(connection.isActive());
+    }
+
+    @Test
+    @Transactional("pooledTransactionManager")
+    public void testWriteData() throws Exception {
+        addData(pooledRepositoryConnectionFactory);
+        assertDataPresent(pooledRepositoryConnectionFactory);
+    }
+
+    @Test
+    public void testConnectionIsReturnedToPool() throws RepositoryException {
+        RepositoryConnection firstConnection = runTransaction(false);
+        RepositoryConnection secondConnection = runTransaction(true);
+
+        Assert.assertSame(firstConnection, secondConnection);
+        Assert.assertTrue(secondConnection.isOpen());
+        Assert.assertFalse(secondConnection.isActive());
+        Assert.assertEquals(0, pooledRepositoryConnectionFactory.getRepositoryConnectionPool().getBorrowedCount());
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void testBorrowTimesOutWhenPoolIsExhausted() throws RepositoryException {
+        RepositoryConnectionPool pool = pooledRepositoryConnectionFactory.getRepositoryConnectionPool();
+        RepositoryConnection firstConnection = pool.borrow();
+        RepositoryConnection secondConnection = pool.borrow();
+
+        try {
+            pool.borrow();
+        } finally {
+            pool.release(firstConnection);
+            pool.release(secondConnection);
+        }
+    }
+
+    @Test
+    public void testClosedConnectionIsNotReused() throws RepositoryException {
+        RepositoryConnectionPool pool = pooledRepositoryConnectionFactory.getRepositoryConnectionPool();
+        RepositoryConnection connection = pool.borrow();
+
+        connection.close();
+        pool.release(connection);
+
+        RepositoryConnection nextConnection = pool.borrow();
+
+        try {
+            Assert.assertNotSame(connection, nextConnection);
+            Assert.assertTrue(nextConnection.isOpen());
+        } finally {
+            pool.release(nextConnection);
+        }
+    }
+
+    private RepositoryConnection runTransaction(boolean rollback) throws RepositoryException {
+        pooledRepositoryConnectionFactory.createTransaction();
+
+        try {
+            pooledRepositoryConnectionFactory.getConnection();
+
+            RepositoryConnection connection =
+                    pooledRepositoryConnectionFactory.getLocalTransactionObject().getRepositoryConnection();
+            pooledRepositoryConnectionFactory.endTransaction(rollback);
+
+            return connection;
+        } finally {
+            pooledRepositoryConnectionFactory.closeConnection();
+        }
+    }
+}
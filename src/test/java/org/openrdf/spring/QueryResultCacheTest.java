@@ -0,0 +1,193 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class QueryResultCacheTest extends BaseTest {
+    private static final String QUERY = "SELECT ?s ?o WHERE { ?s <http://example.com/b> ?o . }";
+
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private QueryResultCache queryResultCache;
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private TransactionTemplate transactionTemplate;
+
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    @Before
+    public void setUp() {
+        queryResultCache = new QueryResultCache();
+        connectionFactory = createCachingConnectionFactory("first");
+
+        SesameTransactionManager transactionManager = new SesameTransactionManager(connectionFactory);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+
+        transactionTemplate.execute(status -> {
+            addData(connectionFactory);
+            return null;
+        });
+    }
+
+    @Test
+    public void testRepeatedReadOnlyQueriesAreAnsweredFromCache() {
+        Assert.assertEquals(1, countReadOnly(QUERY));
+        Assert.assertEquals(1, countReadOnly(QUERY));
+
+        Assert.assertEquals(1, queryResultCache.getMissCount());
+        Assert.assertEquals(1, queryResultCache.getHitCount());
+        Assert.assertEquals(1, queryResultCache.size());
+
+        readOnlyTransactionTemplate.execute(status -> {
+            assertDataPresent(connectionFactory);
+            return null;
+        });
+
+        Assert.assertEquals(2, queryResultCache.getHitCount());
+    }
+
+    @Test
+    public void testCommitInvalidatesCachedResults() {
+        Assert.assertEquals(1, countReadOnly(QUERY));
+
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().add(f.createIRI("http://example.com/d"),
+                    f.createIRI("http://example.com/b"), f.createIRI("http://example.com/e"));
+            return null;
+        });
+
+        Assert.assertEquals(0, queryResultCache.size());
+        Assert.assertEquals(2, countReadOnly(QUERY));
+        Assert.assertEquals(0, queryResultCache.getHitCount());
+    }
+
+    @Test
+    public void testRollbackKeepsCachedResults() {
+        Assert.assertEquals(1, countReadOnly(QUERY));
+
+        transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().add(f.createIRI("http://example.com/d"),
+                    f.createIRI("http://example.com/b"), f.createIRI("http://example.com/e"));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        Assert.assertEquals(1, countReadOnly(QUERY));
+        Assert.assertEquals(1, queryResultCache.getHitCount());
+    }
+
+    @Test
+    public void testBindingsArePartOfTheKey() {
+        IRI a = f.createIRI("http://example.com/a");
+        IRI d = f.createIRI("http://example.com/d");
+
+        Assert.assertEquals(1, countReadOnly(QUERY, a));
+        Assert.assertEquals(0, countReadOnly(QUERY, d));
+        Assert.assertEquals(1, countReadOnly(QUERY, a));
+
+        Assert.assertEquals(2, queryResultCache.getMissCount());
+        Assert.assertEquals(1, queryResultCache.getHitCount());
+    }
+
+    @Test
+    public void testPartiallyReadResultsAreNotCached() {
+        readOnlyTransactionTemplate.execute(status -> {
+            TupleQueryResult result = connectionFactory.getConnection()
+                    .prepareTupleQuery(QueryLanguage.SPARQL, "SELECT * WHERE { ?s ?p ?o }").evaluate();
+            result.close();
+            return null;
+        });
+
+        Assert.assertEquals(0, queryResultCache.size());
+    }
+
+    @Test
+    public void testWriteTransactionsBypassCache() {
+        transactionTemplate.execute(status -> {
+            assertDataPresent(connectionFactory);
+            return null;
+        });
+
+        Assert.assertEquals(0, queryResultCache.getMissCount());
+        Assert.assertEquals(0, queryResultCache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResultsAreEvicted() {
+        queryResultCache = new QueryResultCache(2048);
+        queryResultCache.setMaxEntryBytes(2048);
+        connectionFactory.setQueryResultCache(queryResultCache);
+
+        for (int i = 0; i < 10; i++) {
+            countReadOnly("SELECT ?s ?o WHERE { ?s <http://example.com/b> ?o . FILTER(" + i + " >= 0) }");
+        }
+
+        Assert.assertTrue(queryResultCache.getEvictionCount() > 0);
+        Assert.assertTrue(queryResultCache.getBytes() <= queryResultCache.getMaxBytes());
+    }
+
+    @Test
+    public void testResultsAreScopedByRepository() throws Exception {
+        RepositoryConnectionFactory otherConnectionFactory = createCachingConnectionFactory("second");
+        SesameTransactionManager otherTransactionManager = new SesameTransactionManager(otherConnectionFactory);
+
+        Assert.assertEquals(1, countReadOnly(QUERY));
+
+        new TransactionTemplate(otherTransactionManager).execute(status -> {
+            addData(otherConnectionFactory);
+            return null;
+        });
+
+        Assert.assertEquals(1, queryResultCache.size());
+        Assert.assertEquals(1, countReadOnly(QUERY));
+        Assert.assertEquals(1, queryResultCache.getHitCount());
+    }
+
+    private RepositoryConnectionFactory createCachingConnectionFactory(String repositoryId) {
+        RepositoryConnectionFactory factory = createConnectionFactory();
+        factory.setRepositoryId(repositoryId);
+        factory.setQueryResultCache(queryResultCache);
+
+        return factory;
+    }
+
+    private int countReadOnly(String query) {
+        return countReadOnly(query, null);
+    }
+
+    private int countReadOnly(String query, IRI subject) {
+        return readOnlyTransactionTemplate.execute(status -> {
+            TupleQuery tupleQuery = connectionFactory.getConnection()
+                    .prepareTupleQuery(QueryLanguage.SPARQL, query);
+
+            if (subject != null) {
+                tupleQuery.setBinding("s", subject);
+            }
+
+            TupleQueryResult tupleQueryResult = tupleQuery.evaluate();
+            int count = 0;
+
+            try {
+                while (tupleQueryResult.hasNext()) {
+                    tupleQueryResult.next();
+                    count++;
+                }
+            } finally {
+                tupleQueryResult.close();
+            }
+
+            return count;
+        });
+    }
+}
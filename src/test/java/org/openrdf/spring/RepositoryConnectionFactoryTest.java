@@ -4,11 +4,17 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.openrdf.IsolationLevel;
 import org.openrdf.IsolationLevels;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryReadOnlyException;
 import org.openrdf.repository.sail.SailRepository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionTimedOutException;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Arrays;
 
@@ -91,4 +97,91 @@ public class RepositoryConnectionFactoryTest extends BaseTest {
 
         Assert.assertEquals(IsolationLevels.READ_COMMITTED, connection.getIsolationLevel());
     }
+
+    @Test
+    @Transactional(value = "transactionManager", readOnly = true)
+    public void testReadOnlyTransactionUsesWeakestIsolationLevel() {
+        RepositoryConnection connection = repositoryConnectionFactory.getConnection();
+
+        Assert.assertEquals(IsolationLevels.NONE, connection.getIsolationLevel());
+        Assert.assertFalse(connection.isActive());
+    }
+
+    @Test(expected = RepositoryReadOnlyException.class)
+    @Transactional(value = "transactionManager", readOnly = true)
+    public void testReadOnlyTransactionRejectsWrites() {
+        addData(repositoryConnectionFactory);
+    }
+
+    @Test
+    @Transactional(value = "transactionManager", readOnly = true, isolation = Isolation.SERIALIZABLE)
+    public void testReadOnlyTransactionWithSerializableIsolationLevel() {
+        RepositoryConnection connection = repositoryConnectionFactory.getConnection();
+
+        Assert.assertEquals(IsolationLevels.SERIALIZABLE, connection.getIsolationLevel());
+        Assert.assertTrue(connection.isActive());
+    }
+
+    @Test
+    @Transactional(value = "transactionManager", timeout = 5)
+    public void testTransactionTimeoutLimitsQueryExecutionTime() {
+        RepositoryConnection connection = repositoryConnectionFactory.getConnection();
+        TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ?s WHERE { ?s ?p ?o . }");
+
+        Assert.assertTrue(tupleQuery.getMaxExecutionTime() > 0);
+        Assert.assertTrue(tupleQuery.getMaxExecutionTime() <= 5);
+    }
+
+    @Test(expected = TransactionTimedOutException.class)
+    @Transactional(value = "transactionManager", timeout = 1)
+    public void testTransactionTimeoutAppliesWhenPreparedQueryIsEvaluated() throws InterruptedException {
+        RepositoryConnection connection = repositoryConnectionFactory.getConnection();
+        TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ?s WHERE { ?s ?p ?o . }");
+
+        Thread.sleep(1100);
+
+        tupleQuery.evaluate().close();
+    }
+
+    @Test(expected = TransactionTimedOutException.class)
+    @Transactional(value = "transactionManager", timeout = 1)
+    public void testTransactionTimeoutAbortsOperationsAfterDeadline() throws InterruptedException {
+        RepositoryConnection connection = repositoryConnectionFactory.getConnection();
+
+        Thread.sleep(1100);
+
+        connection.size();
+    }
+
+    @Test
+    public void testTransactionStateIsReusedAndReset() {
+        TransactionTemplate transactionTemplate =
+                new TransactionTemplate(new SesameTransactionManager(repositoryConnectionFactory));
+        transactionTemplate.setName("first");
+        transactionTemplate.setTimeout(5);
+
+        SesameTransactionObject first = transactionTemplate.execute(status -> {
+            addData(repositoryConnectionFactory);
+            status.setRollbackOnly();
+
+            return repositoryConnectionFactory.getLocalTransactionObject();
+        });
+
+        transactionTemplate.setName("second");
+        transactionTemplate.setTimeout(TransactionDefinition.TIMEOUT_DEFAULT);
+        transactionTemplate.setReadOnly(true);
+
+        transactionTemplate.execute(status -> {
+            SesameTransactionObject second = repositoryConnectionFactory.getLocalTransactionObject();
+
+            Assert.assertSame(first, second);
+            Assert.assertFalse(second.isRollbackOnly());
+            Assert.assertFalse(second.hasDeadline());
+            Assert.assertTrue(second.isReadOnly());
+            Assert.assertNull(second.getStatementBuffer());
+            Assert.assertEquals(Thread.currentThread().getName() + " second", second.getName());
+            Assert.assertFalse(repositoryConnectionFactory.getConnection().hasStatement(null, null, null, false));
+            return null;
+        });
+    }
 }
@@ -0,0 +1,159 @@
+package org.openrdf.spring;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.repository.config.RepositoryConfig;
+import org.openrdf.repository.manager.LocalRepositoryManager;
+import org.openrdf.repository.sail.config.SailRepositoryConfig;
+import org.openrdf.sail.memory.config.MemoryStoreConfig;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RepositoryWarmUpTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LocalRepositoryManager repositoryManager;
+
+    private DynamicRepositoryManagerConnectionFactory connectionFactory;
+
+    private RepositoryWarmUp repositoryWarmUp;
+
+    private final CountDownLatch blockedWarmUp = new CountDownLatch(1);
+
+    private volatile CountDownLatch unblockWarmUp;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryManager = new LocalRepositoryManager(temporaryFolder.newFolder());
+        repositoryManager.initialize();
+
+        for (String repositoryId : Arrays.asList("first", "second", "third")) {
+            repositoryManager.addRepositoryConfig(new RepositoryConfig(repositoryId,
+                    new SailRepositoryConfig(new MemoryStoreConfig())));
+        }
+
+        connectionFactory = new DynamicRepositoryManagerConnectionFactory(repositoryManager, () -> "first") {
+            @Override
+            RepositoryConnectionFactory acquireRepositoryConnectionFactory(String repositoryId) {
+                CountDownLatch unblockWarmUp = RepositoryWarmUpTest.this.unblockWarmUp;
+
+                if (unblockWarmUp != null) {
+                    blockedWarmUp.countDown();
+
+                    try {
+                        unblockWarmUp.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                return super.acquireRepositoryConnectionFactory(repositoryId);
+            }
+        };
+        repositoryWarmUp = new RepositoryWarmUp(connectionFactory);
+        repositoryWarmUp.setParallelism(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repositoryWarmUp.stop();
+        connectionFactory.destroy();
+        repositoryManager.shutDown();
+    }
+
+    @Test
+    public void testConfiguredRepositoriesAreWarmedUp() {
+        repositoryWarmUp.setRepositoryIds(Arrays.asList("first", "third"));
+        repositoryWarmUp.setWaitForCompletion(true);
+        repositoryWarmUp.start();
+
+        Assert.assertTrue(repositoryWarmUp.isReady());
+        Assert.assertTrue(repositoryWarmUp.getFailedRepositoryIds().isEmpty());
+        Assert.assertEquals(2, connectionFactory.getRepositoryCount());
+    }
+
+    @Test
+    public void testDiscoveredRepositoriesAreWarmedUp() throws Exception {
+        repositoryWarmUp.setDiscoverRepositories(true);
+        repositoryWarmUp.start();
+
+        Assert.assertTrue(repositoryWarmUp.isRunning());
+        Assert.assertTrue(repositoryWarmUp.awaitReady(10, TimeUnit.SECONDS));
+        Assert.assertEquals(3, connectionFactory.getRepositoryCount());
+    }
+
+    @Test
+    public void testFailingRepositoriesDoNotPreventReadiness() {
+        repositoryWarmUp.setRepositoryIds(Arrays.asList("first", "missing"));
+        repositoryWarmUp.setWarmUpQueries(Arrays.asList("SELECT * WHERE { ?s ?p ?o }", "ASK { ?s ?p ?o }",
+                "CONSTRUCT WHERE { ?s ?p ?o }"));
+        repositoryWarmUp.setWaitForCompletion(true);
+        repositoryWarmUp.start();
+
+        Assert.assertTrue(repositoryWarmUp.isReady());
+        Assert.assertEquals(Collections.singleton("missing"), repositoryWarmUp.getFailedRepositoryIds());
+    }
+
+    @Test
+    public void testFailingWarmUpQueryFailsRepository() {
+        repositoryWarmUp.setRepositoryIds(Collections.singletonList("first"));
+        repositoryWarmUp.setWarmUpQueries(Collections.singletonList("SELECT * WHERE { ?s ?p ?o "));
+        repositoryWarmUp.setWaitForCompletion(true);
+        repositoryWarmUp.start();
+
+        Assert.assertTrue(repositoryWarmUp.isReady());
+        Assert.assertEquals(Collections.singleton("first"), repositoryWarmUp.getFailedRepositoryIds());
+    }
+
+    @Test
+    public void testStopReportsReadinessOfQueuedRepositories() throws Exception {
+        unblockWarmUp = new CountDownLatch(1);
+
+        repositoryWarmUp.setParallelism(1);
+        repositoryWarmUp.setRepositoryIds(Arrays.asList("first", "second", "third"));
+        repositoryWarmUp.start();
+
+        Assert.assertTrue(blockedWarmUp.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(repositoryWarmUp.isReady());
+
+        repositoryWarmUp.stop();
+
+        Assert.assertTrue(repositoryWarmUp.awaitReady(10, TimeUnit.SECONDS));
+        Assert.assertFalse(repositoryWarmUp.isRunning());
+    }
+
+    @Test
+    public void testRestartWarmsUpRepositoriesAgain() throws Exception {
+        repositoryWarmUp.setRepositoryIds(Collections.singletonList("missing"));
+        repositoryWarmUp.setWaitForCompletion(true);
+        repositoryWarmUp.start();
+
+        Assert.assertEquals(Collections.singleton("missing"), repositoryWarmUp.getFailedRepositoryIds());
+
+        repositoryWarmUp.stop();
+
+        unblockWarmUp = new CountDownLatch(1);
+        repositoryWarmUp.setRepositoryIds(Arrays.asList("first", "second"));
+        repositoryWarmUp.setWaitForCompletion(false);
+        repositoryWarmUp.start();
+
+        Assert.assertTrue(blockedWarmUp.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(repositoryWarmUp.isReady());
+        Assert.assertTrue(repositoryWarmUp.getFailedRepositoryIds().isEmpty());
+
+        unblockWarmUp.countDown();
+
+        Assert.assertTrue(repositoryWarmUp.awaitReady(10, TimeUnit.SECONDS));
+        Assert.assertTrue(repositoryWarmUp.getFailedRepositoryIds().isEmpty());
+        Assert.assertEquals(2, connectionFactory.getRepositoryCount());
+    }
+}
@@ -0,0 +1,175 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.QueryResults;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RoutingRepositoryConnectionFactoryTest extends BaseTest {
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private Repository primary;
+
+    private Repository firstReplica;
+
+    private Repository secondReplica;
+
+    private RoutingRepositoryConnectionFactory connectionFactory;
+
+    private SesameTransactionManager transactionManager;
+
+    private TransactionTemplate readOnlyTemplate;
+
+    @Before
+    public void setUp() {
+        primary = createMemoryRepository();
+        firstReplica = createMemoryRepository();
+        secondReplica = createMemoryRepository();
+
+        connectionFactory = destroyAfterTest(new RoutingRepositoryConnectionFactory(primary,
+                Arrays.asList(firstReplica, secondReplica)));
+        transactionManager = new SesameTransactionManager(connectionFactory);
+
+        readOnlyTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTemplate.setReadOnly(true);
+    }
+
+    @Test
+    public void testReadOnlyTransactionsAlternateBetweenReplicas() {
+        List<Repository> repositories = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            repositories.add(readOnlyTemplate.execute(status ->
+                    connectionFactory.getConnection().getRepository()));
+        }
+
+        Assert.assertEquals(Arrays.asList(firstReplica, secondReplica, firstReplica, secondReplica), repositories);
+    }
+
+    @Test
+    public void testReadWriteTransactionsUsePrimary() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+
+            Assert.assertSame(primary, connection.getRepository());
+            connection.add(f.createIRI("http://example.com/s"), f.createIRI("http://example.com/p"),
+                    f.createLiteral(1));
+
+            return null;
+        });
+
+        Assert.assertEquals(1, size(primary));
+        Assert.assertEquals(0, size(firstReplica));
+        Assert.assertEquals(0, size(secondReplica));
+    }
+
+    @Test
+    public void testLeastActiveSelectionAvoidsBusyReplica() {
+        connectionFactory.setReplicaSelection(RoutingRepositoryConnectionFactory.ReplicaSelection.LEAST_ACTIVE);
+
+        SesameTransactionObject busyTransaction = connectionFactory.openTransaction();
+        busyTransaction.setReadOnly(true);
+
+        Repository busyReplica = connectionFactory.getConnection(busyTransaction).getRepository();
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertNotSame(busyReplica, readOnlyTemplate.execute(status ->
+                        connectionFactory.getConnection().getRepository()));
+            }
+        } finally {
+            connectionFactory.endTransaction(busyTransaction, true);
+            connectionFactory.releaseConnection(busyTransaction.getRepositoryConnection());
+        }
+    }
+
+    @Test
+    public void testFailingReplicaIsTakenOutOfRotation() {
+        firstReplica.shutDown();
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertSame(secondReplica, readOnlyTemplate.execute(status ->
+                    connectionFactory.getConnection().getRepository()));
+        }
+
+        Assert.assertEquals(1, connectionFactory.getHealthyReplicaCount());
+
+        firstReplica.initialize();
+        connectionFactory.checkReplicas();
+
+        Assert.assertEquals(2, connectionFactory.getHealthyReplicaCount());
+    }
+
+    @Test
+    public void testReadOnlyTransactionsFallBackToPrimary() {
+        firstReplica.shutDown();
+        secondReplica.shutDown();
+
+        Assert.assertSame(primary, readOnlyTemplate.execute(status ->
+                connectionFactory.getConnection().getRepository()));
+        Assert.assertEquals(0, connectionFactory.getHealthyReplicaCount());
+    }
+
+    @Test
+    public void testReplicaReadsBypassQueryResultCache() {
+        QueryResultCache queryResultCache = new QueryResultCache();
+        connectionFactory.setQueryResultCache(queryResultCache);
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(0, readOnlyTemplate.execute(status -> countStatements()).intValue());
+        }
+
+        // the replicas catch up with a commit to the primary
+        for (Repository replica : Arrays.asList(firstReplica, secondReplica)) {
+            RepositoryConnection connection = replica.getConnection();
+
+            try {
+                connection.add(f.createIRI("http://example.com/s"), f.createIRI("http://example.com/p"),
+                        f.createLiteral(1));
+            } finally {
+                connection.close();
+            }
+        }
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(1, readOnlyTemplate.execute(status -> countStatements()).intValue());
+        }
+
+        Assert.assertEquals(0, queryResultCache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEagerConnectionsAreRejected() {
+        connectionFactory.setLazyConnections(false);
+    }
+
+    private int countStatements() {
+        TupleQuery tupleQuery = connectionFactory.getConnection().prepareTupleQuery(QueryLanguage.SPARQL,
+                "SELECT ?s WHERE { ?s ?p ?o }");
+
+        return QueryResults.asList(tupleQuery.evaluate()).size();
+    }
+
+    private static long size(Repository repository) {
+        RepositoryConnection connection = repository.getConnection();
+
+        try {
+            return connection.size();
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.openrdf.spring;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryInterruptedException;
+import org.openrdf.query.QueryResults;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.manager.LocalRepositoryManager;
+import org.openrdf.repository.sail.config.SailRepositoryConfig;
+import org.openrdf.sail.memory.config.MemoryStoreConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ScatterGatherQueryExecutorTest {
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private static final IRI PREDICATE = f.createIRI("http://example.com/p");
+
+    private static final List<String> REPOSITORY_IDS = Arrays.asList("first", "second", "third");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ThreadLocal<String> currentRepositoryId = new ThreadLocal<>();
+
+    private LocalRepositoryManager repositoryManager;
+
+    private DynamicRepositoryManagerConnectionFactory connectionFactory;
+
+    private ScatterGatherQueryExecutor scatterGatherQueryExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryManager = new LocalRepositoryManager(temporaryFolder.newFolder());
+        repositoryManager.initialize();
+        connectionFactory = new DynamicRepositoryManagerConnectionFactory(repositoryManager,
+                new SailRepositoryConfig(new MemoryStoreConfig()), currentRepositoryId::get);
+        scatterGatherQueryExecutor = new ScatterGatherQueryExecutor(connectionFactory);
+        scatterGatherQueryExecutor.setBatchSize(3);
+
+        // Repository i holds the values i, i + 3, i + 6, ... below 30.
+        for (int i = 0; i < REPOSITORY_IDS.size(); i++) {
+            addValues(REPOSITORY_IDS.get(i), i);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scatterGatherQueryExecutor.destroy();
+        connectionFactory.destroy();
+        repositoryManager.shutDown();
+    }
+
+    @Test
+    public void testUnorderedQueryReturnsRowsOfAllRepositories() {
+        ScatterGatherQuery query = new ScatterGatherQuery("SELECT ?s ?o WHERE { ?s ?p ?o }", REPOSITORY_IDS);
+        List<Integer> values = values(scatterGatherQueryExecutor.evaluate(query));
+
+        values.sort(null);
+
+        Assert.assertEquals(30, values.size());
+
+        for (int i = 0; i < 30; i++) {
+            Assert.assertEquals(i, (int) values.get(i));
+        }
+    }
+
+    @Test
+    public void testOrderedQueryMergesRowsWithLimit() {
+        ScatterGatherQuery query = new ScatterGatherQuery("SELECT ?o WHERE { ?s ?p ?o } ORDER BY ?o",
+                REPOSITORY_IDS);
+        query.setOrder(ScatterGatherQuery.ascending("o"));
+        query.setLimit(10);
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9),
+                values(scatterGatherQueryExecutor.evaluate(query)));
+    }
+
+    @Test
+    public void testBindingsApplyToAllRepositories() {
+        ScatterGatherQuery query = new ScatterGatherQuery("SELECT ?s WHERE { ?s ?p ?o }", REPOSITORY_IDS);
+        query.setBinding("o", f.createLiteral(4));
+
+        try (TupleQueryResult result = scatterGatherQueryExecutor.evaluate(query)) {
+            Assert.assertEquals(Arrays.asList("s"), result.getBindingNames());
+            Assert.assertEquals(1, QueryResults.asList(result).size());
+        }
+    }
+
+    @Test
+    public void testRepositoriesAreReleasedAfterClose() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        ScatterGatherQuery query = new ScatterGatherQuery("SELECT ?o WHERE { ?s ?p ?o }", REPOSITORY_IDS);
+        ScatterGatherIteration iteration = new ScatterGatherIteration(connectionFactory, executorService, query, 3);
+
+        try {
+            iteration.start();
+            Assert.assertTrue(iteration.hasNext());
+            iteration.next();
+            iteration.close();
+
+            // repositories whose next batch is being read are released once the batch is done
+            iteration.whenReleased().get(10, TimeUnit.SECONDS);
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        connectionFactory.setMaxRepositories(1);
+        connectionFactory.evictRepositories();
+
+        Assert.assertEquals(1, connectionFactory.getRepositoryCount());
+    }
+
+    @Test(expected = QueryEvaluationException.class)
+    public void testFailingRepositoryFailsQuery() {
+        ScatterGatherQuery query = new ScatterGatherQuery("SELECT ?o WHERE { ?s ?p ?o ", REPOSITORY_IDS);
+        scatterGatherQueryExecutor.evaluate(query);
+    }
+
+    @Test
+    public void testTimeoutCoversWholeFanOut() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        ScatterGatherQueryExecutor blockedExecutor = new ScatterGatherQueryExecutor(connectionFactory, executorService);
+
+        try {
+            executorService.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            ScatterGatherQuery query = new ScatterGatherQuery("SELECT ?o WHERE { ?s ?p ?o }", REPOSITORY_IDS);
+            query.setTimeoutMillis(100);
+
+            long start = System.currentTimeMillis();
+
+            try {
+                blockedExecutor.evaluate(query);
+                Assert.fail("Expected the query to time out");
+            } catch (QueryInterruptedException e) {
+                Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            }
+        } finally {
+            release.countDown();
+            executorService.shutdown();
+        }
+    }
+
+    private void addValues(String repositoryId, int offset) {
+        currentRepositoryId.set(repositoryId);
+
+        try {
+            connectionFactory.createTransaction();
+
+            try {
+                RepositoryConnection connection = connectionFactory.getConnection();
+
+                for (int value = offset; value < 30; value += REPOSITORY_IDS.size()) {
+                    connection.add(f.createIRI("http://example.com/s" + value), PREDICATE, f.createLiteral(value));
+                }
+            } finally {
+                connectionFactory.endTransaction(false);
+                connectionFactory.closeConnection();
+            }
+        } finally {
+            currentRepositoryId.remove();
+        }
+    }
+
+    private static List<Integer> values(TupleQueryResult result) {
+        List<Integer> values = new ArrayList<>();
+
+        try {
+            while (result.hasNext()) {
+                BindingSet bindingSet = result.next();
+                values.add(((Literal) bindingSet.getValue("o")).intValue());
+            }
+        } finally {
+            result.close();
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,367 @@
+package org.openrdf.spring;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.IsolationLevel;
+import org.openrdf.query.BindingSet;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryReadOnlyException;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class SesameReactiveTransactionManagerTest extends BaseTest {
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private static final IRI PREDICATE = f.createIRI("http://example.com/p");
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private SesameReactiveTransactionManager reactiveTransactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void setUp() {
+        connectionFactory = createConnectionFactory();
+        reactiveTransactionManager = new SesameReactiveTransactionManager(connectionFactory);
+        transactionTemplate = new TransactionTemplate(new SesameTransactionManager(connectionFactory));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reactiveTransactionManager.destroy();
+    }
+
+    @Test
+    public void testQueryResultsAreStreamedOnDemand() throws Exception {
+        addStatements(600);
+
+        TestSubscriber<BindingSet> subscriber = new TestSubscriber<>();
+        reactiveTransactionManager.execute(readOnly(), transaction ->
+                transaction.tupleQuery("SELECT ?s WHERE { ?s <http://example.com/p> ?o }")).subscribe(subscriber);
+
+        subscriber.request(10);
+        subscriber.awaitElements(10);
+        Thread.sleep(50);
+
+        Assert.assertEquals(10, subscriber.getElements().size());
+        Assert.assertFalse(subscriber.isTerminated());
+
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.awaitTermination();
+
+        Assert.assertNull(subscriber.error);
+        Assert.assertEquals(600, subscriber.getElements().size());
+    }
+
+    @Test
+    public void testTransactionIsCommittedWhenPublisherCompletes() throws Exception {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+        reactiveTransactionManager.execute(transaction -> transaction.execute(connection -> {
+            connection.add(f.createIRI("http://example.com/s"), PREDICATE, f.createLiteral(1));
+            return connection.size();
+        })).subscribe(subscriber);
+
+        subscriber.request(1);
+        subscriber.awaitTermination();
+
+        Assert.assertNull(subscriber.error);
+        Assert.assertEquals(1L, (long) subscriber.getElements().get(0));
+        Assert.assertEquals(1, countStatements());
+    }
+
+    @Test
+    public void testTransactionIsRolledBackWhenPublisherFails() throws Exception {
+        TestSubscriber<Object> subscriber = new TestSubscriber<>();
+        reactiveTransactionManager.execute(transaction -> transaction.execute(connection -> {
+            connection.add(f.createIRI("http://example.com/s"), PREDICATE, f.createLiteral(1));
+            throw new IllegalStateException("failed");
+        })).subscribe(subscriber);
+
+        subscriber.request(1);
+        subscriber.awaitTermination();
+
+        Assert.assertTrue(subscriber.error instanceof IllegalStateException);
+        Assert.assertEquals(0, countStatements());
+    }
+
+    @Test
+    public void testTransactionIsRolledBackWhenSubscriptionIsCancelled() throws Exception {
+        TestSubscriber<Statement> subscriber = new TestSubscriber<>();
+        Publisher<Statement> publisher = reactiveTransactionManager.execute(transaction -> transaction.stream(
+                connection -> {
+                    for (int i = 0; i < 10; i++) {
+                        connection.add(f.createIRI("http://example.com/s" + i), PREDICATE, f.createLiteral(i));
+                    }
+
+                    return connection.getStatements(null, PREDICATE, null, false);
+                }));
+        publisher.subscribe(subscriber);
+
+        subscriber.request(1);
+        subscriber.awaitElements(1);
+        subscriber.subscription.cancel();
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (countStatements() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(0, countStatements());
+        Assert.assertFalse(subscriber.isTerminated());
+    }
+
+    @Test
+    public void testReadOnlyTransactionRejectsWrites() throws Exception {
+        TestSubscriber<Object> subscriber = new TestSubscriber<>();
+        reactiveTransactionManager.execute(readOnly(), transaction -> transaction.execute(connection -> {
+            connection.add(f.createIRI("http://example.com/s"), PREDICATE, f.createLiteral(1));
+            return null;
+        })).subscribe(subscriber);
+
+        subscriber.request(1);
+        subscriber.awaitTermination();
+
+        Assert.assertTrue(subscriber.error instanceof RepositoryReadOnlyException);
+    }
+
+    @Test
+    public void testDefaultTimeoutAppliesToTransactionsWithoutTimeout() throws Exception {
+        reactiveTransactionManager.setDefaultTimeout(1);
+
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+        reactiveTransactionManager.execute(transaction -> transaction.execute(connection -> {
+            Thread.sleep(1100);
+            return connection.size();
+        })).subscribe(subscriber);
+
+        subscriber.request(1);
+        subscriber.awaitTermination();
+
+        Assert.assertTrue(subscriber.error instanceof TransactionTimedOutException);
+    }
+
+    @Test
+    public void testCompletedTransactionsAreReportedLikeBlockingTransactions() throws Exception {
+        List<SesameTransactionObject> loggedTransactions = new CopyOnWriteArrayList<>();
+        connectionFactory.setSlowTransactionLog(new SlowTransactionLog() {
+            @Override
+            void transactionCompleted(SesameTransactionObject sesameTransactionObject, IsolationLevel isolationLevel) {
+                loggedTransactions.add(sesameTransactionObject);
+            }
+        });
+
+        List<String> events = new CopyOnWriteArrayList<>();
+        reactiveTransactionManager.addTransactionListener(new SesameTransactionListener() {
+            @Override
+            public void transactionBegun(String repositoryId, boolean readOnly) {
+                events.add("begun");
+            }
+
+            @Override
+            public void transactionCommitted(String repositoryId, long durationNanos) {
+                events.add("committed");
+            }
+
+            @Override
+            public void transactionCompleted(String repositoryId, long durationNanos) {
+                events.add("completed");
+            }
+        });
+
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+        reactiveTransactionManager.execute(transaction -> transaction.execute(RepositoryConnection::size))
+                .subscribe(subscriber);
+
+        subscriber.request(1);
+        subscriber.awaitTermination();
+
+        Assert.assertNull(subscriber.error);
+        Assert.assertEquals(1, loggedTransactions.size());
+        Assert.assertEquals(Arrays.asList("begun", "committed", "completed"), events);
+    }
+
+    @Test
+    public void testQueuedTransactionsDoNotBlockPoolThreads() throws Exception {
+        AdmissionPolicy admissionPolicy = new AdmissionPolicy();
+        admissionPolicy.setMaxWriteTransactions(1);
+        admissionPolicy.setMaxQueueLength(4);
+        admissionPolicy.setQueueTimeoutMillis(TimeUnit.SECONDS.toMillis(30));
+        connectionFactory.setAdmissionPolicy(admissionPolicy);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        SesameReactiveTransactionManager pooledTransactionManager =
+                new SesameReactiveTransactionManager(connectionFactory, executorService);
+
+        try {
+            // the first transaction keeps its slot until its publisher completes, without holding a pool thread
+            BlockingQueue<Subscriber<? super Object>> running = new LinkedBlockingQueue<>();
+            TestSubscriber<Object> admitted = new TestSubscriber<>();
+            pooledTransactionManager.execute(transaction -> running::add).subscribe(admitted);
+            Subscriber<? super Object> transactionSubscriber = running.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(transactionSubscriber);
+            transactionSubscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+
+            List<TestSubscriber<Long>> queued = new ArrayList<>();
+
+            for (int i = 0; i < 4; i++) {
+                // requests as soon as it is admitted, since the queued transactions are admitted in any order
+                TestSubscriber<Long> subscriber = new TestSubscriber<Long>() {
+                    @Override
+                    public void onSubscribe(Subscription subscription) {
+                        super.onSubscribe(subscription);
+                        subscription.request(1);
+                    }
+                };
+                pooledTransactionManager.execute(transaction -> transaction.execute(RepositoryConnection::size))
+                        .subscribe(subscriber);
+                queued.add(subscriber);
+            }
+
+            AdmissionController admissionController = connectionFactory.getAdmissionController();
+
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (admissionController.getWaitingTransactions() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+
+            Assert.assertEquals(4, admissionController.getWaitingTransactions());
+
+            transactionSubscriber.onComplete();
+            admitted.awaitTermination();
+
+            for (TestSubscriber<Long> subscriber : queued) {
+                subscriber.awaitTermination();
+                Assert.assertNull(subscriber.error);
+            }
+
+            Assert.assertEquals(0, admissionController.getTimedOutCount());
+        } finally {
+            pooledTransactionManager.destroy();
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalTransactionStateException.class)
+    public void testUnsupportedPropagationIsRejected() {
+        DefaultTransactionDefinition transactionDefinition = new DefaultTransactionDefinition();
+        transactionDefinition.setPropagationBehavior(TransactionDefinition.PROPAGATION_MANDATORY);
+
+        reactiveTransactionManager.execute(transactionDefinition, transaction -> transaction.tupleQuery("ASK {}"));
+    }
+
+    private static TransactionDefinition readOnly() {
+        DefaultTransactionDefinition transactionDefinition = new DefaultTransactionDefinition();
+        transactionDefinition.setReadOnly(true);
+
+        return transactionDefinition;
+    }
+
+    private void addStatements(int count) {
+        transactionTemplate.execute(status -> {
+            for (int i = 0; i < count; i++) {
+                connectionFactory.getConnection()
+                        .add(f.createIRI("http://example.com/s" + i), PREDICATE, f.createLiteral(i));
+            }
+
+            return null;
+        });
+    }
+
+    private long countStatements() {
+        return transactionTemplate.execute(status -> connectionFactory.getConnection().size());
+    }
+
+    private static class TestSubscriber<T> implements Subscriber<T> {
+        private final List<T> elements = new ArrayList<>();
+
+        private final CountDownLatch subscribed = new CountDownLatch(1);
+
+        private final CountDownLatch terminated = new CountDownLatch(1);
+
+        private volatile Subscription subscription;
+
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscribed.countDown();
+        }
+
+        @Override
+        public synchronized void onNext(T element) {
+            elements.add(element);
+            notifyAll();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminated.countDown();
+        }
+
+        private void request(long n) throws InterruptedException {
+            Assert.assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+            subscription.request(n);
+        }
+
+        private synchronized void awaitElements(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (elements.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+        }
+
+        private void awaitTermination() throws InterruptedException {
+            Assert.assertTrue(terminated.await(5, TimeUnit.SECONDS));
+        }
+
+        private boolean isTerminated() {
+            return terminated.getCount() == 0;
+        }
+
+        private synchronized List<T> getElements() {
+            return new ArrayList<>(elements);
+        }
+    }
+}
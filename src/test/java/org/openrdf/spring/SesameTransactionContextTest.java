@@ -0,0 +1,234 @@
+package org.openrdf.spring;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SesameTransactionContextTest extends BaseTest {
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private static final IRI PREDICATE = f.createIRI("http://example.com/p");
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        connectionFactory = createConnectionFactory();
+        transactionTemplate = new TransactionTemplate(new SesameTransactionManager(connectionFactory));
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testTasksRunInsideTheTransaction() {
+        transactionTemplate.execute(status -> {
+            SesameTransactionContext context = SesameTransactionContext.capture(connectionFactory);
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int task = 0; task < 8; task++) {
+                int offset = task * 50;
+
+                futures.add(executorService.submit(context.wrap(() -> {
+                    for (int i = offset; i < offset + 50; i++) {
+                        connectionFactory.getConnection()
+                                .add(f.createIRI("http://example.com/s" + i), PREDICATE, f.createLiteral(i));
+                    }
+                })));
+            }
+
+            await(futures);
+
+            return null;
+        });
+
+        Assert.assertEquals(400, countStatements());
+    }
+
+    @Test
+    public void testThreadStateIsRestoredAfterTask() throws Exception {
+        ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+
+        try {
+            transactionTemplate.execute(status -> {
+                SesameTransactionContext context = SesameTransactionContext.capture(connectionFactory);
+                await(singleThreadExecutor.submit(context.wrap(() -> connectionFactory.getConnection())));
+                return null;
+            });
+
+            Assert.assertNull(singleThreadExecutor.submit(() ->
+                    connectionFactory.getLocalTransactionObject()).get());
+        } finally {
+            singleThreadExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCommitWaitsForRunningTasks() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean taskFinished = new AtomicBoolean();
+
+        Future<Boolean> committed = executorService.submit(() -> transactionTemplate.execute(status -> {
+            connectionFactory.getConnection().add(f.createIRI("http://example.com/s"), PREDICATE, f.createLiteral(1));
+
+            SesameTransactionContext context = SesameTransactionContext.capture(connectionFactory);
+            executorService.submit(context.wrap(() -> {
+                started.countDown();
+                release.await();
+                connectionFactory.getConnection()
+                        .add(f.createIRI("http://example.com/t"), PREDICATE, f.createLiteral(2));
+                taskFinished.set(true);
+                return null;
+            }));
+
+            await(started);
+            return true;
+        }));
+
+        Thread.sleep(50);
+        Assert.assertFalse(committed.isDone());
+
+        release.countDown();
+
+        Assert.assertTrue(committed.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(taskFinished.get());
+        Assert.assertEquals(2, countStatements());
+    }
+
+    @Test
+    public void testInterruptedCommitWithRunningTasksRollsBack() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        BlockingQueue<Exception> failures = new LinkedBlockingQueue<>();
+
+        Thread committing = new Thread(() -> {
+            try {
+                transactionTemplate.execute(status -> {
+                    connectionFactory.getConnection()
+                            .add(f.createIRI("http://example.com/s"), PREDICATE, f.createLiteral(1));
+
+                    SesameTransactionContext context = SesameTransactionContext.capture(connectionFactory);
+                    futures.add(executorService.submit(context.wrap(() -> {
+                        started.countDown();
+                        release.await();
+                        return null;
+                    })));
+
+                    await(started);
+                    return null;
+                });
+            } catch (Exception e) {
+                failures.add(e);
+            }
+        });
+        committing.start();
+
+        while (committing.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        committing.interrupt();
+
+        try {
+            Assert.assertTrue(failures.poll(5, TimeUnit.SECONDS) instanceof IllegalTransactionStateException);
+        } finally {
+            release.countDown();
+        }
+
+        futures.get(0).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(0, countStatements());
+    }
+
+    @Test
+    public void testTaskAfterCompletionFails() throws Exception {
+        SesameTransactionContext context = transactionTemplate.execute(status ->
+                SesameTransactionContext.capture(connectionFactory));
+
+        try {
+            executorService.submit(context.wrap(() -> connectionFactory.getConnection())).get();
+            Assert.fail("Expected the task to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalTransactionStateException);
+        }
+    }
+
+    @Test
+    public void testTaskDecoratorPropagatesTransaction() {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(2);
+        taskExecutor.setTaskDecorator(new SesameTransactionTaskDecorator(connectionFactory));
+        taskExecutor.initialize();
+
+        try {
+            transactionTemplate.execute(status -> {
+                await(taskExecutor.submit(() -> addData(connectionFactory)));
+                return null;
+            });
+
+            transactionTemplate.execute(status -> {
+                assertDataPresent(connectionFactory);
+                return null;
+            });
+        } finally {
+            taskExecutor.shutdown();
+        }
+    }
+
+    @Test(expected = SesameTransactionException.class)
+    public void testCaptureWithoutTransactionFails() {
+        SesameTransactionContext.capture(connectionFactory);
+    }
+
+    private long countStatements() {
+        return transactionTemplate.execute(status -> connectionFactory.getConnection().size());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(List<Future<?>> futures) {
+        futures.forEach(SesameTransactionContextTest::await);
+    }
+}
@@ -0,0 +1,183 @@
+package org.openrdf.spring;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.repository.manager.LocalRepositoryManager;
+import org.openrdf.repository.sail.config.SailRepositoryConfig;
+import org.openrdf.sail.memory.config.MemoryStoreConfig;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.openmbean.CompositeData;
+import java.util.concurrent.TimeUnit;
+
+public class SesameTransactionMetricsTest extends BaseTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MBeanServer mBeanServer;
+
+    private SesameTransactionMetrics transactionMetrics;
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private SesameTransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        mBeanServer = MBeanServerFactory.newMBeanServer();
+        transactionMetrics = new SesameTransactionMetrics();
+        transactionMetrics.setMBeanServer(mBeanServer);
+
+        connectionFactory = createConnectionFactory();
+        connectionFactory.setRepositoryId("metrics");
+        transactionManager = new SesameTransactionManager(connectionFactory);
+        transactionManager.addTransactionListener(transactionMetrics);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transactionMetrics.destroy();
+    }
+
+    @Test
+    public void testCommitAndRollbackAreRecorded() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.execute(status -> {
+            addData(connectionFactory);
+            return null;
+        });
+
+        transactionTemplate.execute(status -> {
+            addData(connectionFactory);
+            status.setRollbackOnly();
+            return null;
+        });
+
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.execute(status -> {
+            assertDataPresent(connectionFactory);
+            return null;
+        });
+
+        RepositoryTransactionMetrics metrics = transactionMetrics.getRepositoryMetrics("metrics");
+
+        Assert.assertEquals(3, metrics.getTransactionCount());
+        Assert.assertEquals(1, metrics.getReadOnlyTransactionCount());
+        Assert.assertEquals(2, metrics.getCommitCount());
+        Assert.assertEquals(1, metrics.getRollbackCount());
+        Assert.assertEquals(0, metrics.getFailureCount());
+        Assert.assertEquals(0, metrics.getActiveTransactions());
+        Assert.assertEquals(0, metrics.getOpenConnections());
+        Assert.assertEquals(3, metrics.getConnectionOpenLatency().getCount());
+        Assert.assertEquals(3, metrics.getTransactionDuration().getCount());
+    }
+
+    @Test
+    public void testInFlightTransactionsAreTracked() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            RepositoryTransactionMetrics metrics = transactionMetrics.getRepositoryMetrics("metrics");
+
+            Assert.assertEquals(1, metrics.getActiveTransactions());
+            Assert.assertEquals(1, metrics.getOpenConnections());
+            return null;
+        });
+
+        Assert.assertEquals(0, transactionMetrics.getRepositoryMetrics("metrics").getActiveTransactions());
+    }
+
+    @Test
+    public void testMetricsArePublishedPerRepository() throws Exception {
+        LocalRepositoryManager repositoryManager = new LocalRepositoryManager(temporaryFolder.newFolder());
+        repositoryManager.initialize();
+
+        ThreadLocal<String> currentRepositoryId = new ThreadLocal<>();
+        DynamicRepositoryManagerConnectionFactory dynamicConnectionFactory =
+                new DynamicRepositoryManagerConnectionFactory(repositoryManager,
+                        new SailRepositoryConfig(new MemoryStoreConfig()), currentRepositoryId::get);
+        SesameTransactionManager dynamicTransactionManager = new SesameTransactionManager(dynamicConnectionFactory);
+        dynamicTransactionManager.addTransactionListener(transactionMetrics);
+
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(dynamicTransactionManager);
+
+            for (String repositoryId : new String[]{"tenant-a", "tenant-b", "tenant-b"}) {
+                currentRepositoryId.set(repositoryId);
+                transactionTemplate.execute(status -> {
+                    addData(dynamicConnectionFactory);
+                    return null;
+                });
+            }
+
+            Assert.assertEquals(1L, mBeanServer.getAttribute(
+                    SesameTransactionMetrics.getObjectName("tenant-a"), "CommitCount"));
+            Assert.assertEquals(2L, mBeanServer.getAttribute(
+                    SesameTransactionMetrics.getObjectName("tenant-b"), "CommitCount"));
+
+            CompositeData commitLatency = (CompositeData) mBeanServer.getAttribute(
+                    SesameTransactionMetrics.getObjectName("tenant-b"), "CommitLatency");
+
+            Assert.assertEquals(2L, commitLatency.get("count"));
+        } finally {
+            dynamicConnectionFactory.destroy();
+            repositoryManager.shutDown();
+        }
+    }
+
+    @Test
+    public void testMBeansAreUnregisteredOnDestroy() throws Exception {
+        transactionMetrics.getRepositoryMetrics("metrics");
+
+        Assert.assertTrue(mBeanServer.isRegistered(SesameTransactionMetrics.getObjectName("metrics")));
+
+        transactionMetrics.destroy();
+
+        Assert.assertFalse(mBeanServer.isRegistered(SesameTransactionMetrics.getObjectName("metrics")));
+    }
+
+    @Test
+    public void testFailingListenerDoesNotAffectTransaction() {
+        transactionManager.addTransactionListener(new SesameTransactionListener() {
+            @Override
+            public void transactionBegun(String repositoryId, boolean readOnly) {
+                throw new IllegalStateException("listener failure");
+            }
+        });
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            addData(connectionFactory);
+            return null;
+        });
+
+        Assert.assertEquals(1, transactionMetrics.getRepositoryMetrics("metrics").getCommitCount());
+    }
+
+    @Test
+    public void testLatencyPercentiles() {
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 100; i++) {
+            latencyHistogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        LatencySnapshot snapshot = latencyHistogram.snapshot();
+
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(50_500, snapshot.getMeanMicros());
+        Assert.assertEquals(100_000, snapshot.getMaxMicros());
+        assertWithinBucketError(50_000, snapshot.getP50Micros());
+        assertWithinBucketError(95_000, snapshot.getP95Micros());
+        assertWithinBucketError(99_000, snapshot.getP99Micros());
+    }
+
+    private static void assertWithinBucketError(long expected, long actual) {
+        Assert.assertTrue("expected ~" + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 1.125);
+    }
+}
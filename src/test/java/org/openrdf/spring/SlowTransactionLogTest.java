@@ -0,0 +1,162 @@
+package org.openrdf.spring;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class SlowTransactionLogTest extends BaseTest {
+    private static final String QUERY = "SELECT ?s ?o WHERE { ?s <http://example.com/b> ?o . }";
+
+    private final List<LoggingEvent> events = new CopyOnWriteArrayList<>();
+
+    private final AppenderSkeleton appender = new AppenderSkeleton() {
+        @Override
+        protected void append(LoggingEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+    };
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private SlowTransactionLog slowTransactionLog;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void setUp() {
+        slowTransactionLog = new SlowTransactionLog();
+        connectionFactory = createConnectionFactory();
+        connectionFactory.setSlowTransactionLog(slowTransactionLog);
+        transactionTemplate = new TransactionTemplate(new SesameTransactionManager(connectionFactory));
+        transactionTemplate.setName("slowTransaction");
+
+        transactionTemplate.execute(status -> {
+            addData(connectionFactory);
+            return null;
+        });
+
+        Logger.getLogger(SlowTransactionLog.class).addAppender(appender);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Logger.getLogger(SlowTransactionLog.class).removeAppender(appender);
+    }
+
+    @Test
+    public void testFastTransactionsAreNotLogged() {
+        runQuery();
+
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testSlowTransactionIsLoggedWithItsQueries() {
+        slowTransactionLog.setTransactionThresholdMillis(5);
+
+        transactionTemplate.execute(status -> {
+            assertDataPresent(connectionFactory);
+            sleep(20);
+            return null;
+        });
+
+        Assert.assertEquals(1, events.size());
+
+        String message = events.get(0).getRenderedMessage();
+
+        Assert.assertTrue(message, message.startsWith("Slow transaction:"));
+        Assert.assertTrue(message, message.contains("slowTransaction"));
+        Assert.assertTrue(message, message.contains("repositoryId=default"));
+        Assert.assertTrue(message, message.contains("isolationLevel="));
+        Assert.assertTrue(message, message.contains("queryCount=1"));
+        Assert.assertTrue(message, message.contains(QUERY));
+        Assert.assertNull(events.get(0).getThrowableInformation());
+    }
+
+    @Test
+    public void testSlowQueryIsLoggedOnceItsResultIsClosed() {
+        slowTransactionLog.setQueryThresholdMillis(0);
+
+        transactionTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+
+            try (TupleQueryResult result = connection.prepareTupleQuery(QueryLanguage.SPARQL, QUERY).evaluate()) {
+                Assert.assertTrue(result.hasNext());
+                result.next();
+                Assert.assertTrue(events.isEmpty());
+            }
+
+            Assert.assertEquals(1, events.size());
+
+            return null;
+        });
+
+        String message = events.get(0).getRenderedMessage();
+
+        Assert.assertTrue(message, message.startsWith("Slow query:"));
+        Assert.assertTrue(message, message.contains(QUERY));
+    }
+
+    @Test
+    public void testCallStackIsLoggedIfCaptured() {
+        slowTransactionLog.setTransactionThresholdMillis(0);
+        slowTransactionLog.setCaptureCallStack(true);
+
+        runQuery();
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertNotNull(events.get(0).getThrowableInformation());
+    }
+
+    @Test
+    public void testOnlyTheFirstQueriesAreRecorded() {
+        slowTransactionLog.setTransactionThresholdMillis(0);
+        slowTransactionLog.setMaxRecordedQueries(1);
+
+        transactionTemplate.execute(status -> {
+            assertDataPresent(connectionFactory);
+            assertDataPresent(connectionFactory);
+            return null;
+        });
+
+        String message = events.get(0).getRenderedMessage();
+
+        Assert.assertTrue(message, message.contains("queryCount=2"));
+        Assert.assertTrue(message, message.contains("1 more"));
+    }
+
+    private void runQuery() {
+        transactionTemplate.execute(status -> {
+            assertDataPresent(connectionFactory);
+            return null;
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
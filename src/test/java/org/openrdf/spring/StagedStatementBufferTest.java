@@ -0,0 +1,236 @@
+package org.openrdf.spring;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.QueryResults;
+import org.openrdf.repository.RepositoryConnection;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class StagedStatementBufferTest extends BaseTest {
+    private static final ValueFactory f = SimpleValueFactory.getInstance();
+
+    private static final IRI PREDICATE = f.createIRI("http://example.com/p");
+
+    private static final IRI CONTEXT = f.createIRI("http://example.com/g");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File stagingDirectory;
+
+    private RepositoryConnectionFactory connectionFactory;
+
+    private TransactionTemplate transactionTemplate;
+
+    private BatchingStatementWriter batchingStatementWriter;
+
+    @Before
+    public void setUp() throws Exception {
+        stagingDirectory = temporaryFolder.newFolder();
+
+        connectionFactory = createConnectionFactory();
+        connectionFactory.setStagingEnabled(true);
+        connectionFactory.setStagingDirectory(stagingDirectory);
+        connectionFactory.setStagingMemoryBytes(256);
+        connectionFactory.setStagingHeapStatements(10);
+        transactionTemplate = new TransactionTemplate(new SesameTransactionManager(connectionFactory));
+        batchingStatementWriter = new BatchingStatementWriter(connectionFactory);
+        batchingStatementWriter.setBatchSize(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testStagedStatementsSpillAndAreCommitted() {
+        List<Statement> statements = createStatements(StagedStatementBuffer.DICTIONARY_SIZE * 2);
+
+        transactionTemplate.execute(status -> {
+            for (Statement statement : statements) {
+                batchingStatementWriter.add(statement);
+            }
+
+            // removes a statement whose values were evicted from the dictionary in the meantime
+            batchingStatementWriter.remove(statements.get(0));
+
+            StatementBuffer statementBuffer = connectionFactory.getLocalTransactionObject()
+                    .getStatementBuffer();
+
+            Assert.assertTrue(statementBuffer instanceof StagedStatementBuffer);
+            Assert.assertTrue(((StagedStatementBuffer) statementBuffer).getSpilledBytes() > 0);
+            Assert.assertEquals(statements.size() + 1, batchingStatementWriter.getPendingStatementCount());
+            return null;
+        });
+
+        Assert.assertEquals(quads(statements.subList(1, statements.size())), quads(readAll()));
+        Assert.assertEquals(0, stagingDirectory.list().length);
+    }
+
+    @Test
+    public void testStagedStatementsAreVisibleToQueries() {
+        transactionTemplate.execute(status -> {
+            batchingStatementWriter.add(createStatements(1).get(0));
+
+            RepositoryConnection connection = connectionFactory.getConnection();
+
+            Assert.assertTrue(connection.hasStatement(null, PREDICATE, null, false));
+            Assert.assertEquals(0, batchingStatementWriter.getPendingStatementCount());
+            return null;
+        });
+    }
+
+    @Test
+    public void testRollbackDiscardsStagedStatements() {
+        transactionTemplate.execute(status -> {
+            for (Statement statement : createStatements(100)) {
+                batchingStatementWriter.add(statement);
+            }
+
+            StatementBuffer statementBuffer = connectionFactory.getLocalTransactionObject()
+                    .getStatementBuffer();
+
+            Assert.assertTrue(((StagedStatementBuffer) statementBuffer).getSpilledBytes() > 0);
+
+            status.setRollbackOnly();
+            return null;
+        });
+
+        Assert.assertTrue(readAll().isEmpty());
+        Assert.assertEquals(0, stagingDirectory.list().length);
+    }
+
+    @Test
+    public void testSmallTransactionsDoNotUseDirectMemory() {
+        List<Statement> statements = createStatements(10);
+
+        transactionTemplate.execute(status -> {
+            for (Statement statement : statements) {
+                batchingStatementWriter.add(statement);
+            }
+
+            Assert.assertEquals(10, batchingStatementWriter.getPendingStatementCount());
+            return null;
+        });
+
+        Assert.assertEquals(quads(statements), quads(readAll()));
+        Assert.assertEquals(0, connectionFactory.getStagingMemoryPool().getIdleBufferCount());
+    }
+
+    @Test
+    public void testDirectMemoryIsReusedAcrossFlushesAndTransactions() {
+        List<Statement> statements = createStatements(100);
+
+        for (int i = 0; i < 3; i++) {
+            transactionTemplate.execute(status -> {
+                for (Statement statement : statements) {
+                    batchingStatementWriter.add(statement);
+                }
+
+                // reads flush the staged statements, later writes are staged again
+                Assert.assertTrue(connectionFactory.getConnection().hasStatement(statements.get(0), false));
+
+                for (Statement statement : statements) {
+                    batchingStatementWriter.remove(statement);
+                }
+
+                return null;
+            });
+        }
+
+        Assert.assertTrue(readAll().isEmpty());
+        Assert.assertEquals(1, connectionFactory.getStagingMemoryPool().getIdleBufferCount());
+    }
+
+    @Test
+    public void testGroupCommittedStatementsAreStaged() throws Exception {
+        connectionFactory.setGroupCommitEnabled(true);
+
+        List<Statement> statements = createStatements(100);
+
+        transactionTemplate.execute(status -> {
+            RepositoryConnection connection = connectionFactory.getConnection();
+
+            for (Statement statement : statements) {
+                connection.add(statement);
+            }
+
+            Assert.assertTrue(connectionFactory.getLocalTransactionObject()
+                    .getStatementBuffer() instanceof StagedStatementBuffer);
+            return null;
+        });
+
+        Assert.assertEquals(quads(statements), quads(readAll()));
+        Assert.assertEquals(0, stagingDirectory.list().length);
+    }
+
+    /**
+     * <p>Creates statements with all kinds of values, each with a distinct subject and object.</p>
+     */
+    private static List<Statement> createStatements(int count) {
+        List<Statement> statements = new ArrayList<>();
+        StringBuilder longLabel = new StringBuilder();
+
+        for (int i = 0; i < 300; i++) {
+            longLabel.append('ä');
+        }
+
+        for (int i = 0; i < count; i++) {
+            Value object;
+
+            switch (i % 4) {
+                case 0:
+                    object = f.createLiteral(i);
+                    break;
+                case 1:
+                    object = f.createLiteral("label " + i, "de");
+                    break;
+                case 2:
+                    object = f.createLiteral(longLabel + " " + i, XMLSchema.STRING);
+                    break;
+                default:
+                    object = f.createBNode("node" + i);
+                    break;
+            }
+
+            statements.add(i % 2 == 0
+                    ? f.createStatement(f.createIRI("http://example.com/s" + i), PREDICATE, object)
+                    : f.createStatement(f.createBNode("subject" + i), PREDICATE, object, CONTEXT));
+        }
+
+        return statements;
+    }
+
+    private List<Statement> readAll() {
+        RepositoryConnection connection = connectionFactory.getRepository().getConnection();
+
+        try {
+            return QueryResults.asList(connection.getStatements(null, null, null, false));
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static Set<List<Value>> quads(List<Statement> statements) {
+        Set<List<Value>> quads = new HashSet<>();
+
+        for (Statement statement : statements) {
+            quads.add(Arrays.asList(statement.getSubject(), statement.getPredicate(), statement.getObject(),
+                    statement.getContext()));
+        }
+
+        return quads;
+    }
+}